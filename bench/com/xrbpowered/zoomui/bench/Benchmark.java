@@ -0,0 +1,27 @@
+package com.xrbpowered.zoomui.bench;
+
+/**
+ * Single benchmark case. The runner calls {@link #setup()} once, then {@link #run()} repeatedly
+ * during warmup and measurement iterations, and finally {@link #teardown()}.
+ */
+public abstract class Benchmark {
+
+	public final String name;
+
+	public Benchmark(String name) {
+		this.name = name;
+	}
+
+	public void setup() throws Exception {
+	}
+
+	/**
+	 * Performs one operation. The returned value is consumed by the runner to prevent dead code elimination.
+	 * @return any result of the operation
+	 */
+	public abstract Object run();
+
+	public void teardown() {
+	}
+
+}
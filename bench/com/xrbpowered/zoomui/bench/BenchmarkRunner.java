@@ -0,0 +1,184 @@
+package com.xrbpowered.zoomui.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal dependency-free benchmark runner.
+ * 
+ * <p>Each benchmark is measured in a number of fixed-time iterations after a number of warmup iterations.
+ * The runner reports throughput in operations per second (mean and standard deviation over iterations)
+ * and, if the JVM supports thread allocation counters, the allocated memory per operation and the allocation rate,
+ * which is similar to the output of the JMH <code>gc</code> profiler. The number of garbage collections
+ * during measurement is also reported.</p>
+ * 
+ * <p>Command line options:</p>
+ * <ul>
+ * <li><code>-wi N</code> - number of warmup iterations (default 3)</li>
+ * <li><code>-i N</code> - number of measurement iterations (default 5)</li>
+ * <li><code>-t MS</code> - iteration time in milliseconds (default 1000)</li>
+ * <li><code>-l</code> - list benchmarks and exit</li>
+ * <li>any other argument is a regular expression filter for benchmark names</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+
+	public static class Result {
+		public final String name;
+		public final double opsPerSec;
+		public final double opsError;
+		public final double bytesPerOp;
+		public final double allocRate;
+		public final long gcCount;
+
+		public Result(String name, double opsPerSec, double opsError, double bytesPerOp, double allocRate, long gcCount) {
+			this.name = name;
+			this.opsPerSec = opsPerSec;
+			this.opsError = opsError;
+			this.bytesPerOp = bytesPerOp;
+			this.allocRate = allocRate;
+			this.gcCount = gcCount;
+		}
+	}
+
+	public int warmupIterations = 3;
+	public int iterations = 5;
+	public long iterationTime = 1000L;
+
+	private volatile int sink = 0;
+
+	private final com.sun.management.ThreadMXBean allocBean;
+
+	public BenchmarkRunner() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			allocBean = (com.sun.management.ThreadMXBean) bean;
+			allocBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		else
+			allocBean = null;
+	}
+
+	private long allocatedBytes() {
+		return allocBean==null ? 0L : allocBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static long gcCount() {
+		long count = 0L;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(gc.getCollectionCount(), 0L);
+		return count;
+	}
+
+	private void consume(Object o) {
+		if(o!=null)
+			sink += System.identityHashCode(o);
+	}
+
+	private long iteration(Benchmark b, long[] bytes) {
+		long ops = 0L;
+		long b0 = allocatedBytes();
+		long end = System.nanoTime() + iterationTime*1000000L;
+		do {
+			consume(b.run());
+			ops++;
+		} while(System.nanoTime()<end);
+		bytes[0] = allocatedBytes() - b0;
+		return ops;
+	}
+
+	public Result run(Benchmark b) throws Exception {
+		b.setup();
+		try {
+			long[] bytes = new long[1];
+			for(int i=0; i<warmupIterations; i++)
+				iteration(b, bytes);
+
+			double[] rates = new double[iterations];
+			long totalOps = 0L;
+			long totalBytes = 0L;
+			long totalTime = 0L;
+			long gc0 = gcCount();
+			for(int i=0; i<iterations; i++) {
+				long t0 = System.nanoTime();
+				long ops = iteration(b, bytes);
+				long t = System.nanoTime() - t0;
+				rates[i] = ops * 1e9 / t;
+				totalOps += ops;
+				totalBytes += bytes[0];
+				totalTime += t;
+			}
+			long gc = gcCount() - gc0;
+
+			double mean = 0.0;
+			for(double r : rates)
+				mean += r;
+			mean /= iterations;
+			double var = 0.0;
+			for(double r : rates)
+				var += (r-mean)*(r-mean);
+			double err = iterations>1 ? Math.sqrt(var/(iterations-1)) : 0.0;
+
+			double bytesPerOp = allocBean==null ? Double.NaN : totalBytes / (double) totalOps;
+			double allocRate = allocBean==null ? Double.NaN : totalBytes / (totalTime / 1e9) / (1024.0*1024.0);
+			return new Result(b.name, mean, err, bytesPerOp, allocRate, gc);
+		}
+		finally {
+			b.teardown();
+		}
+	}
+
+	public List<Result> runAll(List<Benchmark> benchmarks) {
+		List<Result> results = new ArrayList<>();
+		System.out.printf("%-40s %14s %12s %14s %12s %6s\n", "Benchmark", "ops/s", "error", "B/op", "MB/s", "gc");
+		for(Benchmark b : benchmarks) {
+			try {
+				Result r = run(b);
+				results.add(r);
+				System.out.printf("%-40s %14.2f %12.2f %14.1f %12.2f %6d\n", r.name, r.opsPerSec, r.opsError, r.bytesPerOp, r.allocRate, r.gcCount);
+			}
+			catch(Exception e) {
+				System.out.printf("%-40s failed: %s\n", b.name, e);
+			}
+		}
+		return results;
+	}
+
+	public static void main(String[] args) {
+		if(System.getProperty("java.awt.headless")==null)
+			System.setProperty("java.awt.headless", "true");
+		BenchmarkRunner runner = new BenchmarkRunner();
+		Pattern filter = null;
+		boolean list = false;
+		for(int i=0; i<args.length; i++) {
+			if(args[i].equals("-wi"))
+				runner.warmupIterations = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-i"))
+				runner.iterations = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-t"))
+				runner.iterationTime = Long.parseLong(args[++i]);
+			else if(args[i].equals("-l"))
+				list = true;
+			else
+				filter = Pattern.compile(args[i]);
+		}
+
+		List<Benchmark> benchmarks = new ArrayList<>();
+		for(Benchmark b : Benchmarks.all()) {
+			if(filter==null || filter.matcher(b.name).find())
+				benchmarks.add(b);
+		}
+		if(list) {
+			for(Benchmark b : benchmarks)
+				System.out.println(b.name);
+			return;
+		}
+		runner.runAll(benchmarks);
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,452 @@
+package com.xrbpowered.zoomui.bench;
+
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.xrbpowered.zoomui.InputInfo;
+import com.xrbpowered.zoomui.RootContainer;
+import com.xrbpowered.zoomui.UIContainer;
+import com.xrbpowered.zoomui.examples.JavaTokenizer;
+import com.xrbpowered.zoomui.examples.ZoomViewTest;
+import com.xrbpowered.zoomui.headless.HeadlessWindow;
+import com.xrbpowered.zoomui.icons.SvgFile;
+import com.xrbpowered.zoomui.icons.SvgIcon;
+import com.xrbpowered.zoomui.icons.SvgLoader;
+import com.xrbpowered.zoomui.icons.SvgPathParser;
+import com.xrbpowered.zoomui.icons.SvgScene;
+import com.xrbpowered.zoomui.std.UIToolButton;
+import com.xrbpowered.zoomui.std.file.UIFileView;
+import com.xrbpowered.zoomui.std.text.UITextArea;
+
+/**
+ * Benchmark suite covering painting, hit-testing, layout, SVG icons, and text editing.
+ * Run with {@link BenchmarkRunner#main(String[])}.
+ */
+public class Benchmarks {
+
+	public static List<Benchmark> all() {
+		List<Benchmark> list = new ArrayList<>();
+		addPaint(list);
+		addHitTest(list);
+		addLayout(list);
+		addSvg(list);
+		addTextEdit(list);
+		return list;
+	}
+
+	private static abstract class WindowBenchmark extends Benchmark {
+		protected HeadlessWindow window;
+
+		public WindowBenchmark(String name) {
+			super(name);
+		}
+
+		protected abstract void createScene(UIContainer root) throws Exception;
+
+		@Override
+		public void setup() throws Exception {
+			window = Scenes.createWindow(800, 600);
+			createScene(window.getContainer());
+			Scenes.settle(window, 1000);
+		}
+
+		@Override
+		public void teardown() {
+			window.close();
+		}
+	}
+
+	private static abstract class PaintBenchmark extends WindowBenchmark {
+		public PaintBenchmark(String name) {
+			super(name);
+		}
+
+		@Override
+		public Object run() {
+			window.repaint();
+			return window.renderFrame();
+		}
+	}
+
+	private static void addPaint(List<Benchmark> list) {
+		list.add(new PaintBenchmark("paint.zoomView") {
+			@Override
+			protected void createScene(UIContainer root) {
+				new ZoomViewTest(root);
+			}
+		});
+		list.add(new PaintBenchmark("paint.fileView10k") {
+			private File dir;
+			@Override
+			protected void createScene(UIContainer root) throws Exception {
+				dir = Scenes.createTempFiles(10000);
+				new UIFileView(root, null, true).setDirectory(dir);
+			}
+			@Override
+			public void teardown() {
+				super.teardown();
+				Scenes.deleteTempFiles(dir);
+			}
+		});
+		list.add(new PaintBenchmark("paint.textArea100k") {
+			@Override
+			protected void createScene(UIContainer root) {
+				new UITextArea(root).editor.setText(Scenes.createText(100000));
+			}
+		});
+		list.add(new PaintBenchmark("paint.textAreaHighlighted100k") {
+			@Override
+			protected void createScene(UIContainer root) {
+				UITextArea area = new UITextArea(root);
+				area.editor.setTokenizer(new JavaTokenizer());
+				area.editor.setText(Scenes.createText(100000));
+			}
+		});
+		list.add(new PaintBenchmark("paint.textAreaWrapped100k") {
+			@Override
+			protected void createScene(UIContainer root) {
+				UITextArea area = new UITextArea(root);
+				area.editor.setText(Scenes.createText(100000));
+				area.editor.setWordWrap(true);
+			}
+		});
+		list.add(new PaintBenchmark("paint.wide10k") {
+			@Override
+			protected void createScene(UIContainer root) {
+				Scenes.createWideTree(root, 10000, 8f);
+			}
+		});
+	}
+
+	private static abstract class HitTestBenchmark extends WindowBenchmark {
+		private final float[] points = new float[2048];
+		private int index = 0;
+
+		public HitTestBenchmark(String name) {
+			super(name);
+		}
+
+		@Override
+		public void setup() throws Exception {
+			super.setup();
+			Random random = new Random(1);
+			for(int i=0; i<points.length; i+=2) {
+				points[i] = random.nextFloat() * window.getClientWidth();
+				points[i+1] = random.nextFloat() * window.getClientHeight();
+			}
+		}
+
+		@Override
+		public Object run() {
+			index = (index+2) % points.length;
+			return window.getContainer().getElementAt(points[index], points[index+1]);
+		}
+	}
+
+	private static void addHitTest(List<Benchmark> list) {
+		list.add(new HitTestBenchmark("hit.wide10k") {
+			@Override
+			protected void createScene(UIContainer root) {
+				Scenes.createWideTree(root, 10000, 6f);
+			}
+		});
+		list.add(new HitTestBenchmark("hit.wide10kIndexed") {
+			@Override
+			protected void createScene(UIContainer root) {
+				Scenes.createWideTree(root, 10000, 6f).setHitIndex(true);
+			}
+		});
+		list.add(new HitTestBenchmark("hit.deep50") {
+			@Override
+			protected void createScene(UIContainer root) {
+				Scenes.createDeepTree(root, 50, 8);
+			}
+		});
+	}
+
+	private static abstract class LayoutBenchmark extends WindowBenchmark {
+		public LayoutBenchmark(String name) {
+			super(name);
+		}
+
+		@Override
+		public Object run() {
+			RootContainer root = window.getContainer();
+			root.layout();
+			return root;
+		}
+	}
+
+	private static void addLayout(List<Benchmark> list) {
+		list.add(new LayoutBenchmark("layout.zoomView") {
+			@Override
+			protected void createScene(UIContainer root) {
+				new ZoomViewTest(root);
+			}
+		});
+		list.add(new LayoutBenchmark("layout.wide10k") {
+			@Override
+			protected void createScene(UIContainer root) {
+				Scenes.createWideTree(root, 10000, 6f);
+			}
+		});
+		list.add(new LayoutBenchmark("layout.deep50") {
+			@Override
+			protected void createScene(UIContainer root) {
+				Scenes.createDeepTree(root, 50, 8);
+			}
+		});
+	}
+
+	private static final String svgUri = UIToolButton.iconPath+"file.svg";
+
+	private static void addSvg(List<Benchmark> list) {
+		list.add(new Benchmark("svg.parse") {
+			@Override
+			public Object run() {
+				return new SvgFile(svgUri);
+			}
+		});
+		list.add(new Benchmark("svg.loadScene") {
+			@Override
+			public Object run() {
+				return SvgLoader.loadScene(svgUri, 1.0);
+			}
+		});
+		list.add(new Benchmark("svg.iconPathsDom") {
+			@Override
+			public Object run() {
+				SvgFile svg = new SvgFile(svgUri);
+				svg.getPath("fg", 1);
+				return svg.getPath("bg", 1);
+			}
+		});
+		list.add(new Benchmark("svg.iconPathsStream") {
+			@Override
+			public Object run() {
+				return SvgLoader.loadPaths(svgUri, 1, "fg", "bg");
+			}
+		});
+		list.add(new Benchmark("svg.render64") {
+			private SvgFile svg;
+			private BufferedImage img;
+			@Override
+			public void setup() {
+				svg = new SvgFile(svgUri);
+				img = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+			}
+			@Override
+			public Object run() {
+				Graphics2D g2 = img.createGraphics();
+				svg.render(g2, 64.0/160.0);
+				g2.dispose();
+				return img;
+			}
+		});
+		list.add(new Benchmark("svg.pathScan") {
+			private String[] data;
+			@Override
+			public void setup() {
+				data = Scenes.loadIconPathData();
+			}
+			@Override
+			public Object run() {
+				Object res = null;
+				for(String d : data)
+					res = SvgPathParser.parse(d, 1.0);
+				return res;
+			}
+		});
+		list.add(new Benchmark("svg.pathSplit") {
+			private String[] data;
+			@Override
+			public void setup() {
+				data = Scenes.loadIconPathData();
+			}
+			@Override
+			public Object run() {
+				Object res = null;
+				for(String d : data)
+					res = SplitPathParser.parse(d, 1.0);
+				return res;
+			}
+		});
+		list.add(new Benchmark("svg.compile") {
+			private SvgFile svg;
+			@Override
+			public void setup() {
+				svg = new SvgFile(svgUri);
+			}
+			@Override
+			public Object run() {
+				return svg.compile();
+			}
+		});
+		list.add(new Benchmark("svg.renderScene64") {
+			private SvgScene scene;
+			private BufferedImage img;
+			@Override
+			public void setup() {
+				scene = SvgScene.load(svgUri);
+				img = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+			}
+			@Override
+			public Object run() {
+				Graphics2D g2 = img.createGraphics();
+				scene.render(g2, 64.0/160.0);
+				g2.dispose();
+				return img;
+			}
+		});
+		list.add(new Benchmark("svg.iconZoom") {
+			private SvgIcon icon;
+			private BufferedImage img;
+			private int frame = 0;
+			@Override
+			public void setup() {
+				icon = new SvgIcon(svgUri, 160, UIToolButton.palette).load();
+				img = new BufferedImage(128, 128, BufferedImage.TYPE_INT_ARGB);
+			}
+			@Override
+			public Object run() {
+				// continuous zoom between 16 and 96 pixels
+				float size = 16f + (frame++ % 1000) * 0.08f;
+				Graphics2D g2 = img.createGraphics();
+				icon.paint(g2, 0, 0.37f, 0.61f, size, 1f, true);
+				g2.dispose();
+				return img;
+			}
+		});
+		list.add(new Benchmark("svg.iconGrid") {
+			private SvgIcon[] icons;
+			private BufferedImage img;
+			@Override
+			public void setup() {
+				String[] names = {"file", "folder", "disk", "computer", "home", "heart"};
+				icons = new SvgIcon[names.length];
+				for(int i=0; i<names.length; i++)
+					icons[i] = new SvgIcon(UIToolButton.iconPath+names[i]+".svg", 160, UIToolButton.palette).load();
+				img = new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_ARGB);
+			}
+			@Override
+			public Object run() {
+				// file view: 32x32 icons in 4 styles
+				Graphics2D g2 = img.createGraphics();
+				for(int i=0; i<600; i++)
+					icons[i%icons.length].paint(g2, (i/icons.length)%4, (i%20)*48+8, (i/20)*32, 32, 1f, true);
+				g2.dispose();
+				return img;
+			}
+		});
+	}
+
+	private static abstract class TextEditBenchmark extends WindowBenchmark {
+		protected UITextArea area;
+
+		public TextEditBenchmark(String name) {
+			super(name);
+		}
+
+		@Override
+		protected void createScene(UIContainer root) {
+			area = new UITextArea(root);
+			area.editor.setText(Scenes.createText(10000));
+		}
+
+		@Override
+		public void setup() throws Exception {
+			super.setup();
+			window.getContainer().setFocus(area.editor);
+			area.editor.setCursor(area.editor.getText().length()/2);
+		}
+
+		protected void key(char c, int code, int mods) {
+			window.surface.setModifiers(mods);
+			window.surface.keyPressed(c, code);
+		}
+	}
+
+	private static void addTextEdit(List<Benchmark> list) {
+		list.add(new TextEditBenchmark("edit.typing") {
+			private int count = 0;
+			@Override
+			public Object run() {
+				// move to the next line periodically to keep the line length bounded
+				if(++count % 64 == 0) {
+					key(KeyEvent.CHAR_UNDEFINED, KeyEvent.VK_DOWN, InputInfo.NONE);
+					key(KeyEvent.CHAR_UNDEFINED, KeyEvent.VK_HOME, InputInfo.NONE);
+				}
+				key('a', KeyEvent.VK_A, InputInfo.NONE);
+				return area;
+			}
+		});
+		list.add(new TextEditBenchmark("edit.enterBackspace") {
+			@Override
+			public Object run() {
+				key('\n', KeyEvent.VK_ENTER, InputInfo.NONE);
+				key('\b', KeyEvent.VK_BACK_SPACE, InputInfo.NONE);
+				return area;
+			}
+		});
+		list.add(new TextEditBenchmark("edit.verticalLongLines") {
+			@Override
+			protected void createScene(UIContainer root) {
+				// cursor moves between two 10k character lines
+				StringBuilder sb = new StringBuilder();
+				for(int i=0; i<2; i++) {
+					for(int j=0; j<1000; j++)
+						sb.append(j%7==0 ? "\tword " : "word, ");
+					sb.append('\n');
+				}
+				area = new UITextArea(root);
+				area.editor.setText(sb.toString());
+			}
+			@Override
+			public void setup() throws Exception {
+				super.setup();
+				area.editor.setCursor(5000);
+			}
+			@Override
+			public Object run() {
+				key(KeyEvent.CHAR_UNDEFINED, KeyEvent.VK_DOWN, InputInfo.NONE);
+				key(KeyEvent.CHAR_UNDEFINED, KeyEvent.VK_UP, InputInfo.NONE);
+				return area;
+			}
+		});
+		list.add(new TextEditBenchmark("edit.multiCaret10k") {
+			@Override
+			public void setup() throws Exception {
+				super.setup();
+				// one caret per line
+				key(KeyEvent.CHAR_UNDEFINED, KeyEvent.VK_A, InputInfo.CTRL);
+				key(KeyEvent.CHAR_UNDEFINED, KeyEvent.VK_I, InputInfo.ALT|InputInfo.SHIFT);
+			}
+			@Override
+			public Object run() {
+				key('a', KeyEvent.VK_A, InputInfo.NONE);
+				key('\b', KeyEvent.VK_BACK_SPACE, InputInfo.NONE);
+				return area;
+			}
+		});
+		list.add(new TextEditBenchmark("edit.undoRedo") {
+			@Override
+			public void setup() throws Exception {
+				super.setup();
+				key('a', KeyEvent.VK_A, InputInfo.NONE);
+				key('\n', KeyEvent.VK_ENTER, InputInfo.NONE);
+			}
+			@Override
+			public Object run() {
+				key(KeyEvent.CHAR_UNDEFINED, KeyEvent.VK_Z, InputInfo.CTRL);
+				key(KeyEvent.CHAR_UNDEFINED, KeyEvent.VK_Y, InputInfo.CTRL);
+				return area;
+			}
+		});
+	}
+
+}
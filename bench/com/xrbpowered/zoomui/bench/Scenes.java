@@ -0,0 +1,167 @@
+package com.xrbpowered.zoomui.bench;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.xrbpowered.zoomui.GraphAssist;
+import com.xrbpowered.zoomui.UIContainer;
+import com.xrbpowered.zoomui.UIElement;
+import com.xrbpowered.zoomui.headless.HeadlessWindow;
+import com.xrbpowered.zoomui.headless.HeadlessWindowFactory;
+import com.xrbpowered.zoomui.icons.SvgFile;
+import com.xrbpowered.zoomui.std.UIToolButton;
+
+/**
+ * Helper methods for setting up benchmark scenes in headless windows.
+ */
+public class Scenes {
+
+	public static HeadlessWindow createWindow(int w, int h) {
+		HeadlessWindow window = HeadlessWindowFactory.use(1f).create(null, w, h, false);
+		window.show();
+		return window;
+	}
+
+	/**
+	 * Renders frames, runs pending tasks, and waits for background icon rasterization until the window stops requesting repaints.
+	 * @param window headless window
+	 * @param maxFrames maximum number of frames to render
+	 */
+	public static void settle(HeadlessWindow window, int maxFrames) {
+		HeadlessWindowFactory factory = (HeadlessWindowFactory) window.getFactory();
+		for(int i=0; i<maxFrames; i++) {
+			window.renderFrame();
+			if(window.surface.waitForIcons())
+				continue;
+			if(!window.surface.isRepaintRequested() && !factory.hasPendingTasks())
+				break;
+		}
+	}
+
+	public static class Cell extends UIElement {
+		public Cell(UIContainer parent) {
+			super(parent);
+		}
+		@Override
+		public void paint(GraphAssist g) {
+			g.fill(this, Color.LIGHT_GRAY);
+		}
+	}
+
+	/**
+	 * Creates a container with a square grid of child elements.
+	 * @param parent parent container
+	 * @param count number of children
+	 * @param cellSize width and height of each child
+	 * @return container
+	 */
+	public static UIContainer createWideTree(UIContainer parent, int count, final float cellSize) {
+		final int cols = (int) Math.ceil(Math.sqrt(count));
+		UIContainer box = new UIContainer(parent) {
+			@Override
+			public void layout() {
+				for(int i=0; i<children.size(); i++) {
+					UIElement c = children.get(i);
+					c.setPosition((i % cols) * cellSize, (i / cols) * cellSize);
+					c.setSize(cellSize - 1, cellSize - 1);
+				}
+				super.layout();
+			}
+		};
+		for(int i=0; i<count; i++)
+			new Cell(box);
+		return box;
+	}
+
+	/**
+	 * Creates a tree of nested containers. Each level has one nested container and a number of leaf elements.
+	 * @param parent parent container
+	 * @param depth nesting depth
+	 * @param leaves number of leaf elements per level
+	 * @return top level container
+	 */
+	public static UIContainer createDeepTree(UIContainer parent, int depth, final int leaves) {
+		UIContainer box = new UIContainer(parent) {
+			@Override
+			public void layout() {
+				float w = getWidth();
+				float h = getHeight();
+				for(int i=0; i<children.size(); i++) {
+					UIElement c = children.get(i);
+					if(c instanceof UIContainer) {
+						c.setPosition(2, 2);
+						c.setSize(w - 4, h - 4);
+					}
+					else {
+						c.setPosition(i * w / (leaves+1), 0);
+						c.setSize(w / (leaves+1) - 1, 2);
+					}
+				}
+				super.layout();
+			}
+		};
+		for(int i=0; i<leaves; i++)
+			new Cell(box);
+		if(depth>1)
+			createDeepTree(box, depth-1, leaves);
+		return box;
+	}
+
+	public static File createTempFiles(int count) throws IOException {
+		File dir = File.createTempFile("zoomui-bench", "");
+		dir.delete();
+		dir.mkdir();
+		for(int i=0; i<count; i++)
+			new File(dir, String.format("file%05d.txt", i)).createNewFile();
+		return dir;
+	}
+
+	public static void deleteTempFiles(File dir) {
+		File[] files = dir.listFiles();
+		if(files!=null) {
+			for(File f : files)
+				f.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Collects path data strings from the standard icon set. Requires the icons to be on the class path as files.
+	 * @return path data of all <code>path</code> elements
+	 */
+	public static String[] loadIconPathData() {
+		ArrayList<String> list = new ArrayList<>();
+		URL url = ClassLoader.getSystemResource(UIToolButton.iconPath);
+		File[] files = (url==null) ? null : new File(url.getPath()).listFiles();
+		if(files!=null) {
+			for(File f : files) {
+				if(!f.getName().endsWith(".svg"))
+					continue;
+				SvgFile svg = new SvgFile(UIToolButton.iconPath+f.getName());
+				if(svg.root==null)
+					continue;
+				NodeList paths = svg.root.getElementsByTagName("path");
+				for(int i=0; i<paths.getLength(); i++)
+					list.add(((Element) paths.item(i)).getAttribute("d"));
+			}
+		}
+		return list.toArray(new String[list.size()]);
+	}
+
+	public static String createText(int lines) {
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i<lines; i++) {
+			if(i>0)
+				sb.append('\n');
+			sb.append("\tline ").append(i).append(": the quick brown fox jumps over the lazy dog");
+		}
+		return sb.toString();
+	}
+
+}
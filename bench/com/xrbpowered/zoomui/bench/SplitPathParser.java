@@ -0,0 +1,125 @@
+package com.xrbpowered.zoomui.bench;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+
+import com.xrbpowered.zoomui.icons.SvgPathParser;
+
+/**
+ * Split-based path data parser formerly used by SvgFile, kept as the baseline for {@link SvgPathParser} benchmarks.
+ */
+public class SplitPathParser {
+
+	public static Path2D parse(String d, double scale) {
+		Path2D.Double path = new Path2D.Double();
+		String[] s = d.split("[\\,\\s]\\s*");
+		char cmd = '\0';
+		double dx =0.0;
+		double dy = 0.0;
+		for(int i=0; i<s.length; i++) {
+			char c = s[i].charAt(0);
+			if(c>='A' && c<='Z' || c>='a' && c<='z') {
+				cmd= c;
+				i++;
+			}
+			Point2D.Double cur = (Point2D.Double) path.getCurrentPoint();
+			if(cur!=null) {
+				dx = cur.x;
+				dy = cur.y;
+			}
+			else {
+				dx = 0.0;
+				dy = 0.0;
+			}
+			switch(cmd) {
+				case 'M':
+					path.moveTo(Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale);
+					i+=1;
+					cmd = 'L';
+					break;
+				case 'm':
+					path.moveTo(Double.parseDouble(s[i]) * scale + dx, Double.parseDouble(s[i+1]) * scale + dy);
+					i+=1;
+					cmd = 'l';
+					break;
+				case 'L':
+					path.lineTo(Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale);
+					i+=1;
+					break;
+				case 'l':
+					path.lineTo(Double.parseDouble(s[i]) * scale + dx, Double.parseDouble(s[i+1]) * scale + dy);
+					i+=1;
+					break;
+				case 'V':
+					path.lineTo(cur.x, Double.parseDouble(s[i]) * scale);
+					break;
+				case 'v':
+					path.lineTo(cur.x, Double.parseDouble(s[i]) * scale + dy);
+					break;
+				case 'H':
+					path.lineTo(Double.parseDouble(s[i]) * scale, cur.y);
+					break;
+				case 'h':
+					path.lineTo(Double.parseDouble(s[i]) * scale + dx, cur.y);
+					break;
+				case 'C':
+					path.curveTo(
+							Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale,
+							Double.parseDouble(s[i+2]) * scale, Double.parseDouble(s[i+3]) * scale,
+							Double.parseDouble(s[i+4]) * scale, Double.parseDouble(s[i+5]) * scale
+						);
+					i+=5;
+					break;
+				case 'c':
+					path.curveTo(
+							Double.parseDouble(s[i]) * scale + dx, Double.parseDouble(s[i+1]) * scale + dy,
+							Double.parseDouble(s[i+2]) * scale + dx, Double.parseDouble(s[i+3]) * scale + dy,
+							Double.parseDouble(s[i+4]) * scale + dx, Double.parseDouble(s[i+5]) * scale + dy
+						);
+					i+=5;
+					break;
+				case 'Q':
+					path.quadTo(
+							Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale,
+							Double.parseDouble(s[i+2]) * scale, Double.parseDouble(s[i+3]) * scale
+						);
+					i+=3;
+					break;
+				case 'q':
+					path.quadTo(
+							Double.parseDouble(s[i]) * scale + dx, Double.parseDouble(s[i+1]) * scale + dy,
+							Double.parseDouble(s[i+2]) * scale + dx, Double.parseDouble(s[i+3]) * scale + dy
+						);
+					i+=3;
+					break;
+				case 'A':
+					SvgPathParser.arcTo(path,
+							Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale,
+							Double.parseDouble(s[i+2]), Integer.parseInt(s[i+3])!=0, Integer.parseInt(s[i+4])!=0,
+							Double.parseDouble(s[i+5]) * scale, Double.parseDouble(s[i+6]) * scale
+						);
+					i+=6;
+					break;
+				case 'a':
+					SvgPathParser.arcTo(path,
+							Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale,
+							Double.parseDouble(s[i+2]), Integer.parseInt(s[i+3])!=0, Integer.parseInt(s[i+4])!=0,
+							Double.parseDouble(s[i+5]) * scale + dx, Double.parseDouble(s[i+6]) * scale + dy
+						);
+					i+=6;
+					break;
+				case 'Z':
+				case 'z':
+					path.closePath();
+					i-=1;
+					break;
+				default:
+					if(cmd!='\0')
+						System.err.printf("Unknown path command: '%c'\n", cmd);
+					cmd = '\0';
+			}
+		}
+		return path;
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.xrbpowered.zoomui.examples;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.HashSet;
+
+import com.xrbpowered.zoomui.base.LineTokenizer;
+import com.xrbpowered.zoomui.base.TokenList;
+import com.xrbpowered.zoomui.base.TokenStyle;
+
+public class JavaTokenizer implements LineTokenizer {
+
+	public static final int PLAIN = 0;
+	public static final int KEYWORD = 1;
+	public static final int COMMENT = 2;
+	public static final int STRING = 3;
+	public static final int NUMBER = 4;
+	public static final int ANNOTATION = 5;
+
+	private static final int STATE_BLOCK_COMMENT = 1;
+
+	private static final String[] keywordList = {
+		"abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+		"continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+		"for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+		"new", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super",
+		"switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while",
+		"true", "false", "null"
+	};
+	private static final HashSet<String> keywords = new HashSet<>();
+	static {
+		for(String k : keywordList)
+			keywords.add(k);
+	}
+
+	private static final TokenStyle[] styles = {
+		new TokenStyle(null),
+		new TokenStyle(new Color(0x000077), Font.BOLD),
+		new TokenStyle(new Color(0x007700), Font.ITALIC),
+		new TokenStyle(new Color(0x0000dd)),
+		new TokenStyle(new Color(0x007777)),
+		new TokenStyle(new Color(0x777777)),
+	};
+
+	@Override
+	public TokenStyle[] getStyles() {
+		return styles;
+	}
+
+	private static int skipBlockComment(CharSequence text, int i, int end) {
+		for(; i<end-1; i++) {
+			if(text.charAt(i)=='*' && text.charAt(i+1)=='/')
+				return i+2;
+		}
+		return -1;
+	}
+
+	@Override
+	public int tokenize(CharSequence text, int start, int end, int state, TokenList out) {
+		int i = start;
+		if(state==STATE_BLOCK_COMMENT) {
+			out.add(0, COMMENT);
+			i = skipBlockComment(text, i, end);
+			if(i<0)
+				return STATE_BLOCK_COMMENT;
+			out.add(i-start, PLAIN);
+		}
+		while(i<end) {
+			char ch = text.charAt(i);
+			int s = i;
+			if(ch=='/' && i+1<end && text.charAt(i+1)=='/') {
+				out.add(s-start, COMMENT);
+				return INITIAL_STATE;
+			}
+			else if(ch=='/' && i+1<end && text.charAt(i+1)=='*') {
+				out.add(s-start, COMMENT);
+				i = skipBlockComment(text, i+2, end);
+				if(i<0)
+					return STATE_BLOCK_COMMENT;
+			}
+			else if(ch=='"' || ch=='\'') {
+				out.add(s-start, STRING);
+				for(i++; i<end; i++) {
+					char c = text.charAt(i);
+					if(c=='\\')
+						i++;
+					else if(c==ch) {
+						i++;
+						break;
+					}
+				}
+				i = Math.min(i, end);
+			}
+			else if(Character.isDigit(ch)) {
+				out.add(s-start, NUMBER);
+				for(i++; i<end && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i)=='.'); i++);
+			}
+			else if(ch=='@' || Character.isJavaIdentifierStart(ch)) {
+				for(i++; i<end && Character.isJavaIdentifierPart(text.charAt(i)); i++);
+				if(ch=='@')
+					out.add(s-start, ANNOTATION);
+				else if(keywords.contains(text.subSequence(s, i).toString()))
+					out.add(s-start, KEYWORD);
+				else {
+					out.add(s-start, PLAIN);
+					continue;
+				}
+			}
+			else {
+				i++;
+				continue;
+			}
+			out.add(i-start, PLAIN);
+		}
+		return INITIAL_STATE;
+	}
+
+}
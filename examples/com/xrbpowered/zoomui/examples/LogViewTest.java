@@ -0,0 +1,30 @@
+package com.xrbpowered.zoomui.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.xrbpowered.zoomui.GraphAssist;
+import com.xrbpowered.zoomui.UIWindow;
+import com.xrbpowered.zoomui.std.text.UIMappedTextArea;
+import com.xrbpowered.zoomui.swing.SwingFrame;
+import com.xrbpowered.zoomui.swing.SwingWindowFactory;
+
+public class LogViewTest {
+
+	public static void main(String[] args) throws IOException {
+		String path = args.length>0 ? args[0] : "examples/com/xrbpowered/zoomui/examples/LogViewTest.java";
+		UIWindow frame = new SwingFrame(SwingWindowFactory.use(), "LogViewTest", 800, 600, true, false) {};
+		
+		UIMappedTextArea text = new UIMappedTextArea(frame.getContainer()) {
+			@Override
+			protected void paintBorder(GraphAssist g) {
+				g.hborder(this, GraphAssist.TOP, colorBorder);
+			}
+		};
+		text.view.open(new File(path), StandardCharsets.UTF_8);
+		
+		frame.show();
+	}
+
+}
@@ -9,11 +9,12 @@
 import com.xrbpowered.zoomui.UIWindow;
 import com.xrbpowered.zoomui.base.UIZoomView;
 import com.xrbpowered.zoomui.icons.SvgFile;
+import com.xrbpowered.zoomui.icons.SvgScene;
 import com.xrbpowered.zoomui.swing.SwingWindowFactory;
 
 public class RenderSvg extends UIZoomView {
 
-	public final SvgFile svg = new SvgFile("drawing.svg"); 
+	public final SvgScene svg = new SvgFile("drawing.svg").compile(10); 
 	
 	public RenderSvg(UIContainer parent) {
 		super(parent);
@@ -49,6 +49,7 @@ protected void paintBorder(GraphAssist g) {
 			}
 		};
 		text.editor.setFont(new Font("Verdana", Font.PLAIN, 10), 10f);
+		text.editor.setTokenizer(new JavaTokenizer());
 		text.editor.setText(loadString(TEST_INPUT));
 		
 		frame.show();
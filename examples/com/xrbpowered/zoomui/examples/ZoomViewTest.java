@@ -7,6 +7,7 @@
 import com.xrbpowered.zoomui.UIElement;
 import com.xrbpowered.zoomui.UIWindow;
 import com.xrbpowered.zoomui.base.UIZoomView;
+import com.xrbpowered.zoomui.icons.IconRegistry;
 import com.xrbpowered.zoomui.icons.SvgIcon;
 import com.xrbpowered.zoomui.std.UIButton;
 import com.xrbpowered.zoomui.std.UIFormattedLabel;
@@ -21,7 +22,7 @@
 
 public class ZoomViewTest extends UIZoomView {
 
-	private static final SvgIcon fileIcon = new SvgIcon(UIToolButton.iconPath+"file.svg", 160, UIToolButton.palette);
+	private static final SvgIcon fileIcon = IconRegistry.shared.get(UIToolButton.iconPath+"file.svg", 160, UIToolButton.palette);
 	
 	private UIButton btn1, btn2, btn3;
 	private UIListBox list;
@@ -142,6 +143,7 @@ public void layout() {
 	}
 	
 	public static void main(String[] args) {
+		IconRegistry.shared.preloadAll();
 		UIWindow frame = new SwingFrame(SwingWindowFactory.use(), "ZoomViewTest", 800, 600, true, false) {
 			@Override
 			public boolean onClosing() {
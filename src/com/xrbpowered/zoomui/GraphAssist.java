@@ -10,8 +10,7 @@
 import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
-import java.util.Deque;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 /**
@@ -27,6 +26,12 @@
  * <p>It also provides API wrappers for floating point drawing.
  * This is just a syntax sugar, as internally these are cast to integers for Java2D.</p>
  *
+ * <p>The stacks are array-based and reuse pooled {@link AffineTransform} and {@link Rectangle} objects,
+ * so pushing and popping does not allocate memory once the stacks have reached their maximum depth.
+ * To avoid copying the transform out of {@link Graphics2D} on every push, this class keeps track of the current
+ * transform itself. If the transform of {@link #graph} is modified directly, call {@link #syncTransform()} afterwards.
+ * Objects allocated by this class are counted by {@link #getAllocationCount()}.</p>
+ *
  */
 public class GraphAssist {
 
@@ -43,21 +48,52 @@ public class GraphAssist {
 	 */
 	public final Graphics2D graph;
 
-	private Deque<AffineTransform> txStack = new LinkedList<>();
-	private Deque<Rectangle> clipStack = new LinkedList<>();
-	private Deque<Boolean> aaStack = new LinkedList<>();
-	private Deque<Boolean> pureStrokeStack = new LinkedList<>();
+	private static final int INITIAL_DEPTH = 16;
+	private static final int STROKE_CACHE_SIZE = 16;
+
+	private static final BasicStroke[] strokeCache = new BasicStroke[STROKE_CACHE_SIZE];
+	private static int strokeCacheNext = 0;
+
+	private final AffineTransform tx;
+
+	private AffineTransform[] txStack = new AffineTransform[INITIAL_DEPTH];
+	private int txDepth = 0;
+	private Rectangle[] clipStack = new Rectangle[INITIAL_DEPTH];
+	private boolean[] clipNull = new boolean[INITIAL_DEPTH];
+	private int clipDepth = 0;
+	private boolean[] aaStack = new boolean[INITIAL_DEPTH];
+	private int aaDepth = 0;
+	private boolean[] pureStrokeStack = new boolean[INITIAL_DEPTH];
+	private int pureStrokeDepth = 0;
+
+	private final Rectangle clipRect = new Rectangle();
+	private int allocations = 0;
 
 	public GraphAssist(Graphics2D graph) {
 		this.graph = graph;
+		this.tx = graph==null ? new AffineTransform() : graph.getTransform();
 	}
 
 	/**
-	 * Returns the currently set affine transform.
+	 * Returns the number of objects allocated by this instance for its property stacks, transform copies, and strokes.
+	 * 
+	 * <p>The stacks grow on demand and are reused afterwards, so in the steady state the paint path
+	 * is expected to add nothing to this counter. Since a new instance is normally created for each frame,
+	 * this counter can be used as a per-frame allocation measure. Allocations made by Java2D itself are not counted.</p>
+	 * 
+	 * @return number of allocated objects
+	 */
+	public int getAllocationCount() {
+		return allocations;
+	}
+
+	/**
+	 * Returns a copy of the currently set affine transform.
 	 * @return transform matrix
 	 */
 	public AffineTransform getTransform() {
-		return graph.getTransform();
+		allocations++;
+		return new AffineTransform(tx);
 	}
 
 	/**
@@ -66,23 +102,46 @@ public AffineTransform getTransform() {
 	 * @param t transform matrix
 	 */
 	public void setTransform(AffineTransform t) {
+		tx.setTransform(t);
 		graph.setTransform(t);
 	}
 
 	/**
-	 * Returns the top element from the transform stack without changing the stack or modifying transform settings. 
+	 * Re-reads the current affine transform from {@link #graph}.
+	 * Must be called if the transform has been changed directly in {@link #graph} rather than via this class.
+	 */
+	public void syncTransform() {
+		tx.setTransform(graph.getTransform());
+	}
+
+	/**
+	 * Returns the top element from the transform stack without changing the stack or modifying transform settings.
+	 * The returned object is reused by the stack and must not be modified.
 	 * @return transform matrix
 	 * @throws NoSuchElementException if the transform stack is empty
 	 */
 	public AffineTransform peekTx() {
-		return txStack.getFirst();
+		if(txDepth==0)
+			throw new NoSuchElementException();
+		return txStack[txDepth-1];
 	}
 
 	/**
 	 * Pushes the current affine transform to the transform stack.
 	 */
 	public void pushTx() {
-		txStack.addFirst(getTransform());
+		if(txDepth==txStack.length) {
+			txStack = Arrays.copyOf(txStack, txDepth*2);
+			allocations++;
+		}
+		AffineTransform t = txStack[txDepth];
+		if(t==null) {
+			t = new AffineTransform();
+			txStack[txDepth] = t;
+			allocations++;
+		}
+		t.setTransform(tx);
+		txDepth++;
 	}
 
 	/**
@@ -90,14 +149,18 @@ public void pushTx() {
 	 * @throws NoSuchElementException if the transform stack is empty
 	 */
 	public void popTx() {
-		setTransform(txStack.removeFirst());
+		if(txDepth==0)
+			throw new NoSuchElementException();
+		txDepth--;
+		setTransform(txStack[txDepth]);
 	}
 
 	/**
 	 * Sets current affine transform to an identity matrix.
 	 */
 	public void clearTransform() {
-		graph.setTransform(new AffineTransform());
+		tx.setToIdentity();
+		graph.setTransform(tx);
 	}
 
 	/**
@@ -106,6 +169,7 @@ public void clearTransform() {
 	 * @param dy vertical translation delta
 	 */
 	public void translate(double dx, double dy) {
+		tx.translate(dx, dy);
 		graph.translate(dx, dy);
 	}
 
@@ -115,6 +179,7 @@ public void translate(double dx, double dy) {
 	 * @param scale scaling factor delta
 	 */
 	public void scale(double scale) {
+		tx.scale(scale, scale);
 		graph.scale(scale, scale);
 	}
 
@@ -126,6 +191,17 @@ public Rectangle getClip() {
 		return graph.getClipBounds();
 	}
 
+	/**
+	 * Returns current clip area without allocating a new rectangle.
+	 * @param r rectangle to store the clip bounds in
+	 * @return <code>r</code> containing the clip bounds, or <code>null</code> if there is no clip
+	 */
+	public Rectangle getClip(Rectangle r) {
+		r.width = Integer.MIN_VALUE;
+		graph.getClipBounds(r);
+		return r.width==Integer.MIN_VALUE ? null : r;
+	}
+
 	/**
 	 * Overrides current clip area without using clip stack.
 	 * @param r new clip rectangle
@@ -167,16 +243,34 @@ public void setClip(Rectangle r) {
 	 * @see #popClip()
 	 */
 	public boolean pushClip(float x, float y, float w, float h) {
-		Rectangle clip = getClip();
-		Rectangle r = new Rectangle((int) x, (int) y, (int) w, (int) h);
+		if(clipDepth==clipStack.length) {
+			clipStack = Arrays.copyOf(clipStack, clipDepth*2);
+			clipNull = Arrays.copyOf(clipNull, clipDepth*2);
+			allocations += 2;
+		}
+		Rectangle clip = clipStack[clipDepth];
 		if(clip==null) {
-			clipStack.addFirst(null);
+			clip = new Rectangle();
+			clipStack[clipDepth] = clip;
+			allocations++;
+		}
+		boolean none = getClip(clip)==null;
+		Rectangle r = clipRect;
+		r.setBounds((int) x, (int) y, (int) w, (int) h);
+		if(none) {
+			clipNull[clipDepth++] = true;
 			setClip(r);
 			return true;
 		}
 		else if(r.intersects(clip)) {
-			clipStack.addFirst(clip);
-			setClip(r.intersection(clip));
+			clipNull[clipDepth++] = false;
+			int x1 = Math.min(r.x + r.width, clip.x + clip.width);
+			int y1 = Math.min(r.y + r.height, clip.y + clip.height);
+			r.x = Math.max(r.x, clip.x);
+			r.y = Math.max(r.y, clip.y);
+			r.width = x1 - r.x;
+			r.height = y1 - r.y;
+			setClip(r);
 			return true;
 		}
 		else {
@@ -208,7 +302,10 @@ public boolean pushClip(UIElement e) {
 	 * @throws NoSuchElementException if the clip stack is empty, indicating the mismatch between the number of pushes and pops.
 	 */
 	public void popClip() {
-		setClip(clipStack.removeFirst());
+		if(clipDepth==0)
+			throw new NoSuchElementException();
+		clipDepth--;
+		setClip(clipNull[clipDepth] ? null : clipStack[clipDepth]);
 	}
 
 	public boolean isAntialisingOn() {
@@ -216,13 +313,19 @@ public boolean isAntialisingOn() {
 	}
 
 	public void pushAntialiasing(boolean aa) {
-		aaStack.addFirst(isAntialisingOn());
+		if(aaDepth==aaStack.length) {
+			aaStack = Arrays.copyOf(aaStack, aaDepth*2);
+			allocations++;
+		}
+		aaStack[aaDepth++] = isAntialisingOn();
 		graph.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 				aa ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
 	}
 
 	public void popAntialiasing() {
-		boolean aa = aaStack.removeFirst();
+		if(aaDepth==0)
+			throw new NoSuchElementException();
+		boolean aa = aaStack[--aaDepth];
 		graph.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 				aa ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
 	}
@@ -258,7 +361,11 @@ public boolean isPureStrokeOn() {
 	 * @see #popPureStroke()
 	 */
 	public void pushPureStroke(boolean pure) {
-		pureStrokeStack.addFirst(isPureStrokeOn());
+		if(pureStrokeDepth==pureStrokeStack.length) {
+			pureStrokeStack = Arrays.copyOf(pureStrokeStack, pureStrokeDepth*2);
+			allocations++;
+		}
+		pureStrokeStack[pureStrokeDepth++] = isPureStrokeOn();
 		graph.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
 				pure ? RenderingHints.VALUE_STROKE_PURE : RenderingHints.VALUE_STROKE_NORMALIZE);
 	}
@@ -270,7 +377,9 @@ public void pushPureStroke(boolean pure) {
 	 * @throws NoSuchElementException if the stroke control stack is empty, indicating the mismatch between the number of pushes and pops.
 	 */
 	public void popPureStroke() {
-		boolean pure = pureStrokeStack.removeFirst();
+		if(pureStrokeDepth==0)
+			throw new NoSuchElementException();
+		boolean pure = pureStrokeStack[--pureStrokeDepth];
 		graph.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
 				pure ? RenderingHints.VALUE_STROKE_PURE : RenderingHints.VALUE_STROKE_NORMALIZE);
 	}
@@ -291,8 +400,27 @@ public void setPaint(Paint p) {
 		graph.setPaint(p);
 	}
 
+	/**
+	 * Sets a solid stroke of the given width. Recently used strokes are cached and shared between instances.
+	 * @param width stroke width
+	 */
 	public void setStroke(float width) {
-		graph.setStroke(new BasicStroke(width));
+		graph.setStroke(getStroke(width));
+	}
+
+	private BasicStroke getStroke(float width) {
+		synchronized(strokeCache) {
+			for(int i=0; i<STROKE_CACHE_SIZE; i++) {
+				BasicStroke s = strokeCache[i];
+				if(s!=null && s.getLineWidth()==width)
+					return s;
+			}
+			BasicStroke s = new BasicStroke(width);
+			allocations++;
+			strokeCache[strokeCacheNext] = s;
+			strokeCacheNext = (strokeCacheNext+1) % STROKE_CACHE_SIZE;
+			return s;
+		}
 	}
 
 	public void resetStroke() {
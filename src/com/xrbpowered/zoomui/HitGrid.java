@@ -0,0 +1,117 @@
+package com.xrbpowered.zoomui;
+
+import java.util.ArrayList;
+
+/**
+ * Uniform grid of child elements used by {@link UIContainer} to accelerate hit testing.
+ *
+ * <p>The grid covers the bounding box of the children and is split into roughly as many cells as there are children.
+ * Each cell stores the children whose bounds overlap the cell in paint order, therefore iterating a cell
+ * in reverse order preserves the z-order of the hit test. The grid is a snapshot: it must be rebuilt
+ * when the children are added, removed, or moved.</p>
+ *
+ * @see UIContainer#setHitIndex(boolean)
+ */
+class HitGrid {
+
+	private final float minX, minY;
+	private final float cellWidth, cellHeight;
+	private final int cols, rows;
+
+	/**
+	 * Cell <code>i</code> contains elements from <code>cellStart[i]</code> (inclusive)
+	 * to <code>cellStart[i+1]</code> (exclusive) in {@link #items}.
+	 */
+	private final int[] cellStart;
+	private final UIElement[] items;
+
+	public HitGrid(ArrayList<UIElement> children) {
+		int n = children.size();
+		float x0 = Float.POSITIVE_INFINITY;
+		float y0 = Float.POSITIVE_INFINITY;
+		float x1 = Float.NEGATIVE_INFINITY;
+		float y1 = Float.NEGATIVE_INFINITY;
+		for(int i=0; i<n; i++) {
+			UIElement c = children.get(i);
+			x0 = Math.min(x0, c.getX());
+			y0 = Math.min(y0, c.getY());
+			x1 = Math.max(x1, c.getX() + c.getWidth());
+			y1 = Math.max(y1, c.getY() + c.getHeight());
+		}
+		if(n==0) {
+			x0 = 0f; y0 = 0f;
+			x1 = 0f; y1 = 0f;
+		}
+		float w = Math.max(x1 - x0, 1f);
+		float h = Math.max(y1 - y0, 1f);
+		int cells = Math.max(n, 1);
+		int cols = Math.max(1, Math.min(cells, Math.round((float) Math.sqrt(cells * w / h))));
+		int rows = Math.max(1, Math.min(cells, (cells + cols - 1) / cols));
+
+		this.minX = x0;
+		this.minY = y0;
+		this.cols = cols;
+		this.rows = rows;
+		this.cellWidth = w / cols;
+		this.cellHeight = h / rows;
+
+		int[] count = new int[cols * rows + 1];
+		for(int i=0; i<n; i++) {
+			UIElement c = children.get(i);
+			int c0 = col(c.getX());
+			int c1 = col(c.getX() + c.getWidth());
+			int r0 = row(c.getY());
+			int r1 = row(c.getY() + c.getHeight());
+			for(int r=r0; r<=r1; r++)
+				for(int col=c0; col<=c1; col++)
+					count[r * cols + col + 1]++;
+		}
+		for(int i=1; i<count.length; i++)
+			count[i] += count[i-1];
+		this.cellStart = count.clone();
+		this.items = new UIElement[count[count.length-1]];
+		for(int i=0; i<n; i++) {
+			UIElement c = children.get(i);
+			int c0 = col(c.getX());
+			int c1 = col(c.getX() + c.getWidth());
+			int r0 = row(c.getY());
+			int r1 = row(c.getY() + c.getHeight());
+			for(int r=r0; r<=r1; r++)
+				for(int col=c0; col<=c1; col++)
+					items[count[r * cols + col]++] = c;
+		}
+	}
+
+	private int col(float x) {
+		return Math.max(0, Math.min(cols - 1, (int) Math.floor((x - minX) / cellWidth)));
+	}
+
+	private int row(float y) {
+		return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellHeight)));
+	}
+
+	/**
+	 * Finds the grid cell containing a point.
+	 * @param x horizontal coordinate in the local space of the container
+	 * @param y vertical coordinate in the local space of the container
+	 * @return cell index or -1 if the point is outside the bounds of all children
+	 */
+	public int findCell(float x, float y) {
+		if(x<minX || y<minY || x>minX + cellWidth * cols || y>minY + cellHeight * rows)
+			return -1;
+		return row(y) * cols + col(x);
+	}
+
+	public int cellStart(int cell) {
+		return cellStart[cell];
+	}
+
+	public int cellEnd(int cell) {
+		return cellStart[cell+1];
+	}
+
+	public UIElement get(int index) {
+		return items[index];
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.xrbpowered.zoomui;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Receives notifications before and after a {@link RootContainer} paints its UI tree,
+ * e.g., to collect resources requested by painting and prepare them in the background for the next paint.
+ *
+ * <p>Root containers use the hook of their window factory, see {@link UIWindowFactory#setPaintHook(PaintHook)},
+ * which can be replaced with {@link RootContainer#setPaintHook(PaintHook)}.
+ * Both methods are called in the painting thread, and {@link #endPaint(RootContainer)} is called even if painting fails.</p>
+ */
+public interface PaintHook {
+
+	public void beginPaint(RootContainer root);
+
+	/**
+	 * Called after the UI tree has been painted.
+	 * @param root root container
+	 * @return future that completes when the background work started by this paint is finished,
+	 * 		or <code>null</code> if there is no such work, see {@link RootContainer#getPaintBatch()}
+	 */
+	public CompletableFuture<Void> endPaint(RootContainer root);
+
+}
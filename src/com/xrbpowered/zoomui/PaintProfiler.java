@@ -0,0 +1,342 @@
+package com.xrbpowered.zoomui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Collects paint and layout timings of a UI tree and draws them as an on-screen overlay.
+ *
+ * <p>Profiling is enabled per window using {@link RootContainer#setProfiling(boolean)}.
+ * While the profiled root container is painting, the profiler is available via {@link #active},
+ * and {@link UIContainer#paintChildren(GraphAssist)} times every child's {@link UIElement#paint(GraphAssist)} call
+ * and counts painted and culled children. When profiling is off, the overhead is a single static field check per container.</p>
+ *
+ * <p>Paint times are measured both inclusive (including the element's children) and exclusive ("self" time).
+ * Self times are aggregated by element class over all frames since {@link #reset()}, and by element instance
+ * for the last frame.</p>
+ *
+ * <p>The overlay is drawn in the top left corner of the window if {@link #showOverlay} is set. It shows
+ * frame and layout times, frame time histogram, painted and culled element counts,
+ * and the elements with the highest self time in the last frame.</p>
+ */
+public class PaintProfiler {
+
+	/**
+	 * Aggregated paint timings.
+	 */
+	public static class Stats {
+		public final String name;
+		public int count = 0;
+		public long selfTime = 0L;
+		public long totalTime = 0L;
+		public long maxTime = 0L;
+
+		public Stats(String name) {
+			this.name = name;
+		}
+
+		private void add(long self, long total) {
+			count++;
+			selfTime += self;
+			totalTime += total;
+			if(total>maxTime)
+				maxTime = total;
+		}
+	}
+
+	/**
+	 * Profiler of the root container that is currently painting, or <code>null</code> if profiling is off.
+	 */
+	static PaintProfiler active = null;
+
+	public static final int HISTORY_SIZE = 120;
+
+	/**
+	 * Upper bounds of the frame time histogram buckets in milliseconds. The last bucket is unbounded.
+	 */
+	public static final float[] histogramBuckets = {4f, 8f, 16.7f, 33.3f, 66.7f};
+
+	public static Font font = new Font("Monospaced", Font.PLAIN, 11);
+	public static Color colorBackground = new Color(0xdd000000, true);
+	public static Color colorText = new Color(0xeeeeee);
+	public static Color colorBar = new Color(0x33aaff);
+
+	public boolean showOverlay = true;
+	public int topCount = 8;
+
+	private final HashMap<Class<?>, Stats> classStats = new HashMap<>();
+	private final IdentityHashMap<UIElement, Stats> frameStats = new IdentityHashMap<>();
+
+	private long[] childTime = new long[64];
+	private int depth = 0;
+
+	private final long[] frameTimes = new long[HISTORY_SIZE];
+	private final long[] frameStarts = new long[HISTORY_SIZE];
+	private int frameIndex = 0;
+	private int frameCount = 0;
+	private long frameStart = 0L;
+
+	private int painted = 0;
+	private int culled = 0;
+	private int framePainted = 0;
+	private int frameCulled = 0;
+
+	private int layoutCount = 0;
+	private long layoutTime = 0L;
+	private int frameLayoutCount = 0;
+	private long frameLayoutTime = 0L;
+
+	/**
+	 * Clears all collected statistics.
+	 */
+	public void reset() {
+		classStats.clear();
+		frameStats.clear();
+		frameIndex = 0;
+		frameCount = 0;
+		layoutCount = 0;
+		layoutTime = 0L;
+	}
+
+	void startFrame() {
+		frameStats.clear();
+		depth = 0;
+		childTime[0] = 0L;
+		painted = 0;
+		culled = 0;
+		frameLayoutCount = 0;
+		frameLayoutTime = 0L;
+		frameStart = System.nanoTime();
+	}
+
+	void finishFrame() {
+		frameTimes[frameIndex] = System.nanoTime() - frameStart;
+		frameStarts[frameIndex] = frameStart;
+		frameIndex = (frameIndex+1) % HISTORY_SIZE;
+		frameCount++;
+		framePainted = painted;
+		frameCulled = culled;
+	}
+
+	void addLayout(long time) {
+		layoutCount++;
+		layoutTime += time;
+		frameLayoutCount++;
+		frameLayoutTime += time;
+	}
+
+	/**
+	 * Marks the start of a child element's paint.
+	 * @return start time to be passed to {@link #finishPaint(UIElement, long)}
+	 */
+	long startPaint() {
+		depth++;
+		if(depth==childTime.length) {
+			long[] t = new long[depth*2];
+			System.arraycopy(childTime, 0, t, 0, depth);
+			childTime = t;
+		}
+		childTime[depth] = 0L;
+		return System.nanoTime();
+	}
+
+	void finishPaint(UIElement e, long start) {
+		long total = System.nanoTime() - start;
+		long self = total - childTime[depth];
+		depth--;
+		childTime[depth] += total;
+		painted++;
+
+		Class<?> cls = e.getClass();
+		Stats s = classStats.get(cls);
+		if(s==null) {
+			s = new Stats(getClassName(cls));
+			classStats.put(cls, s);
+		}
+		s.add(self, total);
+
+		s = frameStats.get(e);
+		if(s==null) {
+			s = new Stats(getClassName(cls));
+			frameStats.put(e, s);
+		}
+		s.add(self, total);
+	}
+
+	void addCulled() {
+		culled++;
+	}
+
+	private static String getClassName(Class<?> cls) {
+		while(cls.isAnonymousClass())
+			cls = cls.getSuperclass();
+		return cls.getSimpleName();
+	}
+
+	private static final Comparator<Stats> selfTimeOrder = new Comparator<Stats>() {
+		@Override
+		public int compare(Stats a, Stats b) {
+			return Long.compare(b.selfTime, a.selfTime);
+		}
+	};
+
+	/**
+	 * Returns the class statistics sorted by self time, highest first.
+	 * @return list of statistics
+	 */
+	public List<Stats> getClassStats() {
+		ArrayList<Stats> list = new ArrayList<>(classStats.values());
+		Collections.sort(list, selfTimeOrder);
+		return list;
+	}
+
+	/**
+	 * Returns the statistics of element instances painted in the last frame sorted by self time, highest first.
+	 * @return list of statistics
+	 */
+	public List<Stats> getFrameStats() {
+		ArrayList<Stats> list = new ArrayList<>(frameStats.values());
+		Collections.sort(list, selfTimeOrder);
+		return list;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Returns the paint time of a recent frame.
+	 * @param age number of frames back, 0 is the last frame
+	 * @return frame time in nanoseconds
+	 */
+	public long getFrameTime(int age) {
+		return frameTimes[(frameIndex - 1 - age + HISTORY_SIZE*2) % HISTORY_SIZE];
+	}
+
+	public int getPaintedCount() {
+		return framePainted;
+	}
+
+	public int getCulledCount() {
+		return frameCulled;
+	}
+
+	public int getLayoutCount() {
+		return layoutCount;
+	}
+
+	public long getLayoutTime() {
+		return layoutTime;
+	}
+
+	/**
+	 * Counts the number of recent frames that started within the last second.
+	 * @return frames per second
+	 */
+	public int getFps() {
+		int n = Math.min(frameCount, HISTORY_SIZE);
+		long now = System.nanoTime();
+		int fps = 0;
+		for(int i=0; i<n; i++) {
+			if(now - frameStarts[(frameIndex - 1 - i + HISTORY_SIZE) % HISTORY_SIZE]<=1000000000L)
+				fps++;
+			else
+				break;
+		}
+		return fps;
+	}
+
+	/**
+	 * Builds a histogram of recent frame times using {@link #histogramBuckets}.
+	 * @return frame counts per bucket
+	 */
+	public int[] getHistogram() {
+		int[] hist = new int[histogramBuckets.length+1];
+		int n = Math.min(frameCount, HISTORY_SIZE);
+		for(int i=0; i<n; i++) {
+			float ms = frameTimes[i] / 1e6f;
+			int b = 0;
+			while(b<histogramBuckets.length && ms>histogramBuckets[b])
+				b++;
+			hist[b]++;
+		}
+		return hist;
+	}
+
+	public int getOverlayWidth() {
+		return 320;
+	}
+
+	public int getOverlayHeight() {
+		return 16*(6+histogramBuckets.length+1+topCount) + 8;
+	}
+
+	private static String ms(long ns) {
+		return String.format("%.2f", ns / 1e6);
+	}
+
+	/**
+	 * Draws the overlay in window pixel coordinates.
+	 * @param g graphics with identity transform
+	 */
+	public void paintOverlay(GraphAssist g) {
+		int n = Math.min(frameCount, HISTORY_SIZE);
+		long sum = 0L;
+		long max = 0L;
+		for(int i=0; i<n; i++) {
+			sum += frameTimes[i];
+			max = Math.max(max, frameTimes[i]);
+		}
+
+		int w = getOverlayWidth();
+		g.fillRect(0, 0, w, getOverlayHeight(), colorBackground);
+		g.setFont(font);
+		g.setColor(colorText);
+		FontMetrics fm = g.getFontMetrics();
+		int lh = 16;
+		int x = 8;
+		int y = lh;
+		g.drawString(String.format("frame %s ms (avg %s, max %s)", ms(getFrameTime(0)), ms(n>0 ? sum/n : 0L), ms(max)), x, y);
+		y += lh;
+		g.drawString(String.format("fps %d, frames %d", getFps(), frameCount), x, y);
+		y += lh;
+		g.drawString(String.format("layout %d in frame (%s ms), %d total", frameLayoutCount, ms(frameLayoutTime), layoutCount), x, y);
+		y += lh;
+		g.drawString(String.format("painted %d, culled %d", framePainted, frameCulled), x, y);
+		y += lh;
+
+		int[] hist = getHistogram();
+		int barx = x + fm.stringWidth("> 00.0 ms ");
+		for(int b=0; b<hist.length; b++) {
+			String label = b<histogramBuckets.length ?
+					String.format("<%5.1f ms", histogramBuckets[b]) :
+					String.format(">%5.1f ms", histogramBuckets[b-1]);
+			g.setColor(colorText);
+			g.drawString(label, x, y);
+			if(n>0) {
+				g.setColor(colorBar);
+				g.fillRect(barx, y-lh+5, (w-barx-x) * hist[b] / n, lh-4);
+			}
+			y += lh;
+		}
+
+		g.setColor(colorText);
+		y += lh;
+		g.drawString("self ms   total ms  element", x, y);
+		y += lh;
+		List<Stats> top = getFrameStats();
+		for(int i=0; i<topCount && i<top.size(); i++) {
+			Stats s = top.get(i);
+			g.drawString(String.format("%7s  %8s  %s", ms(s.selfTime), ms(s.totalTime), s.name), x, y);
+			y += lh;
+		}
+	}
+
+}
@@ -1,7 +1,9 @@
 package com.xrbpowered.zoomui;
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.util.concurrent.CompletableFuture;
 
 import com.xrbpowered.zoomui.base.UILayersContainer;
 
@@ -72,10 +74,41 @@ public UIModalWindow<A> getWindow() {
 	 */
 	protected boolean invalidLayout = true;
 
+	/**
+	 * Number of times this UI tree has been laid out, see {@link #getLayoutCount()}.
+	 */
+	private int layoutCount = 0;
+
+	/**
+	 * Union of the areas requested by {@link #repaint(float, float, float, float)} since the last paint, in root space.
+	 * Equals <code>null</code> if there are no pending area requests.
+	 */
+	private Rectangle dirtyRegion = null;
+
+	/**
+	 * Full repaint has been requested since the last paint. Area requests are ignored while this flag is set.
+	 */
+	private boolean repaintAll = false;
+
 	private int clientBorderWidth = 0;
 
 	private Color clientBorderColor = null;
 
+	/**
+	 * Paint profiler, or <code>null</code> if profiling is disabled. See {@link #setProfiling(boolean)}.
+	 */
+	private PaintProfiler profiler = null;
+
+	/**
+	 * Paint hook, or <code>null</code>. See {@link #setPaintHook(PaintHook)}.
+	 */
+	private PaintHook paintHook;
+
+	/**
+	 * Last background work started by the paint hook, see {@link #getPaintBatch()}.
+	 */
+	private volatile CompletableFuture<Void> paintBatch = null;
+
 	/**
 	 * Class constructor.
 	 * Root container is automatically created in the window constructor using {@link UIWindow#createContainer()}.
@@ -88,6 +121,7 @@ protected RootContainer(UIWindow window, float scale) {
 		this.hotKeys = new HotKeyMap();
 		this.tabIndex = new TabIndex(this);
 		this.baseScale = scale;
+		this.paintHook = window.getFactory().getPaintHook();
 	}
 
 	@Override
@@ -115,13 +149,93 @@ public void removeClientBorder() {
 
 	@Override
 	public void repaint() {
+		repaintAll = true;
+		dirtyRegion = null;
 		window.repaint();
 	}
 
+	/**
+	 * Adds the area to the dirty region of the current frame and requests the window to repaint the region.
+	 * The area is converted to root (pixel) space and expanded by one pixel on each side to account for
+	 * antialiasing and borders drawn on the element's edge.
+	 * The request is ignored if the full repaint is already pending.
+	 */
+	@Override
+	public void repaint(float x, float y, float w, float h) {
+		if(repaintAll)
+			return;
+		int x1 = (int)Math.floor(localToParentX(x))-1;
+		int y1 = (int)Math.floor(localToParentY(y))-1;
+		int x2 = (int)Math.ceil(localToParentX(x+w))+1;
+		int y2 = (int)Math.ceil(localToParentY(y+h))+1;
+		Rectangle r = new Rectangle(x1, y1, x2-x1, y2-y1);
+		if(dirtyRegion==null)
+			dirtyRegion = r;
+		else if(dirtyRegion.contains(r))
+			return;
+		else
+			dirtyRegion.add(r);
+		window.repaint(dirtyRegion);
+	}
+
 	public void invalidateLayout() {
 		invalidLayout = true;
 	}
 
+	/**
+	 * Returns the number of times {@link #layout()} has been called for this UI tree.
+	 * Elements can compare this value to detect that the layout has changed since they cached any geometry.
+	 * @return layout counter
+	 */
+	public int getLayoutCount() {
+		return layoutCount;
+	}
+
+	/**
+	 * Enables or disables paint profiling for this UI tree.
+	 * When enabled, paint and layout times are collected by a {@link PaintProfiler},
+	 * and the profiler overlay is drawn on top of the UI unless {@link PaintProfiler#showOverlay} is cleared.
+	 * Disabling profiling discards the collected statistics.
+	 * @param enable <code>true</code> to enable profiling
+	 */
+	public void setProfiling(boolean enable) {
+		if(enable && profiler==null)
+			profiler = new PaintProfiler();
+		else if(!enable)
+			profiler = null;
+		repaint();
+	}
+
+	public PaintHook getPaintHook() {
+		return paintHook;
+	}
+
+	/**
+	 * Sets the hook notified before and after each paint. By default, the hook of the window factory is used,
+	 * see {@link UIWindowFactory#setPaintHook(PaintHook)}.
+	 * @param hook paint hook, or <code>null</code> to disable
+	 */
+	public void setPaintHook(PaintHook hook) {
+		this.paintHook = hook;
+	}
+
+	/**
+	 * Returns the last background work started by the paint hook, see {@link PaintHook#endPaint(RootContainer)}.
+	 * For example, waiting for it in headless rendering ensures that icons requested by painting are ready.
+	 * @return future, or <code>null</code> if no work has been started
+	 */
+	public CompletableFuture<Void> getPaintBatch() {
+		return paintBatch;
+	}
+
+	/**
+	 * Returns the paint profiler of this UI tree.
+	 * @return profiler, or <code>null</code> if profiling is disabled
+	 */
+	public PaintProfiler getProfiler() {
+		return profiler;
+	}
+
 	/**
 	 * Determines if there is an active mouse-drag activity.
 	 * @return <code>true</code> if a drag action is in progress, otherwise <code>false</code>.
@@ -292,7 +406,14 @@ protected float localToParentY(float y) {
 
 	@Override
 	public void layout() {
-		super.layout();
+		layoutCount++;
+		if(profiler!=null) {
+			long t = System.nanoTime();
+			super.layout();
+			profiler.addLayout(System.nanoTime() - t);
+		}
+		else
+			super.layout();
 		invalidLayout = false;
 	}
 
@@ -361,15 +482,43 @@ public boolean isHit(float px, float py) {
 
 	@Override
 	public void paint(GraphAssist g) {
-		if(invalidLayout)
+		PaintProfiler profiler = this.profiler;
+		if(profiler!=null) {
+			profiler.startFrame();
+			PaintProfiler.active = profiler;
+		}
+		repaintAll = false;
+		dirtyRegion = null;
+		if(invalidLayout) {
 			layout();
+			// elements may have moved outside the requested area
+			Rectangle clip = g.getClip();
+			if(clip!=null && !clip.contains(0, 0, window.getClientWidth(), window.getClientHeight()))
+				repaint();
+		}
 		if(g.graph!=null) {
 			g.graph.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
 					RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);
 			g.graph.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 			g.graph.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
 		}
-		super.paint(g);
+		PaintHook hook = this.paintHook;
+		if(hook!=null)
+			hook.beginPaint(this);
+		try {
+			super.paint(g);
+		}
+		finally {
+			if(hook!=null) {
+				CompletableFuture<Void> batch = hook.endPaint(this);
+				if(batch!=null)
+					paintBatch = batch;
+			}
+			if(profiler!=null) {
+				PaintProfiler.active = null;
+				profiler.finishFrame();
+			}
+		}
 
 		if(clientBorderWidth>0 && clientBorderColor!=null && g.graph!=null) {
 			g.graph.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
@@ -377,6 +526,20 @@ public void paint(GraphAssist g) {
 			GraphAssist.pixelRect(g.graph, 0, 0, window.getClientWidth(), window.getClientHeight(), clientBorderWidth,
 					clientBorderColor);
 		}
+		if(profiler!=null && profiler.showOverlay)
+			paintProfilerOverlay(g, profiler);
+	}
+
+	/**
+	 * Draws the profiler overlay in root space. If the current paint does not cover the overlay,
+	 * a repaint of the overlay area is requested so that it displays the latest frame.
+	 */
+	private void paintProfilerOverlay(GraphAssist g, PaintProfiler profiler) {
+		Rectangle r = new Rectangle(0, 0, profiler.getOverlayWidth(), profiler.getOverlayHeight());
+		profiler.paintOverlay(g);
+		Rectangle clip = g.getClip();
+		if(clip!=null && !clip.contains(r))
+			window.repaint(r);
 	}
 
 	@Override
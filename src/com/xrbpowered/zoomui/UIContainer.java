@@ -1,6 +1,8 @@
 package com.xrbpowered.zoomui;
 
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 
 /**
@@ -20,6 +22,13 @@
  * position the children. Subclasses are expected to override this method to position child
  * elements and then propagate the method to its children after their positions and sizes are set.
  * (e.g., by calling <code>super.layout()</code>)</p>
+ * 
+ * <p>A container can be marked as a <i>cached layer</i> using {@link #setCacheLayer(boolean)}.
+ * Cached layer paints its contents once into an offscreen image and reuses the image in the following frames
+ * until a repaint or a layout is requested from within its subtree.</p>
+ * 
+ * <p>Containers with a large number of children can enable a <i>hit index</i> using {@link #setHitIndex(boolean)}
+ * to avoid scanning all children on every mouse event.</p>
  *
  * @see UIElement
  */
@@ -30,6 +39,44 @@ public class UIContainer extends UIElement {
 	 */
 	protected ArrayList<UIElement> children = new ArrayList<>(); // requires O(1) for get() and size()
 
+	/**
+	 * Cached layer mode flag, see {@link #setCacheLayer(boolean)}.
+	 */
+	private boolean cacheLayer = false;
+
+	/**
+	 * Offscreen image with the contents of this container, <code>null</code> if invalid.
+	 */
+	private BufferedImage layerImage = null;
+
+	/**
+	 * Pixel size used to render {@link #layerImage}.
+	 */
+	private float layerPixelSize = 0f;
+
+	private int layerHits = 0;
+	private int layerMisses = 0;
+
+	/**
+	 * Reusable clip bounds for {@link #paintChildren(GraphAssist)}.
+	 */
+	private final Rectangle paintClip = new Rectangle();
+
+	/**
+	 * Hit index flag, see {@link #setHitIndex(boolean)}.
+	 */
+	private boolean hitIndex = false;
+
+	/**
+	 * Spatial index of children, <code>null</code> if invalid.
+	 */
+	private HitGrid hitGrid = null;
+
+	/**
+	 * Value of {@link RootContainer#getLayoutCount()} when {@link #hitGrid} was built.
+	 */
+	private int hitGridLayout = 0;
+
 	/**
 	 * Constructor, see {@link UIElement#UIElement(UIContainer)}.
 	 * @param parent parent container
@@ -45,6 +92,7 @@ public UIContainer(UIContainer parent) {
 	 */
 	protected void addChild(UIElement c) {
 		children.add(c);
+		hitGrid = null;
 		invalidateLayout();
 		invalidateTabIndex();
 	}
@@ -91,6 +139,7 @@ public UIElement getChild(int index) {
 	 */
 	public void removeChild(UIElement c) {
 		if(children.remove(c)) {
+			hitGrid = null;
 			invalidateLayout();
 			invalidateTabIndex();
 		}
@@ -105,10 +154,146 @@ public void removeChild(UIElement c) {
 	 */
 	public void removeAllChildren() {
 		children.clear();
+		hitGrid = null;
 		invalidateLayout();
 		invalidateTabIndex();
 	}
 
+	/**
+	 * Enables or disables cached layer mode for this container.
+	 * 
+	 * <p>In cached layer mode, the contents of the container (background, children, and foreground) are rendered into
+	 * an offscreen image at the current pixel scale. The following frames draw the image instead of
+	 * painting the subtree. The image is discarded when the pixel scale or the size of this container changes,
+	 * or when any element in the subtree requests {@link #repaint()}, {@link #repaint(float, float, float, float)},
+	 * or {@link #invalidateLayout()}.</p>
+	 * 
+	 * <p>Use this mode for static containers whose contents only change via repaint requests from within the subtree,
+	 * e.g., toolbars and side panels. Contents outside the container bounds are clipped.
+	 * Note that LCD text antialiasing is not available when drawing into a translucent image.</p>
+	 * 
+	 * @param cache <code>true</code> to enable cached layer mode, <code>false</code> to disable
+	 * 
+	 * @see #invalidateLayerCache()
+	 */
+	public void setCacheLayer(boolean cache) {
+		this.cacheLayer = cache;
+		this.layerImage = null;
+	}
+
+	/**
+	 * Determines whether the container is in cached layer mode.
+	 * @return <code>true</code> if cached layer mode is enabled
+	 * @see #setCacheLayer(boolean)
+	 */
+	public boolean isCacheLayer() {
+		return cacheLayer;
+	}
+
+	/**
+	 * Discards the cached layer image, so the contents are repainted in the next frame.
+	 * Does nothing if cached layer mode is disabled.
+	 */
+	public void invalidateLayerCache() {
+		layerImage = null;
+	}
+
+	/**
+	 * Returns the number of frames that reused the cached layer image.
+	 * @return cache hit count
+	 * @see #resetLayerCacheStats()
+	 */
+	public int getLayerCacheHits() {
+		return layerHits;
+	}
+
+	/**
+	 * Returns the number of frames that had to render the cached layer image.
+	 * @return cache miss count
+	 * @see #resetLayerCacheStats()
+	 */
+	public int getLayerCacheMisses() {
+		return layerMisses;
+	}
+
+	/**
+	 * Resets cache hit and miss counters.
+	 */
+	public void resetLayerCacheStats() {
+		layerHits = 0;
+		layerMisses = 0;
+	}
+
+	/**
+	 * Enables or disables the hit index for this container.
+	 * 
+	 * <p>Hit index is a uniform grid of child bounds that is used by {@link #getElementAt(float, float)}
+	 * and mouse event propagation to test only the children near the mouse pointer instead of all children.
+	 * The order of testing within a grid cell is the same as without the index, so the z-order is preserved.</p>
+	 * 
+	 * <p>The index is rebuilt lazily on the first hit test after the UI has been laid out, or after the children have been
+	 * added or removed. Children moved or resized outside {@link #layout()} require {@link #invalidateHitIndex()}.
+	 * The index assumes that children can only be hit within their bounds, therefore it should not be used
+	 * if the children are containers with overflowing contents.</p>
+	 * 
+	 * @param index <code>true</code> to enable the hit index, <code>false</code> to disable
+	 */
+	public void setHitIndex(boolean index) {
+		this.hitIndex = index;
+		this.hitGrid = null;
+	}
+
+	/**
+	 * Determines whether the hit index is enabled.
+	 * @return <code>true</code> if the hit index is enabled
+	 * @see #setHitIndex(boolean)
+	 */
+	public boolean isHitIndex() {
+		return hitIndex;
+	}
+
+	/**
+	 * Discards the hit index, so it is rebuilt on the next hit test.
+	 * Does nothing if the hit index is disabled.
+	 */
+	public void invalidateHitIndex() {
+		hitGrid = null;
+	}
+
+	/**
+	 * Returns up-to-date hit index, rebuilding it if necessary.
+	 * @return hit index or <code>null</code> if the hit index is disabled
+	 */
+	private HitGrid getHitGrid() {
+		if(!hitIndex)
+			return null;
+		int layoutCount = getRoot().getLayoutCount();
+		if(hitGrid==null || hitGridLayout!=layoutCount) {
+			hitGrid = new HitGrid(children);
+			hitGridLayout = layoutCount;
+		}
+		return hitGrid;
+	}
+
+	@Override
+	public void repaint() {
+		layerImage = null;
+		super.repaint();
+	}
+
+	@Override
+	public void repaint(float x, float y, float w, float h) {
+		layerImage = null;
+		super.repaint(x, y, w, h);
+	}
+
+	@Override
+	public void invalidateLayout() {
+		layerImage = null;
+		hitGrid = null;
+		super.invalidateLayout();
+	}
+
 	@Override
 	public void layout() {
 		for(UIElement c : children) {
@@ -133,14 +318,24 @@ protected void paintBackground(GraphAssist g) {
 	 * @param g wrapper for {@link Graphics2D} canvas in local coordinates
 	 */
 	protected void paintChildren(GraphAssist g) {
-		Rectangle clip = g.getClip();
-		for(UIElement c : children) {
+		Rectangle clip = g.getClip(paintClip);
+		PaintProfiler profiler = PaintProfiler.active;
+		for(int i=0; i<children.size(); i++) {
+			UIElement c = children.get(i);
 			if(c.isVisible(clip)) {
 				g.pushTx();
 				g.translate(c.getX(), c.getY());
-				c.paint(g);
+				if(profiler!=null) {
+					long t = profiler.startPaint();
+					c.paint(g);
+					profiler.finishPaint(c, t);
+				}
+				else
+					c.paint(g);
 				g.popTx();
 			}
+			else if(profiler!=null)
+				profiler.addCulled();
 		}
 	}
 
@@ -155,19 +350,101 @@ protected void paintForeground(GraphAssist g) {
 
 	@Override
 	public void paint(GraphAssist g) {
+		if(cacheLayer && g.graph!=null)
+			paintLayer(g);
+		else
+			paintContents(g);
+	}
+
+	private void paintContents(GraphAssist g) {
 		paintBackground(g);
 		paintChildren(g);
 		paintForeground(g);
 	}
 
+	/**
+	 * Draws the contents of this container from the cached layer image, re-rendering the image if needed.
+	 * @param g wrapper for {@link Graphics2D} canvas in local coordinates
+	 */
+	private void paintLayer(GraphAssist g) {
+		float pix = getPixelSize();
+		int w = (int) Math.ceil(getWidth() / pix);
+		int h = (int) Math.ceil(getHeight() / pix);
+		if(w<=0 || h<=0)
+			return;
+
+		BufferedImage img = layerImage;
+		if(img==null || layerPixelSize!=pix || img.getWidth()!=w || img.getHeight()!=h) {
+			layerMisses++;
+			img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			layerImage = img;
+			layerPixelSize = pix;
+			Graphics2D g2 = img.createGraphics();
+			g2.setRenderingHints(g.graph.getRenderingHints());
+			g2.scale(1f / pix, 1f / pix);
+			g2.setClip(0, 0, (int) Math.ceil(getWidth()), (int) Math.ceil(getHeight()));
+			paintContents(new GraphAssist(g2));
+			g2.dispose();
+		}
+		else {
+			layerHits++;
+		}
+
+		g.startPixelMode(this);
+		g.graph.drawImage(img, 0, 0, null);
+		g.finishPixelMode();
+	}
+
+	/**
+	 * Child elements that may contain a point, see {@link UIContainer#getCandidates(float, float)}.
+	 * Candidates are listed in paint order and should be checked from <code>end-1</code> down to <code>start</code>.
+	 */
+	protected static final class Candidates {
+		private final HitGrid grid;
+		private final ArrayList<UIElement> children;
+		public final int start;
+		public final int end;
+
+		private Candidates(HitGrid grid, ArrayList<UIElement> children, int start, int end) {
+			this.grid = grid;
+			this.children = children;
+			this.start = start;
+			this.end = end;
+		}
+
+		public UIElement get(int index) {
+			return grid!=null ? grid.get(index) : children.get(index);
+		}
+	}
+
+	/**
+	 * Returns child elements that may contain a point. Uses the hit grid if the container has one, otherwise lists all children.
+	 * All hit tests and mouse events are dispatched to children through this method.
+	 * @param cx x in local coordinates
+	 * @param cy y in local coordinates
+	 * @return candidate range
+	 */
+	protected Candidates getCandidates(float cx, float cy) {
+		HitGrid grid = getHitGrid();
+		if(grid!=null) {
+			int cell = grid.findCell(cx, cy);
+			if(cell<0)
+				return new Candidates(grid, null, 0, 0);
+			return new Candidates(grid, null, grid.cellStart(cell), grid.cellEnd(cell));
+		}
+		else
+			return new Candidates(null, children, 0, children.size());
+	}
+
 	@Override
 	public UIElement getElementAt(float px, float py) {
 		if(!isVisible())
 			return null;
 		float cx = parentToLocalX(px);
 		float cy = parentToLocalY(py);
-		for(int i = children.size() - 1; i>=0; i--) {
-			UIElement e = children.get(i).getElementAt(cx, cy);
+		Candidates c = getCandidates(cx, cy);
+		for(int i = c.end - 1; i>=c.start; i--) {
+			UIElement e = c.get(i).getElementAt(cx, cy);
 			if(e!=null)
 				return e;
 		}
@@ -180,8 +457,9 @@ public UIElement notifyMouseDown(float px, float py, MouseInfo mouse) {
 			return null;
 		float cx = parentToLocalX(px);
 		float cy = parentToLocalY(py);
-		for(int i = children.size() - 1; i>=0; i--) {
-			UIElement e = children.get(i).notifyMouseDown(cx, cy, mouse);
+		Candidates c = getCandidates(cx, cy);
+		for(int i = c.end - 1; i>=c.start; i--) {
+			UIElement e = c.get(i).notifyMouseDown(cx, cy, mouse);
 			if(e!=null)
 				return e;
 		}
@@ -194,8 +472,9 @@ public UIElement notifyMouseUp(float px, float py, MouseInfo mouse, UIElement in
 			return null;
 		float cx = parentToLocalX(px);
 		float cy = parentToLocalY(py);
-		for(int i = children.size() - 1; i>=0; i--) {
-			UIElement e = children.get(i).notifyMouseUp(cx, cy, mouse, initiator);
+		Candidates c = getCandidates(cx, cy);
+		for(int i = c.end - 1; i>=c.start; i--) {
+			UIElement e = c.get(i).notifyMouseUp(cx, cy, mouse, initiator);
 			if(e!=null)
 				return e;
 		}
@@ -208,8 +487,9 @@ public UIElement notifyMouseScroll(float px, float py, float delta, MouseInfo mo
 			return null;
 		float cx = parentToLocalX(px);
 		float cy = parentToLocalY(py);
-		for(int i = children.size() - 1; i>=0; i--) {
-			UIElement e = children.get(i).notifyMouseScroll(cx, cy, delta, mouse);
+		Candidates c = getCandidates(cx, cy);
+		for(int i = c.end - 1; i>=c.start; i--) {
+			UIElement e = c.get(i).notifyMouseScroll(cx, cy, delta, mouse);
 			if(e!=null)
 				return e;
 		}
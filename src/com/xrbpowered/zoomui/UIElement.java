@@ -124,7 +124,8 @@ public boolean isInteractive() {
 	}
 
 	/**
-	 * Determines whether the element automatically fires {@link #repaint()} on every mouse-in and mouse-out event.
+	 * Determines whether the element automatically fires {@link #repaintBounds()} on every mouse-in and mouse-out event.
+	 * The hover feedback is expected to be drawn within the element's render bounds.
 	 * Returns <code>false</code> by default; child classes may override this method.
 	 * @return <code>true</code> if repaint is fired automatically
 	 */
@@ -165,10 +166,15 @@ public void invalidateTabIndex() {
 	 * 
 	 * <p>This method is also called automatically when the root panel is resized or elements are added or removed in the hierarchy.</p> 
 	 * 
+	 * <p>The request is recursively propagated through parent containers up to the root container.</p>
+	 * 
 	 * @see #layout()
 	 */
 	public void invalidateLayout() {
-		getRoot().invalidateLayout();
+		if(parent!=null)
+			parent.invalidateLayout();
+		else
+			getRoot().invalidateLayout();
 	}
 
 	/**
@@ -478,6 +484,49 @@ public void repaint() {
 			parent.repaint();
 	}
 
+	/**
+	 * Requests repainting of a rectangular area of this element. Unlike {@link #repaint()}, the request allows
+	 * the window to redraw only the affected part of the UI tree.
+	 * 
+	 * <p>The area is specified in local space and recursively converted into parent space up to the root container,
+	 * which collects all areas requested within one frame and passes their union to the window.
+	 * Containers may override this method to clip or otherwise process requests coming from their children.</p>
+	 * 
+	 * <p>Use this method only if the visual change is guaranteed to stay within the given area.
+	 * If the change affects the layout or other elements, use {@link #repaint()} instead.</p>
+	 * 
+	 * @param x left coordinate of the area in local space
+	 * @param y top coordinate of the area in local space
+	 * @param w width of the area
+	 * @param h height of the area
+	 * 
+	 * @see #repaintBounds()
+	 */
+	public void repaint(float x, float y, float w, float h) {
+		if(parent!=null) {
+			float x1 = localToParentX(x);
+			float y1 = localToParentY(y);
+			parent.repaint(x1, y1, localToParentX(x+w)-x1, localToParentY(y+h)-y1);
+		}
+		else
+			repaint();
+	}
+
+	/**
+	 * Requests repainting of this element's render bounds only.
+	 * Render bounds are determined by {@link #getPaintMinX()}, {@link #getPaintMaxX()}, {@link #getPaintMinY()}, and {@link #getPaintMaxY()}.
+	 * 
+	 * <p>This method is used by default for hover feedback, see {@link #repaintOnHover()}.</p>
+	 * 
+	 * @see #repaint(float, float, float, float)
+	 */
+	public void repaintBounds() {
+		if(parent!=null)
+			parent.repaint(getPaintMinX(), getPaintMinY(), getPaintMaxX()-getPaintMinX(), getPaintMaxY()-getPaintMinY());
+		else
+			repaint();
+	}
+
 	/**
 	 * Resets hover status of the element.
 	 * @see #isHover()
@@ -624,7 +673,7 @@ UIElement notifyMouseScroll(float px, float py, float delta, MouseInfo mouse) {
 	public void onMouseIn() {
 		hover = true;
 		if(repaintOnHover())
-			repaint();
+			repaintBounds();
 	}
 
 	/**
@@ -633,7 +682,7 @@ public void onMouseIn() {
 	public void onMouseOut() {
 		hover = false;
 		if(repaintOnHover())
-			repaint();
+			repaintBounds();
 	}
 
 	/**
@@ -3,6 +3,7 @@
 import java.awt.Cursor;
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.Rectangle;
 
 public abstract class UIWindow {
 
@@ -66,6 +67,10 @@ public void notifyResized() {
 	public abstract void show();
 	public abstract void repaint();
 	
+	public void repaint(Rectangle r) {
+		repaint();
+	}
+	
 	public abstract int rootToScreenX(float x);
 	public abstract int rootToScreenY(float y);
 	public abstract float screenToRootX(int x);
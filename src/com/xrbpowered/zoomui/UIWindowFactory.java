@@ -1,5 +1,7 @@
 package com.xrbpowered.zoomui;
 
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
 import java.awt.Toolkit;
 
 import com.xrbpowered.zoomui.UIModalWindow.ResultHandler;
@@ -13,6 +15,7 @@ public abstract class UIWindowFactory {
 	public static UIWindowFactory instance = null;
 	
 	private float baseScale = getSystemScale();
+	private PaintHook paintHook = null;
 	
 	public float getBaseScale() {
 		return baseScale;
@@ -22,14 +25,32 @@ public void setBaseScale(float scale) {
 		baseScale = (scale > 0f) ? scale : getSystemScale();
 	}
 	
+	public PaintHook getPaintHook() {
+		return paintHook;
+	}
+	
+	/**
+	 * Sets the paint hook for root containers of windows created after this call, see {@link RootContainer#setPaintHook(PaintHook)}.
+	 * @param hook paint hook, or <code>null</code>
+	 */
+	public void setPaintHook(PaintHook hook) {
+		this.paintHook = hook;
+	}
+	
 	public float globalPixelScale() {
 		return 1f;
 	}
 	
 	public static float getSystemScale() {
+		if(GraphicsEnvironment.isHeadless())
+			return 1f;
 		return Toolkit.getDefaultToolkit().getScreenResolution() / 96f;
 	}
 	
+	public void invokeLater(Runnable task) {
+		EventQueue.invokeLater(task);
+	}
+	
 	public abstract UIWindow create(String title, int w, int h, boolean canResize);
 	public abstract <A> UIModalWindow<A> createModal(String title, int w, int h, boolean canResize, ResultHandler<A> onResult);
 	public abstract UIPopupWindow createPopup();
@@ -0,0 +1,87 @@
+package com.xrbpowered.zoomui.base;
+
+import java.awt.FontMetrics;
+
+/**
+ * Cached character advance widths of a font, used by {@link UITextEditBase} to measure text without creating substrings.
+ *
+ * <p>Advances are looked up in tables of 256 characters, which are filled from {@link FontMetrics#charWidth(char)}
+ * when a character of the block is first measured; the Latin-1 table is filled in advance.
+ * If all printable ASCII characters have the same width, the font is treated as monospace and ASCII text
+ * is measured without table lookups.</p>
+ *
+ * <p>The sum of character advances equals {@link FontMetrics#stringWidth(String)} as long as fractional metrics
+ * are disabled and the text does not require complex layout (kerning, ligatures, combining characters).</p>
+ */
+public class CharAdvances {
+
+	public final FontMetrics fm;
+
+	private final int[][] blocks = new int[256][];
+	private final int monoWidth;
+
+	public CharAdvances(FontMetrics fm) {
+		this.fm = fm;
+		int[] ascii = block(0);
+		int w = ascii[' '];
+		for(char ch=' '; ch<127; ch++) {
+			if(ascii[ch]!=w) {
+				w = -1;
+				break;
+			}
+		}
+		this.monoWidth = w;
+	}
+
+	private int[] block(int b) {
+		int[] table = blocks[b];
+		if(table==null) {
+			table = new int[256];
+			char base = (char)(b<<8);
+			for(int i=0; i<256; i++)
+				table[i] = fm.charWidth((char)(base+i));
+			blocks[b] = table;
+		}
+		return table;
+	}
+
+	/**
+	 * Checks if all printable ASCII characters have the same advance.
+	 * @return <code>true</code> if the font is monospace
+	 */
+	public boolean isMonospace() {
+		return monoWidth>=0;
+	}
+
+	public int charWidth(char ch) {
+		if(ch<127 && monoWidth>=0 && ch>=' ')
+			return monoWidth;
+		return block(ch>>8)[ch&0xff];
+	}
+
+	/**
+	 * Measures a range of characters.
+	 * @param s text
+	 * @param start start index, inclusive
+	 * @param end end index, exclusive
+	 * @return total advance
+	 */
+	public int stringWidth(CharSequence s, int start, int end) {
+		int w = 0;
+		if(monoWidth>=0) {
+			for(int i=start; i<end; i++) {
+				char ch = s.charAt(i);
+				w += (ch<127 && ch>=' ') ? monoWidth : block(ch>>8)[ch&0xff];
+			}
+		}
+		else {
+			int[] latin = blocks[0];
+			for(int i=start; i<end; i++) {
+				char ch = s.charAt(i);
+				w += ch<256 ? latin[ch] : block(ch>>8)[ch&0xff];
+			}
+		}
+		return w;
+	}
+
+}
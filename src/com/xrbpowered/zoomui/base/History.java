@@ -1,22 +1,101 @@
 package com.xrbpowered.zoomui.base;
 
-import java.util.LinkedList;
-
+/**
+ * Undo history of items of type <code>T</code>.
+ *
+ * <p>Items are stored in a ring buffer, so indexed access and removal from either end take constant time.
+ * The history can be limited by the number of items ({@link #maxSize}) and by the approximate memory footprint
+ * of the items ({@link #setMaxBytes(long)}). In both cases, the oldest items are removed first,
+ * followed by the redo items. The current item is never removed.
+ * The memory footprint of an item is reported by {@link #sizeOf(Object)}.</p>
+ *
+ * <p>By default, the history is a list of snapshots and moving to an item calls {@link #apply(Object)}.
+ * Histories storing deltas between states can override {@link #move(int, int)} to step through the items
+ * instead.</p>
+ */
 public abstract class History<T> {
 
 	public final int maxSize;
-	
-	private final LinkedList<T> history = new LinkedList<>();
+	private long maxBytes;
+
+	private Object[] items;
+	private long[] itemBytes;
+	private int head = 0;
 	private int size = 0;
 	private int index = -1;
+	private long usedBytes = 0L;
 
 	public History(int maxSize) {
+		this(maxSize, 0L);
+	}
+
+	/**
+	 * Constructor.
+	 * @param maxSize maximum number of items, or 0 for unlimited
+	 * @param maxBytes maximum total size of items in bytes as reported by {@link #sizeOf(Object)}, or 0 for unlimited
+	 */
+	public History(int maxSize, long maxBytes) {
 		this.maxSize = maxSize;
+		this.maxBytes = maxBytes;
+		int cap = maxSize>0 ? Math.min(maxSize, 16) : 16;
+		items = new Object[cap];
+		itemBytes = new long[cap];
 	}
-	
+
 	protected abstract void apply(T item);
 	public abstract void push();
-	
+
+	/**
+	 * Returns the approximate memory footprint of the item. Called once when the item is pushed.
+	 * @param item history item
+	 * @return size in bytes
+	 */
+	protected long sizeOf(T item) {
+		return 0L;
+	}
+
+	/**
+	 * Moves the history from one item to another. Called by {@link #jumpTo(int)}.
+	 * The default implementation applies the target item.
+	 * @param from current item index
+	 * @param to target item index
+	 */
+	protected void move(int from, int to) {
+		apply(get(to));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		if(index<0 || index>=size)
+			throw new IndexOutOfBoundsException();
+		return (T) items[(head+index) % items.length];
+	}
+
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Changes the memory budget. Oldest items are removed immediately if the history exceeds the new budget.
+	 * @param maxBytes maximum total size of items in bytes, or 0 for unlimited
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		trim();
+	}
+
 	public boolean canUndo() {
 		return index>0;
 	}
@@ -29,11 +108,11 @@ public boolean undo() {
 		else
 			return false;
 	}
-	
+
 	public boolean canRedo() {
 		return index<size-1;
 	}
-	
+
 	public boolean redo() {
 		if(canRedo()) {
 			jumpTo(index+1);
@@ -44,34 +123,81 @@ public boolean redo() {
 	}
 
 	public void jumpTo(int index) {
+		int from = this.index;
 		this.index = index;
-		apply(history.get(index));
+		move(from, index);
 		onUpdate();
 	}
 
 	public void clear() {
-		history.clear();
+		for(int i=0; i<size; i++)
+			items[(head+i) % items.length] = null;
+		head = 0;
 		size = 0;
 		index = -1;
+		usedBytes = 0L;
+	}
+
+	private void grow() {
+		int cap = items.length*2;
+		if(maxSize>0)
+			cap = Math.min(cap, maxSize);
+		Object[] newItems = new Object[cap];
+		long[] newBytes = new long[cap];
+		for(int i=0; i<size; i++) {
+			int j = (head+i) % items.length;
+			newItems[i] = items[j];
+			newBytes[i] = itemBytes[j];
+		}
+		items = newItems;
+		itemBytes = newBytes;
+		head = 0;
+	}
+
+	private void removeLast() {
+		size--;
+		int j = (head+size) % items.length;
+		items[j] = null;
+		usedBytes -= itemBytes[j];
+	}
+
+	private void removeFirst() {
+		items[head] = null;
+		usedBytes -= itemBytes[head];
+		head = (head+1) % items.length;
+		size--;
+		index--;
+	}
+
+	private boolean isOverBudget() {
+		return maxSize>0 && size>maxSize || maxBytes>0L && usedBytes>maxBytes;
+	}
+
+	private void trim() {
+		while(index>0 && isOverBudget())
+			removeFirst();
+		while(size-1>index && isOverBudget())
+			removeLast();
 	}
-	
+
 	protected void push(T item) {
 		index++;
-		while(size>index) {
-			history.removeLast();
-			size--;
-		}
-		history.add(item);
+		while(size>index)
+			removeLast();
+		if(maxSize>0 && size==maxSize)
+			removeFirst();
+		if(size==items.length)
+			grow();
+		int j = (head+size) % items.length;
+		items[j] = item;
+		itemBytes[j] = sizeOf(item);
+		usedBytes += itemBytes[j];
 		size++;
-		while(maxSize>0 && size>maxSize) {
-			history.removeFirst();
-			size--;
-			index--;
-		}
+		trim();
 		onUpdate();
 	}
-	
+
 	protected void onUpdate() {
 	}
-	
+
 }
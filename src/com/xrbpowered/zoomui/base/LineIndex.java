@@ -0,0 +1,155 @@
+package com.xrbpowered.zoomui.base;
+
+import java.util.Arrays;
+
+/**
+ * Line start index used by {@link UITextEditBase} to convert between text offsets and line numbers.
+ *
+ * <p>Stores the span of each line (the line separator before the line plus the line contents)
+ * in a Fenwick tree, so line start and line lookup queries, as well as changing the span of a line, take <i>O</i>(log <i>n</i>).
+ * Inserting or removing lines shifts the span array like {@link java.util.ArrayList} does and rebuilds the tree
+ * lazily in linear time on the next query.</p>
+ */
+public class LineIndex {
+
+	private int size = 0;
+	private int[] spans = new int[16];
+	private int[] tree = new int[17];
+	private boolean valid = true;
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+		valid = true;
+		Arrays.fill(tree, 0);
+	}
+
+	private void ensureCapacity(int cap) {
+		if(cap>spans.length) {
+			int n = Math.max(cap, spans.length*2);
+			spans = Arrays.copyOf(spans, n);
+			tree = new int[n+1];
+			valid = false;
+		}
+	}
+
+	private void rebuild() {
+		Arrays.fill(tree, 0, size+1, 0);
+		for(int i=1; i<=size; i++) {
+			tree[i] += spans[i-1];
+			int j = i + (i & -i);
+			if(j<=size)
+				tree[j] += tree[i];
+		}
+		valid = true;
+	}
+
+	public void add(int span) {
+		insert(size, span);
+	}
+
+	public void insert(int index, int span) {
+		ensureCapacity(size+1);
+		System.arraycopy(spans, index, spans, index+1, size-index);
+		spans[index] = span;
+		size++;
+		valid = false;
+	}
+
+	public void insert(int index, int[] add) {
+		ensureCapacity(size+add.length);
+		System.arraycopy(spans, index, spans, index+add.length, size-index);
+		System.arraycopy(add, 0, spans, index, add.length);
+		size += add.length;
+		valid = false;
+	}
+
+	public void remove(int index) {
+		remove(index, index+1);
+	}
+
+	/**
+	 * Removes the lines in the range <code>[from, to)</code>.
+	 */
+	public void remove(int from, int to) {
+		System.arraycopy(spans, to, spans, from, size-to);
+		size -= to-from;
+		valid = false;
+	}
+
+	/**
+	 * Changes the spans of several lines. Large batches only update the span array
+	 * and rebuild the tree lazily in linear time, same as inserting or removing lines.
+	 * @param count number of lines
+	 * @param indices line indices
+	 * @param add new spans
+	 */
+	public void setSpans(int count, int[] indices, int[] add) {
+		if(valid && (long)count*(32-Integer.numberOfLeadingZeros(size))<size) {
+			for(int i=0; i<count; i++)
+				setSpan(indices[i], add[i]);
+		}
+		else {
+			for(int i=0; i<count; i++)
+				spans[indices[i]] = add[i];
+			valid = false;
+		}
+	}
+
+	public int getSpan(int index) {
+		return spans[index];
+	}
+
+	public void setSpan(int index, int span) {
+		int d = span - spans[index];
+		if(d==0)
+			return;
+		spans[index] = span;
+		if(valid) {
+			for(int i=index+1; i<=size; i += i & -i)
+				tree[i] += d;
+		}
+	}
+
+	/**
+	 * Returns the total span of lines before the given line, i.e., the offset of the line separator preceding the line.
+	 * @param index line index, can be equal to {@link #size()}
+	 * @return text offset
+	 */
+	public int getOffset(int index) {
+		if(!valid)
+			rebuild();
+		int sum = 0;
+		for(int i=index; i>0; i -= i & -i)
+			sum += tree[i];
+		return sum;
+	}
+
+	public int getLength() {
+		return getOffset(size);
+	}
+
+	/**
+	 * Finds the line containing a text offset. The offsets inside a line separator belong to the line after the separator.
+	 * @param offset text offset
+	 * @return line index, or the last line if the offset is beyond the end of the text
+	 */
+	public int findLine(int offset) {
+		if(!valid)
+			rebuild();
+		int index = 0;
+		int rem = offset;
+		for(int step=Integer.highestOneBit(Math.max(size, 1)); step>0; step >>= 1) {
+			int i = index + step;
+			if(i<=size && tree[i]<=rem) {
+				index = i;
+				rem -= tree[i];
+			}
+		}
+		return Math.max(0, Math.min(index, size-1));
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.xrbpowered.zoomui.base;
+
+/**
+ * Pluggable lexer for syntax highlighting in {@link UITextEditBase}, see {@link UITextEditBase#setTokenizer(LineTokenizer)}.
+ *
+ * <p>The document is tokenized line by line. Multi-line constructs, such as block comments or multi-line strings,
+ * are supported by passing an integer lexer state from the end of each line to the start of the next line.
+ * The first line starts in {@link #INITIAL_STATE}. After an edit, {@link SyntaxHighlighter} tokenizes the modified lines
+ * again and continues with the following lines only until the lexer state at the start of a line is the same as before the edit.
+ * Therefore, the result of tokenizing a line must depend only on the line text and the start state.</p>
+ *
+ * <p>Large documents are tokenized in a background thread, so implementations must be thread-safe,
+ * which is normally achieved by keeping no mutable fields.</p>
+ */
+public interface LineTokenizer {
+
+	/**
+	 * Lexer state at the start of the document.
+	 */
+	public static final int INITIAL_STATE = 0;
+
+	/**
+	 * Returns text styles referred to by token style indices. Style 0 is used for text not covered by any token.
+	 * @return array of styles
+	 */
+	public TokenStyle[] getStyles();
+
+	/**
+	 * Splits one line into tokens. The line does not include the line separator.
+	 * @param text document text or its snapshot
+	 * @param start offset of the first character of the line
+	 * @param end offset after the last character of the line
+	 * @param state lexer state at the start of the line
+	 * @param out receives tokens as columns relative to <code>start</code>
+	 * @return lexer state at the end of the line
+	 */
+	public int tokenize(CharSequence text, int start, int end, int state, TokenList out);
+
+}
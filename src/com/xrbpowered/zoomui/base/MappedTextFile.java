@@ -0,0 +1,264 @@
+package com.xrbpowered.zoomui.base;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only text file accessed through memory-mapped buffers, used by {@link UIMappedTextView} to view files
+ * that are too large to be loaded into a {@link String}.
+ *
+ * <p>The file is mapped in segments of {@link #SEGMENT_SIZE} bytes. A background thread scans the file for line feeds
+ * and stores line start offsets in a <code>long</code> array, publishing the index in chunks of {@link #INDEX_CHUNK} bytes,
+ * so the heap usage is proportional to the number of lines rather than the file size.
+ * Lines are decoded on request with a {@link CharsetDecoder}, therefore only the visible lines are ever decoded.
+ * The charset must encode the line feed as a single <code>0x0A</code> byte that does not occur in other characters,
+ * which is true for UTF-8, ASCII, and single-byte charsets. Carriage returns before line feeds are removed.</p>
+ *
+ * <p>Lines are available as soon as they are indexed; {@link #getLineCount()} grows while indexing is in progress.
+ * Decoding methods must be called from one thread, normally the UI thread.</p>
+ */
+public class MappedTextFile implements Closeable {
+
+	public static final int SEGMENT_SIZE = 1<<30;
+	public static final int INDEX_CHUNK = 1<<23;
+
+	/**
+	 * Lines longer than this are truncated when decoded.
+	 */
+	public static int maxLineBytes = 1<<20;
+
+	public final File file;
+	public final Charset charset;
+
+	private final FileChannel channel;
+	private final long size;
+	private final MappedByteBuffer[] segments;
+	private final CharsetDecoder decoder;
+
+	private long[] lineStarts = new long[1024];
+	private int lineCount = 0;
+	private long indexedBytes = 0L;
+	private boolean indexing = true;
+	private volatile boolean closed = false;
+
+	private Runnable onProgress = null;
+	private long indexTime = 0L;
+
+	private byte[] lineBytes = new byte[256];
+	private CharBuffer lineChars = CharBuffer.allocate(256);
+
+	public MappedTextFile(File file, Charset charset) throws IOException {
+		this.file = file;
+		this.charset = charset;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.size = channel.size();
+		int n = (int)((size+SEGMENT_SIZE-1)/SEGMENT_SIZE);
+		segments = new MappedByteBuffer[n];
+		try {
+			for(int i=0; i<n; i++) {
+				long pos = (long)i*SEGMENT_SIZE;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(SEGMENT_SIZE, size-pos));
+			}
+		}
+		catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+		decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	public MappedTextFile(File file) throws IOException {
+		this(file, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sets the callback executed in the indexing thread each time a chunk of the index is published, and when indexing is finished.
+	 * Must be called before {@link #startIndexing()}.
+	 * @param onProgress callback
+	 */
+	public void setOnProgress(Runnable onProgress) {
+		this.onProgress = onProgress;
+	}
+
+	/**
+	 * Starts building the line index in a new daemon thread.
+	 * @return this file
+	 */
+	public MappedTextFile startIndexing() {
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				buildIndex();
+			}
+		}, "MappedTextFile indexer");
+		t.setDaemon(true);
+		t.start();
+		return this;
+	}
+
+	private void publish(long[] starts, int count, long indexed, boolean done) {
+		synchronized(this) {
+			lineStarts = starts;
+			lineCount = count;
+			indexedBytes = indexed;
+			if(done)
+				indexing = false;
+		}
+		if(onProgress!=null)
+			onProgress.run();
+	}
+
+	/**
+	 * Scans the file for line feeds. Called by {@link #startIndexing()}, can also be called directly to index in the current thread.
+	 */
+	public void buildIndex() {
+		long t0 = System.nanoTime();
+		long[] starts = new long[1024];
+		starts[0] = 0L;
+		int count = 0;
+		byte[] buf = new byte[65536];
+		long pos = 0L;
+		long published = 0L;
+		for(int s=0; s<segments.length && !closed; s++) {
+			ByteBuffer seg = segments[s].duplicate();
+			while(seg.hasRemaining() && !closed) {
+				int len = Math.min(buf.length, seg.remaining());
+				seg.get(buf, 0, len);
+				for(int i=0; i<len; i++) {
+					if(buf[i]=='\n') {
+						if(count+2>starts.length)
+							starts = Arrays.copyOf(starts, starts.length*2);
+						starts[++count] = pos+i+1;
+					}
+				}
+				pos += len;
+				if(pos-published>=INDEX_CHUNK) {
+					publish(starts, count, pos, false);
+					published = pos;
+				}
+			}
+		}
+		// the last line has no line feed
+		count++;
+		synchronized(this) {
+			indexTime = System.nanoTime()-t0;
+		}
+		publish(starts, count, size, true);
+	}
+
+	/**
+	 * Returns the number of indexed lines, which grows while indexing is in progress.
+	 * @return number of lines
+	 */
+	public synchronized int getLineCount() {
+		return lineCount;
+	}
+
+	public synchronized boolean isIndexing() {
+		return indexing;
+	}
+
+	/**
+	 * Returns the indexing progress.
+	 * @return number of bytes scanned
+	 */
+	public synchronized long getIndexedBytes() {
+		return indexedBytes;
+	}
+
+	/**
+	 * Returns the time taken to build the index.
+	 * @return time in milliseconds, or 0 if indexing is not finished
+	 */
+	public synchronized double getIndexTime() {
+		return indexTime / 1000000.0;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the heap memory taken by the line index.
+	 * @return memory size in bytes
+	 */
+	public synchronized long getIndexBytes() {
+		return lineStarts.length * 8L;
+	}
+
+	/**
+	 * Returns the file offset of the first byte of a line.
+	 * @param index line index, less than {@link #getLineCount()}
+	 * @return byte offset
+	 */
+	public synchronized long getLineOffset(int index) {
+		return lineStarts[index];
+	}
+
+	private void readBytes(long pos, byte[] dst, int len) {
+		int off = 0;
+		while(off<len) {
+			int s = (int)(pos/SEGMENT_SIZE);
+			ByteBuffer seg = segments[s].duplicate();
+			seg.position((int)(pos-(long)s*SEGMENT_SIZE));
+			int n = Math.min(len-off, seg.remaining());
+			seg.get(dst, off, n);
+			off += n;
+			pos += n;
+		}
+	}
+
+	/**
+	 * Decodes a line without the line separator.
+	 * @param index line index, less than {@link #getLineCount()}
+	 * @return line text
+	 */
+	public String getLine(int index) {
+		long start, end;
+		synchronized(this) {
+			start = lineStarts[index];
+			end = (index+1<lineCount || indexing) ? lineStarts[index+1]-1 : size;
+		}
+		int len = (int)Math.min(end-start, maxLineBytes);
+		if(len<=0)
+			return "";
+		if(lineBytes.length<len)
+			lineBytes = new byte[Math.max(len, lineBytes.length*2)];
+		readBytes(start, lineBytes, len);
+		if(lineBytes[len-1]=='\r')
+			len--;
+		int maxChars = (int)Math.ceil(len*(double)decoder.maxCharsPerByte());
+		if(lineChars.capacity()<maxChars)
+			lineChars = CharBuffer.allocate(Math.max(maxChars, lineChars.capacity()*2));
+		lineChars.clear();
+		decoder.reset();
+		ByteBuffer in = ByteBuffer.wrap(lineBytes, 0, len);
+		decoder.decode(in, lineChars, true);
+		decoder.flush(lineChars);
+		lineChars.flip();
+		return lineChars.toString();
+	}
+
+	/**
+	 * Stops indexing and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		channel.close();
+	}
+
+}
@@ -0,0 +1,297 @@
+package com.xrbpowered.zoomui.base;
+
+/**
+ * Piece table implementation of {@link TextBuffer}.
+ *
+ * <p>The text is stored as a sequence of pieces referring either to the original (read-only) string
+ * or to the append-only buffer of added text. Pieces are kept in a randomized balanced tree (treap) ordered by position,
+ * where each node stores the total length of its subtree. Therefore, edits and random access take <i>O</i>(log <i>n</i>)
+ * in the number of pieces, and consecutive typing extends the last added piece instead of creating new ones.</p>
+ *
+ * <p>{@link #toString()} materializes the whole document and caches the result until the next edit.
+ * Large batches of edits, e.g., typing with many carets, rebuild the table from a single string instead.</p>
+ */
+public class PieceTable implements TextBuffer {
+
+	private static class Piece {
+		public final boolean added;
+		public final int start;
+		public int length;
+		public final int priority;
+
+		public int sum;
+		public Piece left = null;
+		public Piece right = null;
+
+		public Piece(boolean added, int start, int length, int priority) {
+			this.added = added;
+			this.start = start;
+			this.length = length;
+			this.priority = priority;
+			this.sum = length;
+		}
+	}
+
+	private String original;
+	private final StringBuilder added = new StringBuilder();
+
+	private Piece root = null;
+	private String cache = null;
+
+	private int seed = 0x2545f491;
+
+	private Piece splitLeft, splitRight;
+
+	public PieceTable(String text) {
+		this.original = text;
+		if(!text.isEmpty())
+			root = new Piece(false, 0, text.length(), nextPriority());
+		cache = text;
+	}
+
+	private int nextPriority() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed & 0x7fffffff;
+	}
+
+	private static int sum(Piece t) {
+		return t==null ? 0 : t.sum;
+	}
+
+	private static void update(Piece t) {
+		t.sum = sum(t.left) + t.length + sum(t.right);
+	}
+
+	private char charAt(Piece p, int index) {
+		return p.added ? added.charAt(p.start + index) : original.charAt(p.start + index);
+	}
+
+	/**
+	 * Splits the tree at a character offset into {@link #splitLeft} and {@link #splitRight}.
+	 * A piece containing the offset is cut in two.
+	 */
+	private void split(Piece t, int pos) {
+		if(t==null) {
+			splitLeft = null;
+			splitRight = null;
+			return;
+		}
+		int ls = sum(t.left);
+		if(pos<=ls) {
+			split(t.left, pos);
+			t.left = splitRight;
+			update(t);
+			splitRight = t;
+		}
+		else if(pos>=ls + t.length) {
+			split(t.right, pos - ls - t.length);
+			t.right = splitLeft;
+			update(t);
+			splitLeft = t;
+		}
+		else {
+			int k = pos - ls;
+			// same priority keeps the heap order for the right subtree
+			Piece r = new Piece(t.added, t.start + k, t.length - k, t.priority);
+			r.right = t.right;
+			t.right = null;
+			t.length = k;
+			update(r);
+			update(t);
+			splitLeft = t;
+			splitRight = r;
+		}
+	}
+
+	private static Piece merge(Piece a, Piece b) {
+		if(a==null)
+			return b;
+		if(b==null)
+			return a;
+		if(a.priority>b.priority) {
+			a.right = merge(a.right, b);
+			update(a);
+			return a;
+		}
+		else {
+			b.left = merge(a, b.left);
+			update(b);
+			return b;
+		}
+	}
+
+	/**
+	 * Extends the last piece of the tree if it ends exactly where the new added text starts.
+	 */
+	private static boolean extendLast(Piece t, int offs, int len) {
+		if(t==null)
+			return false;
+		if(t.right!=null) {
+			if(extendLast(t.right, offs, len)) {
+				t.sum += len;
+				return true;
+			}
+			return false;
+		}
+		if(t.added && t.start + t.length==offs) {
+			t.length += len;
+			t.sum += len;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void replace(int start, int end, String add) {
+		if(start<0 || end<start || end>length())
+			throw new IndexOutOfBoundsException();
+		if(start==end && add.isEmpty())
+			return;
+		cache = null;
+		split(root, start);
+		Piece a = splitLeft;
+		split(splitRight, end - start);
+		Piece c = splitRight;
+		if(!add.isEmpty()) {
+			int offs = added.length();
+			added.append(add);
+			if(!extendLast(a, offs, add.length()))
+				a = merge(a, new Piece(true, offs, add.length(), nextPriority()));
+		}
+		root = merge(a, c);
+		splitLeft = null;
+		splitRight = null;
+	}
+
+	/**
+	 * Minimum average number of characters per change for batch edits to be applied piece by piece.
+	 * Denser batches rebuild the table in linear time, which also keeps the number of pieces low.
+	 */
+	public static int batchRebuildDensity = 512;
+
+	@Override
+	public void replace(int count, int[] starts, int[] ends, String[] adds) {
+		int length = length();
+		if((long)count*batchRebuildDensity<length) {
+			TextBuffer.super.replace(count, starts, ends, adds);
+			return;
+		}
+		int delta = 0;
+		for(int i=0; i<count; i++) {
+			if(starts[i]<0 || ends[i]<starts[i] || ends[i]>length || i>0 && starts[i]<ends[i-1])
+				throw new IndexOutOfBoundsException();
+			delta += adds[i].length() - (ends[i] - starts[i]);
+		}
+		StringBuilder sb = new StringBuilder(length + delta);
+		int pos = 0;
+		for(int i=0; i<count; i++) {
+			append(root, 0, pos, starts[i], sb);
+			sb.append(adds[i]);
+			pos = ends[i];
+		}
+		append(root, 0, pos, length, sb);
+		original = sb.toString();
+		added.setLength(0);
+		root = original.isEmpty() ? null : new Piece(false, 0, original.length(), nextPriority());
+		cache = original;
+	}
+
+	@Override
+	public int length() {
+		return sum(root);
+	}
+
+	@Override
+	public char charAt(int index) {
+		if(cache!=null)
+			return cache.charAt(index);
+		if(index<0 || index>=length())
+			throw new IndexOutOfBoundsException();
+		Piece t = root;
+		for(;;) {
+			int ls = sum(t.left);
+			if(index<ls)
+				t = t.left;
+			else if(index<ls + t.length)
+				return charAt(t, index - ls);
+			else {
+				index -= ls + t.length;
+				t = t.right;
+			}
+		}
+	}
+
+	private void append(Piece t, int base, int start, int end, StringBuilder sb) {
+		if(t==null || start>=base + t.sum || end<=base)
+			return;
+		int ls = sum(t.left);
+		append(t.left, base, start, end, sb);
+		int ps = base + ls;
+		int s = Math.max(start, ps);
+		int e = Math.min(end, ps + t.length);
+		if(s<e) {
+			if(t.added)
+				sb.append(added, t.start + s - ps, t.start + e - ps);
+			else
+				sb.append(original, t.start + s - ps, t.start + e - ps);
+		}
+		append(t.right, ps + t.length, start, end, sb);
+	}
+
+	@Override
+	public String substring(int start, int end) {
+		if(cache!=null)
+			return cache.substring(start, end);
+		if(start<0 || end<start || end>length())
+			throw new IndexOutOfBoundsException();
+		StringBuilder sb = new StringBuilder(end - start);
+		append(root, 0, start, end, sb);
+		return sb.toString();
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return substring(start, end);
+	}
+
+	private int indexOf(Piece t, int base, char ch, int from, int to) {
+		if(t==null || from>=base + t.sum || to<=base)
+			return -1;
+		int ls = sum(t.left);
+		int res = indexOf(t.left, base, ch, from, to);
+		if(res>=0)
+			return res;
+		int ps = base + ls;
+		int s = Math.max(from, ps);
+		int e = Math.min(to, ps + t.length);
+		for(int i=s; i<e; i++) {
+			if(charAt(t, i - ps)==ch)
+				return i;
+		}
+		return indexOf(t.right, ps + t.length, ch, from, to);
+	}
+
+	@Override
+	public int indexOf(char ch, int from, int to) {
+		from = Math.max(from, 0);
+		to = Math.min(to, length());
+		if(cache!=null) {
+			for(int i=from; i<to; i++) {
+				if(cache.charAt(i)==ch)
+					return i;
+			}
+			return -1;
+		}
+		return indexOf(root, 0, ch, from, to);
+	}
+
+	@Override
+	public String toString() {
+		if(cache==null)
+			cache = substring(0, length());
+		return cache;
+	}
+
+}
@@ -0,0 +1,305 @@
+package com.xrbpowered.zoomui.base;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.xrbpowered.zoomui.RootContainer;
+
+/**
+ * Incremental syntax highlighting engine of {@link UITextEditBase}, created by {@link UITextEditBase#setTokenizer(LineTokenizer)}.
+ *
+ * <p>Tokens and lexer states are stored in each {@link UITextEditBase.Line}. The highlighter keeps the number of leading lines
+ * that are known to be up to date; an edit lowers it to the first modified line. When lines are requested,
+ * the highlighter tokenizes lines starting from that point. A line that has not been modified and starts in the same lexer state
+ * as before keeps its tokens, so after a typical edit only the modified lines are tokenized again. Lexing continues
+ * past the modified lines only while the lexer states differ, e.g., after opening a block comment.</p>
+ *
+ * <p>Painting requests only the visible lines. The remaining lines are tokenized synchronously if there are at most
+ * {@link #getBackgroundThreshold()} of them, otherwise in a background thread from a snapshot of the text.
+ * Results are passed back to the UI thread in chunks and discarded if the text has been modified in the meantime.</p>
+ */
+public class SyntaxHighlighter {
+
+	public static final int BACKGROUND_CHUNK = 4096;
+	public static final int SYNC_LINES = 256;
+
+	public final UITextEditBase<?> editor;
+	public final LineTokenizer tokenizer;
+	public final TokenStyle[] styles;
+
+	private final TokenList tokens = new TokenList();
+
+	private int validLines = 0;
+	private int generation = 0;
+	private Worker worker = null;
+
+	private Executor executor = ForkJoinPool.commonPool();
+	private int backgroundThreshold = 5000;
+
+	private long tokenized = 0L;
+	private long tokenizedBackground = 0L;
+
+	private class Worker implements Runnable {
+		public final int generation;
+		public final String text;
+		public final int from;
+		public final int[] starts, ends;
+		public final int startState;
+		public volatile boolean cancelled = false;
+
+		public Worker(int from, int startState) {
+			this.generation = SyntaxHighlighter.this.generation;
+			this.text = editor.getText();
+			this.from = from;
+			this.startState = startState;
+			int n = editor.lines.size()-from;
+			starts = new int[n];
+			ends = new int[n];
+			int pos = editor.getLineStart(from)-editor.lines.get(from).offs;
+			for(int i=0; i<n; i++) {
+				UITextEditBase<?>.Line line = editor.lines.get(from+i);
+				starts[i] = pos+line.offs;
+				ends[i] = starts[i]+line.length;
+				pos = ends[i];
+			}
+		}
+
+		@Override
+		public void run() {
+			TokenList out = new TokenList();
+			int state = startState;
+			int n = starts.length;
+			for(int c=0; c<n && !cancelled; c+=BACKGROUND_CHUNK) {
+				int size = Math.min(BACKGROUND_CHUNK, n-c);
+				final int[][] chunkTokens = new int[size][];
+				final int[] chunkStates = new int[size+1];
+				chunkStates[0] = state;
+				for(int i=0; i<size; i++) {
+					out.clear();
+					state = tokenizer.tokenize(text, starts[c+i], ends[c+i], state, out);
+					chunkTokens[i] = out.toArray();
+					chunkStates[i+1] = state;
+				}
+				final int chunkFrom = from+c;
+				final boolean last = c+size>=n;
+				if(!post(new Runnable() {
+					@Override
+					public void run() {
+						apply(Worker.this, chunkFrom, chunkTokens, chunkStates, last);
+					}
+				}))
+					return;
+			}
+		}
+	}
+
+	public SyntaxHighlighter(UITextEditBase<?> editor, LineTokenizer tokenizer) {
+		this.editor = editor;
+		this.tokenizer = tokenizer;
+		this.styles = tokenizer.getStyles();
+	}
+
+	/**
+	 * Sets the executor for background tokenization. Default is {@link ForkJoinPool#commonPool()}.
+	 * @param executor executor
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public int getBackgroundThreshold() {
+		return backgroundThreshold;
+	}
+
+	/**
+	 * Sets the number of remaining lines above which they are tokenized in the background.
+	 * @param lines number of lines
+	 */
+	public void setBackgroundThreshold(int lines) {
+		this.backgroundThreshold = lines;
+	}
+
+	/**
+	 * Marks lines starting from <code>index</code> as possibly out of date. Called by the editor whenever lines are modified,
+	 * inserted, or removed. Cancels background tokenization.
+	 * @param index first affected line
+	 */
+	public void invalidate(int index) {
+		if(index<validLines)
+			validLines = index;
+		generation++;
+		cancelWorker();
+	}
+
+	/**
+	 * Discards all tokens, e.g., after the whole text is replaced.
+	 */
+	public void reset() {
+		validLines = 0;
+		generation++;
+		cancelWorker();
+	}
+
+	private void cancelWorker() {
+		if(worker!=null) {
+			worker.cancelled = true;
+			worker = null;
+		}
+	}
+
+	public boolean isValid(int index) {
+		return index<validLines;
+	}
+
+	/**
+	 * Returns the number of leading lines that have up to date tokens.
+	 * @return number of lines
+	 */
+	public int getValidLines() {
+		return validLines;
+	}
+
+	public boolean isBackgroundRunning() {
+		return worker!=null;
+	}
+
+	private int startState(int index) {
+		return index==0 ? LineTokenizer.INITIAL_STATE : editor.lines.get(index-1).endState;
+	}
+
+	/**
+	 * Skips lines that have not been modified and start in the same lexer state as before.
+	 */
+	private void skipConverged() {
+		int n = editor.lines.size();
+		int state = startState(validLines);
+		while(validLines<n) {
+			UITextEditBase<?>.Line line = editor.lines.get(validLines);
+			if(line.tokens==null || line.startState!=state)
+				break;
+			state = line.endState;
+			validLines++;
+		}
+	}
+
+	private void setTokens(UITextEditBase<?>.Line line, int startState, int[] tokens, int endState) {
+		line.startState = startState;
+		line.endState = endState;
+		line.tokens = tokens;
+		line.resetLayout();
+	}
+
+	/**
+	 * Makes sure that all lines up to <code>index</code> inclusive have up to date tokens.
+	 * @param index line index
+	 */
+	public void update(int index) {
+		advance(index, 0);
+	}
+
+	/**
+	 * Tokenizes lines up to <code>index</code> inclusive and continues past it while lines converge,
+	 * tokenizing at most <code>budget</code> more lines.
+	 */
+	private void advance(int index, int budget) {
+		int n = editor.lines.size();
+		if(index>=n)
+			index = n-1;
+		if(index<validLines)
+			return;
+		skipConverged();
+		if(validLines>=n)
+			return;
+
+		CharSequence text = editor.text;
+		int pos = editor.getLineStart(validLines)-editor.lines.get(validLines).offs;
+		int state = startState(validLines);
+		while(validLines<n) {
+			UITextEditBase<?>.Line line = editor.lines.get(validLines);
+			int start = pos+line.offs;
+			int end = start+line.length;
+			if(line.tokens==null || line.startState!=state) {
+				if(validLines>index) {
+					if(budget<=0)
+						break;
+					budget--;
+				}
+				tokens.clear();
+				int endState = tokenizer.tokenize(text, start, end, state, tokens);
+				setTokens(line, state, tokens.toArray(), endState);
+				tokenized++;
+			}
+			state = line.endState;
+			pos = end;
+			validLines++;
+		}
+		if(worker!=null && validLines>=n)
+			cancelWorker();
+	}
+
+	/**
+	 * Tokenizes the remaining lines after painting: synchronously for small documents or if the lexer states converge soon,
+	 * otherwise starts the background tokenization.
+	 */
+	public void updateRemaining() {
+		int n = editor.lines.size();
+		if(validLines>=n || worker!=null)
+			return;
+		if(n-validLines<=backgroundThreshold || editor.getRoot()==null) {
+			update(n-1);
+			return;
+		}
+		advance(validLines, SYNC_LINES);
+		if(validLines<n) {
+			worker = new Worker(validLines, startState(validLines));
+			executor.execute(worker);
+		}
+	}
+
+	private boolean post(Runnable r) {
+		RootContainer root = editor.getRoot();
+		if(root==null)
+			return false;
+		root.getWindow().getFactory().invokeLater(r);
+		return true;
+	}
+
+	private void apply(Worker w, int from, int[][] chunkTokens, int[] chunkStates, boolean last) {
+		if(w.cancelled || w.generation!=generation)
+			return;
+		int to = from+chunkTokens.length;
+		for(int i=Math.max(from, validLines); i<to; i++) {
+			setTokens(editor.lines.get(i), chunkStates[i-from], chunkTokens[i-from], chunkStates[i-from+1]);
+			tokenizedBackground++;
+		}
+		if(validLines<to)
+			validLines = to;
+		if(last) {
+			worker = null;
+			editor.repaint();
+		}
+	}
+
+	/**
+	 * Returns the number of lines tokenized in the UI thread.
+	 * @return number of lines
+	 */
+	public long getTokenized() {
+		return tokenized;
+	}
+
+	/**
+	 * Returns the number of lines tokenized in the background.
+	 * @return number of lines
+	 */
+	public long getTokenizedBackground() {
+		return tokenizedBackground;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d/%d lines valid, %d tokenized, %d in background%s", validLines, editor.lines.size(),
+				tokenized, tokenizedBackground, worker!=null ? ", running" : "");
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.xrbpowered.zoomui.base;
+
+/**
+ * Mutable character storage used by {@link UITextEditBase}.
+ *
+ * <p>Implementations are expected to support efficient edits and random access in large documents.
+ * The default implementation is {@link PieceTable}. Editors can provide a different implementation
+ * by overriding {@link UITextEditBase#createBuffer(String)}.</p>
+ */
+public interface TextBuffer extends CharSequence {
+
+	/**
+	 * Replaces characters in the range <code>[start, end)</code> with the given string.
+	 * @param start start offset, inclusive
+	 * @param end end offset, exclusive
+	 * @param add inserted string, can be empty
+	 */
+	public void replace(int start, int end, String add);
+
+	/**
+	 * Replaces several ranges at once. Ranges must be sorted by start offset and must not overlap;
+	 * offsets refer to the contents before the change.
+	 * The default implementation applies the changes one by one in descending order.
+	 * @param count number of ranges
+	 * @param starts start offsets, inclusive
+	 * @param ends end offsets, exclusive
+	 * @param adds inserted strings, can be empty
+	 */
+	public default void replace(int count, int[] starts, int[] ends, String[] adds) {
+		for(int i=count-1; i>=0; i--)
+			replace(starts[i], ends[i], adds[i]);
+	}
+
+	/**
+	 * Returns a copy of characters in the range <code>[start, end)</code>.
+	 * @param start start offset, inclusive
+	 * @param end end offset, exclusive
+	 * @return substring
+	 */
+	public String substring(int start, int end);
+
+	/**
+	 * Finds the first occurrence of a character within the range <code>[from, to)</code>.
+	 * @param ch character to find
+	 * @param from start offset, inclusive
+	 * @param to end offset, exclusive
+	 * @return offset of the character or -1 if not found
+	 */
+	public int indexOf(char ch, int from, int to);
+
+	/**
+	 * Returns the full contents of the buffer. Implementations may cache the returned string until the next edit.
+	 * @return buffer contents
+	 */
+	@Override
+	public String toString();
+
+}
@@ -0,0 +1,226 @@
+package com.xrbpowered.zoomui.base;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory-bounded cache of raster tiles used by the tiled rendering mode of {@link UIZoomView}.
+ *
+ * <p>Tiles are square images of {@link #tileSize} pixels. Each tile is identified by a quantized zoom level and
+ * its column and row in the tile grid of that level. Zoom levels are spaced {@link #levelSteps} per doubling of the scale,
+ * so level <code>0</code> is rendered at one device pixel per unit, and level <code>levelSteps</code> at two pixels per unit.
+ * Tile grid origin is <code>(0, 0)</code> in the transformed local space of the view.</p>
+ *
+ * <p>Cached tiles are evicted in the least recently used order when the total size of the tile images
+ * exceeds the byte budget.</p>
+ *
+ * @see UIZoomView#setTiledRendering(boolean)
+ */
+public class TileCache {
+
+	/**
+	 * Default memory budget: 64 MB.
+	 */
+	public static final long DEFAULT_BUDGET = 64L*1024L*1024L;
+
+	/**
+	 * Tile width and height in pixels.
+	 */
+	public final int tileSize;
+
+	/**
+	 * Number of quantized zoom levels per doubling of the scale.
+	 */
+	public final int levelSteps;
+
+	private final LinkedHashMap<Long, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+
+	private long budget;
+	private long usedBytes = 0L;
+
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 * Creates tile cache with 256-pixel tiles, 8 levels per doubling of the scale, and the {@link #DEFAULT_BUDGET}.
+	 */
+	public TileCache() {
+		this(256, 8, DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Constructor.
+	 * @param tileSize tile width and height in pixels
+	 * @param levelSteps number of zoom levels per doubling of the scale
+	 * @param budget maximum total size of cached tiles in bytes
+	 */
+	public TileCache(int tileSize, int levelSteps, long budget) {
+		this.tileSize = tileSize;
+		this.levelSteps = levelSteps;
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns the quantized zoom level closest to a given pixel size.
+	 * @param pix size of a device pixel in transformed local space, see {@link UIZoomView#getPixelSize()}
+	 * @return zoom level
+	 */
+	public int getLevel(float pix) {
+		return (int) Math.round(-Math.log(pix) / Math.log(2.0) * levelSteps);
+	}
+
+	/**
+	 * Returns the pixel size of a tile image at a given level.
+	 * @param level zoom level
+	 * @return size of a tile pixel in transformed local space
+	 */
+	public double getTilePixelSize(int level) {
+		return Math.pow(2.0, -level / (double) levelSteps);
+	}
+
+	/**
+	 * Returns the width and height of the area covered by one tile at a given level.
+	 * @param level zoom level
+	 * @return tile span in transformed local space
+	 */
+	public double getTileSpan(int level) {
+		return getTilePixelSize(level) * tileSize;
+	}
+
+	private static long key(int level, int col, int row) {
+		return ((long) (level & 0xff) << 56) | ((long) (col & 0xfffffff) << 28) | (long) (row & 0xfffffff);
+	}
+
+	private static int level(long key) {
+		return (byte) (key >>> 56);
+	}
+
+	private static int col(long key) {
+		return ((int) (key >>> 28) << 4) >> 4;
+	}
+
+	private static int row(long key) {
+		return ((int) key << 4) >> 4;
+	}
+
+	/**
+	 * Returns the cached tile image and marks it as recently used.
+	 * @param level zoom level
+	 * @param col tile column
+	 * @param row tile row
+	 * @return tile image or <code>null</code> if the tile is not cached
+	 */
+	public BufferedImage get(int level, int col, int row) {
+		BufferedImage img = tiles.get(key(level, col, row));
+		if(img!=null)
+			hits++;
+		else
+			misses++;
+		return img;
+	}
+
+	/**
+	 * Checks if the tile is cached without affecting the eviction order or statistics.
+	 * @param level zoom level
+	 * @param col tile column
+	 * @param row tile row
+	 * @return <code>true</code> if the tile is cached
+	 */
+	public boolean contains(int level, int col, int row) {
+		return tiles.containsKey(key(level, col, row));
+	}
+
+	/**
+	 * Adds a tile image to the cache. Least recently used tiles are evicted if the cache exceeds the budget.
+	 * @param level zoom level
+	 * @param col tile column
+	 * @param row tile row
+	 * @param img tile image
+	 */
+	public void put(int level, int col, int row, BufferedImage img) {
+		BufferedImage old = tiles.put(key(level, col, row), img);
+		if(old!=null)
+			usedBytes -= bytes(old);
+		usedBytes += bytes(img);
+		evict();
+	}
+
+	private static long bytes(BufferedImage img) {
+		return img.getWidth() * img.getHeight() * 4L;
+	}
+
+	private void evict() {
+		Iterator<BufferedImage> it = tiles.values().iterator();
+		while(usedBytes>budget && it.hasNext()) {
+			usedBytes -= bytes(it.next());
+			it.remove();
+		}
+	}
+
+	/**
+	 * Removes all tiles at all levels that overlap the given area.
+	 * @param x left edge in transformed local space
+	 * @param y top edge in transformed local space
+	 * @param w width
+	 * @param h height
+	 */
+	public void invalidate(float x, float y, float w, float h) {
+		Iterator<Map.Entry<Long, BufferedImage>> it = tiles.entrySet().iterator();
+		while(it.hasNext()) {
+			Map.Entry<Long, BufferedImage> e = it.next();
+			long key = e.getKey();
+			double span = getTileSpan(level(key));
+			double tx = col(key) * span;
+			double ty = row(key) * span;
+			if(tx<x+w && tx+span>x && ty<y+h && ty+span>y) {
+				usedBytes -= bytes(e.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all tiles from the cache.
+	 */
+	public void clear() {
+		tiles.clear();
+		usedBytes = 0L;
+	}
+
+	/**
+	 * Changes the memory budget. Tiles are evicted immediately if the new budget is smaller than the used memory.
+	 * @param budget maximum total size of cached tiles in bytes
+	 */
+	public void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public int getTileCount() {
+		return tiles.size();
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	public void resetStats() {
+		hits = 0;
+		misses = 0;
+	}
+
+}
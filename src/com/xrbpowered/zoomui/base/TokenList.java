@@ -0,0 +1,66 @@
+package com.xrbpowered.zoomui.base;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer that collects tokens of one line from {@link LineTokenizer#tokenize(CharSequence, int, int, int, TokenList)}.
+ *
+ * <p>A token is a pair of start column and style index, and it extends to the start of the next token or the end of the line.
+ * The list always starts with a token at column 0 with style 0. Adjacent tokens with the same style are merged.</p>
+ */
+public class TokenList {
+
+	private int[] data = new int[64];
+	private int size = 0;
+
+	public TokenList() {
+		clear();
+	}
+
+	public void clear() {
+		data[0] = 0;
+		data[1] = 0;
+		size = 2;
+	}
+
+	/**
+	 * Starts a new token. Columns must not decrease.
+	 * @param col start column relative to the line start
+	 * @param style style index
+	 */
+	public void add(int col, int style) {
+		if(data[size-2]==col) {
+			// replace an empty token
+			size -= 2;
+			if(size==0) {
+				data[1] = style;
+				size = 2;
+				return;
+			}
+		}
+		if(data[size-1]==style)
+			return;
+		if(size+2>data.length)
+			data = Arrays.copyOf(data, data.length*2);
+		data[size] = col;
+		data[size+1] = style;
+		size += 2;
+	}
+
+	/**
+	 * Returns the number of tokens.
+	 * @return token count
+	 */
+	public int size() {
+		return size/2;
+	}
+
+	/**
+	 * Copies tokens into a new array of pairs of start column and style index, as stored in {@link UITextEditBase.Line#tokens}.
+	 * @return token array
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+}
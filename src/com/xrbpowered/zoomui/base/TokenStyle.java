@@ -0,0 +1,30 @@
+package com.xrbpowered.zoomui.base;
+
+import java.awt.Color;
+import java.awt.Font;
+
+/**
+ * Text color and font style of a syntax token, see {@link LineTokenizer#getStyles()}.
+ */
+public class TokenStyle {
+
+	/**
+	 * Text color, or <code>null</code> to use {@link UITextEditBase#colorText}.
+	 */
+	public final Color color;
+
+	/**
+	 * Font style: {@link Font#PLAIN}, {@link Font#BOLD}, {@link Font#ITALIC}, or <code>Font.BOLD|Font.ITALIC</code>.
+	 */
+	public final int font;
+
+	public TokenStyle(Color color, int font) {
+		this.color = color;
+		this.font = font & (Font.BOLD|Font.ITALIC);
+	}
+
+	public TokenStyle(Color color) {
+		this(color, Font.PLAIN);
+	}
+
+}
@@ -1,17 +1,119 @@
 package com.xrbpowered.zoomui.base;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import com.xrbpowered.zoomui.GraphAssist;
 import com.xrbpowered.zoomui.UIContainer;
 import com.xrbpowered.zoomui.UIElement;
 
 public abstract class UIListBoxBase<T extends UIElement> extends UIScrollContainerBase {
 
+	/**
+	 * Source of items for the virtualized mode, see {@link UIListBoxBase#setModel(ListModel)}.
+	 */
+	public interface ListModel {
+		public int size();
+		public Object get(int index);
+	}
+
+	public static ListModel listModel(final List<?> objects) {
+		return new ListModel() {
+			@Override
+			public int size() {
+				return objects.size();
+			}
+			@Override
+			public Object get(int index) {
+				return objects.get(index);
+			}
+		};
+	}
+
+	/**
+	 * Prefix sums of row heights (Fenwick tree) for variable-height virtualized rows.
+	 */
+	private static class RowHeights {
+		private final int size;
+		private final float[] heights;
+		private final double[] tree;
+
+		public RowHeights(int size, float estimate) {
+			this.size = size;
+			this.heights = new float[size];
+			this.tree = new double[size+1];
+			Arrays.fill(heights, estimate);
+			for(int i=1; i<=size; i++) {
+				tree[i] += estimate;
+				int j = i + (i & -i);
+				if(j<=size)
+					tree[j] += tree[i];
+			}
+		}
+
+		public float get(int index) {
+			return heights[index];
+		}
+
+		public void set(int index, float h) {
+			double d = h - heights[index];
+			if(d==0.0)
+				return;
+			heights[index] = h;
+			for(int i=index+1; i<=size; i += i & -i)
+				tree[i] += d;
+		}
+
+		public float offset(int index) {
+			double y = 0.0;
+			for(int i=index; i>0; i -= i & -i)
+				y += tree[i];
+			return (float) y;
+		}
+
+		public float total() {
+			return offset(size);
+		}
+
+		public int indexAt(float y) {
+			int index = 0;
+			double rem = y;
+			for(int step=Integer.highestOneBit(Math.max(size, 1)); step>0; step >>= 1) {
+				int i = index + step;
+				if(i<=size && tree[i]<=rem) {
+					index = i;
+					rem -= tree[i];
+				}
+			}
+			return Math.min(index, size-1);
+		}
+	}
+
 	protected UIElement[] listItems;
 	
 	private int selectedIndex = -1;
 
+	private ListModel model = null;
+	private int modelSize = 0;
+
+	/**
+	 * Number of rows created outside the visible area above and below the viewport in the virtualized mode.
+	 */
+	public int overscan = 2;
+
+	private float rowHeight = 0f;
+	private boolean fixedRowHeight = false;
+	private RowHeights rowHeights = null;
+
+	private ArrayList<T> rows = new ArrayList<>();
+	private ArrayList<T> prevRows = new ArrayList<>();
+	private ArrayList<T> rowPool = new ArrayList<>();
+	private int firstRow = 0;
+
+	private boolean rowsValid = false;
+	private float rowsTop, rowsBottom, rowsWidth;
+
 	public UIListBoxBase(UIContainer parent, List<?> objects) {
 		super(parent);
 		setItems(objects);
@@ -26,6 +128,9 @@ public UIListBoxBase(UIContainer parent) {
 	}
 
 	public void setItems(List<?> objects) {
+		resetRows();
+		model = null;
+		modelSize = 0;
 		getView().removeAllChildren();
 		if(objects==null) {
 			listItems = new UIElement[0];
@@ -45,15 +150,99 @@ public void setItems(Object[] objects) {
 		setItems(objects==null ? null : Arrays.asList(objects));
 	}
 
+	/**
+	 * Switches the list box to the virtualized mode.
+	 * Only the rows intersecting the viewport (plus {@link #overscan}) are created, and the rows scrolled out
+	 * of the view are reused for other items via {@link #bindItem(UIElement, int, Object)}.
+	 * Call {@link #modelChanged()} if the contents of the model change.
+	 * <p>Rows use the fixed or estimated row height, see {@link #setFixedRowHeight(float)} and {@link #setEstimatedRowHeight(float)}.
+	 * If neither is set, the height of the first created row is used as the estimate.</p>
+	 * @param model list model, or <code>null</code> to remove all items
+	 */
+	public void setModel(ListModel model) {
+		if(model==null) {
+			setItems((List<?>) null);
+			return;
+		}
+		getView().removeAllChildren();
+		listItems = new UIElement[0];
+		rows.clear();
+		rowPool.clear();
+		this.model = model;
+		modelChanged();
+	}
+
+	public ListModel getModel() {
+		return model;
+	}
+
+	public boolean isVirtual() {
+		return model!=null;
+	}
+
+	/**
+	 * Updates virtualized rows after the size or the contents of the model have changed.
+	 * Measured variable row heights are reset to the estimate.
+	 */
+	public void modelChanged() {
+		if(model==null)
+			return;
+		resetRows();
+		modelSize = model.size();
+		rowHeights = null;
+		deselect();
+		invalidateLayout();
+	}
+
+	/**
+	 * Sets the same height for all rows in the virtualized mode. Heights of the rows are not measured.
+	 * @param h row height
+	 */
+	public void setFixedRowHeight(float h) {
+		this.rowHeight = h;
+		this.fixedRowHeight = true;
+		rowHeights = null;
+		invalidateLayout();
+	}
+
+	/**
+	 * Sets the estimated row height for the virtualized mode. The actual height of each row is measured
+	 * when the row is created or bound, and the scroll range is updated accordingly.
+	 * @param h estimated row height
+	 */
+	public void setEstimatedRowHeight(float h) {
+		this.rowHeight = h;
+		this.fixedRowHeight = false;
+		rowHeights = null;
+		invalidateLayout();
+	}
+
 	protected abstract T createItem(int index, Object object);
+
+	/**
+	 * Reassigns a recycled row to a different item in the virtualized mode.
+	 * The default implementation returns <code>false</code>, in which case the row is discarded and a new one
+	 * is created using {@link #createItem(int, Object)}.
+	 * @param item row element previously created by {@link #createItem(int, Object)}
+	 * @param index new item index
+	 * @param object new item object
+	 * @return <code>true</code> if the row has been rebound
+	 */
+	protected boolean bindItem(T item, int index, Object object) {
+		return false;
+	}
 	
 	public int getSelectedIndex() {
 		return selectedIndex;
 	}
 	
-	@SuppressWarnings("unchecked")
+	/**
+	 * Returns the selected item element. In the virtualized mode, returns <code>null</code>
+	 * if the selected row is not currently created; use {@link #getSelectedIndex()} instead.
+	 * @return selected item or <code>null</code>
+	 */
 	public T getSelectedItem() {
-		return selectedIndex<0 ? null : (T)listItems[selectedIndex];
+		return selectedIndex<0 ? null : getItem(selectedIndex);
 	}
 	
 	public void deselect() {
@@ -61,22 +250,32 @@ public void deselect() {
 		onNothingSelected();
 	}
 	
-	@SuppressWarnings("unchecked")
 	public void select(int index) {
-		if(index>=0 && index<listItems.length) {
+		if(index>=0 && index<getNumItems()) {
 			this.selectedIndex = index;
-			onItemSelected((T)listItems[index]);
+			onItemSelected(getItem(index));
 		}
 	}
 	
 	public int getNumItems() {
-		return listItems.length;
+		return model!=null ? modelSize : listItems.length;
 	}
 	
+	/**
+	 * Returns the item element by index. In the virtualized mode, returns <code>null</code>
+	 * if the row for this index is not currently created.
+	 * @param index item index
+	 * @return item element
+	 */
 	@SuppressWarnings("unchecked")
 	public T getItem(int index) {
+		if(model!=null) {
+			int i = index - firstRow;
+			return (i>=0 && i<rows.size()) ? rows.get(i) : null;
+		}
 		return (T)listItems[index];
 	}
+
 	
 	public void onItemSelected(T item) {
 	}
@@ -87,8 +286,146 @@ public void onNothingSelected() {
 	public void onClickSelected() {
 	}
 	
+	private void resetRows() {
+		rowsValid = false;
+		for(T row : rows) {
+			row.setVisible(false);
+			rowPool.add(row);
+		}
+		rows.clear();
+		firstRow = 0;
+	}
+
+	private float getRowOffset(int index) {
+		return fixedRowHeight ? index * rowHeight : rowHeights.offset(index);
+	}
+
+	private float getTotalHeight() {
+		if(modelSize==0)
+			return 0f;
+		estimateRowHeight();
+		return fixedRowHeight ? modelSize * rowHeight : rowHeights.total();
+	}
+
+	private float estimateRowHeight() {
+		if(rowHeight<=0f) {
+			T row = obtainRow(0);
+			rowHeight = row.getHeight();
+			row.setVisible(false);
+			rowPool.add(row);
+		}
+		if(!fixedRowHeight && rowHeights==null)
+			rowHeights = new RowHeights(modelSize, rowHeight);
+		return rowHeight;
+	}
+
+	private int getRowAt(float y) {
+		if(fixedRowHeight)
+			return Math.max(0, Math.min(modelSize-1, (int) (y / rowHeight)));
+		else
+			return rowHeights.indexAt(y);
+	}
+
+	private T obtainRow(int index) {
+		Object obj = model.get(index);
+		while(!rowPool.isEmpty()) {
+			T row = rowPool.remove(rowPool.size()-1);
+			if(bindItem(row, index, obj)) {
+				row.setVisible(true);
+				return row;
+			}
+			getView().removeChild(row);
+		}
+		return createItem(index, obj);
+	}
+
+	private void releaseRow(ArrayList<T> list, int index) {
+		T row = list.get(index);
+		if(row!=null) {
+			row.setVisible(false);
+			rowPool.add(row);
+			list.set(index, null);
+		}
+	}
+
+	/**
+	 * Creates, recycles, and positions the rows intersecting the viewport in the virtualized mode.
+	 * Does nothing if the viewport has not changed since the last update.
+	 */
+	private void updateRows() {
+		UIPanView view = getView();
+		float top = view.getPanY();
+		float bottom = top + view.getHeight();
+		float w = view.getWidth();
+		if(rowsValid && top==rowsTop && bottom==rowsBottom && w==rowsWidth)
+			return;
+		rowsValid = true;
+		rowsTop = top;
+		rowsBottom = bottom;
+		rowsWidth = w;
+
+		ArrayList<T> prev = rows;
+		int prevFirst = firstRow;
+		rows = prevRows;
+		rows.clear();
+		prevRows = prev;
+		if(modelSize==0) {
+			firstRow = 0;
+		}
+		else {
+			estimateRowHeight();
+			int first = Math.max(0, getRowAt(top) - overscan);
+			firstRow = first;
+			for(int pi=0; pi<prev.size() && prevFirst+pi<first; pi++)
+				releaseRow(prev, pi);
+			int tail = prev.size() - 1;
+			float y = getRowOffset(first);
+			int extra = 0;
+			for(int i=first; i<modelSize && extra<=overscan; i++) {
+				int pi = i - prevFirst;
+				T row = null;
+				if(pi>=0 && pi<prev.size()) {
+					row = prev.get(pi);
+					prev.set(pi, null);
+				}
+				if(row==null) {
+					// reuse rows from the end of the previous range before creating new ones
+					for(; rowPool.isEmpty() && tail>pi; tail--)
+						releaseRow(prev, tail);
+					row = obtainRow(i);
+				}
+				float h = fixedRowHeight ? rowHeight : row.getHeight();
+				if(!fixedRowHeight)
+					rowHeights.set(i, h);
+				row.setPosition(0, y);
+				row.setSize(w, h);
+				rows.add(row);
+				y += h;
+				if(y>bottom)
+					extra++;
+			}
+		}
+		for(int pi=0; pi<prev.size(); pi++)
+			releaseRow(prev, pi);
+		prev.clear();
+		view.setPanRangeForClient(0, getTotalHeight());
+	}
+
+	@Override
+	protected void paintChildren(GraphAssist g) {
+		if(model!=null)
+			updateRows();
+		super.paintChildren(g);
+	}
+
 	@Override
 	protected float layoutView() {
+		if(model!=null) {
+			rowsValid = false;
+			for(T row : rows)
+				row.setSize(getView().getWidth(), row.getHeight());
+			return getTotalHeight();
+		}
 		float w = getView().getWidth();
 		float y = 0;
 		for(int i=0; i<listItems.length; i++) {
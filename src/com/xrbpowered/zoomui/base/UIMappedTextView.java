@@ -0,0 +1,330 @@
+package com.xrbpowered.zoomui.base;
+
+import static com.xrbpowered.zoomui.MouseInfo.LEFT;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.xrbpowered.zoomui.GraphAssist;
+import com.xrbpowered.zoomui.InputInfo;
+import com.xrbpowered.zoomui.KeyInputHandler;
+import com.xrbpowered.zoomui.MouseInfo;
+import com.xrbpowered.zoomui.RootContainer;
+import com.xrbpowered.zoomui.UIElement;
+
+/**
+ * Read-only viewer for large text files, such as logs, backed by a {@link MappedTextFile}.
+ * Must be placed in a {@link UIPanView}, similar to {@link UITextEditBase}.
+ *
+ * <p>Unlike {@link UITextEditBase}, the document is never loaded into memory: painting decodes only the visible lines.
+ * The file is indexed in the background, and the view can be scrolled while indexing is in progress;
+ * the scroll range grows as more lines are indexed. The horizontal scroll range is the width of the widest line painted so far.</p>
+ *
+ * <p>The user can select a line with the mouse or arrow keys and copy it with Ctrl+C.</p>
+ *
+ * <p>Lines are painted relative to the first visible line, so text is rendered correctly at any scroll position.
+ * However, scrolling positions are stored as <code>float</code>, so in files with millions of lines
+ * the scroll step and mouse picking near the end of the file become coarser than one pixel.</p>
+ */
+public class UIMappedTextView extends UIElement implements KeyInputHandler {
+
+	protected Font font = new Font("Tahoma", Font.PLAIN, GraphAssist.ptToPixels(9f));
+	protected float fontSizeUnscaled = font.getSize();
+
+	public Color colorBackground = Color.WHITE;
+	public Color colorHighlight = new Color(0xe8f0ff);
+	public Color colorText = Color.BLACK;
+
+	protected MappedTextFile file = null;
+	protected int lineCount = 0;
+	protected int selectedLine = -1;
+
+	protected int displayLine = 0;
+	protected float pixelSize = 0;
+	protected int lineHeight = 0;
+	protected int descent = 0;
+	protected int page = 0;
+	protected int tabWidth = 0;
+	protected int x0;
+	protected Rectangle clipBounds = new Rectangle();
+	protected int minx, maxx, maxy;
+	protected int maxWidth = 0;
+
+	protected Font pixelFont = null;
+	protected FontMetrics fm = null;
+	protected float fontSize = 0f;
+
+	private final AtomicBoolean repaintPending = new AtomicBoolean(false);
+
+	private final Runnable indexProgress = new Runnable() {
+		@Override
+		public void run() {
+			if(!repaintPending.compareAndSet(false, true))
+				return;
+			RootContainer root = getRoot();
+			if(root==null)
+				return;
+			root.getWindow().getFactory().invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					repaintPending.set(false);
+					repaint();
+				}
+			});
+		}
+	};
+
+	public UIMappedTextView(UIPanView parent) {
+		super(parent);
+	}
+
+	public UIPanView panView() {
+		return (UIPanView) getParent();
+	}
+
+	@Override
+	public boolean isVisible(Rectangle clip) {
+		return isVisible();
+	}
+
+	public void setFont(Font font, float fontSizePt) {
+		this.font = font;
+		this.fontSizeUnscaled = 96f*fontSizePt/72f;
+		this.fm = null;
+	}
+
+	/**
+	 * Opens a file and starts indexing it in the background. The previously opened file is closed.
+	 * @param f file
+	 * @param charset text encoding, see {@link MappedTextFile}
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public void open(File f, Charset charset) throws IOException {
+		MappedTextFile file = new MappedTextFile(f, charset);
+		close();
+		this.file = file;
+		file.setOnProgress(indexProgress);
+		file.startIndexing();
+		panView().setPan(0, 0);
+		repaint();
+	}
+
+	/**
+	 * Closes the file, if any.
+	 */
+	public void close() {
+		if(file!=null) {
+			try {
+				file.close();
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+		file = null;
+		lineCount = 0;
+		selectedLine = -1;
+		maxWidth = 0;
+	}
+
+	public MappedTextFile getFile() {
+		return file;
+	}
+
+	public int getSelectedLine() {
+		return selectedLine;
+	}
+
+	protected void updateMetrics(GraphAssist g, float fontSize) {
+		if(fm==null || fontSize!=this.fontSize) {
+			this.fontSize = fontSize;
+			pixelFont = font.deriveFont(fontSize);
+			fm = g.graph.getFontMetrics(pixelFont);
+			maxWidth = 0;
+		}
+		lineHeight = fm.getAscent()+fm.getDescent()-1;
+		descent = fm.getDescent();
+		tabWidth = fm.stringWidth("    ");
+		x0 = (int)(4/pixelSize);
+		page = (int)(getParent().getHeight()/pixelSize)/lineHeight;
+	}
+
+	@Override
+	public void paint(GraphAssist g) {
+		if(lineHeight>0)
+			displayLine = (int)(panView().getPanY() / pixelSize / lineHeight);
+
+		pixelSize = g.startPixelMode(this);
+		updateMetrics(g, Math.round(fontSizeUnscaled/pixelSize));
+		lineCount = file==null ? 0 : file.getLineCount();
+		
+		// paint relative to the first visible line: absolute coordinates in large files exceed float precision
+		g.translate(0, (double)displayLine*lineHeight);
+		g.graph.getClipBounds(clipBounds);
+		minx = (int)Math.floor(clipBounds.getMinX());
+		maxx = (int)Math.ceil(clipBounds.getMaxX());
+		maxy = (int)Math.ceil(clipBounds.getMaxY());
+
+		boolean focused = isFocused();
+		int y = lineHeight-descent;
+		g.setFont(pixelFont);
+		for(int lineIndex=displayLine; lineIndex<lineCount && y-lineHeight<maxy; lineIndex++) {
+			Color bg = (lineIndex==selectedLine && focused) ? colorHighlight : colorBackground;
+			int w = drawLine(g, file.getLine(lineIndex), y, bg);
+			if(w>maxWidth)
+				maxWidth = w;
+			y += lineHeight;
+		}
+		if(y-lineHeight<maxy)
+			g.fillRect(minx, y-lineHeight+descent, maxx-minx, maxy-y+lineHeight-descent, colorBackground);
+
+		float w = (maxWidth+x0*2)*pixelSize;
+		float h = (float)lineHeight*lineCount*pixelSize;
+		if(getWidth()!=w || getHeight()!=h) {
+			panView().setPanRangeForClient(w, h);
+			if(w<getParent().getWidth())
+				w = getParent().getWidth();
+			if(h<getParent().getHeight())
+				h = getParent().getHeight();
+			setSize(w, h);
+		}
+
+		g.finishPixelMode();
+	}
+
+	/**
+	 * Draws a line with tabs expanded and fills its background.
+	 * @return width of the line text
+	 */
+	protected int drawLine(GraphAssist g, String s, int y, Color bg) {
+		int top = y-lineHeight+descent;
+		if(x0>minx)
+			g.fillRect(minx, top, x0-minx, lineHeight, bg);
+		int x = x0;
+		int col = 0;
+		int len = s.length();
+		while(col<len) {
+			int t = s.indexOf('\t', col);
+			int end = t<0 ? len : t;
+			if(end>col) {
+				String seg = s.substring(col, end);
+				int w = fm.stringWidth(seg);
+				if(x<maxx && x+w>minx) {
+					g.fillRect(x, top, w, lineHeight, bg);
+					g.setColor(colorText);
+					g.drawString(seg, x, y);
+				}
+				x += w;
+			}
+			if(t<0)
+				break;
+			int w = ((x-x0)+tabWidth)/tabWidth*tabWidth-(x-x0);
+			if(x<maxx)
+				g.fillRect(x, top, w, lineHeight, bg);
+			x += w;
+			col = t+1;
+		}
+		if(x<maxx)
+			g.fillRect(x, top, maxx-x, lineHeight, bg);
+		return x-x0;
+	}
+
+	public void scrollToLine(int lineIndex) {
+		if(lineHeight==0)
+			return;
+		float pany = panView().getPanY();
+		if(displayLine>lineIndex)
+			pany = (float)lineIndex*lineHeight*pixelSize;
+		else if(displayLine+page<=lineIndex)
+			pany = (float)lineHeight*(lineIndex+1)*pixelSize - getParent().getHeight();
+		panView().setPan(panView().getPanX(), pany);
+	}
+
+	public void selectLine(int lineIndex) {
+		if(lineCount==0)
+			return;
+		if(lineIndex<0)
+			lineIndex = 0;
+		if(lineIndex>=lineCount)
+			lineIndex = lineCount-1;
+		selectedLine = lineIndex;
+		scrollToLine(lineIndex);
+		repaint();
+	}
+
+	public void copySelectedLine() {
+		if(file!=null && selectedLine>=0) {
+			StringSelection con = new StringSelection(file.getLine(selectedLine));
+			Toolkit.getDefaultToolkit().getSystemClipboard().setContents(con, con);
+		}
+	}
+
+	@Override
+	public boolean onKeyPressed(char c, int code, InputInfo input) {
+		switch(code) {
+			case KeyEvent.VK_UP:
+				selectLine(selectedLine-1);
+				return true;
+			case KeyEvent.VK_DOWN:
+				selectLine(selectedLine+1);
+				return true;
+			case KeyEvent.VK_PAGE_UP:
+				selectLine(selectedLine-page);
+				return true;
+			case KeyEvent.VK_PAGE_DOWN:
+				selectLine(selectedLine+page);
+				return true;
+			case KeyEvent.VK_HOME:
+				if(input.isCtrlDown())
+					selectLine(0);
+				return true;
+			case KeyEvent.VK_END:
+				if(input.isCtrlDown())
+					selectLine(lineCount-1);
+				return true;
+			case KeyEvent.VK_C:
+				if(input.isCtrlDown())
+					copySelectedLine();
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	@Override
+	public boolean onMouseDown(float x, float y, MouseInfo mouse) {
+		if(mouse.eventButton==LEFT) {
+			if(!isFocused())
+				getRoot().setFocus(this);
+			if(lineHeight>0) {
+				int lineIndex = (int)(y / pixelSize / lineHeight);
+				if(lineIndex<lineCount)
+					selectedLine = lineIndex;
+			}
+			repaint();
+			return true;
+		}
+		else
+			return false;
+	}
+
+	@Override
+	public void onFocusGained() {
+		repaint();
+	}
+
+	@Override
+	public void onFocusLost() {
+		repaint();
+	}
+
+}
@@ -19,7 +19,7 @@
  * child elements are drawn in the transformed local space. The drawing order is as follows:</p>
  * <ul>
  * <li>{@link #paintBackground(GraphAssist)} in untransformed local space.</li>
- * <li>{@link UIContainer#paintChildren(GraphAssist)} in transformed local space.</li>
+ * <li>{@link #paintView(GraphAssist)} in transformed local space, which calls {@link UIContainer#paintChildren(GraphAssist)}.</li>
  * <li>{@link #paintForeground(GraphAssist)} in untransformed local space.</li>
  * </ul> 
  * 
@@ -60,7 +60,7 @@ public boolean startDrag(float x, float y, MouseInfo mouse) {
 		public boolean onMouseDrag(float rx, float ry, float drx, float dry, MouseInfo mouse) {
 			float pix = getPixelSize();
 			pan(drx * pix, dry * pix);
-			repaint();
+			repaintTransform();
 			return true;
 		}
 	};
@@ -340,12 +340,46 @@ protected void paintChildren(GraphAssist g) {
 		if(g.pushClip(this)) {
 			g.pushTx();
 			applyTransform(g);
-			super.paintChildren(g);
+			paintView(g);
 			g.popTx();
 			g.popClip();
 		}
 	}
 
+	/**
+	 * Paints child elements in transformed local space. Called from {@link #paintChildren(GraphAssist)}
+	 * after the clip and the view transform have been applied.
+	 * @param g wrapper for {@link Graphics2D} canvas in transformed local coordinates
+	 */
+	protected void paintView(GraphAssist g) {
+		super.paintChildren(g);
+	}
+
+	/**
+	 * Requests repainting after the view transform (pan or zoom) has changed.
+	 * By default, this is the same as {@link #repaint()}. Subclasses that cache the contents of the view
+	 * can override this method to keep the cache, because the contents are not changed by panning.
+	 */
+	protected void repaintTransform() {
+		repaint();
+	}
+
+	/**
+	 * Requests repainting of a rectangular area in transformed local space.
+	 * The area is clipped to the bounds of this view, and the request is dropped if
+	 * the area is outside the view.
+	 */
+	@Override
+	public void repaint(float x, float y, float w, float h) {
+		invalidateLayerCache();
+		float x1 = Math.max(localToParentX(x), getX());
+		float y1 = Math.max(localToParentY(y), getY());
+		float x2 = Math.min(localToParentX(x+w), getX()+getWidth());
+		float y2 = Math.min(localToParentY(y+h), getY()+getHeight());
+		if(x2>x1 && y2>y1)
+			getParent().repaint(x1, y1, x2-x1, y2-y1);
+	}
+
 	@Override
 	public UIElement getElementAt(float px, float py) {
 		if(isHit(px, py))
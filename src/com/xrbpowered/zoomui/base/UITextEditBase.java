@@ -16,6 +16,7 @@
 import java.awt.event.KeyEvent;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -62,16 +63,93 @@ public void set(Position pos) {
 		public boolean equals(Position pos) {
 			return this.line==pos.line && this.col==pos.col;
 		}
+		
+		public boolean isBefore(Position pos) {
+			return this.line<pos.line || this.line==pos.line && this.col<pos.col;
+		}
 	}
 	
 	public static Position copyPosition(Position pos) {
 		return pos==null ? null : new Position(pos);
 	}
 	
+	/**
+	 * Moves a position to the nearest valid cursor position in the current text.
+	 * @param pos position to modify, can be <code>null</code>
+	 */
+	protected void clampPosition(Position pos) {
+		if(pos==null)
+			return;
+		pos.line = Math.max(0, Math.min(pos.line, lines.size()-1));
+		pos.col = Math.max(0, Math.min(pos.col, lines.get(pos.line).length));
+	}
+	
+	/**
+	 * Additional caret used for multi-caret editing and block selection.
+	 * The selection follows the same convention as the primary cursor: <code>selStart</code> is the anchor
+	 * and <code>selEnd</code> is at the caret, or both are <code>null</code> if there is no selection.
+	 */
+	public static class Caret {
+		public final Position cursor;
+		public Position selStart, selEnd;
+		
+		public Caret(Position cursor, Position selStart, Position selEnd) {
+			this.cursor = cursor;
+			this.selStart = selStart;
+			this.selEnd = selEnd;
+		}
+		
+		public Caret(Caret caret) {
+			this(new Position(caret.cursor), copyPosition(caret.selStart), copyPosition(caret.selEnd));
+		}
+		
+		public Position min() {
+			if(selStart==null)
+				return cursor;
+			return selEnd.isBefore(selStart) ? selEnd : selStart;
+		}
+		
+		public Position max() {
+			if(selStart==null)
+				return cursor;
+			return selEnd.isBefore(selStart) ? selStart : selEnd;
+		}
+	}
+	
 	public class Line {
 		public int offs, length;
 		public int width = -1;
 		
+		/**
+		 * Syntax tokens as pairs of start column and style index, or <code>null</code> if the line
+		 * has been modified since it was tokenized. See {@link SyntaxHighlighter}.
+		 */
+		public int[] tokens = null;
+		/**
+		 * Lexer states at the start and the end of the line.
+		 */
+		public int startState, endState;
+		
+		/**
+		 * Cached x positions of columns relative to the line start, or <code>null</code> if not measured yet.
+		 * Only the first {@link #prefixCount} elements are valid. See {@link UITextEditBase#getPrefixWidths(Line, int, int)}.
+		 */
+		public int[] prefixWidths = null;
+		public int prefixCount = 0;
+		public int prefixMetrics = -1;
+		
+		/**
+		 * Start columns of visual rows in word wrap mode, or <code>null</code> if not wrapped yet.
+		 * See {@link UITextEditBase#getWrapStarts(Line, int, int)}.
+		 */
+		public int[] wrapStarts = null;
+		public int wrapWidth = -1;
+		public int wrapMetrics = -1;
+		
+		/**
+		 * Calculates the text offset of this line by iterating all lines.
+		 * Use {@link UITextEditBase#getLineStart(int)} if the line index is known.
+		 */
 		public int calcStart() {
 			int pos = 0;
 			for(Line line: lines) {
@@ -83,7 +161,17 @@ public int calcStart() {
 		}
 		
 		public void reset() {
+			tokens = null;
+			resetLayout();
+		}
+		
+		/**
+		 * Clears cached measurements, e.g., after the line is tokenized.
+		 */
+		public void resetLayout() {
 			width = -1;
+			prefixWidths = null;
+			wrapStarts = null;
 		}
 	}
 	
@@ -92,6 +180,15 @@ public void reset() {
 		public boolean startDrag(float x, float y, MouseInfo mouse) {
 			if(mouse.eventButton==LEFT) {
 				checkPushHistory(HistoryAction.unspecified);
+				clearCarets();
+				if(mouse.mods==ALT && !singleLine && !wordWrap) {
+					deselect();
+					cursorToMouse(x, y);
+					blockSelect = true;
+					blockLine = cursor.line;
+					blockX = x;
+					return true;
+				}
 				cursorToMouse(x, y);
 				startSelection();
 				return true;
@@ -101,6 +198,14 @@ public boolean startDrag(float x, float y, MouseInfo mouse) {
 
 		@Override
 		public boolean onMouseDrag(float rx, float ry, float drx, float dry, MouseInfo mouse) {
+			if(blockSelect) {
+				float x = rootToLocalX(rx);
+				cursorToMouse(x, rootToLocalY(ry));
+				selectBlock(blockLine, blockX, cursor.line, x);
+				scrollToCursor();
+				repaint();
+				return true;
+			}
 			cursorToMouse(rootToLocalX(rx), rootToLocalY(ry));
 			scrollToCursor();
 			modifySelection(true);
@@ -109,42 +214,277 @@ public boolean onMouseDrag(float rx, float ry, float drx, float dry, MouseInfo m
 		}
 	};
 
-	protected class HistoryState {
+	protected enum HistoryAction {
+		unspecified, typing, deleting
+	}
+	
+	/**
+	 * Cursor and selection state recorded in the undo history.
+	 */
+	protected class CursorState {
 		public final Position cursor;
 		public final Position selStart;
 		public final Position selEnd;
-		public final String text;
+		/**
+		 * Additional carets packed as six values each: cursor line and column, then selection start and end,
+		 * with -1 as the line if there is no selection. Avoids creating objects for every caret on every history item.
+		 */
+		public final int[] carets;
 		
-		public HistoryState() {
-			text = UITextEditBase.this.text;
+		public CursorState() {
 			cursor = new Position(UITextEditBase.this.cursor);
 			selStart = copyPosition(UITextEditBase.this.selStart);
 			selEnd = copyPosition(UITextEditBase.this.selEnd);
+			ArrayList<Caret> list = UITextEditBase.this.carets;
+			carets = list.isEmpty() ? null : new int[list.size()*6];
+			for(int i=0, j=0; i<list.size(); i++, j+=6) {
+				Caret c = list.get(i);
+				carets[j] = c.cursor.line;
+				carets[j+1] = c.cursor.col;
+				carets[j+2] = c.selStart==null ? -1 : c.selStart.line;
+				carets[j+3] = c.selStart==null ? 0 : c.selStart.col;
+				carets[j+4] = c.selEnd==null ? -1 : c.selEnd.line;
+				carets[j+5] = c.selEnd==null ? 0 : c.selEnd.col;
+			}
 		}
 		
 		public void restore() {
-			setText(text, false);
 			UITextEditBase.this.cursor.set(cursor);
 			UITextEditBase.this.selStart = copyPosition(selStart);
 			UITextEditBase.this.selEnd = copyPosition(selEnd);
+			UITextEditBase.this.carets.clear();
+			if(carets!=null) {
+				for(int j=0; j<carets.length; j+=6) {
+					UITextEditBase.this.carets.add(new Caret(new Position(carets[j], carets[j+1]),
+							carets[j+2]<0 ? null : new Position(carets[j+2], carets[j+3]),
+							carets[j+4]<0 ? null : new Position(carets[j+4], carets[j+5])));
+				}
+			}
+			// the recorded state should always match the text, but never leave the cursor outside of it
+			clampPosition(UITextEditBase.this.cursor);
+			clampPosition(UITextEditBase.this.selStart);
+			clampPosition(UITextEditBase.this.selEnd);
+			for(Caret c : UITextEditBase.this.carets) {
+				clampPosition(c.cursor);
+				clampPosition(c.selStart);
+				clampPosition(c.selEnd);
+			}
+			cursorLine = null;
 			updateSelRange();
 			scrollToCursor();
 		}
 	}
 	
-	protected enum HistoryAction {
-		unspecified, typing, deleting
+	/**
+	 * Single text change: <code>removed</code> text at <code>pos</code> was replaced with <code>added</code> text.
+	 */
+	protected static class TextEdit {
+		public int pos;
+		public final StringBuilder removed;
+		public final StringBuilder added;
+		
+		public TextEdit(int pos, String removed, String added) {
+			this.pos = pos;
+			this.removed = new StringBuilder(removed);
+			this.added = new StringBuilder(added);
+		}
+		
+		/**
+		 * Merges a subsequent change into this one if the changes are adjacent,
+		 * which is the case for consecutive typing, backspace, or delete.
+		 * @return <code>true</code> if the change has been merged
+		 */
+		public boolean canCoalesce(int pos, String removed, String added) {
+			if(removed.isEmpty() && pos==this.pos+this.added.length())
+				return true;
+			return added.isEmpty() && this.added.length()==0 && (pos==this.pos || pos+removed.length()==this.pos);
+		}
+		
+		public boolean coalesce(int pos, String removed, String added) {
+			if(removed.isEmpty() && pos==this.pos+this.added.length()) {
+				this.added.append(added);
+				return true;
+			}
+			if(added.isEmpty() && this.added.length()==0) {
+				if(pos==this.pos) {
+					this.removed.append(removed);
+					return true;
+				}
+				else if(pos+removed.length()==this.pos) {
+					this.removed.insert(0, removed);
+					this.pos = pos;
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		public long sizeOf() {
+			return 48L + 2L*(removed.length()+added.length());
+		}
+	}
+	
+	/**
+	 * Undo history item storing the text changes made since the previous item
+	 * together with the cursor and selection state before and after the changes.
+	 */
+	protected class HistoryState {
+		public final CursorState before;
+		public final CursorState after;
+		public final TextEdit[] edits;
+		
+		public HistoryState(CursorState before, ArrayList<TextEdit> edits) {
+			this.before = before;
+			this.after = new CursorState();
+			this.edits = edits.toArray(new TextEdit[edits.size()]);
+			for(TextEdit e : this.edits) {
+				e.removed.trimToSize();
+				e.added.trimToSize();
+			}
+		}
+		
+		/**
+		 * Checks if two consecutive edits can be applied as one batch, i.e., the second edit starts after the text inserted by the first one.
+		 */
+		private boolean isBatch(int i) {
+			return edits[i+1].pos>=edits[i].pos+edits[i].added.length();
+		}
+		
+		/**
+		 * Reverts the edits. Runs of consecutive edits in ascending order, such as multi-caret edits,
+		 * are reverted as one batch with {@link UITextEditBase#replaceTexts(int, int[], int[], String[])}.
+		 */
+		public void undo() {
+			recordEdits = false;
+			for(int i=edits.length-1; i>=0;) {
+				int from = i;
+				while(from>0 && isBatch(from-1))
+					from--;
+				if(from==i) {
+					TextEdit e = edits[i];
+					replaceText(e.pos, e.pos+e.added.length(), e.removed.toString());
+				}
+				else {
+					int n = i-from+1;
+					int[] starts = new int[n];
+					int[] ends = new int[n];
+					String[] adds = new String[n];
+					for(int k=0; k<n; k++) {
+						TextEdit e = edits[from+k];
+						starts[k] = e.pos;
+						ends[k] = e.pos+e.added.length();
+						adds[k] = e.removed.toString();
+					}
+					replaceTexts(n, starts, ends, adds);
+				}
+				i = from-1;
+			}
+			recordEdits = true;
+			if(before!=null)
+				before.restore();
+		}
+		
+		public void redo() {
+			recordEdits = false;
+			for(int i=0; i<edits.length;) {
+				int to = i;
+				while(to<edits.length-1 && isBatch(to))
+					to++;
+				if(to==i) {
+					TextEdit e = edits[i];
+					replaceText(e.pos, e.pos+e.removed.length(), e.added.toString());
+				}
+				else {
+					// edit positions include the changes made by the preceding edits of the batch
+					int n = to-i+1;
+					int[] starts = new int[n];
+					int[] ends = new int[n];
+					String[] adds = new String[n];
+					int shift = 0;
+					for(int k=0; k<n; k++) {
+						TextEdit e = edits[i+k];
+						starts[k] = e.pos-shift;
+						ends[k] = starts[k]+e.removed.length();
+						adds[k] = e.added.toString();
+						shift += e.added.length()-e.removed.length();
+					}
+					replaceTexts(n, starts, ends, adds);
+				}
+				i = to+1;
+			}
+			recordEdits = true;
+			after.restore();
+		}
+		
+		public long sizeOf() {
+			long size = 128L;
+			for(TextEdit e : edits)
+				size += e.sizeOf();
+			if(before!=null && before.carets!=null)
+				size += 4L*before.carets.length;
+			if(after.carets!=null)
+				size += 4L*after.carets.length;
+			return size;
+		}
 	}
 	
+	/**
+	 * Default memory budget of the undo history of new text edits: 16 MB.
+	 */
+	public static long defaultHistoryBytes = 16L*1024L*1024L;
+	
 	protected HistoryAction historyAction = HistoryAction.unspecified;
-	public History<HistoryState> history = new History<HistoryState>(32) {
+	
+	protected final ArrayList<TextEdit> pendingEdits = new ArrayList<>();
+	protected CursorState pendingBefore = null;
+	protected boolean recordEdits = true;
+	private int lastBatchSize = 0;
+	private int lastBatchEnd = 0;
+	
+	public History<HistoryState> history = new History<HistoryState>(0, defaultHistoryBytes) {
 		@Override
 		protected void apply(HistoryState item) {
-			item.restore();
+			item.after.restore();
+		}
+		@Override
+		protected void move(int from, int to) {
+			for(int i=from; i>to; i--)
+				get(i).undo();
+			for(int i=from+1; i<=to; i++)
+				get(i).redo();
+			// the next item starts from the restored state
+			pendingEdits.clear();
+			pendingBefore = null;
+			lastBatchSize = 0;
+		}
+		@Override
+		protected long sizeOf(HistoryState item) {
+			return item.sizeOf();
 		}
 		@Override
 		public void push() {
-			push(new HistoryState());
+			if(size()==0) {
+				pendingEdits.clear();
+				push(new HistoryState(null, pendingEdits));
+				pendingBefore = null;
+			}
+			else if(!pendingEdits.isEmpty()) {
+				push(new HistoryState(pendingBefore, pendingEdits));
+				pendingEdits.clear();
+				pendingBefore = null;
+			}
+		}
+		@Override
+		public boolean undo() {
+			if(!pendingEdits.isEmpty())
+				push();
+			return super.undo();
+		}
+		@Override
+		public boolean redo() {
+			if(!pendingEdits.isEmpty())
+				push();
+			return super.redo();
 		}
 	};
 
@@ -153,8 +493,9 @@ public void push() {
 	public boolean autoSelect = false;
 	public boolean hideSelection = true;
 	
-	protected String text;
+	protected TextBuffer text;
 	protected ArrayList<L> lines = new ArrayList<>();
+	protected final LineIndex lineStarts = new LineIndex();
 	
 	protected final Position cursor = new Position(0, 0);
 	protected Position selStart = null;
@@ -162,6 +503,15 @@ public void push() {
 	protected Position selMin = null;
 	protected Position selMax = null;
 	
+	/**
+	 * Additional carets, sorted by position and not overlapping each other or the primary cursor.
+	 * Empty unless multiple carets or a block selection have been created.
+	 */
+	protected final ArrayList<Caret> carets = new ArrayList<>();
+	protected boolean blockSelect = false;
+	protected int blockLine;
+	protected float blockX;
+	
 	protected float cursorX;
 	protected L cursorLine = null;
 	protected int cursorLineStart = -1;
@@ -180,8 +530,22 @@ public void push() {
 	
 	protected Font[] fonts = null;
 	protected FontMetrics[] fm = null;
+	protected CharAdvances[] advances = null;
+	/**
+	 * Incremented when fonts are reallocated, invalidates {@link Line#prefixWidths}.
+	 */
+	protected int metricsVersion = 0;
 	protected float fontSize = 0f;
-	//private LineTokeniser tokeniser = new LineTokeniser(null);
+	protected SyntaxHighlighter highlighter = null;
+	
+	protected boolean wordWrap = false;
+	/**
+	 * Number of visual rows of each line in word wrap mode. Lines that have not been wrapped yet have estimated row counts.
+	 */
+	protected final LineIndex visualRows = new LineIndex();
+	protected int wrapWidth = 0;
+	protected int visualRowsMetrics = -1;
+	protected float averageCharWidth = 0f;
 	
 	public UITextEditBase(UIPanView parent, boolean singleLine) {
 		super(parent);
@@ -208,20 +572,27 @@ public void scrollToCursor() {
 		float pany = panView().getPanY();
 		
 		checkCursorLineCache();
-		int cx = x0+stringWidth(cursorLine, cursorLineStart, cursorLineStart, cursorLineStart+cursor.col);
-		if(cx-x0<minx)
-			panx = (cx-x0)*pixelSize;
-		else if(cx+x0>maxx)
-			panx += (cx+x0-maxx)*pixelSize; // FIXME error in this branch
+		int row = cursor.line;
+		if(wordWrap) {
+			panx = 0;
+			row = getCursorRow();
+		}
+		else {
+			int cx = x0+stringWidth(cursorLine, cursorLineStart, cursorLineStart, cursorLineStart+cursor.col);
+			if(cx-x0<minx)
+				panx = (cx-x0)*pixelSize;
+			else if(cx+x0>maxx)
+				panx += (cx+x0-maxx)*pixelSize; // FIXME error in this branch
+		}
 		
 		if(singleLine) {
 			pany = 0;
 		}
 		else {
-			if(displayLine>cursor.line)
-				pany = cursor.line*lineHeight*pixelSize;
-			else if(displayLine+page<=cursor.line) {
-				pany = lineHeight*(cursor.line+1)*pixelSize - getParent().getHeight();
+			if(displayLine>row)
+				pany = row*lineHeight*pixelSize;
+			else if(displayLine+page<=row) {
+				pany = lineHeight*(row+1)*pixelSize - getParent().getHeight();
 			}
 		}
 		
@@ -232,10 +603,51 @@ public void setText(String text) {
 		setText(text, true);
 	}
 	
+	/**
+	 * Returns the document text. The string is materialized from the text buffer on demand
+	 * and cached until the next modification, therefore this method is <i>O</i>(<i>n</i>) after each edit.
+	 * @return document text
+	 */
 	public String getText() {
+		return text.toString();
+	}
+	
+	public TextBuffer getTextBuffer() {
 		return text;
 	}
 
+	/**
+	 * Creates the text storage for the document. Subclasses can override this method to use
+	 * a different {@link TextBuffer} implementation.
+	 * @param text initial text
+	 * @return text buffer
+	 */
+	protected TextBuffer createBuffer(String text) {
+		return new PieceTable(text);
+	}
+
+	/**
+	 * Enables syntax highlighting with the given tokenizer, or disables it.
+	 * @param tokenizer tokenizer, or <code>null</code> to disable highlighting
+	 */
+	public void setTokenizer(LineTokenizer tokenizer) {
+		if(highlighter!=null)
+			highlighter.reset();
+		highlighter = tokenizer==null ? null : new SyntaxHighlighter(this, tokenizer);
+		for(L line : lines) {
+			line.width = -1;
+			line.tokens = null;
+		}
+		this.fonts = null;
+		this.fm = null;
+		updateSize();
+		repaint();
+	}
+	
+	public SyntaxHighlighter getHighlighter() {
+		return highlighter;
+	}
+
 	@SuppressWarnings("unchecked")
 	protected L createLine() {
 		return (L) new Line();
@@ -243,38 +655,322 @@ protected L createLine() {
 	
 	protected void setText(String text, boolean resetHistory) {
 		lines.clear();
+		lineStarts.clear();
 		Matcher m = newlineRegex.matcher(text);
 		if(singleLine) {
-			this.text = m.replaceAll("").replaceAll("\\t", "");
+			text = m.replaceAll("").replaceAll("\\t", "");
 			L line = createLine();
-			lines.add(line);
 			line.offs = 0;
-			line.length = this.text.length();
+			line.length = text.length();
+			addLine(line);
 		}
 		else {
-			this.text = text;
 			L line = createLine();
-			lines.add(line);
 			line.offs = 0;
 			int pos = 0;
 			while(m.find()) {
 				line.length = m.start()-pos;
+				addLine(line);
 				line = createLine();
-				lines.add(line);
 				pos = m.end();
 				line.offs = pos-m.start();
 			}
 			line.length = text.length()-pos;
+			addLine(line);
 		}
+		if(!resetHistory && recordEdits && this.text!=null)
+			recordEdit(0, this.text.toString(), text);
+		this.text = createBuffer(text);
 		cursorLine = null;
+		clearCarets();
+		if(highlighter!=null)
+			highlighter.reset();
+		if(wordWrap)
+			estimateVisualRows();
 		
 		if(resetHistory) {
+			pendingEdits.clear();
+			pendingBefore = null;
 			history.clear();
 			history.push();
 			panView().setPan(0, 0);
 		}
 	}
 	
+	private void addLine(L line) {
+		lines.add(line);
+		lineStarts.add(line.offs+line.length);
+	}
+	
+	/**
+	 * Inserts a line and updates the line start index.
+	 * @param index line index
+	 * @param line new line
+	 */
+	protected void insertLine(int index, L line) {
+		lines.add(index, line);
+		lineStarts.insert(index, line.offs+line.length);
+		if(wordWrap)
+			visualRows.insert(index, estimateRows(line));
+		cursorLine = null;
+		if(highlighter!=null)
+			highlighter.invalidate(index);
+	}
+
+	/**
+	 * Removes lines in the range <code>[from, to)</code> and updates the line start index.
+	 * @param from first line to remove, inclusive
+	 * @param to last line to remove, exclusive
+	 */
+	protected void removeLines(int from, int to) {
+		if(from>=to)
+			return;
+		lines.subList(from, to).clear();
+		lineStarts.remove(from, to);
+		if(wordWrap)
+			visualRows.remove(from, to);
+		cursorLine = null;
+		if(highlighter!=null)
+			highlighter.invalidate(from);
+	}
+	
+	/**
+	 * Updates the line start index after {@link Line#offs} or {@link Line#length} of the line has changed.
+	 * @param index line index
+	 */
+	protected void updateLine(int index) {
+		Line line = lines.get(index);
+		lineStarts.setSpan(index, line.offs+line.length);
+		cursorLine = null;
+		if(highlighter!=null)
+			highlighter.invalidate(index);
+	}
+
+	/**
+	 * Returns the text offset of the first character of the line in <i>O</i>(log <i>n</i>).
+	 * @param index line index
+	 * @return text offset
+	 */
+	public int getLineStart(int index) {
+		return lineStarts.getOffset(index) + lines.get(index).offs;
+	}
+
+	/**
+	 * Finds the line containing a text offset in <i>O</i>(log <i>n</i>).
+	 * The end of a line belongs to that line rather than to the line separator.
+	 * @param textPos text offset
+	 * @return line index
+	 */
+	public int getLineAt(int textPos) {
+		int index = lineStarts.findLine(textPos);
+		if(index>0 && textPos<getLineStart(index))
+			index--;
+		return index;
+	}
+
+	/**
+	 * Enables or disables word wrap. In word wrap mode, lines are split into visual rows that fit the width of the view,
+	 * and there is no horizontal scrolling. Rows are computed lazily for the visible lines and cached in each line.
+	 * Single line editors do not support word wrap.
+	 * @param wrap <code>true</code> to enable word wrap
+	 */
+	public void setWordWrap(boolean wrap) {
+		if(singleLine || wrap==wordWrap)
+			return;
+		// keep the first visible line
+		int top;
+		if(wrap) {
+			wordWrap = true;
+			estimateVisualRows();
+			top = visualRows.getOffset(Math.min(displayLine, lines.size()-1));
+		}
+		else {
+			wordWrap = false;
+			top = visualRows.findLine(displayLine);
+			visualRows.clear();
+		}
+		displayLine = top;
+		panView().setPanRangeForClient(0, getRowCount()*lineHeight*pixelSize);
+		panView().setPan(0, top*lineHeight*pixelSize);
+		updateSize();
+		repaint();
+	}
+	
+	public boolean isWordWrap() {
+		return wordWrap;
+	}
+	
+	/**
+	 * Estimates the number of visual rows of a line from its length, without measuring the text.
+	 */
+	protected int estimateRows(L line) {
+		if(line.wrapStarts!=null && line.wrapWidth==wrapWidth && line.wrapMetrics==metricsVersion)
+			return line.wrapStarts.length;
+		if(averageCharWidth<=0f || wrapWidth<=0)
+			return 1;
+		return Math.max(1, (int)Math.ceil(line.length*averageCharWidth/wrapWidth));
+	}
+	
+	/**
+	 * Resets the visual row index to estimated row counts in linear time. Lines are measured and wrapped only when needed.
+	 */
+	protected void estimateVisualRows() {
+		visualRows.clear();
+		for(L line : lines)
+			visualRows.add(estimateRows(line));
+	}
+	
+	/**
+	 * Returns the start columns of visual rows of a line in word wrap mode, wrapping the line if it is not cached.
+	 * Lines are broken after whitespace, or anywhere within words that do not fit in a row.
+	 * Also updates the row count of the line in {@link #visualRows}.
+	 * @param line line
+	 * @param lineIndex line index
+	 * @param lineStart text offset of the line
+	 * @return start columns, the first one being 0
+	 */
+	protected int[] getWrapStarts(L line, int lineIndex, int lineStart) {
+		if(line.wrapStarts!=null && line.wrapWidth==wrapWidth && line.wrapMetrics==metricsVersion)
+			return line.wrapStarts;
+		int len = line.length;
+		int[] widths = getPrefixWidths(line, lineStart, len);
+		int[] starts = wrapBuffer;
+		int count = 1;
+		starts[0] = 0;
+		if(wrapWidth>0 && widths[len]>wrapWidth) {
+			String s = text.substring(lineStart, lineStart+len);
+			int rs = 0;
+			while(widths[len]-widths[rs]>wrapWidth) {
+				// last column that fits in the row
+				int lo = rs+1;
+				int hi = len;
+				int limit = widths[rs]+wrapWidth;
+				while(lo<hi) {
+					int mid = (lo+hi+1)>>>1;
+					if(widths[mid]<=limit)
+						lo = mid;
+					else
+						hi = mid-1;
+				}
+				int b = lo;
+				// not even the last column fits: it takes the last row on its own
+				if(b>=len)
+					break;
+				if(Character.isWhitespace(s.charAt(b))) {
+					// trailing whitespace stays in the row
+					while(b<len && Character.isWhitespace(s.charAt(b)))
+						b++;
+				}
+				else {
+					while(b>rs && !Character.isWhitespace(s.charAt(b-1)))
+						b--;
+					if(b==rs)
+						b = lo;
+				}
+				if(b>=len)
+					break;
+				if(count==starts.length)
+					starts = wrapBuffer = Arrays.copyOf(starts, count*2);
+				starts[count++] = b;
+				rs = b;
+			}
+		}
+		line.wrapStarts = Arrays.copyOf(starts, count);
+		line.wrapWidth = wrapWidth;
+		line.wrapMetrics = metricsVersion;
+		visualRows.setSpan(lineIndex, count);
+		return line.wrapStarts;
+	}
+	private int[] wrapBuffer = new int[16];
+	
+	/**
+	 * Finds the visual row of a line that contains a column. A column at a row boundary belongs to the next row.
+	 * @param starts start columns of rows, see {@link #getWrapStarts(Line, int, int)}
+	 * @param col column
+	 * @return row index within the line
+	 */
+	protected static int findRow(int[] starts, int col) {
+		int lo = 0;
+		int hi = starts.length-1;
+		while(lo<hi) {
+			int mid = (lo+hi+1)>>>1;
+			if(starts[mid]<=col)
+				lo = mid;
+			else
+				hi = mid-1;
+		}
+		return lo;
+	}
+	
+	/**
+	 * Returns the visual row of the cursor, which is the same as the cursor line if word wrap is disabled.
+	 * @return row index from the start of the document
+	 */
+	public int getCursorRow() {
+		if(!wordWrap)
+			return cursor.line;
+		if(advances==null)
+			return visualRows.getOffset(cursor.line);
+		checkCursorLineCache();
+		int[] starts = getWrapStarts(cursorLine, cursor.line, cursorLineStart);
+		return visualRows.getOffset(cursor.line) + findRow(starts, Math.min(cursor.col, cursorLine.length));
+	}
+	
+	/**
+	 * Returns the total number of visual rows, which is the number of lines if word wrap is disabled.
+	 * In word wrap mode, the value includes estimated row counts of lines that have not been wrapped yet.
+	 * @return number of rows
+	 */
+	public int getRowCount() {
+		return wordWrap ? visualRows.getLength() : lines.size();
+	}
+	
+	/**
+	 * Moves the cursor to a visual row in word wrap mode, keeping the cursor x position.
+	 * @param row row index from the start of the document
+	 */
+	protected void cursorToRow(int row) {
+		int rows = visualRows.getLength();
+		if(row>=rows)
+			row = rows-1;
+		if(row<0)
+			row = 0;
+		int lineIndex = visualRows.findLine(row);
+		L line = lines.get(lineIndex);
+		int lineStart = getLineStart(lineIndex);
+		int[] starts = getWrapStarts(line, lineIndex, lineStart);
+		int r = Math.min(row-visualRows.getOffset(lineIndex), starts.length-1);
+		int[] widths = getPrefixWidths(line, lineStart, line.length);
+		int rs = starts[r];
+		int col = searchCol(widths, line.length, cursorX/pixelSize-x0+widths[rs]);
+		if(col<rs)
+			col = rs;
+		else if(r+1<starts.length && col>=starts[r+1])
+			col = starts[r+1]-1;
+		cursor.line = lineIndex;
+		cursor.col = col;
+	}
+	
+	/**
+	 * Moves the cursor by a number of visual rows in word wrap mode, or by lines otherwise.
+	 * @param delta number of rows, negative to move up
+	 */
+	protected void moveCursorRows(int delta) {
+		if(!wordWrap) {
+			cursor.line = Math.max(0, Math.min(lines.size()-1, cursor.line+delta));
+			updateCursor();
+			return;
+		}
+		if(cursorX<0) {
+			checkCursorLineCache();
+			int[] starts = getWrapStarts(cursorLine, cursor.line, cursorLineStart);
+			int[] widths = getPrefixWidths(cursorLine, cursorLineStart, cursorLine.length);
+			int col = Math.min(cursor.col, cursorLine.length);
+			cursorX = (x0+widths[col]-widths[starts[findRow(starts, col)]])*pixelSize;
+		}
+		cursorToRow(getCursorRow()+delta);
+	}
+	
 	@Override
 	public boolean isVisible(Rectangle clip) {
 		return isVisible();
@@ -290,18 +986,21 @@ public void setFont(Font font, float fontSizePt) {
 	protected void updateFont(GraphAssist g, int f) {
 		fonts[f] = font.deriveFont(f, fontSize);
 		fm[f] = g.graph.getFontMetrics(fonts[f]);
+		advances[f] = new CharAdvances(fm[f]);
 	}
 	
 	protected void allocateFonts(GraphAssist g, int count) {
 		fonts = new Font[count];
 		fm = new FontMetrics[count];
+		advances = new CharAdvances[count];
+		metricsVersion++;
 		for(int f=0; f<count; f++) {
 			updateFont(g, f);
 		}
 	}
 	
 	protected void allocateFonts(GraphAssist g) {
-		allocateFonts(g, 1);
+		allocateFonts(g, highlighter==null ? 1 : 4);
 	}
 	
 	protected void updateMetrics(GraphAssist g, float fontSize) {
@@ -341,6 +1040,14 @@ public void paint(GraphAssist g) {
 				g.fillRect(minx, y0-lineHeight, x0-minx, maxy-y0+lineHeight, colorBackground);
 		}
 
+		if(wordWrap) {
+			paintWrapped(g, focused);
+			return;
+		}
+
+		if(highlighter!=null)
+			highlighter.update(singleLine ? 0 : displayLine+page+1);
+
 		int y = singleLine ? (int)(getParent().getHeight()/pixelSize/2f+(fm[0].getAscent()-fm[0].getDescent())/2f) : y0;
 		int pos = 0;
 		float w = 0;
@@ -356,7 +1063,8 @@ public void paint(GraphAssist g) {
 			}
 
 			if(line.width<0)
-				line.width = /*line.tokens==null ? 0 :*/ stringWidth(line, lineStart, lineStart, lineEnd);
+				line.width = (line.prefixWidths!=null && line.prefixMetrics==metricsVersion && line.prefixCount>line.length) ?
+						line.prefixWidths[line.length] : measureText(line, lineStart, lineStart, lineEnd);
 			if(line.width>w)
 				w = line.width;
 
@@ -381,6 +1089,65 @@ public void paint(GraphAssist g) {
 		}
 		
 		g.finishPixelMode();
+		
+		if(highlighter!=null)
+			highlighter.updateRemaining();
+	}
+	
+	/**
+	 * Paints visible rows in word wrap mode. Only the visible lines are wrapped; the remaining lines keep their cached
+	 * or estimated row counts, so resizing the view does not measure the whole document.
+	 */
+	protected void paintWrapped(GraphAssist g, boolean focused) {
+		int width = Math.max(1, (int)(getParent().getWidth()/pixelSize)-x0*2);
+		if(width!=wrapWidth || visualRowsMetrics!=metricsVersion) {
+			wrapWidth = width;
+			visualRowsMetrics = metricsVersion;
+			String sample = "etaoin shrdlu";
+			averageCharWidth = advances[0].stringWidth(sample, 0, sample.length())/(float)sample.length();
+			estimateVisualRows();
+		}
+		
+		int firstLine = visualRows.findLine(displayLine);
+		if(highlighter!=null)
+			highlighter.update(firstLine+page+1);
+
+		int n = lines.size();
+		int y = y0-(displayLine-visualRows.getOffset(firstLine))*lineHeight;
+		int pos = getLineStart(firstLine)-lines.get(firstLine).offs;
+		for(int lineIndex=firstLine; lineIndex<n && y-lineHeight<maxy; lineIndex++) {
+			L line = lines.get(lineIndex);
+			int lineStart = pos+line.offs;
+			int[] starts = getWrapStarts(line, lineIndex, lineStart);
+			int[] widths = getPrefixWidths(line, lineStart, line.length);
+			Color bg = (lineIndex==cursor.line && focused) ? colorHighlight : null;
+			for(int r=0; r<starts.length; r++) {
+				boolean lastRow = r==starts.length-1;
+				int rowEnd = lastRow ? line.length : starts[r+1];
+				if(y>y0-lineHeight && y-lineHeight<maxy)
+					drawRow(g, lineIndex, lineStart, lineStart+starts[r], lineStart+rowEnd, lastRow, y, bg, focused, line, widths[starts[r]]);
+				y += lineHeight;
+			}
+			pos = lineStart+line.length;
+		}
+		if(y-lineHeight<maxy) {
+			fillRemainder(g, y);
+		}
+		
+		float w = getParent().getWidth();
+		float h = lineHeight*visualRows.getLength()*pixelSize;
+		if(updateSize || getWidth()!=w || getHeight()!=h) {
+			panView().setPanRangeForClient(0, h);
+			if(h<getParent().getHeight())
+				h = getParent().getHeight();
+			setSize(w, h);
+			updateSize = false;
+		}
+		
+		g.finishPixelMode();
+		
+		if(highlighter!=null)
+			highlighter.updateRemaining();
 	}
 	
 	protected void fillRemainder(GraphAssist g, int y) {
@@ -389,6 +1156,7 @@ protected void fillRemainder(GraphAssist g, int y) {
 	
 	protected class DrawLineState {
 		public int x, y;
+		public int origin;
 		public L line;
 		public int lineStart;
 		public int s;
@@ -396,7 +1164,12 @@ protected class DrawLineState {
 	protected DrawLineState ls = new DrawLineState();
 	
 	protected void drawLine(GraphAssist g, int lineIndex, int lineStart, int lineEnd, int y, Color bg, boolean drawCursor, L line) {
+		if(!carets.isEmpty()) {
+			drawCaretsRow(g, lineIndex, lineStart, lineStart, lineEnd, true, y, bg, drawCursor, line, 0);
+			return;
+		}
 		ls.x = x0;
+		ls.origin = x0;
 		ls.y = y;
 		ls.line = line;
 		ls.lineStart = lineStart;
@@ -434,13 +1207,143 @@ protected void drawLine(GraphAssist g, int lineIndex, int lineStart, int lineEnd
 		}
 	}
 	
+	/**
+	 * Draws a visual row of a wrapped line. Tab stops are aligned to the line start rather than the row start.
+	 * @param rowStart text offset of the row start
+	 * @param rowEnd text offset of the row end
+	 * @param lastRow <code>true</code> if this is the last row of the line
+	 * @param rowX x position of the row start relative to the line start
+	 */
+	protected void drawRow(GraphAssist g, int lineIndex, int lineStart, int rowStart, int rowEnd, boolean lastRow, int y, Color bg, boolean drawCursor, L line, int rowX) {
+		if(!carets.isEmpty()) {
+			drawCaretsRow(g, lineIndex, lineStart, rowStart, rowEnd, lastRow, y, bg, drawCursor, line, rowX);
+			return;
+		}
+		ls.x = x0;
+		ls.origin = x0-rowX;
+		ls.y = y;
+		ls.line = line;
+		ls.lineStart = lineStart;
+		ls.s = 0;
+		if(selMin==null || lineIndex<selMin.line || lineIndex>selMax.line || hideSelection && !isFocused()) {
+			drawText(g, ls, rowStart, rowEnd, bg, null);
+			drawRemainder(g, ls.x, ls.y, bg);
+		}
+		else {
+			int s0 = lineIndex==selMin.line ? lineStart+selMin.col : lineStart;
+			int s1 = lineIndex==selMax.line ? lineStart+selMax.col : Integer.MAX_VALUE;
+			int a = Math.max(rowStart, Math.min(s0, rowEnd));
+			int b = Math.max(a, Math.min(s1, rowEnd));
+			drawText(g, ls, rowStart, a, bg, null);
+			drawText(g, ls, a, b, colorSelection, colorSelectedText);
+			drawText(g, ls, b, rowEnd, bg, null);
+			boolean selRemainder = lastRow ? lineIndex<selMax.line : s0<rowEnd && s1>rowEnd;
+			drawRemainder(g, ls.x, ls.y, selRemainder ? colorSelection : bg);
+		}
+		
+		if(drawCursor && cursor.line==lineIndex)
+			drawCaret(g, line, lineStart, rowStart, rowEnd, lastRow, y, rowX, cursor.col, true);
+	}
+	
+	private int[] rowSelection = new int[16];
+	
+	/**
+	 * Adds the part of a selection within a line to {@link #rowSelection}, keeping it sorted.
+	 * A selection that continues past the end of the line ends at <code>lineEnd+1</code>.
+	 * @return new number of selection ranges
+	 */
+	private int addRowSelection(Position min, Position max, int lineIndex, int lineStart, int lineEnd, int n) {
+		if(min==null || min.line>lineIndex || max.line<lineIndex)
+			return n;
+		int a = min.line<lineIndex ? lineStart : Math.min(lineStart+min.col, lineEnd);
+		int b = max.line>lineIndex ? lineEnd+1 : Math.min(lineStart+max.col, lineEnd);
+		if(b<=a)
+			return n;
+		if(rowSelection.length<(n+1)*2)
+			rowSelection = Arrays.copyOf(rowSelection, rowSelection.length*2);
+		int i = n;
+		for(; i>0 && rowSelection[i*2-2]>a; i--) {
+			rowSelection[i*2] = rowSelection[i*2-2];
+			rowSelection[i*2+1] = rowSelection[i*2-1];
+		}
+		rowSelection[i*2] = a;
+		rowSelection[i*2+1] = b;
+		return n+1;
+	}
+	
+	/**
+	 * Draws a line or a visual row with the selections and cursors of all carets. Used instead of {@link #drawLine(GraphAssist, int, int, int, int, Color, boolean, Line)}
+	 * and {@link #drawRow(GraphAssist, int, int, int, int, boolean, int, Color, boolean, Line, int)} if there are additional carets.
+	 */
+	protected void drawCaretsRow(GraphAssist g, int lineIndex, int lineStart, int rowStart, int rowEnd, boolean lastRow, int y, Color bg, boolean drawCursor, L line, int rowX) {
+		ls.x = x0;
+		ls.origin = x0-rowX;
+		ls.y = y;
+		ls.line = line;
+		ls.lineStart = lineStart;
+		ls.s = 0;
+		int lineEnd = lineStart+line.length;
+		int first = findCaret(lineIndex);
+		int n = 0;
+		if(!(hideSelection && !isFocused())) {
+			n = addRowSelection(selMin, selMax, lineIndex, lineStart, lineEnd, n);
+			for(int i=first; i<carets.size(); i++) {
+				Caret c = carets.get(i);
+				if(c.min().line>lineIndex)
+					break;
+				if(c.selStart!=null)
+					n = addRowSelection(c.min(), c.max(), lineIndex, lineStart, lineEnd, n);
+			}
+		}
+		
+		int pos = rowStart;
+		boolean selRemainder = false;
+		for(int i=0; i<n; i++) {
+			int a = rowSelection[i*2];
+			int b = rowSelection[i*2+1];
+			if(lastRow ? b>lineEnd : a<rowEnd && b>rowEnd)
+				selRemainder = true;
+			a = Math.max(pos, Math.min(a, rowEnd));
+			b = Math.max(a, Math.min(b, rowEnd));
+			drawText(g, ls, pos, a, bg, null);
+			drawText(g, ls, a, b, colorSelection, colorSelectedText);
+			pos = b;
+		}
+		drawText(g, ls, pos, rowEnd, bg, null);
+		drawRemainder(g, ls.x, ls.y, selRemainder ? colorSelection : bg);
+		
+		if(drawCursor) {
+			if(cursor.line==lineIndex)
+				drawCaret(g, line, lineStart, rowStart, rowEnd, lastRow, y, rowX, cursor.col, true);
+			for(int i=first; i<carets.size(); i++) {
+				Caret c = carets.get(i);
+				if(c.min().line>lineIndex)
+					break;
+				if(c.cursor.line==lineIndex)
+					drawCaret(g, line, lineStart, rowStart, rowEnd, lastRow, y, rowX, c.cursor.col, false);
+			}
+		}
+	}
+	
+	private void drawCaret(GraphAssist g, L line, int lineStart, int rowStart, int rowEnd, boolean lastRow, int y, int rowX, int col, boolean primary) {
+		col = lineStart+Math.min(col, line.length);
+		if(col>=rowStart && (col<rowEnd || lastRow)) {
+			int cx = stringWidth(line, lineStart, lineStart, col)-rowX;
+			g.graph.setXORMode(Color.BLACK);
+			g.fillRect(x0+cx, y-lineHeight+descent, 2f/pixelSize, lineHeight, Color.WHITE);
+			g.graph.setPaintMode();
+			if(primary && cursorX<0)
+				cursorX = (x0+cx)*pixelSize;
+		}
+	}
+	
 	protected void drawRemainder(GraphAssist g, int x, int y, Color bg) {
 		if(x<maxx)
 			g.fillRect(x, y-lineHeight+descent, maxx-x, lineHeight, bg==null ? colorBackground : bg);
 	}
 	
 	protected int drawString(GraphAssist g, String s, int x, int y, Color bg, Color fg, int font) {
-		int w = fm[font].stringWidth(s);
+		int w = advances[font].stringWidth(s, 0, s.length());
 		if(x<maxx && x+w>minx) {
 			g.fillRect(x, y-lineHeight+descent, w, lineHeight, bg);
 			g.setColor(fg);
@@ -451,14 +1354,47 @@ protected int drawString(GraphAssist g, String s, int x, int y, Color bg, Color
 	}
 
 	protected void drawText(GraphAssist g, DrawLineState ls, int c0, int c1, Color bg, Color fg) {
-		drawText(g, ls, c0, c1, bg==null ? colorBackground : bg, fg==null ? colorText : fg, 0);
+		if(bg==null)
+			bg = colorBackground;
+		int[] tokens = ls.line.tokens;
+		if(highlighter==null || tokens==null) {
+			drawText(g, ls, c0, c1, bg, fg==null ? colorText : fg, 0);
+			return;
+		}
+		TokenStyle[] styles = highlighter.styles;
+		for(int t = findToken(tokens, c0-ls.lineStart); c0<c1; t+=2) {
+			int end = t+2<tokens.length ? Math.min(c1, ls.lineStart+tokens[t+2]) : c1;
+			TokenStyle style = styles[tokens[t+1]];
+			Color c = fg!=null ? fg : style.color!=null ? style.color : colorText;
+			drawText(g, ls, c0, end, bg, c, style.font);
+			c0 = end;
+		}
+	}
+	
+	/**
+	 * Finds the token containing a column.
+	 * @param tokens token array, see {@link Line#tokens}
+	 * @param col column
+	 * @return index of the token start column in the array
+	 */
+	protected static int findToken(int[] tokens, int col) {
+		int lo = 0;
+		int hi = tokens.length/2-1;
+		while(lo<hi) {
+			int mid = (lo+hi+1)>>>1;
+			if(tokens[mid*2]<=col)
+				lo = mid;
+			else
+				hi = mid-1;
+		}
+		return lo*2;
 	}
 	
 	protected void drawText(GraphAssist g, DrawLineState ls, int c0, int c1, Color bg, Color fg, int font) {
 		int col = c0;
 		for(;;) {
-			int t = text.indexOf('\t', col);
-			if(t<0 || t>=c1) {
+			int t = text.indexOf('\t', col, c1);
+			if(t<0) {
 				if(col<c1) {
 					String s = text.substring(col, c1);
 					ls.x = drawString(g, s, ls.x, ls.y, bg, fg, font);
@@ -470,7 +1406,7 @@ protected void drawText(GraphAssist g, DrawLineState ls, int c0, int c1, Color b
 					String s = text.substring(col, t);
 					ls.x = drawString(g, s, ls.x, ls.y, bg, fg, font);
 				}
-				int w = ((ls.x-x0)+tabWidth)/tabWidth*tabWidth-(ls.x-x0);
+				int w = ((ls.x-ls.origin)+tabWidth)/tabWidth*tabWidth-(ls.x-ls.origin);
 				g.fillRect(ls.x, ls.y-lineHeight+descent, w, lineHeight, bg);
 				ls.x += w;
 				col = t+1;
@@ -478,76 +1414,171 @@ protected void drawText(GraphAssist g, DrawLineState ls, int c0, int c1, Color b
 		}
 	}
 
+	/**
+	 * Measures text within a line. Measuring from the line start uses cached {@link #getPrefixWidths(Line, int, int)}.
+	 * @param line line
+	 * @param lineStart text offset of the line
+	 * @param c0 start offset
+	 * @param c1 end offset
+	 * @return text width in pixels
+	 */
 	protected int stringWidth(L line, int lineStart, int c0, int c1) {
-		return stringWidth(c0, c1, 0);
+		if(c0==lineStart && c1>=lineStart && c1<=lineStart+line.length)
+			return getPrefixWidths(line, lineStart, c1-lineStart)[c1-lineStart];
+		return measureText(line, lineStart, c0, c1);
+	}
+	
+	/**
+	 * Returns x positions of columns relative to the line start, measuring the line up to <code>col</code> if it is not cached.
+	 * Widths are cached in the line until it is modified or re-tokenized, or the font size changes,
+	 * and the cache is extended as further columns are requested.
+	 * @param line line
+	 * @param lineStart text offset of the line
+	 * @param col last required column, at most <code>line.length</code>
+	 * @return array of x positions, valid at least up to <code>col</code> inclusive
+	 */
+	protected int[] getPrefixWidths(L line, int lineStart, int col) {
+		int[] widths = line.prefixWidths;
+		if(widths==null || line.prefixMetrics!=metricsVersion) {
+			line.prefixCount = 1;
+			line.prefixMetrics = metricsVersion;
+		}
+		else if(col<line.prefixCount)
+			return widths;
+		if(widths==null || widths.length<=col) {
+			int cap = widths==null ? 16 : widths.length*2;
+			cap = Math.min(Math.max(cap, col+1), line.length+1);
+			widths = widths==null ? new int[cap] : Arrays.copyOf(widths, cap);
+			line.prefixWidths = widths;
+		}
+		widths[0] = 0;
+		
+		int c = line.prefixCount-1;
+		int x = widths[c];
+		String s = text.substring(lineStart+c, lineStart+col);
+		int[] tokens = highlighter==null ? null : line.tokens;
+		int t = 0;
+		int next = Integer.MAX_VALUE;
+		CharAdvances adv = advances[0];
+		if(tokens!=null) {
+			t = findToken(tokens, c);
+			adv = advances[highlighter.styles[tokens[t+1]].font];
+			if(t+2<tokens.length)
+				next = tokens[t+2];
+		}
+		for(int i=0; i<s.length(); i++, c++) {
+			while(c>=next) {
+				t += 2;
+				adv = advances[highlighter.styles[tokens[t+1]].font];
+				next = t+2<tokens.length ? tokens[t+2] : Integer.MAX_VALUE;
+			}
+			char ch = s.charAt(i);
+			if(ch=='\t')
+				x = (x+tabWidth)/tabWidth*tabWidth;
+			else
+				x += adv.charWidth(ch);
+			widths[c+1] = x;
+		}
+		line.prefixCount = col+1;
+		return widths;
 	}
 
-	protected int stringWidth(int c0, int c1, int font) {
+	/**
+	 * Measures text within a line without using or building cached widths.
+	 */
+	protected int measureText(L line, int lineStart, int c0, int c1) {
+		int[] tokens = line.tokens;
+		if(highlighter==null || tokens==null || tokens.length==2 && highlighter.styles[tokens[1]].font==0)
+			return stringWidth(c0, c1, 0);
+		TokenStyle[] styles = highlighter.styles;
 		int x = 0;
-		int col = c0;
+		for(int t = findToken(tokens, c0-lineStart); c0<c1; t+=2) {
+			int end = t+2<tokens.length ? Math.min(c1, lineStart+tokens[t+2]) : c1;
+			x = stringWidth(x, c0, end, styles[tokens[t+1]].font);
+			c0 = end;
+		}
+		return x;
+	}
+
+	protected int stringWidth(int c0, int c1, int font) {
+		return stringWidth(0, c0, c1, font);
+	}
+
+	/**
+	 * Measures text continuing from a given position, which is required for tab stops.
+	 * @param x start position relative to the line start
+	 * @param c0 start offset
+	 * @param c1 end offset
+	 * @param font font index
+	 * @return end position relative to the line start
+	 */
+	protected int stringWidth(int x, int c0, int c1, int font) {
 		c1 = Math.min(c1, text.length());
+		if(c0>=c1)
+			return x;
+		CharAdvances adv = advances[font];
+		String s = text.substring(c0, c1);
+		int len = s.length();
+		int col = 0;
 		for(;;) {
-			int t = text.indexOf('\t', col);
-			if(t<0 || t>=c1) {
-				if(col<c1) {
-					String s = text.substring(col, c1);
-					x += fm[font].stringWidth(s);
-				}
-				return x;
-			}
-			else {
-				if(t>col) {
-					String s = text.substring(col, t);
-					x += fm[font].stringWidth(s);
-				}
-				int w = (x+tabWidth)/tabWidth*tabWidth-x;
-				x += w;
-				col = t+1;
-			}
+			int t = s.indexOf('\t', col);
+			if(t<0)
+				return x + adv.stringWidth(s, col, len);
+			x += adv.stringWidth(s, col, t);
+			x = (x+tabWidth)/tabWidth*tabWidth;
+			col = t+1;
 		}
 	}
 	
 	protected int searchCol(float tx) {
 		checkCursorLineCache();
-		L line = cursorLine;
-		int lineStart = cursorLineStart;
-		int lineEnd = lineStart+line.length;
-		return bsearchCol(line, lineStart, tx, lineStart, lineStart, 0, lineEnd, stringWidth(line, lineStart, lineStart, lineEnd))-lineStart;
+		return searchCol(getPrefixWidths(cursorLine, cursorLineStart, cursorLine.length), cursorLine.length, tx);
 	}
 	
-	protected int bsearchCol(L line, int lineStart, float tx, int cstart, int c0, int x0, int c1, int x1) {
-		if(tx<=x0)
-			return c0;
-		if(tx>=x1)
-			return c1;
-		if(c1-c0==1) {
-			if((tx-x0)*3f < (x1-tx))
-				return c0;
-			else
-				return c1;
-		}
-		else {
-			float s = (tx-x0) / (float)(x1-x0);
-			int c = c0+(int)(s*(c1-c0));
-			if(c==c0) c = c0+1;
-			if(c==c1) c = c1-1;
-			int w = stringWidth(line, lineStart, cstart, c);
-			if(tx<=w)
-				return bsearchCol(line, lineStart, tx, cstart, c0, x0, c, w);
+	/**
+	 * Finds the column closest to an x position using binary search over prefix widths.
+	 * The cursor snaps to the next column once the position is past the first quarter of a character.
+	 * @param widths prefix widths, see {@link #getPrefixWidths(Line, int, int)}
+	 * @param len line length
+	 * @param tx x position relative to the line start
+	 * @return column
+	 */
+	protected static int searchCol(int[] widths, int len, float tx) {
+		if(tx<=widths[0])
+			return 0;
+		if(tx>=widths[len])
+			return len;
+		int lo = 0;
+		int hi = len;
+		while(hi-lo>1) {
+			int mid = (lo+hi)>>>1;
+			if(widths[mid]<tx)
+				lo = mid;
 			else
-				return bsearchCol(line, lineStart, tx, cstart, c, w, c1, x1);
+				hi = mid;
 		}
+		if((tx-widths[lo])*3f < (widths[hi]-tx))
+			return lo;
+		else
+			return hi;
 	}
 	
 	protected void checkCursorLineCache() {
+		if(highlighter!=null)
+			highlighter.update(cursor.line);
 		if(cursor.line!=cursorLineIndex || cursorLine==null) {
 			cursorLine = lines.get(cursor.line);
 			cursorLineIndex = cursor.line;
-			cursorLineStart = cursorLine.calcStart();
+			cursorLineStart = getLineStart(cursor.line);
 		}
 	}
 	
 	protected void cursorToMouse(float x, float y) {
+		if(wordWrap) {
+			cursorX = x;
+			cursorToRow((int)(y / pixelSize / lineHeight));
+			return;
+		}
 		cursor.line = singleLine ? 0 : (int)(y / pixelSize / lineHeight);
 		if(cursor.line<0)
 			cursor.line = 0;
@@ -567,78 +1598,507 @@ public void deselect() {
 		updateSelRange();
 	}
 	
-	public void selectAll() {
-		selStart = new Position(0, 0);
-		selEnd = new Position(lines.size()-1, lines.get(lines.size()-1).length);
-		cursor.set(selEnd);
-		updateSelRange();
+	public void selectAll() {
+		clearCarets();
+		selStart = new Position(0, 0);
+		selEnd = new Position(lines.size()-1, lines.get(lines.size()-1).length);
+		cursor.set(selEnd);
+		updateSelRange();
+	}
+	
+	public boolean hasSelection() {
+		return selStart!=null && (selStart.line!=selEnd.line || selStart.col!=selEnd.col);
+	}
+	
+	/**
+	 * Returns the selected text. If there are multiple carets, selections of all carets are joined with line separators.
+	 * @return selected text, or <code>null</code> if nothing is selected
+	 */
+	public String getSelectedText() {
+		if(!carets.isEmpty()) {
+			sortCarets();
+			StringBuilder sb = null;
+			for(int i=0; i<sortedCarets.size(); i++) {
+				if(caretStarts[i]==caretEnds[i])
+					continue;
+				if(sb==null)
+					sb = new StringBuilder();
+				else
+					sb.append(newline);
+				sb.append(text.substring(caretStarts[i], caretEnds[i]));
+			}
+			sortedCarets.clear();
+			return sb==null ? null : sb.toString();
+		}
+		if(selStart!=null) {
+			int start = getLineStart(selMin.line)+selMin.col;
+			int end = getLineStart(selMax.line)+selMax.col;
+			return text.substring(start, end);
+		}
+		else
+			return null;
+	}
+	
+	protected void startSelection() {
+		if(selStart==null) {
+			selStart = new Position(cursor);
+			selEnd = new Position(cursor);
+			updateSelRange();
+		}
+	}
+	
+	protected void modifySelection(boolean keepStart) {
+		if(selStart!=null) {
+			selEnd.set(cursor);
+			if(selStart.equals(selEnd) && !keepStart)
+				deselect();
+			updateSelRange();
+		}
+	}
+	
+	protected void modifySelection() {
+		modifySelection(false);
+	}
+	
+	protected void updateSelRange() {
+		if(selStart==null) {
+			selMin = null;
+			selMax = null;
+		}
+		else {
+			if(selStart.line>selEnd.line || selStart.line==selEnd.line && selStart.col>selEnd.col) {
+				selMin = selEnd;
+				selMax = selStart;
+			}
+			else {
+				selMin = selStart;
+				selMax = selEnd;
+			}
+		}
+	}
+
+	public boolean hasMultipleCarets() {
+		return !carets.isEmpty();
+	}
+	
+	/**
+	 * Removes additional carets, keeping the primary cursor and its selection.
+	 */
+	public void clearCarets() {
+		carets.clear();
+		blockSelect = false;
+	}
+	
+	private final ArrayList<Caret> sortedCarets = new ArrayList<>();
+	private int[] caretStarts = new int[16];
+	private int[] caretEnds = new int[16];
+	
+	/**
+	 * Sorts the primary cursor and additional carets by position into {@link #sortedCarets}
+	 * together with their selection ranges as text offsets. Carets that overlap a previous one are dropped,
+	 * except for the primary cursor.
+	 * @return index of the primary cursor in the sorted list
+	 */
+	private int sortCarets() {
+		int n = carets.size()+1;
+		Caret primary = new Caret(cursor, selStart, selEnd);
+		int[] starts = new int[n];
+		int[] ends = new int[n];
+		long[] keys = new long[n];
+		walker.reset();
+		for(int i=0; i<n; i++) {
+			Caret c = i==0 ? primary : carets.get(i-1);
+			starts[i] = getCaretOffset(c.min());
+			ends[i] = getCaretOffset(c.max());
+			keys[i] = ((long)starts[i]<<32) | i;
+		}
+		Arrays.sort(keys);
+		
+		if(caretStarts.length<n) {
+			caretStarts = new int[n];
+			caretEnds = new int[n];
+		}
+		sortedCarets.clear();
+		int count = 0;
+		int primaryIndex = 0;
+		for(long key : keys) {
+			int i = (int)key;
+			int start = starts[i];
+			int end = ends[i];
+			if(count>0) {
+				int prevEnd = caretEnds[count-1];
+				if(start<prevEnd || start==end && start==prevEnd && caretStarts[count-1]==prevEnd) {
+					if(i==0) {
+						sortedCarets.set(count-1, primary);
+						caretStarts[count-1] = start;
+						caretEnds[count-1] = end;
+						primaryIndex = count-1;
+					}
+					continue;
+				}
+			}
+			if(i==0)
+				primaryIndex = count;
+			sortedCarets.add(i==0 ? primary : carets.get(i-1));
+			caretStarts[count] = start;
+			caretEnds[count] = end;
+			count++;
+		}
+		return primaryIndex;
+	}
+	
+	/**
+	 * Finds lines for a sequence of text offsets or line indices, such as sorted carets. Nearby lines are reached by walking
+	 * the line list in amortized constant time, distant lines are looked up in the line index in <i>O</i>(log <i>n</i>).
+	 * Follows {@link #lineStarts}, so it must be reset after the line index is updated; call {@link #reset()} before each sequence.
+	 */
+	private class LineWalker {
+		private static final int maxWalk = 16;
+		
+		public int line = -1;
+		public int start = 0;
+		
+		public void reset() {
+			line = -1;
+		}
+		
+		private void jump(int index) {
+			line = index;
+			start = getLineStart(index);
+		}
+		
+		/**
+		 * Returns the start of the next line using the line index, which may differ from line lengths while lines are being rebuilt.
+		 */
+		private int nextStart() {
+			return start-lines.get(line).offs+lineStarts.getSpan(line)+lines.get(line+1).offs;
+		}
+		
+		/**
+		 * Moves to a line.
+		 * @return text offset of the line
+		 */
+		public int lineStart(int index) {
+			if(line<0 || index<line || index-line>maxWalk)
+				jump(index);
+			else {
+				for(; line<index; line++)
+					start = nextStart();
+			}
+			return start;
+		}
+		
+		/**
+		 * Moves to the line containing a text offset, same as {@link UITextEditBase#getLineAt(int)}.
+		 * @return line index
+		 */
+		public int lineAt(int pos) {
+			if(line<0 || pos<start) {
+				jump(getLineAt(pos));
+				return line;
+			}
+			int last = lines.size()-1;
+			for(int i=0; i<maxWalk; i++) {
+				if(line==last)
+					return line;
+				int next = nextStart();
+				if(next>pos)
+					return line;
+				line++;
+				start = next;
+			}
+			jump(getLineAt(pos));
+			return line;
+		}
+	}
+	
+	private final LineWalker walker = new LineWalker();
+	
+	private int getCaretOffset(Position pos) {
+		return walker.lineStart(pos.line)+Math.min(pos.col, lines.get(pos.line).length);
+	}
+	
+	/**
+	 * Sorts additional carets by position and removes carets that overlap other carets or the primary cursor.
+	 */
+	protected void normalizeCarets() {
+		if(carets.isEmpty())
+			return;
+		int primary = sortCarets();
+		carets.clear();
+		for(int i=0; i<sortedCarets.size(); i++) {
+			if(i!=primary)
+				carets.add(sortedCarets.get(i));
+		}
+		sortedCarets.clear();
+	}
+	
+	/**
+	 * Replaces text ranges at all carets as one batch using {@link #replaceTexts(int, int[], int[], String[])}
+	 * and places each caret after its inserted text. Ranges must be sorted by start offset; overlapping ranges are merged.
+	 * @param count number of carets
+	 * @param starts start offsets
+	 * @param ends end offsets
+	 * @param adds inserted strings
+	 * @param primary index of the primary cursor
+	 */
+	protected void replaceAtCarets(int count, int[] starts, int[] ends, String[] adds, int primary) {
+		int n = 0;
+		int newPrimary = 0;
+		for(int i=0; i<count; i++) {
+			if(n>0 && starts[i]<ends[n-1]) {
+				ends[n-1] = Math.max(ends[n-1], ends[i]);
+				adds[n-1] = adds[n-1]+adds[i];
+				if(i==primary)
+					newPrimary = n-1;
+			}
+			else {
+				starts[n] = starts[i];
+				ends[n] = ends[i];
+				adds[n] = adds[i];
+				if(i==primary)
+					newPrimary = n;
+				n++;
+			}
+		}
+		
+		int m = 0;
+		int[] editStarts = new int[n];
+		int[] editEnds = new int[n];
+		String[] editAdds = new String[n];
+		for(int i=0; i<n; i++) {
+			if(starts[i]<ends[i] || !adds[i].isEmpty()) {
+				editStarts[m] = starts[i];
+				editEnds[m] = ends[i];
+				editAdds[m] = adds[i];
+				m++;
+			}
+		}
+		replaceTexts(m, editStarts, editEnds, editAdds);
+		
+		// merged carets are dropped, the remaining ones are reused in order
+		carets.clear();
+		deselect();
+		walker.reset();
+		int shift = 0;
+		for(int i=0, k=0; i<n; i++) {
+			int pos = starts[i]+shift+adds[i].length();
+			shift += adds[i].length()-(ends[i]-starts[i]);
+			int line = walker.lineAt(pos);
+			if(i==newPrimary) {
+				cursor.line = line;
+				cursor.col = pos-walker.start;
+			}
+			else {
+				Caret c = null;
+				while(k<sortedCarets.size() && c==null) {
+					Caret next = sortedCarets.get(k++);
+					if(next.cursor!=cursor)
+						c = next;
+				}
+				if(c==null)
+					c = new Caret(new Position(0, 0), null, null);
+				c.cursor.line = line;
+				c.cursor.col = pos-walker.start;
+				c.selStart = null;
+				c.selEnd = null;
+				carets.add(c);
+			}
+		}
+		cursorX = -1;
+		sortedCarets.clear();
+	}
+	
+	/**
+	 * Inserts text at all carets, replacing selections.
+	 * @param add inserted text
+	 */
+	public void typeAtCarets(String add) {
+		int primary = sortCarets();
+		int n = sortedCarets.size();
+		String[] adds = new String[n];
+		Arrays.fill(adds, add);
+		replaceAtCarets(n, Arrays.copyOf(caretStarts, n), Arrays.copyOf(caretEnds, n), adds, primary);
 	}
 	
-	public boolean hasSelection() {
-		return selStart!=null && (selStart.line!=selEnd.line || selStart.col!=selEnd.col);
+	/**
+	 * Inserts a line break at all carets, replacing selections, with the same indentation as the current line if {@link #autoIndent} is enabled.
+	 */
+	protected void splitLinesAtCarets() {
+		int primary = sortCarets();
+		int n = sortedCarets.size();
+		String[] adds = new String[n];
+		Matcher m = indentRegex.matcher(text);
+		walker.reset();
+		for(int i=0; i<n; i++) {
+			String indent = "";
+			if(autoIndent) {
+				walker.lineAt(caretStarts[i]);
+				int lineStart = walker.start;
+				m.region(lineStart, caretStarts[i]);
+				if(m.lookingAt())
+					indent = text.substring(lineStart, m.end());
+			}
+			adds[i] = newline+indent;
+		}
+		replaceAtCarets(n, Arrays.copyOf(caretStarts, n), Arrays.copyOf(caretEnds, n), adds, primary);
 	}
 	
-	public String getSelectedText() {
-		if(selStart!=null) {
-			int start = lines.get(selMin.line).calcStart()+selMin.col;
-			int end = lines.get(selMax.line).calcStart()+selMax.col;
-			return text.substring(start, end);
+	/**
+	 * Deletes selections at all carets, and a character or a line separator at carets without selection.
+	 * @param forward <code>true</code> to delete after the caret, <code>false</code> to delete before the caret
+	 */
+	protected void deleteAtCarets(boolean forward) {
+		int primary = sortCarets();
+		int n = sortedCarets.size();
+		int[] starts = Arrays.copyOf(caretStarts, n);
+		int[] ends = Arrays.copyOf(caretEnds, n);
+		walker.reset();
+		for(int i=0; i<n; i++) {
+			if(starts[i]<ends[i])
+				continue;
+			int pos = starts[i];
+			int line = walker.lineAt(pos);
+			int lineStart = walker.start;
+			if(forward) {
+				int lineEnd = lineStart+lines.get(line).length;
+				if(pos<lineEnd)
+					ends[i] = pos+1;
+				else if(line<lines.size()-1)
+					ends[i] = lineEnd+lines.get(line+1).offs;
+			}
+			else {
+				if(pos>lineStart)
+					starts[i] = pos-1;
+				else if(line>0)
+					starts[i] = lineStart-lines.get(line).offs;
+			}
 		}
-		else
-			return null;
+		String[] adds = new String[n];
+		Arrays.fill(adds, "");
+		replaceAtCarets(n, starts, ends, adds, primary);
 	}
 	
-	protected void startSelection() {
-		if(selStart==null) {
-			selStart = new Position(cursor);
-			selEnd = new Position(cursor);
-			updateSelRange();
-		}
+	/**
+	 * Adds a caret on the line above the topmost caret or below the bottommost caret at the same horizontal position.
+	 * The new caret becomes the primary cursor.
+	 * @param dir -1 to add above, 1 to add below
+	 */
+	public void addCaretVertical(int dir) {
+		if(singleLine)
+			return;
+		checkCursorLineCache();
+		if(cursorX<0)
+			cursorX = (x0+stringWidth(cursorLine, cursorLineStart, cursorLineStart, cursorLineStart+Math.min(cursor.col, cursorLine.length)))*pixelSize;
+		int line = cursor.line;
+		for(Caret c : carets)
+			line = dir<0 ? Math.min(line, c.cursor.line) : Math.max(line, c.cursor.line);
+		line += dir;
+		if(line<0 || line>=lines.size())
+			return;
+		carets.add(new Caret(new Position(cursor), copyPosition(selStart), copyPosition(selEnd)));
+		deselect();
+		cursor.line = line;
+		updateCursor();
+		normalizeCarets();
 	}
 	
-	protected void modifySelection(boolean keepStart) {
-		if(selStart!=null) {
-			selEnd.set(cursor);
-			if(selStart.equals(selEnd) && !keepStart)
-				deselect();
-			updateSelRange();
+	/**
+	 * Replaces the selection with a caret on each selected line, selecting the part of the line within the original selection.
+	 */
+	public void splitSelectionIntoLines() {
+		if(singleLine || selStart==null || selMin.line==selMax.line)
+			return;
+		Position min = new Position(selMin);
+		Position max = new Position(selMax);
+		int last = max.col==0 ? max.line-1 : max.line;
+		carets.clear();
+		for(int i=min.line; i<=last; i++) {
+			int a = i==min.line ? min.col : 0;
+			int b = i==max.line ? max.col : lines.get(i).length;
+			Position s = a==b ? null : new Position(i, a);
+			Position c = new Position(i, b);
+			if(i==last) {
+				cursor.set(c);
+				selStart = s;
+				selEnd = s==null ? null : new Position(c);
+			}
+			else
+				carets.add(new Caret(c, s, s==null ? null : new Position(c)));
 		}
+		updateSelRange();
+		cursorX = -1;
 	}
 	
-	protected void modifySelection() {
-		modifySelection(false);
+	/**
+	 * Creates a rectangular block selection as one caret per line between two lines and two horizontal positions.
+	 * The caret on <code>line1</code> becomes the primary cursor.
+	 * @param line0 anchor line
+	 * @param xa anchor x position in local coordinates
+	 * @param line1 cursor line
+	 * @param xb cursor x position in local coordinates
+	 */
+	public void selectBlock(int line0, float xa, int line1, float xb) {
+		carets.clear();
+		int from = Math.min(line0, line1);
+		int to = Math.max(line0, line1);
+		int pos = getLineStart(from)-lines.get(from).offs;
+		for(int i=from; i<=to; i++) {
+			L line = lines.get(i);
+			int lineStart = pos+line.offs;
+			int[] widths = getPrefixWidths(line, lineStart, line.length);
+			int ca = searchCol(widths, line.length, xa/pixelSize-x0);
+			int cb = searchCol(widths, line.length, xb/pixelSize-x0);
+			Position s = ca==cb ? null : new Position(i, ca);
+			Position c = new Position(i, cb);
+			if(i==line1) {
+				cursor.set(c);
+				selStart = s;
+				selEnd = s==null ? null : new Position(c);
+			}
+			else
+				carets.add(new Caret(c, s, s==null ? null : new Position(c)));
+			pos = lineStart+line.length;
+		}
+		updateSelRange();
 	}
 	
-	protected void updateSelRange() {
-		if(selStart==null) {
-			selMin = null;
-			selMax = null;
-		}
-		else {
-			if(selStart.line>selEnd.line || selStart.line==selEnd.line && selStart.col>selEnd.col) {
-				selMin = selEnd;
-				selMax = selStart;
-			}
-			else {
-				selMin = selStart;
-				selMax = selEnd;
-			}
+	/**
+	 * Finds the first additional caret that can be on or after a line.
+	 * @param lineIndex line index
+	 * @return caret index
+	 */
+	protected int findCaret(int lineIndex) {
+		int lo = 0;
+		int hi = carets.size();
+		while(lo<hi) {
+			int mid = (lo+hi)>>>1;
+			if(carets.get(mid).max().line<lineIndex)
+				lo = mid+1;
+			else
+				hi = mid;
 		}
+		return lo;
 	}
-
+	
+	private void swapCaret(Caret c) {
+		Position p = new Position(cursor);
+		cursor.set(c.cursor);
+		c.cursor.set(p);
+		Position s = selStart;
+		selStart = c.selStart;
+		c.selStart = s;
+		s = selEnd;
+		selEnd = c.selEnd;
+		c.selEnd = s;
+		updateSelRange();
+	}
+	
 	public void setCursor(int textPos) {
-		int pos = 0;
-		int lineIndex = 0;
-		for(Line line : lines) {
-			int nextPos = pos+line.offs+line.length;
-			if(textPos<=nextPos) {
-				cursor.line = lineIndex;
-				cursor.col = textPos-pos-line.offs;
-				return;
-			}
-			lineIndex++;
-			pos = nextPos;
-		}
+		if(textPos<0 || textPos>text.length())
+			return;
+		cursor.line = getLineAt(textPos);
+		cursor.col = textPos-getLineStart(cursor.line);
 	}
 	
 	public void copySelection() {
@@ -660,18 +2120,17 @@ public void pasteAtCursor() {
 		history.push();
 		
 		boolean changed = deleteSelection(false);
-		checkCursorLineCache();
-		int pos = cursorLineStart+cursor.col;
 
 		Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
 		if(clipboard.isDataFlavorAvailable(DataFlavor.stringFlavor)) {
 			try {
 				String add = (String) clipboard.getData(DataFlavor.stringFlavor);
-				modify(pos, add, pos);
-				// setText may strip newlines and tabs, setCursor must consider the difference
-				int len = text.length();
-				setText(text, false);
-				setCursor(pos+add.length()-(len-text.length()));
+				if(singleLine)
+					add = newlineRegex.matcher(add).replaceAll("").replaceAll("\\t", "");
+				if(!carets.isEmpty())
+					pasteAtCarets(add);
+				else
+					replaceText(cursor.line, cursor.col, cursor.line, cursor.col, add);
 				changed = true;
 			} catch(UnsupportedFlavorException | IOException e) {
 			}
@@ -684,7 +2143,47 @@ public void pasteAtCursor() {
 		scrollToCursor();
 	}
 	
+	/**
+	 * Pastes text at all carets. If the text has as many lines as there are carets, each caret receives one line.
+	 * @param add pasted text
+	 */
+	protected void pasteAtCarets(String add) {
+		int primary = sortCarets();
+		int n = sortedCarets.size();
+		String[] adds = new String[n];
+		String[] parts = newlineRegex.split(add, -1);
+		if(parts.length==n+1 && parts[n].isEmpty() || parts.length==n) {
+			System.arraycopy(parts, 0, adds, 0, n);
+		}
+		else
+			Arrays.fill(adds, add);
+		replaceAtCarets(n, Arrays.copyOf(caretStarts, n), Arrays.copyOf(caretEnds, n), adds, primary);
+	}
+	
 	protected boolean deleteSelection(boolean pushHistory) {
+		if(!carets.isEmpty()) {
+			int primary = sortCarets();
+			int n = sortedCarets.size();
+			boolean selected = false;
+			for(int i=0; i<n; i++) {
+				if(caretStarts[i]<caretEnds[i])
+					selected = true;
+			}
+			if(!selected) {
+				sortedCarets.clear();
+				return false;
+			}
+			if(pushHistory)
+				history.push();
+			String[] adds = new String[n];
+			Arrays.fill(adds, "");
+			replaceAtCarets(n, Arrays.copyOf(caretStarts, n), Arrays.copyOf(caretEnds, n), adds, primary);
+			if(pushHistory) {
+				history.push();
+				historyAction = HistoryAction.unspecified;
+			}
+			return true;
+		}
 		if(selStart!=null) {
 			if(pushHistory)
 				history.push();
@@ -694,10 +2193,7 @@ protected boolean deleteSelection(boolean pushHistory) {
 				modify(selMin.line, selMin.col, "", selMax.col);
 			}
 			else {
-				int start = lines.get(selMin.line).calcStart()+selMin.col;
-				int end = lines.get(selMax.line).calcStart()+selMax.col;
-				modify(start, "", end);
-				setText(text, false);
+				replaceText(selMin.line, selMin.col, selMax.line, selMax.col, "");
 			}
 			deselect();
 			
@@ -719,8 +2215,7 @@ public void indentSelection(String indent) {
 		boolean changed = false;
 		if(selStart!=null) {
 			int indentLen = indent.length();
-			Line startLine = lines.get(selMin.line);
-			int pos = startLine.calcStart()-startLine.offs;
+			int pos = lineStarts.getOffset(selMin.line);
 			for(int i=selMin.line; i<=selMax.line; i++) {
 				Line line = lines.get(i);
 				pos += line.offs;
@@ -728,6 +2223,7 @@ public void indentSelection(String indent) {
 					modify(pos, indent, pos);
 					line.length += indentLen;
 					line.reset();
+					updateLine(i);
 					changed = true;
 				}
 				pos += line.length;
@@ -743,8 +2239,7 @@ public void indentSelection(String indent) {
 	public void unindentSelection() {
 		boolean changed = false;
 		if(selStart!=null) {
-			Line startLine = lines.get(selMin.line);
-			int pos = startLine.calcStart()-startLine.offs;
+			int pos = lineStarts.getOffset(selMin.line);
 			for(int i=selMin.line; i<=selMax.line; i++) {
 				Line line = lines.get(i);
 				pos += line.offs;
@@ -756,6 +2251,7 @@ public void unindentSelection() {
 					if(i==selMax.line && selMax.col>0) selMax.col--;
 					if(i==cursor.line && cursor.col>0) cursor.col--;
 					line.reset();
+					updateLine(i);
 					changed = true;
 				}
 				pos += line.length;
@@ -775,7 +2271,8 @@ protected void joinLineWithNext() {
 		modify(lineStart+line.length, "", lineStart+line.length+next.offs);
 		line.length += next.length;
 		line.reset();
-		lines.remove(cursor.line+1);
+		removeLines(cursor.line+1, cursor.line+2);
+		updateLine(cursor.line);
 	}
 
 	protected int splitLineAtCursor() {
@@ -805,14 +2302,17 @@ protected int splitLineAtCursor() {
 		L next = createLine();
 		next.offs = newline.length();
 		next.length = len-cursor.col+indentLen;
-		lines.add(cursor.line+1, next);
 		line.reset();
+		updateLine(cursor.line);
+		insertLine(cursor.line+1, next);
 		
 		return indentLen;
 	}
 
 	public int modify(int before, String add, int after) {
-		text = text.substring(0, before) + add + text.substring(after);
+		if(recordEdits)
+			recordEdit(before, text.substring(before, after), add);
+		text.replace(before, after, add);
 		return before-after+add.length();
 	}
 
@@ -822,6 +2322,239 @@ public void modify(int lineIndex, int before, String add, int after) {
 		int lineStart = cursorLineStart;
 		line.length += modify(lineStart+before, add, lineStart+after);
 		line.reset();
+		updateLine(cursorLineIndex);
+	}
+
+	/**
+	 * Replaces the text between two positions, which can be on different lines, and updates the lines accordingly.
+	 * The inserted text can contain line separators. The cursor is moved to the end of the inserted text.
+	 * @param line0 start line
+	 * @param col0 start column
+	 * @param line1 end line
+	 * @param col1 end column
+	 * @param add inserted text
+	 */
+	protected void replaceText(int line0, int col0, int line1, int col1, String add) {
+		int start = getLineStart(line0)+col0;
+		int end = getLineStart(line1)+col1;
+		int tail = lines.get(line1).length-col1;
+		modify(start, add, end);
+		removeLines(line0+1, line1+1);
+
+		ArrayList<L> added = new ArrayList<>();
+		L line = lines.get(line0);
+		int head = col0;
+		int pos = 0;
+		Matcher m = newlineRegex.matcher(add);
+		while(m.find()) {
+			line.length = head+m.start()-pos;
+			line.reset();
+			line = createLine();
+			line.offs = m.end()-m.start();
+			added.add(line);
+			pos = m.end();
+			head = 0;
+		}
+		int col = head+add.length()-pos;
+		line.length = col+tail;
+		line.reset();
+		
+		updateLine(line0);
+		if(!added.isEmpty()) {
+			int[] spans = new int[added.size()];
+			for(int i=0; i<spans.length; i++)
+				spans[i] = added.get(i).offs+added.get(i).length;
+			lines.addAll(line0+1, added);
+			lineStarts.insert(line0+1, spans);
+			if(wordWrap) {
+				for(int i=0; i<spans.length; i++)
+					spans[i] = estimateRows(added.get(i));
+				visualRows.insert(line0+1, spans);
+			}
+			if(highlighter!=null)
+				highlighter.invalidate(line0+1);
+		}
+		cursor.line = line0+added.size();
+		cursor.col = col;
+		cursorLine = null;
+	}
+
+	/**
+	 * Replaces the text in the range <code>[start, end)</code> and updates the lines accordingly.
+	 * Both offsets must be valid cursor positions, i.e., not inside line separators.
+	 * @param start start offset
+	 * @param end end offset
+	 * @param add inserted text
+	 */
+	protected void replaceText(int start, int end, String add) {
+		int line0 = getLineAt(start);
+		int line1 = getLineAt(end);
+		replaceText(line0, start-getLineStart(line0), line1, end-getLineStart(line1), add);
+	}
+
+	/**
+	 * Remembers cursor and selection as the state to restore when undoing the pending history item.
+	 * Called with the first recorded change, or earlier if the cursor has to move before the text is modified.
+	 */
+	protected void recordBefore() {
+		if(recordEdits && pendingBefore==null)
+			pendingBefore = new CursorState();
+	}
+
+	/**
+	 * Records a text change in the pending undo history item. Adjacent changes are merged.
+	 * @param pos start offset of the change
+	 * @param removed removed text
+	 * @param add inserted text
+	 */
+	protected void recordEdit(int pos, String removed, String add) {
+		recordBefore();
+		lastBatchSize = 0;
+		if(!pendingEdits.isEmpty() && pendingEdits.get(pendingEdits.size()-1).coalesce(pos, removed, add))
+			return;
+		pendingEdits.add(new TextEdit(pos, removed, add));
+	}
+
+	/**
+	 * Records a batch of text changes, see {@link #replaceTexts(int, int[], int[], String[])}. Must be called before the text is modified.
+	 * Changes are stored in ascending order, each position including the changes made by the preceding ones.
+	 * If the previous batch had the same number of changes and each change is adjacent to the corresponding previous one,
+	 * e.g., typing with multiple carets, the batches are merged.
+	 */
+	protected void recordBatch(int count, int[] starts, int[] ends, String[] adds) {
+		recordBefore();
+		String[] removed = new String[count];
+		for(int i=0; i<count; i++)
+			removed[i] = text.substring(starts[i], ends[i]);
+		
+		int base = pendingEdits.size()-count;
+		boolean merge = count==lastBatchSize && lastBatchEnd==pendingEdits.size();
+		for(int i=0; merge && i<count; i++) {
+			if(!pendingEdits.get(base+i).canCoalesce(starts[i], removed[i], adds[i]))
+				merge = false;
+		}
+		int shift = 0;
+		for(int i=0; i<count; i++) {
+			if(merge) {
+				TextEdit e = pendingEdits.get(base+i);
+				e.coalesce(starts[i], removed[i], adds[i]);
+				e.pos += shift;
+			}
+			else
+				pendingEdits.add(new TextEdit(starts[i]+shift, removed[i], adds[i]));
+			shift += adds[i].length()-removed[i].length();
+		}
+		lastBatchSize = count;
+		lastBatchEnd = pendingEdits.size();
+	}
+
+	/**
+	 * Replaces several text ranges at once, e.g., at all carets. Ranges must be sorted by start offset
+	 * and must not overlap, but can be adjacent. Offsets refer to the text before the change and must be valid cursor positions.
+	 *
+	 * <p>The text buffer applies all ranges in one call, see {@link TextBuffer#replace(int, int[], int[], String[])}. Lines and the line start index are updated in a single pass:
+	 * in place if every change is within one line, otherwise by re-splitting only the changed lines and rebuilding the index in linear time.
+	 * The changes are recorded in the undo history as one batch. The cursor is not moved.</p>
+	 *
+	 * @param count number of ranges
+	 * @param starts start offsets
+	 * @param ends end offsets
+	 * @param adds inserted strings, can contain line separators
+	 */
+	protected void replaceTexts(int count, int[] starts, int[] ends, String[] adds) {
+		if(count==0)
+			return;
+		int[] lineIndices = new int[count];
+		int[] endLines = new int[count];
+		boolean inPlace = true;
+		walker.reset();
+		for(int i=0; i<count; i++) {
+			lineIndices[i] = walker.lineAt(starts[i]);
+			endLines[i] = walker.lineAt(ends[i]);
+			if(inPlace && (endLines[i]!=lineIndices[i] || adds[i].indexOf('\n')>=0))
+				inPlace = false;
+		}
+		if(recordEdits)
+			recordBatch(count, starts, ends, adds);
+		text.replace(count, starts, ends, adds);
+		
+		if(inPlace) {
+			int[] spans = new int[count];
+			for(int i=0; i<count; i++) {
+				L line = lines.get(lineIndices[i]);
+				line.length += adds[i].length()-(ends[i]-starts[i]);
+				line.reset();
+				spans[i] = line.offs+line.length;
+			}
+			lineStarts.setSpans(count, lineIndices, spans);
+			if(highlighter!=null)
+				highlighter.invalidate(lineIndices[0]);
+		}
+		else {
+			splitChangedLines(count, starts, ends, adds, lineIndices, endLines);
+		}
+		cursorLine = null;
+	}
+	
+	/**
+	 * Rebuilds the line list after {@link #replaceTexts(int, int[], int[], String[])} has modified the text.
+	 * Unchanged lines are kept with their cached tokens and measurements.
+	 */
+	private void splitChangedLines(int count, int[] starts, int[] ends, String[] adds, int[] lineIndices, int[] endLines) {
+		ArrayList<L> result = new ArrayList<>(lines.size());
+		int next = 0;
+		int shift = 0;
+		walker.reset();
+		for(int i=0; i<count;) {
+			// group changes that touch the same lines
+			int first = lineIndices[i];
+			int last = endLines[i];
+			int delta = adds[i].length()-(ends[i]-starts[i]);
+			int j = i+1;
+			for(; j<count && lineIndices[j]<=last; j++) {
+				last = Math.max(last, endLines[j]);
+				delta += adds[j].length()-(ends[j]-starts[j]);
+			}
+			for(; next<first; next++)
+				result.add(lines.get(next));
+			
+			int segStart = walker.lineStart(first)+shift;
+			int segEnd = walker.lineStart(last)+lines.get(last).length+shift+delta;
+			L line = lines.get(first);
+			int pos = segStart;
+			for(int nl; (nl = text.indexOf('\n', pos, segEnd))>=0;) {
+				int sep = nl>pos && text.charAt(nl-1)=='\r' ? 2 : 1;
+				line.length = nl+1-sep-pos;
+				line.reset();
+				result.add(line);
+				line = createLine();
+				line.offs = sep;
+				pos = nl+1;
+			}
+			line.length = segEnd-pos;
+			line.reset();
+			result.add(line);
+			
+			shift += delta;
+			next = last+1;
+			i = j;
+		}
+		for(int n=lines.size(); next<n; next++)
+			result.add(lines.get(next));
+		
+		lines.clear();
+		lines.addAll(result);
+		int[] spans = new int[lines.size()];
+		for(int i=0; i<spans.length; i++) {
+			L line = lines.get(i);
+			spans[i] = line.offs+line.length;
+		}
+		lineStarts.clear();
+		lineStarts.insert(0, spans);
+		if(wordWrap)
+			estimateVisualRows();
+		if(highlighter!=null)
+			highlighter.invalidate(lineIndices[0]);
 	}
 
 	protected void checkPushHistory(HistoryAction action) {
@@ -852,11 +2585,15 @@ protected boolean isCursorAtWordBoundary() {
 		}
 	}
 	
-	@Override
-	public boolean onKeyPressed(char c, int code, InputInfo input) {
+	/**
+	 * Moves the cursor for a navigation key: left, right, home, or end, extending the selection if Shift is held.
+	 * Applied to each caret in turn when there are multiple carets.
+	 * @param code key code
+	 * @param input modifier keys
+	 */
+	protected void moveCursor(int code, InputInfo input) {
 		switch(code) {
 			case KeyEvent.VK_LEFT:
-				checkPushHistory();
 				if(input.isShiftDown())
 					startSelection();
 				else {
@@ -876,13 +2613,11 @@ else if(cursor.line>0) {
 						cursor.col = lines.get(cursor.line).length;
 					}
 				} while(input.isCtrlDown() && !isCursorAtWordBoundary());
-				scrollToCursor();
 				if(input.isShiftDown())
 					modifySelection();
 				break;
 				
 			case KeyEvent.VK_RIGHT:
-				checkPushHistory();
 				if(input.isShiftDown())
 					startSelection();
 				else {
@@ -900,22 +2635,78 @@ else if(cursor.line<lines.size()-1) {
 						cursor.col = 0;
 					}
 				} while(input.isCtrlDown() && !isCursorAtWordBoundary());
-				scrollToCursor();
 				if(input.isShiftDown())
 					modifySelection();
 				break;
 				
+			case KeyEvent.VK_HOME:
+				if(input.isShiftDown())
+					startSelection();
+				else
+					deselect();
+				if(input.isCtrlDown()) {
+					cursor.line = 0;
+				}
+				cursor.col = 0;
+				cursorX = -1;
+				if(input.isShiftDown())
+					modifySelection();
+				break;
+				
+			case KeyEvent.VK_END:
+				if(input.isShiftDown())
+					startSelection();
+				else
+					deselect();
+				if(input.isCtrlDown()) {
+					cursor.line = lines.size()-1;
+				}
+				cursor.col = lines.get(cursor.line).length;
+				cursorX = -1;
+				if(input.isShiftDown())
+					modifySelection();
+				break;
+		}
+	}
+	
+	@Override
+	public boolean onKeyPressed(char c, int code, InputInfo input) {
+		switch(code) {
+			case KeyEvent.VK_LEFT:
+			case KeyEvent.VK_RIGHT:
+			case KeyEvent.VK_HOME:
+			case KeyEvent.VK_END:
+				checkPushHistory();
+				moveCursor(code, input);
+				if(!carets.isEmpty()) {
+					for(Caret caret : carets) {
+						swapCaret(caret);
+						moveCursor(code, input);
+						swapCaret(caret);
+					}
+					normalizeCarets();
+				}
+				scrollToCursor();
+				break;
+				
 			case KeyEvent.VK_UP:
 				checkPushHistory();
 				if(input.mods==CTRL) {
 					panView().pan(0, lineHeight);
 				}
+				else if(input.mods==(CTRL|ALT)) {
+					addCaretVertical(-1);
+					scrollToCursor();
+				}
 				else {
+					clearCarets();
 					if(input.mods==SHIFT)
 						startSelection();
 					else
 						deselect();
-					if(cursor.line>0) {
+					if(wordWrap)
+						moveCursorRows(-1);
+					else if(cursor.line>0) {
 						cursor.line--;
 						updateCursor();
 					}
@@ -930,12 +2721,19 @@ else if(cursor.line<lines.size()-1) {
 				if(input.mods==CTRL) {
 					panView().pan(0, -lineHeight);
 				}
+				else if(input.mods==(CTRL|ALT)) {
+					addCaretVertical(1);
+					scrollToCursor();
+				}
 				else {
+					clearCarets();
 					if(input.mods==SHIFT)
 						startSelection();
 					else
 						deselect();
-					if(cursor.line<lines.size()-1) {
+					if(wordWrap)
+						moveCursorRows(1);
+					else if(cursor.line<lines.size()-1) {
 						cursor.line++;
 						updateCursor();
 					}
@@ -947,15 +2745,20 @@ else if(cursor.line<lines.size()-1) {
 				
 			case KeyEvent.VK_PAGE_UP:
 				checkPushHistory();
+				clearCarets();
 				if(input.mods==SHIFT)
 					startSelection();
 				else
 					deselect();
-				if(cursor.line>page)
-					cursor.line -= page;
-				else
-					cursor.line = 0;
-				updateCursor();
+				if(wordWrap)
+					moveCursorRows(-page);
+				else {
+					if(cursor.line>page)
+						cursor.line -= page;
+					else
+						cursor.line = 0;
+					updateCursor();
+				}
 				scrollToCursor();
 				if(input.mods==SHIFT)
 					modifySelection();
@@ -963,54 +2766,32 @@ else if(cursor.line<lines.size()-1) {
 				
 			case KeyEvent.VK_PAGE_DOWN:
 				checkPushHistory();
+				clearCarets();
 				if(input.mods==SHIFT)
 					startSelection();
 				else
 					deselect();
-				if(cursor.line+page<=lines.size()-1)
-					cursor.line += page;
-				else
-					cursor.line = lines.size()-1;
-				updateCursor();
-				scrollToCursor();
-				if(input.mods==SHIFT)
-					modifySelection();
-				break;
-				
-			case KeyEvent.VK_HOME:
-				checkPushHistory();
-				if(input.isShiftDown())
-					startSelection();
-				else
-					deselect();
-				if(input.isCtrlDown()) {
-					cursor.line = 0;
-				}
-				cursor.col = 0;
-				cursorX = -1;
-				scrollToCursor();
-				if(input.isShiftDown())
-					modifySelection();
-				break;
-				
-			case KeyEvent.VK_END:
-				checkPushHistory();
-				if(input.isShiftDown())
-					startSelection();
-				else
-					deselect();
-				if(input.isCtrlDown()) {
-					cursor.line = lines.size()-1;
+				if(wordWrap)
+					moveCursorRows(page);
+				else {
+					if(cursor.line+page<=lines.size()-1)
+						cursor.line += page;
+					else
+						cursor.line = lines.size()-1;
+					updateCursor();
 				}
-				cursor.col = lines.get(cursor.line).length;
-				cursorX = -1;
 				scrollToCursor();
-				if(input.isShiftDown())
+				if(input.mods==SHIFT)
 					modifySelection();
 				break;
 				
 			case KeyEvent.VK_BACK_SPACE:
-				if(selStart!=null) {
+				if(!carets.isEmpty()) {
+					checkPushHistory(HistoryAction.deleting);
+					deleteAtCarets(false);
+					scrollToCursor();
+				}
+				else if(selStart!=null) {
 					deleteSelection();
 					scrollToCursor();
 				}
@@ -1022,6 +2803,7 @@ else if(cursor.line<lines.size()-1) {
 						scrollToCursor();
 					}
 					else if(cursor.line>0) {
+						recordBefore();
 						cursor.col = lines.get(cursor.line-1).length;
 						cursor.line--;
 						joinLineWithNext();
@@ -1031,7 +2813,12 @@ else if(cursor.line>0) {
 				break;
 				
 			case KeyEvent.VK_DELETE:
-				if(selStart!=null) {
+				if(!carets.isEmpty()) {
+					checkPushHistory(HistoryAction.deleting);
+					deleteAtCarets(true);
+					scrollToCursor();
+				}
+				else if(selStart!=null) {
 					deleteSelection();
 					scrollToCursor();
 				}
@@ -1047,7 +2834,12 @@ else if(cursor.line<lines.size()-1) {
 				break;
 				
 			case KeyEvent.VK_ENTER:
-				if(!singleLine) {
+				if(!carets.isEmpty()) {
+					checkPushHistory(HistoryAction.typing);
+					splitLinesAtCarets();
+					scrollToCursor();
+				}
+				else if(!singleLine) {
 					deleteSelection();
 					checkPushHistory(HistoryAction.typing);
 					cursor.col = splitLineAtCursor();
@@ -1060,11 +2852,21 @@ else if(cursor.line<lines.size()-1) {
 				break;
 
 			case KeyEvent.VK_ESCAPE:
-				getRoot().resetFocus();
+				if(!carets.isEmpty())
+					clearCarets();
+				else
+					getRoot().resetFocus();
 				break;
 				
 			case KeyEvent.VK_TAB:
-				if(!singleLine) {
+				if(!carets.isEmpty()) {
+					if(input.mods==NONE) {
+						checkPushHistory(HistoryAction.typing);
+						typeAtCarets("\t");
+						scrollToCursor();
+					}
+				}
+				else if(!singleLine) {
 					if(selStart==null) {
 						if(input.mods==NONE) {
 							checkPushHistory(HistoryAction.typing);
@@ -1117,6 +2919,17 @@ else if(cursor.line<lines.size()-1) {
 							return false;
 					}
 				}
+				else if(input.mods==(ALT|SHIFT) && code==KeyEvent.VK_I) {
+					checkPushHistory();
+					splitSelectionIntoLines();
+				}
+				else if(!carets.isEmpty()) {
+					if(!Character.isISOControl(c) && c!=KeyEvent.CHAR_UNDEFINED) {
+						checkPushHistory(HistoryAction.typing);
+						typeAtCarets(Character.toString(c));
+						scrollToCursor();
+					}
+				}
 				else {
 					if(!Character.isISOControl(c) && c!=KeyEvent.CHAR_UNDEFINED) {
 						deleteSelection();
@@ -1151,6 +2964,16 @@ public boolean onMouseDown(float x, float y, MouseInfo mouse) {
 				getRoot().setFocus(this);
 			else 
 				checkPushHistory();
+			if(mouse.mods==ALT && !singleLine) {
+				// keep the current cursor as an additional caret
+				carets.add(new Caret(new Position(cursor), copyPosition(selStart), copyPosition(selEnd)));
+				deselect();
+				cursorToMouse(x, y);
+				normalizeCarets();
+				repaint();
+				return true;
+			}
+			clearCarets();
 			deselect();
 			cursorToMouse(x, y);
 			repaint();
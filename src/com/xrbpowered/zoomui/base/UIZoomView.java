@@ -1,5 +1,13 @@
 package com.xrbpowered.zoomui.base;
 
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
 import com.xrbpowered.zoomui.GraphAssist;
 import com.xrbpowered.zoomui.MouseInfo;
 import com.xrbpowered.zoomui.UIContainer;
@@ -15,6 +23,15 @@
  *
  * <p>By default, the zooming is done using Ctrl + mouse-scroll. Subclasses can override {@link #isScrollTrigger(MouseInfo)}
  * to change the modifier key. Zooming by mouse-dragging is not implemented in this class.</p>
+ * 
+ * <p>Tiled rendering mode can be enabled with {@link #setTiledRendering(boolean)}. In this mode, child elements are rasterized
+ * into fixed-size tiles for each quantized zoom level, and the tiles are kept in a {@link TileCache}.
+ * Panning and zooming composite the cached tiles instead of repainting the children. If the tiles for the current zoom level
+ * are missing, the view shows the tiles of the nearest cached level scaled, and renders at most {@link #maxTilesPerFrame} new tiles
+ * in each frame until the view is refined. Tiles are invalidated by {@link #repaint()}, {@link #repaint(float, float, float, float)},
+ * and {@link #invalidateLayout()} calls from this view or its children.
+ * Tiles are rendered with the pixel size of their zoom level, which can differ slightly from the current pixel size,
+ * so the tiled mode is intended for views with mostly static contents, e.g. large diagrams.</p>
  */
 public class UIZoomView extends UIPanView {
 
@@ -36,6 +53,27 @@ public class UIZoomView extends UIPanView {
 	 */
 	private float maxScale = 3.0f;
 
+	/**
+	 * Maximum number of tiles rendered in one frame if a scaled tile from another zoom level can be shown instead.
+	 */
+	public int maxTilesPerFrame = 4;
+
+	/**
+	 * Maximum difference between zoom levels for showing scaled tiles while the view is being refined.
+	 */
+	public int maxFallbackLevels = 16;
+
+	/**
+	 * Tile cache, or <code>null</code> if the tiled rendering is disabled.
+	 * @see #setTiledRendering(boolean)
+	 */
+	private TileCache tiles = null;
+
+	/**
+	 * Pixel size of the tile being rendered, or zero if the view is not rendering a tile.
+	 */
+	private float tilePixelSize = 0f;
+
 	/**
 	 * Constructor, see {@link UIElement#UIElement(UIContainer)}.
 	 * @param parent parent container
@@ -176,6 +214,8 @@ public float getPanY() {
 
 	@Override
 	public float getPixelSize() {
+		if(tilePixelSize>0f)
+			return tilePixelSize;
 		return super.getPixelSize() / scale;
 	}
 
@@ -209,10 +249,194 @@ protected void applyTransform(GraphAssist g) {
 	public boolean onMouseScroll(float x, float y, float delta, MouseInfo mouse) {
 		if(isScrollTrigger(mouse)) {
 			rescale(1.0f + delta * 0.2f, x, y);
-			repaint();
+			repaintTransform();
 			return true;
 		}
 		else
 			return false;
 	}
+
+	/**
+	 * Enables or disables tiled rendering mode with a default {@link TileCache}.
+	 * @param tiled <code>true</code> to enable tiled rendering, <code>false</code> to disable and release the cached tiles
+	 * @see #setTileCache(TileCache)
+	 */
+	public void setTiledRendering(boolean tiled) {
+		if(tiled!=isTiledRendering())
+			setTileCache(tiled ? new TileCache() : null);
+	}
+
+	/**
+	 * Enables tiled rendering mode with a specific tile cache, or disables it if <code>null</code>.
+	 * @param tiles tile cache or <code>null</code>
+	 */
+	public void setTileCache(TileCache tiles) {
+		this.tiles = tiles;
+		if(tiles!=null)
+			tiles.clear();
+	}
+
+	/**
+	 * Returns the tile cache used by this view.
+	 * @return tile cache or <code>null</code> if the tiled rendering is disabled
+	 */
+	public TileCache getTileCache() {
+		return tiles;
+	}
+
+	public boolean isTiledRendering() {
+		return tiles!=null;
+	}
+
+	/**
+	 * Removes all cached tiles. Tiles are re-rendered the next time this view is painted.
+	 * This method does not request repainting.
+	 */
+	public void invalidateTiles() {
+		if(tiles!=null)
+			tiles.clear();
+	}
+
+	@Override
+	public void repaint() {
+		invalidateTiles();
+		super.repaint();
+	}
+
+	@Override
+	public void repaint(float x, float y, float w, float h) {
+		if(tiles!=null)
+			tiles.invalidate(x, y, w, h);
+		super.repaint(x, y, w, h);
+	}
+
+	@Override
+	public void invalidateLayout() {
+		invalidateTiles();
+		super.invalidateLayout();
+	}
+
+	@Override
+	protected void repaintTransform() {
+		if(tiles!=null) {
+			invalidateLayerCache();
+			getParent().repaint();
+		}
+		else
+			repaint();
+	}
+
+	@Override
+	protected void paintView(GraphAssist g) {
+		if(tiles==null || g.graph==null) {
+			super.paintView(g);
+			return;
+		}
+		int level = tiles.getLevel(getPixelSize());
+		double span = tiles.getTileSpan(level);
+		double tilePix = tiles.getTilePixelSize(level);
+		Rectangle clip = g.getClip();
+		int col0 = (int) Math.floor(clip.x / span);
+		int col1 = (int) Math.floor((clip.x + clip.width) / span);
+		int row0 = (int) Math.floor(clip.y / span);
+		int row1 = (int) Math.floor((clip.y + clip.height) / span);
+
+		Object interpolation = g.graph.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+		g.graph.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		int rendered = 0;
+		boolean refine = false;
+		for(int row=row0; row<=row1; row++)
+			for(int col=col0; col<=col1; col++) {
+				BufferedImage img = tiles.get(level, col, row);
+				if(img==null) {
+					if(rendered>=maxTilesPerFrame && paintFallbackTile(g, level, col, row)) {
+						refine = true;
+						continue;
+					}
+					img = renderTile(g, level, col, row);
+					rendered++;
+				}
+				drawTile(g, img, col * span, row * span, tilePix);
+			}
+		if(interpolation!=null)
+			g.graph.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+
+		if(refine)
+			getParent().repaint(getX(), getY(), getWidth(), getHeight());
+	}
+
+	/**
+	 * Rasterizes child elements into a new tile and adds it to the cache.
+	 * @param g current graphics, used as a source of rendering hints
+	 * @param level zoom level
+	 * @param col tile column
+	 * @param row tile row
+	 * @return tile image
+	 */
+	private BufferedImage renderTile(GraphAssist g, int level, int col, int row) {
+		double span = tiles.getTileSpan(level);
+		double tilePix = tiles.getTilePixelSize(level);
+		BufferedImage img = new BufferedImage(tiles.tileSize, tiles.tileSize, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = img.createGraphics();
+		g2.setRenderingHints(g.graph.getRenderingHints());
+		g2.scale(1.0 / tilePix, 1.0 / tilePix);
+		g2.translate(-col * span, -row * span);
+		g2.clip(new Rectangle2D.Double(col * span, row * span, span, span));
+		tilePixelSize = (float) tilePix;
+		try {
+			super.paintView(new GraphAssist(g2));
+		}
+		finally {
+			tilePixelSize = 0f;
+			g2.dispose();
+		}
+		tiles.put(level, col, row, img);
+		return img;
+	}
+
+	private static void drawTile(GraphAssist g, BufferedImage img, double x, double y, double tilePix) {
+		g.graph.drawImage(img, new AffineTransform(tilePix, 0, 0, tilePix, x, y), null);
+	}
+
+	/**
+	 * Draws scaled tiles of the nearest zoom level that has all tiles covering the area of a missing tile.
+	 * @param g graphics in transformed local space
+	 * @param level zoom level of the missing tile
+	 * @param col column of the missing tile
+	 * @param row row of the missing tile
+	 * @return <code>true</code> if the area has been painted, <code>false</code> if no suitable level is cached
+	 */
+	private boolean paintFallbackTile(GraphAssist g, int level, int col, int row) {
+		double span = tiles.getTileSpan(level);
+		double x = col * span;
+		double y = row * span;
+		for(int d=1; d<=maxFallbackLevels; d++) {
+			if(paintFallbackLevel(g, level - d, x, y, span) || paintFallbackLevel(g, level + d, x, y, span))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean paintFallbackLevel(GraphAssist g, int level, double x, double y, double span) {
+		double fspan = tiles.getTileSpan(level);
+		int col0 = (int) Math.floor(x / fspan);
+		int col1 = (int) Math.ceil((x + span) / fspan) - 1;
+		int row0 = (int) Math.floor(y / fspan);
+		int row1 = (int) Math.ceil((y + span) / fspan) - 1;
+		for(int row=row0; row<=row1; row++)
+			for(int col=col0; col<=col1; col++) {
+				if(!tiles.contains(level, col, row))
+					return false;
+			}
+
+		double tilePix = tiles.getTilePixelSize(level);
+		Shape clip = g.graph.getClip();
+		g.graph.clip(new Rectangle2D.Double(x, y, span, span));
+		for(int row=row0; row<=row1; row++)
+			for(int col=col0; col<=col1; col++)
+				drawTile(g, tiles.get(level, col, row), col * fspan, row * fspan, tilePix);
+		g.graph.setClip(clip);
+		return true;
+	}
+
 }
@@ -0,0 +1,242 @@
+package com.xrbpowered.zoomui.icons;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Texture atlas that packs icon rasters of the same pixel size into shared pages.
+ *
+ * <p>Each pixel size has its own list of pages. Within a page, images are placed on horizontal shelves
+ * (a shelf is a row with a fixed height), which works well for icons as images of the same size class
+ * have nearly the same height. The first page of each size fits about 4 images, and when a size runs out of space,
+ * a new page is added, each new page being twice as tall as the previous one up to {@link #MAX_PAGE_SIZE}. Freed slots are reused for images of the same or smaller size,
+ * and pages that no longer hold any images are released.</p>
+ *
+ * <p>Allocated areas are returned as immutable {@link Region} handles that can be drawn using
+ * {@link #drawRegion(Graphics2D, Region, int, int)}.
+ * Regions are never moved: to defragment the atlas, copy live regions into a new atlas
+ * using {@link #add(float, Region)}, see {@link IconCache#repack()}.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+public class IconAtlas {
+
+	public static final int MIN_PAGE_SIZE = 64;
+	public static final int MAX_PAGE_SIZE = 2048;
+
+	/**
+	 * Handle to a rectangular area of an atlas page.
+	 */
+	public static class Region {
+		/**
+		 * Page image containing the region.
+		 */
+		public final BufferedImage image;
+		public final int x, y;
+		public final int width, height;
+
+		private final Page page;
+		private final Shelf shelf;
+		private final int slotWidth;
+
+		private Region(Page page, Shelf shelf, int x, int slotWidth, int width, int height) {
+			this.image = page.image;
+			this.page = page;
+			this.shelf = shelf;
+			this.x = x;
+			this.y = shelf.y;
+			this.slotWidth = slotWidth;
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	private static class Shelf {
+		public final int y, height;
+		public int next = 0;
+		public final ArrayList<Region> freed = new ArrayList<>();
+
+		public Shelf(int y, int height) {
+			this.y = y;
+			this.height = height;
+		}
+
+		public boolean fits(int h) {
+			return h<=height && h>=height-height/4;
+		}
+	}
+
+	private class Page {
+		public final BufferedImage image;
+		public final ArrayList<Shelf> shelves = new ArrayList<>();
+		public int shelfTop = 0;
+		public int count = 0;
+
+		public Page(int width, int height) {
+			this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		}
+
+		public Region allocate(int w, int h) {
+			// reuse a freed slot
+			for(Shelf shelf : shelves) {
+				if(!shelf.fits(h))
+					continue;
+				for(Iterator<Region> it = shelf.freed.iterator(); it.hasNext();) {
+					Region slot = it.next();
+					if(slot.slotWidth>=w) {
+						it.remove();
+						freedBytes -= slot.slotWidth * (long) shelf.height * 4L;
+						return new Region(this, shelf, slot.x, slot.slotWidth, w, h);
+					}
+				}
+			}
+			// append to an existing shelf
+			int pageWidth = image.getWidth();
+			for(Shelf shelf : shelves) {
+				if(shelf.fits(h) && shelf.next+w<=pageWidth) {
+					Region r = new Region(this, shelf, shelf.next, w, w, h);
+					shelf.next += w;
+					return r;
+				}
+			}
+			// start a new shelf
+			if(shelfTop+h<=image.getHeight() && w<=pageWidth) {
+				Shelf shelf = new Shelf(shelfTop, h);
+				shelves.add(shelf);
+				shelfTop += h;
+				shelf.next = w;
+				return new Region(this, shelf, 0, w, w, h);
+			}
+			return null;
+		}
+	}
+
+	private final HashMap<Float, ArrayList<Page>> sizes = new HashMap<>();
+
+	private int pageCount = 0;
+	private long pageBytes = 0L;
+	private long freedBytes = 0L;
+
+	private Region allocate(float size, int w, int h) {
+		ArrayList<Page> pages = sizes.get(size);
+		if(pages==null) {
+			pages = new ArrayList<>();
+			sizes.put(size, pages);
+		}
+		for(Page page : pages) {
+			Region r = page.allocate(w, h);
+			if(r!=null) {
+				page.count++;
+				return r;
+			}
+		}
+		int pw, ph;
+		if(pages.isEmpty()) {
+			pw = MIN_PAGE_SIZE;
+			while(pw<MAX_PAGE_SIZE && pw<Math.max(w, h)*2)
+				pw *= 2;
+			ph = pw;
+		}
+		else {
+			BufferedImage last = pages.get(pages.size()-1).image;
+			pw = last.getWidth();
+			ph = Math.min(MAX_PAGE_SIZE, last.getHeight()*2);
+		}
+		Page page = new Page(Math.max(pw, w), Math.max(ph, h));
+		pages.add(page);
+		pageCount++;
+		pageBytes += page.image.getWidth() * (long) page.image.getHeight() * 4L;
+		Region r = page.allocate(w, h);
+		page.count++;
+		return r;
+	}
+
+	/**
+	 * Copies an image into the atlas.
+	 * @param size pixel size used to group images into pages
+	 * @param img image of type {@link BufferedImage#TYPE_INT_ARGB}
+	 * @return region containing a copy of the image
+	 */
+	public Region add(float size, BufferedImage img) {
+		Region r = allocate(size, img.getWidth(), img.getHeight());
+		r.image.getRaster().setDataElements(r.x, r.y, img.getRaster());
+		return r;
+	}
+
+	/**
+	 * Copies a region of another atlas into this atlas.
+	 * @param size pixel size used to group images into pages
+	 * @param src source region
+	 * @return region containing a copy of the source region
+	 */
+	public Region add(float size, Region src) {
+		Region r = allocate(size, src.width, src.height);
+		Raster in = src.image.getRaster().createChild(src.x, src.y, src.width, src.height, 0, 0, null);
+		r.image.getRaster().setDataElements(r.x, r.y, in);
+		return r;
+	}
+
+	/**
+	 * Draws a region without scaling, i.e., one region pixel per unit of the current coordinate space.
+	 * @param graph graphics context, normally with an identity transform
+	 * @param r atlas region
+	 * @param x left position of the region
+	 * @param y top position of the region
+	 */
+	public static void drawRegion(Graphics2D graph, Region r, int x, int y) {
+		graph.drawImage(r.image, x, y, x + r.width, y + r.height, r.x, r.y, r.x + r.width, r.y + r.height, null);
+	}
+
+	/**
+	 * Releases a region. The area may be reused by subsequent allocations, so the region must no longer be drawn.
+	 * @param r region allocated by this atlas
+	 */
+	public void free(Region r) {
+		Page page = r.page;
+		page.count--;
+		if(page.count>0) {
+			r.shelf.freed.add(r);
+			freedBytes += r.slotWidth * (long) r.shelf.height * 4L;
+			return;
+		}
+		for(Iterator<ArrayList<Page>> it = sizes.values().iterator(); it.hasNext();) {
+			ArrayList<Page> pages = it.next();
+			if(pages.remove(page)) {
+				for(Shelf shelf : page.shelves) {
+					for(Region slot : shelf.freed)
+						freedBytes -= slot.slotWidth * (long) shelf.height * 4L;
+				}
+				pageCount--;
+				pageBytes -= page.image.getWidth() * (long) page.image.getHeight() * 4L;
+				if(pages.isEmpty())
+					it.remove();
+				break;
+			}
+		}
+	}
+
+	public int getPageCount() {
+		return pageCount;
+	}
+
+	/**
+	 * Returns the total memory used by atlas pages, including unallocated space.
+	 * @return memory size in bytes
+	 */
+	public long getPageBytes() {
+		return pageBytes;
+	}
+
+	/**
+	 * Returns the memory taken by freed slots that have not been reused yet.
+	 * @return memory size in bytes
+	 */
+	public long getFreedBytes() {
+		return freedBytes;
+	}
+
+}
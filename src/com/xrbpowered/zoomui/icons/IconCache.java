@@ -0,0 +1,404 @@
+package com.xrbpowered.zoomui.icons;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory-bounded cache of icon rasters shared by all {@link SvgIcon} instances.
+ *
+ * <p>Rasters are keyed by icon, palette, style, pixel size and sub-pixel offset, and evicted in least recently used order
+ * when the total size of cached images exceeds the byte budget. To limit the number of variants created during
+ * continuous zooming, pixel sizes are rounded to multiples of {@link #getSizeStep()}, and sub-pixel offsets
+ * are rounded to {@link #getSubpixelSteps()} positions per pixel.</p>
+ *
+ * <p>Rasters are stored in an {@link IconAtlas}, so icons of the same pixel size share a few large page images
+ * instead of each having its own. The memory budget applies to the area of cached rasters; unused space in atlas pages
+ * is reclaimed by {@link #repack()}, which is also done automatically when space freed by evicted images exceeds half of the budget.</p>
+ *
+ * <p>Painting is tracked in frames by {@link IconPrefetcher}. Images used in the current or the previous frame are not evicted,
+ * so that rasters rasterized for the next frame stay available, and the budget can be exceeded temporarily if they do not fit.
+ * Atlas space of images evicted while a frame is painted is released when no frame is being painted,
+ * as the images may still be drawn.</p>
+ *
+ * <p>The cache is thread-safe.</p>
+ */
+public class IconCache {
+
+	/**
+	 * Composite cache key.
+	 */
+	static class Key {
+		public final SvgIcon icon;
+		public final IconPalette palette;
+		public final int style;
+		public final float size;
+		public final int subX, subY;
+
+		public Key(SvgIcon icon, IconPalette palette, int style, float size, int subX, int subY) {
+			this.icon = icon;
+			this.palette = palette;
+			this.style = style;
+			this.size = size;
+			this.subX = subX;
+			this.subY = subY;
+		}
+
+		@Override
+		public int hashCode() {
+			int h = System.identityHashCode(icon);
+			h = h*31 + System.identityHashCode(palette);
+			h = h*31 + style;
+			h = h*31 + Float.floatToIntBits(size);
+			h = h*31 + subX;
+			h = h*31 + subY;
+			return h;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key))
+				return false;
+			Key k = (Key) obj;
+			return icon==k.icon && palette==k.palette && style==k.style && size==k.size && subX==k.subX && subY==k.subY;
+		}
+	}
+
+	private static class Entry {
+		public IconAtlas.Region region;
+		/**
+		 * Last frame in which the image has been used, see {@link IconCache#beginFrame()}.
+		 */
+		public long used = NOT_USED;
+
+		public Entry(IconAtlas.Region region) {
+			this.region = region;
+		}
+	}
+
+	private static final long NOT_USED = Long.MIN_VALUE;
+
+	/**
+	 * Process-wide icon cache used by {@link SvgIcon#paint(java.awt.Graphics2D, int, float, float, float, float, boolean)}.
+	 */
+	public static final IconCache shared = new IconCache(32L*1024L*1024L);
+
+	private final LinkedHashMap<Key, Entry> images = new LinkedHashMap<>(64, 0.75f, true);
+	private IconAtlas atlas = new IconAtlas();
+
+	private long frame = 0L;
+	private int activeFrames = 0;
+	/**
+	 * Regions evicted while a frame is painted, released by {@link #endFrame()}.
+	 */
+	private final ArrayList<IconAtlas.Region> retired = new ArrayList<>();
+
+	private long maxBytes;
+	private float sizeStep = 0.25f;
+	private int subpixelSteps = 4;
+
+	private long usedBytes = 0L;
+	private long hits = 0L;
+	private long misses = 0L;
+	private long evictions = 0L;
+	private long repacks = 0L;
+
+	/**
+	 * Constructor.
+	 * @param maxBytes memory budget in bytes, or 0 for unlimited
+	 */
+	public IconCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	private static long sizeOf(IconAtlas.Region r) {
+		return r.width * (long) r.height * 4L;
+	}
+
+	private void use(Entry e, boolean pin) {
+		if(pin || activeFrames>0)
+			e.used = frame;
+	}
+
+	private boolean isPinned(Entry e) {
+		return e.used>=frame-1L;
+	}
+
+	private void release(IconAtlas.Region r) {
+		if(activeFrames>0)
+			retired.add(r);
+		else
+			atlas.free(r);
+	}
+
+	private void checkRepack() {
+		if(maxBytes>0L && atlas.getFreedBytes()>maxBytes/2L)
+			repack();
+	}
+
+	/**
+	 * Evicts least recently used images that are not pinned until the cache fits in the budget.
+	 * @param keep image that must not be evicted, e.g., the one being returned, or <code>null</code>
+	 */
+	private void trim(Entry keep) {
+		if(maxBytes<=0L)
+			return;
+		Iterator<Entry> it = images.values().iterator();
+		boolean evicted = false;
+		while(usedBytes>maxBytes && it.hasNext()) {
+			Entry e = it.next();
+			if(e==keep || isPinned(e))
+				continue;
+			usedBytes -= sizeOf(e.region);
+			release(e.region);
+			it.remove();
+			evictions++;
+			evicted = true;
+		}
+		if(evicted)
+			checkRepack();
+	}
+
+	/**
+	 * Starts painting a frame. Images used from now on are not evicted until the end of the next frame.
+	 * Frames of several windows can overlap.
+	 */
+	synchronized void beginFrame() {
+		frame++;
+		activeFrames++;
+	}
+
+	/**
+	 * Finishes painting a frame. If no other frame is being painted, releases the atlas space of images
+	 * evicted during the frame.
+	 */
+	synchronized void endFrame() {
+		if(activeFrames==0)
+			return;
+		activeFrames--;
+		if(activeFrames==0 && !retired.isEmpty()) {
+			for(IconAtlas.Region r : retired)
+				atlas.free(r);
+			retired.clear();
+			checkRepack();
+		}
+	}
+
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Changes the memory budget. Least recently used images are evicted immediately if the cache exceeds the new budget.
+	 * @param maxBytes memory budget in bytes, or 0 for unlimited
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		trim(null);
+	}
+
+	public synchronized float getSizeStep() {
+		return sizeStep;
+	}
+
+	/**
+	 * Sets the pixel size quantization step. Changing the step clears the cache.
+	 * @param step size step in pixels, or 0 to cache exact sizes
+	 */
+	public synchronized void setSizeStep(float step) {
+		this.sizeStep = step;
+		clear();
+	}
+
+	public synchronized int getSubpixelSteps() {
+		return subpixelSteps;
+	}
+
+	/**
+	 * Sets the number of sub-pixel positions per pixel. Changing the value clears the cache.
+	 * @param steps number of positions, or 1 to align icons to whole pixels
+	 */
+	public synchronized void setSubpixelSteps(int steps) {
+		this.subpixelSteps = Math.max(1, steps);
+		clear();
+	}
+
+	/**
+	 * Rounds pixel size according to the size step.
+	 * @param size icon size in pixels
+	 * @return quantized size
+	 */
+	public synchronized float quantizeSize(float size) {
+		if(sizeStep<=0f)
+			return size;
+		return Math.max(1, Math.round(size / sizeStep)) * sizeStep;
+	}
+
+	/**
+	 * Returns a cached icon raster if it exists.
+	 * A successful lookup counts as a hit, but a failed lookup is not counted as a miss.
+	 * @param key cache key
+	 * @return atlas region containing the icon image, or <code>null</code>
+	 */
+	synchronized IconAtlas.Region getIfPresent(Key key) {
+		Entry e = images.get(key);
+		if(e==null)
+			return null;
+		hits++;
+		use(e, true);
+		return e.region;
+	}
+
+	/**
+	 * Checks if any of the images is in the cache. Does not count hits or misses.
+	 * @param keys cache keys
+	 * @return <code>true</code> if at least one image is cached
+	 */
+	synchronized boolean containsAny(Key[] keys) {
+		for(Key key : keys) {
+			if(images.containsKey(key))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a cached icon raster, creating it if needed.
+	 * @param icon icon
+	 * @param style palette style
+	 * @param size quantized icon size in pixels, see {@link #quantizeSize(float)}
+	 * @param subX horizontal sub-pixel offset in the range <code>[0, {@link #getSubpixelSteps()})</code>
+	 * @param subY vertical sub-pixel offset
+	 * @return atlas region containing the icon image
+	 */
+	public IconAtlas.Region get(SvgIcon icon, int style, float size, int subX, int subY) {
+		return get(new Key(icon, icon.palette, style, size, subX, subY), false);
+	}
+
+	/**
+	 * Returns a cached icon raster, creating it if needed.
+	 * @param key cache key
+	 * @param pin <code>true</code> to keep the image until the end of the next frame, e.g., when rasterized for the next frame.
+	 * 		Images are always kept if they are used while a frame is painted.
+	 * @return atlas region containing the icon image
+	 */
+	IconAtlas.Region get(Key key, boolean pin) {
+		int steps;
+		synchronized(this) {
+			Entry e = images.get(key);
+			if(e!=null) {
+				hits++;
+				use(e, pin);
+				return e.region;
+			}
+			misses++;
+			steps = subpixelSteps;
+		}
+		// rasterize outside the lock
+		BufferedImage img = key.icon.createImage(key.style, key.size/(double)key.icon.baseSize, key.subX/(double)steps, key.subY/(double)steps);
+		synchronized(this) {
+			Entry e = images.get(key);
+			if(e==null) {
+				e = new Entry(atlas.add(key.size, img));
+				images.put(key, e);
+				usedBytes += sizeOf(e.region);
+				trim(e);
+			}
+			// else rasterized concurrently
+			use(e, pin);
+			return e.region;
+		}
+	}
+
+	/**
+	 * Copies all cached images into a new tightly packed atlas, releasing unused page space.
+	 * Pixel sizes that are no longer in the cache, e.g., after changing {@link com.xrbpowered.zoomui.RootContainer#setBaseScale(float)},
+	 * are released as well. Regions previously returned by {@link #get(SvgIcon, int, float, int, int)}
+	 * remain valid for drawing the current frame.
+	 */
+	public synchronized void repack() {
+		IconAtlas packed = new IconAtlas();
+		for(Map.Entry<Key, Entry> e : images.entrySet())
+			e.getValue().region = packed.add(e.getKey().size, e.getValue().region);
+		atlas = packed;
+		retired.clear(); // released with the old atlas
+		repacks++;
+	}
+
+	/**
+	 * Removes all images of the icon from the cache.
+	 * @param icon icon
+	 */
+	public synchronized void remove(SvgIcon icon) {
+		Iterator<Map.Entry<Key, Entry>> it = images.entrySet().iterator();
+		while(it.hasNext()) {
+			Map.Entry<Key, Entry> e = it.next();
+			if(e.getKey().icon==icon) {
+				usedBytes -= sizeOf(e.getValue().region);
+				release(e.getValue().region);
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		images.clear();
+		atlas = new IconAtlas();
+		retired.clear();
+		usedBytes = 0L;
+	}
+
+	public synchronized int size() {
+		return images.size();
+	}
+
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized long getRepacks() {
+		return repacks;
+	}
+
+	public synchronized int getPageCount() {
+		return atlas.getPageCount();
+	}
+
+	/**
+	 * Returns the memory used by atlas pages, which includes unallocated space and is therefore
+	 * greater than or equal to {@link #getUsedBytes()}.
+	 * @return memory size in bytes
+	 */
+	public synchronized long getPageBytes() {
+		return atlas.getPageBytes();
+	}
+
+	public synchronized void resetStats() {
+		hits = 0L;
+		misses = 0L;
+		evictions = 0L;
+		repacks = 0L;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d images, %d/%d KB, %d pages (%d KB), %d hits, %d misses, %d evictions, %d repacks",
+				images.size(), usedBytes/1024L, maxBytes/1024L, atlas.getPageCount(), atlas.getPageBytes()/1024L,
+				hits, misses, evictions, repacks);
+	}
+
+}
@@ -0,0 +1,265 @@
+package com.xrbpowered.zoomui.icons;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+
+import com.xrbpowered.zoomui.PaintHook;
+import com.xrbpowered.zoomui.RootContainer;
+
+/**
+ * Rasterizes icons for {@link IconCache} in the background, so that painting never waits for rasterization.
+ *
+ * <p>Painting a frame is wrapped in {@link #beginFrame()} and {@link #endFrame(Runnable)}. As a {@link PaintHook},
+ * the prefetcher does this for every paint of a {@link RootContainer} and repaints it when the batch is ready;
+ * the Swing and headless window factories install {@link #shared} for their windows. Within a frame, {@link #get(SvgIcon, int, float, int, int)} only looks up
+ * the cache and records a request on a miss, in which case the icon is drawn as vector shapes. At the end of the frame,
+ * all recorded requests are rasterized in parallel as one batch, and the batch callback is executed when all of them
+ * are ready. Typically, the callback repaints the window, which then draws the cached images.</p>
+ *
+ * <p>Icons that have not been loaded yet are not drawn until loading, which is submitted with the same batch, is finished.
+ * See also {@link IconRegistry#preloadAll()}. Headless windows wait for the batches before returning a frame.</p>
+ *
+ * <p>This mostly affects changes of the pixel size, e.g., after {@link RootContainer#setBaseScale(float)}
+ * or zooming a {@link com.xrbpowered.zoomui.base.UIZoomView}, when every visible icon misses the cache at once.
+ * Outside a frame, or if the prefetcher is disabled, icons are rasterized synchronously.</p>
+ *
+ * <p>Frames are tracked per thread. Icons used by a frame or rasterized for the next one are kept in the cache
+ * even if they exceed its budget, see {@link IconCache}. The batch callback is executed in a worker thread.
+ * {@link #endFrame(Runnable)} returns the batch future, which can be used to wait for the batch, e.g., in headless rendering.</p>
+ */
+public class IconPrefetcher implements PaintHook {
+
+	private static class Frame {
+		public boolean open = false;
+		public boolean active = false;
+		public final ArrayList<IconCache.Key> requests = new ArrayList<>();
+		public final ArrayList<SvgIcon> loads = new ArrayList<>();
+	}
+
+	/**
+	 * Prefetcher for {@link IconCache#shared}.
+	 */
+	public static final IconPrefetcher shared = new IconPrefetcher(IconCache.shared);
+
+	public final IconCache cache;
+
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private boolean enabled = true;
+
+	private final ThreadLocal<Frame> frame = new ThreadLocal<Frame>() {
+		@Override
+		protected Frame initialValue() {
+			return new Frame();
+		}
+	};
+
+	/**
+	 * Rasterization tasks that have been submitted but not completed.
+	 */
+	private final HashMap<IconCache.Key, CompletableFuture<Void>> pending = new HashMap<>();
+
+	private long batches = 0L;
+	private long rasterized = 0L;
+
+	public IconPrefetcher(IconCache cache) {
+		this.cache = cache;
+	}
+
+	public synchronized ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Sets the pool for rasterization tasks. Default is {@link ForkJoinPool#commonPool()}.
+	 * @param pool thread pool
+	 */
+	public synchronized void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public synchronized boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables background rasterization. Frames started while disabled rasterize icons synchronously.
+	 * @param enabled <code>true</code> to enable
+	 */
+	public synchronized void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Starts collecting cache misses in the current thread.
+	 */
+	public void beginFrame() {
+		Frame f = frame.get();
+		if(!f.open) {
+			f.open = true;
+			cache.beginFrame();
+		}
+		f.active = isEnabled();
+		f.requests.clear();
+		f.loads.clear();
+	}
+
+	/**
+	 * Requests loading the icon in the background. Only possible within a frame.
+	 * @param icon icon to load
+	 * @return <code>true</code> if the request has been recorded, <code>false</code> if the caller should load the icon immediately
+	 */
+	public boolean requestLoad(SvgIcon icon) {
+		Frame f = frame.get();
+		if(!f.active)
+			return false;
+		if(!f.loads.contains(icon))
+			f.loads.add(icon);
+		return true;
+	}
+
+	/**
+	 * Returns a cached icon raster. Within a frame, returns <code>null</code> if the raster is not ready yet,
+	 * and the caller is expected to draw the icon without caching.
+	 * Outside a frame, the raster is created immediately, same as {@link IconCache#get(SvgIcon, int, float, int, int)}.
+	 * @param icon icon
+	 * @param style palette style
+	 * @param size quantized icon size in pixels, see {@link IconCache#quantizeSize(float)}
+	 * @param subX horizontal sub-pixel offset
+	 * @param subY vertical sub-pixel offset
+	 * @return atlas region containing the icon image, or <code>null</code>
+	 */
+	public IconAtlas.Region get(SvgIcon icon, int style, float size, int subX, int subY) {
+		Frame f = frame.get();
+		if(!f.active)
+			return cache.get(icon, style, size, subX, subY);
+		IconCache.Key key = new IconCache.Key(icon, icon.palette, style, size, subX, subY);
+		IconAtlas.Region r = cache.getIfPresent(key);
+		if(r==null)
+			f.requests.add(key);
+		return r;
+	}
+
+	private CompletableFuture<Void> submit(final IconCache.Key key) {
+		CompletableFuture<Void> task = pending.get(key);
+		if(task!=null)
+			return task;
+		task = CompletableFuture.runAsync(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					cache.get(key, true);
+				}
+				finally {
+					synchronized(IconPrefetcher.this) {
+						pending.remove(key);
+						rasterized++;
+					}
+				}
+			}
+		}, pool);
+		// the task cannot complete before this, as it needs the lock held by the caller
+		pending.put(key, task);
+		return task;
+	}
+
+	/**
+	 * Stops collecting cache misses in the current thread and submits them for loading and rasterization as one batch.
+	 * The callback is not executed if none of the rasters is in the cache when the batch is ready, as repainting would request them again.
+	 * @param onComplete callback to execute in a worker thread when all rasters of the batch are ready, can be <code>null</code>
+	 * @return future that completes when the batch is ready and the callback has returned,
+	 * 		or <code>null</code> if there were no requests
+	 */
+	public CompletableFuture<Void> endFrame(final Runnable onComplete) {
+		Frame f = frame.get();
+		if(!f.open)
+			return null;
+		f.open = false;
+		cache.endFrame();
+		if(!f.active)
+			return null;
+		f.active = false;
+		if(f.requests.isEmpty() && f.loads.isEmpty())
+			return null;
+
+		int n = f.requests.size();
+		final IconCache.Key[] keys = f.requests.toArray(new IconCache.Key[n]);
+		final boolean loading = !f.loads.isEmpty();
+		CompletableFuture<?>[] tasks = new CompletableFuture<?>[n + f.loads.size()];
+		synchronized(this) {
+			for(int i=0; i<n; i++)
+				tasks[i] = submit(f.requests.get(i));
+			for(int i=0; i<f.loads.size(); i++) {
+				final SvgIcon icon = f.loads.get(i);
+				tasks[n+i] = CompletableFuture.runAsync(new Runnable() {
+					@Override
+					public void run() {
+						icon.ensureLoaded();
+					}
+				}, pool);
+			}
+			batches++;
+		}
+		f.requests.clear();
+		f.loads.clear();
+		CompletableFuture<Void> batch = CompletableFuture.allOf(tasks);
+		if(onComplete!=null) {
+			batch = batch.whenComplete(new BiConsumer<Void, Throwable>() {
+				@Override
+				public void accept(Void v, Throwable e) {
+					if(loading || cache.containsAny(keys))
+						onComplete.run();
+				}
+			});
+		}
+		return batch;
+	}
+
+	@Override
+	public void beginPaint(RootContainer root) {
+		beginFrame();
+	}
+
+	/**
+	 * Finishes the frame, see {@link #endFrame(Runnable)}, and posts a repaint of the root container
+	 * to its window factory when the batch is ready.
+	 */
+	@Override
+	public CompletableFuture<Void> endPaint(final RootContainer root) {
+		return endFrame(new Runnable() {
+			@Override
+			public void run() {
+				root.getWindow().getFactory().invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						root.repaint();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of rasterization tasks that have been submitted but not completed.
+	 * @return number of tasks
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	public synchronized long getBatches() {
+		return batches;
+	}
+
+	public synchronized long getRasterized() {
+		return rasterized;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d batches, %d rasterized, %d pending", batches, rasterized, pending.size());
+	}
+
+}
@@ -0,0 +1,140 @@
+package com.xrbpowered.zoomui.icons;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Registry of icons used by the application, which allows loading all of them in advance.
+ *
+ * <p>Icons are declared with {@link #get(String, int, IconPalette, boolean)}, which returns a shared {@link SvgIcon}
+ * instance for the same file, size, palette and options. {@link #preloadAll()} parses every registered icon concurrently,
+ * typically at application start, so that opening a window does not stall on SVG parsing.
+ * Icons registered after the first call to {@link #preloadAll()} are loaded in the background immediately.</p>
+ *
+ * <p>An icon that is still loading is skipped by {@link SvgIcon#paint(java.awt.Graphics2D, int, float, float, float, float, boolean)}
+ * and painted after loading is finished, see {@link IconPrefetcher}.</p>
+ *
+ * <p>The registry is thread-safe.</p>
+ */
+public class IconRegistry {
+
+	/**
+	 * Process-wide icon registry.
+	 */
+	public static final IconRegistry shared = new IconRegistry();
+
+	private final ArrayList<SvgIcon> icons = new ArrayList<>();
+
+	private Executor executor = ForkJoinPool.commonPool();
+	private boolean autoPreload = false;
+
+	private long loadTime = 0L;
+	private int loadCount = 0;
+	private long preloadStart = 0L;
+	private long preloadTime = 0L;
+
+	public synchronized void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns a registered icon, registering a new one if there is no icon matching the parameters.
+	 * @param uri resource or file path of the SVG file
+	 * @param baseSize icon size in SVG units
+	 * @param palette icon palette
+	 * @param onlyFg <code>true</code> to ignore the background shape
+	 * @return registered icon
+	 */
+	public synchronized SvgIcon get(String uri, int baseSize, IconPalette palette, boolean onlyFg) {
+		for(SvgIcon icon : icons) {
+			if(icon.uri.equals(uri) && icon.baseSize==baseSize && icon.palette==palette && icon.onlyFg==onlyFg)
+				return icon;
+		}
+		SvgIcon icon = new SvgIcon(uri, baseSize, palette, onlyFg);
+		icons.add(icon);
+		if(autoPreload)
+			submit(icon);
+		return icon;
+	}
+
+	public SvgIcon get(String uri, int baseSize, IconPalette palette) {
+		return get(uri, baseSize, palette, false);
+	}
+
+	public synchronized int size() {
+		return icons.size();
+	}
+
+	private CompletableFuture<Void> submit(final SvgIcon icon) {
+		return CompletableFuture.runAsync(new Runnable() {
+			@Override
+			public void run() {
+				long t = System.nanoTime();
+				icon.ensureLoaded();
+				t = System.nanoTime() - t;
+				synchronized(IconRegistry.this) {
+					loadTime += t;
+					loadCount++;
+				}
+			}
+		}, executor);
+	}
+
+	/**
+	 * Loads all registered icons concurrently. Icons that have already been loaded are not reloaded.
+	 * Also enables background loading of icons registered later.
+	 * @return future completed when all icons registered at the time of the call are loaded
+	 */
+	public CompletableFuture<Void> preloadAll() {
+		CompletableFuture<?>[] tasks;
+		synchronized(this) {
+			autoPreload = true;
+			preloadStart = System.nanoTime();
+			tasks = new CompletableFuture<?>[icons.size()];
+			for(int i=0; i<tasks.length; i++)
+				tasks[i] = submit(icons.get(i));
+		}
+		final long start = preloadStart;
+		return CompletableFuture.allOf(tasks).thenRun(new Runnable() {
+			@Override
+			public void run() {
+				synchronized(IconRegistry.this) {
+					if(preloadStart==start)
+						preloadTime = System.nanoTime() - start;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of icons loaded by this registry. Icons that were already loaded at the time of the request are counted too.
+	 * @return number of loaded icons
+	 */
+	public synchronized int getLoadCount() {
+		return loadCount;
+	}
+
+	/**
+	 * Returns the loading time summed over all icons, which is greater than the elapsed time when loading in parallel.
+	 * @return time in milliseconds
+	 */
+	public synchronized double getLoadTime() {
+		return loadTime / 1000000.0;
+	}
+
+	/**
+	 * Returns the elapsed time of the last completed {@link #preloadAll()}.
+	 * @return time in milliseconds
+	 */
+	public synchronized double getPreloadTime() {
+		return preloadTime / 1000000.0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d icons, %d loaded, %.2f ms total, %.2f ms preload", icons.size(), loadCount, getLoadTime(), getPreloadTime());
+	}
+
+}
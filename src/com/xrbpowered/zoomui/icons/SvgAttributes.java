@@ -0,0 +1,70 @@
+package com.xrbpowered.zoomui.icons;
+
+import java.util.HashMap;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Element;
+
+/**
+ * Read access to the attributes of an SVG element, shared by the DOM-based {@link SvgFile}
+ * and the streaming {@link SvgLoader}.
+ *
+ * <p>Attributes are looked up by qualified name, e.g., <code>xlink:href</code>.
+ * Missing attributes are returned as empty strings, same as {@link Element#getAttribute(String)}.</p>
+ */
+public abstract class SvgAttributes {
+
+	public abstract String get(String name);
+
+	public static SvgAttributes of(final Element e) {
+		return new SvgAttributes() {
+			@Override
+			public String get(String name) {
+				return e.getAttribute(name);
+			}
+		};
+	}
+
+	private static String qualifiedName(String prefix, String name) {
+		return (prefix==null || prefix.isEmpty()) ? name : prefix+":"+name;
+	}
+
+	/**
+	 * Creates a view of the current element's attributes of the stream reader.
+	 * The view is only valid while the reader is positioned at the element's start tag.
+	 * @param in stream reader at <code>START_ELEMENT</code>
+	 * @return attributes view
+	 */
+	static SvgAttributes of(final XMLStreamReader in) {
+		return new SvgAttributes() {
+			@Override
+			public String get(String name) {
+				for(int i=0; i<in.getAttributeCount(); i++) {
+					if(name.equals(qualifiedName(in.getAttributePrefix(i), in.getAttributeLocalName(i))))
+						return in.getAttributeValue(i);
+				}
+				return "";
+			}
+		};
+	}
+
+	/**
+	 * Copies the current element's attributes of the stream reader.
+	 * @param in stream reader at <code>START_ELEMENT</code>
+	 * @return attributes copy
+	 */
+	static SvgAttributes copyOf(XMLStreamReader in) {
+		final HashMap<String, String> map = new HashMap<>();
+		for(int i=0; i<in.getAttributeCount(); i++)
+			map.put(qualifiedName(in.getAttributePrefix(i), in.getAttributeLocalName(i)), in.getAttributeValue(i));
+		return new SvgAttributes() {
+			@Override
+			public String get(String name) {
+				String s = map.get(name);
+				return s==null ? "" : s;
+			}
+		};
+	}
+
+}
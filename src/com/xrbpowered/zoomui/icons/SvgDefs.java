@@ -8,13 +8,14 @@
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 public class SvgDefs {
 
-	private static class GradientStop {
+	static class GradientStop {
 		public float offs;
 		public Color color;
 		public GradientStop(float offs, Color color) {
@@ -26,7 +27,11 @@ public GradientStop(float offs, Color color) {
 	public HashMap<String, Object> defs = new HashMap<>();
 	
 	public static double getAttrValue(Element e, String name, double scale, double def) {
-		String s = e.getAttribute(name);
+		return getAttrValue(SvgAttributes.of(e), name, scale, def);
+	}
+	
+	public static double getAttrValue(SvgAttributes e, String name, double scale, double def) {
+		String s = e.get(name);
 		return s.isEmpty() ? def : Double.parseDouble(s) * scale;
 	}
 	
@@ -36,7 +41,11 @@ public static String getAttrValue(Element e, String name, String def) {
 	}
 	
 	public static <T> T getAttrValue(Element e, String name, String[] keys, T[] vals, T def) {
-		String s = e.getAttribute(name);
+		return getAttrValue(SvgAttributes.of(e), name, keys, vals, def);
+	}
+	
+	public static <T> T getAttrValue(SvgAttributes e, String name, String[] keys, T[] vals, T def) {
+		String s = e.get(name);
 		if(s.isEmpty())
 			return def;
 		for(int i=0; i<keys.length; i++) {
@@ -46,6 +55,37 @@ public static <T> T getAttrValue(Element e, String name, String[] keys, T[] vals
 		return def;
 	}
 	
+	static GradientStop readStop(SvgAttributes e) {
+		float offs = (float)getAttrValue(e, "offset", 1.0, 0.0);
+		String attr = e.get("style");
+		if(!attr.isEmpty()) {
+			Color color = null;
+			double opacity = 1.0;
+			String[] vals = attr.split(";");
+			for(String val : vals) {
+				String[] kv = val.split(":", 2);
+				kv[0] = kv[0].trim();
+				kv[1] = kv[1].trim();
+				if(kv[0].equals("stop-color")) {
+					color = SvgStyle.parseColor(kv[1]);
+				}
+				else if(kv[0].equals("stop-opacity")) {
+					opacity = Double.parseDouble(kv[1]);
+				}
+			}
+			if(color!=null) {
+				color = new Color(
+						color.getRed(),
+						color.getGreen(),
+						color.getBlue(),
+						(int)Math.round(opacity*255.0)
+					);
+				return new GradientStop(offs, color);
+			}
+		}
+		return null;
+	}
+	
 	private ArrayList<GradientStop> readStops(Element e) {
 		ArrayList<GradientStop> stops = new ArrayList<>();
 		Node cn = e.getFirstChild();
@@ -53,33 +93,9 @@ private ArrayList<GradientStop> readStops(Element e) {
 			if(cn.getNodeType()==Node.ELEMENT_NODE) {
 				Element ce = (Element) cn;
 				if(ce.getNodeName().equals("stop")) {
-					float offs = (float)getAttrValue(ce, "offset", 1.0, 0.0);
-					String attr = ce.getAttribute("style");
-					if(!attr.isEmpty()) {
-						Color color = null;
-						double opacity = 1.0;
-						String[] vals = attr.split(";");
-						for(String val : vals) {
-							String[] kv = val.split(":", 2);
-							kv[0] = kv[0].trim();
-							kv[1] = kv[1].trim();
-							if(kv[0].equals("stop-color")) {
-								color = SvgStyle.parseColor(kv[1]);
-							}
-							else if(kv[0].equals("stop-opacity")) {
-								opacity = Double.parseDouble(kv[1]);
-							}
-						}
-						if(color!=null) {
-							color = new Color(
-									color.getRed(),
-									color.getGreen(),
-									color.getBlue(),
-									(int)Math.round(opacity*255.0)
-								);
-							stops.add(new GradientStop(offs, color));
-						}
-					}
+					GradientStop stop = readStop(SvgAttributes.of(ce));
+					if(stop!=null)
+						stops.add(stop);
 				}
 			}
 			cn = cn.getNextSibling();
@@ -92,117 +108,121 @@ public void addDefs(Element g, double scale) {
 		while(n!=null) {
 			if(n.getNodeType()==Node.ELEMENT_NODE) {
 				Element e = (Element) n;
-				String id = e.getAttribute("id");
-				Object obj = null;
-				if(e.getNodeName().equals("linearGradient")) {
-					Point2D p1 = new Point2D.Double(0, 0);
-					Point2D p2 = new Point2D.Double(0, 0);
-					CycleMethod spread = CycleMethod.NO_CYCLE;
+				String name = e.getNodeName();
+				if(name.equals("linearGradient") || name.equals("radialGradient"))
+					addGradient(name, SvgAttributes.of(e), readStops(e), scale);
+			}
+			
+			n = n.getNextSibling();
+		}
+	}
+	
+	void addGradient(String name, SvgAttributes e, List<GradientStop> stops, double scale) {
+		String id = e.get("id");
+		Object obj = null;
+		if(name.equals("linearGradient")) {
+			Point2D p1 = new Point2D.Double(0, 0);
+			Point2D p2 = new Point2D.Double(0, 0);
+			CycleMethod spread = CycleMethod.NO_CYCLE;
 
-					float[] fractions = null;
-					Color[] colors = null;
+			float[] fractions = null;
+			Color[] colors = null;
 
-					Object xref = defs.get(e.getAttribute("xlink:href"));
-					if(xref!=null) {
-						if(xref instanceof LinearGradientPaint) {
-							LinearGradientPaint grad = (LinearGradientPaint) xref;
-							p1 = (Point2D) grad.getStartPoint().clone();
-							p2 = (Point2D) grad.getEndPoint().clone();
-							spread = grad.getCycleMethod();
-							fractions = grad.getFractions();
-							colors = grad.getColors();
-						}
-					}
-					
-					p1.setLocation(
-							getAttrValue(e, "x1", scale, p1.getX()),
-							getAttrValue(e, "y1", scale, p1.getY())
-						);
-					p2.setLocation(
-							getAttrValue(e, "x2", scale, p2.getX()),
-							getAttrValue(e, "y2", scale, p2.getY())
-						);
-					spread = getAttrValue(e, "spreadMethod", new String[] {"pad", "reflect", "repeat"}, CycleMethod.values(), spread); 
-					
-					ArrayList<GradientStop> stops = readStops(e);
-					if(!stops.isEmpty()) {
-						int num = stops.size();
-						fractions = new float[num];
-						colors = new Color[num];
-						for(int i=0; i<num; i++) {
-							GradientStop stop = stops.get(i);
-							fractions[i] = stop.offs;
-							colors[i] = stop.color;
-						}
-					}
-					
-					AffineTransform tx = SvgFile.getTransform(e.getAttribute("gradientTransform"), scale);
-					tx.transform(p1, p1);
-					tx.transform(p2, p2);
-					if(p1.equals(p2)) {
-						p2.setLocation(p2.getX(), p2.getY()+0.001);
-					}
-					
-					obj = new LinearGradientPaint((float)p1.getX(), (float)p1.getY(), (float)p2.getX(), (float)p2.getY(), fractions, colors, spread);
+			Object xref = defs.get(e.get("xlink:href"));
+			if(xref!=null) {
+				if(xref instanceof LinearGradientPaint) {
+					LinearGradientPaint grad = (LinearGradientPaint) xref;
+					p1 = (Point2D) grad.getStartPoint().clone();
+					p2 = (Point2D) grad.getEndPoint().clone();
+					spread = grad.getCycleMethod();
+					fractions = grad.getFractions();
+					colors = grad.getColors();
+				}
+			}
+			
+			p1.setLocation(
+					getAttrValue(e, "x1", scale, p1.getX()),
+					getAttrValue(e, "y1", scale, p1.getY())
+				);
+			p2.setLocation(
+					getAttrValue(e, "x2", scale, p2.getX()),
+					getAttrValue(e, "y2", scale, p2.getY())
+				);
+			spread = getAttrValue(e, "spreadMethod", new String[] {"pad", "reflect", "repeat"}, CycleMethod.values(), spread); 
+			
+			if(!stops.isEmpty()) {
+				int num = stops.size();
+				fractions = new float[num];
+				colors = new Color[num];
+				for(int i=0; i<num; i++) {
+					GradientStop stop = stops.get(i);
+					fractions[i] = stop.offs;
+					colors[i] = stop.color;
 				}
-				else if(e.getNodeName().equals("radialGradient")) {
-					Point2D pc = new Point2D.Double(0, 0);
-					double radius = 0.0;
-					CycleMethod spread = CycleMethod.NO_CYCLE;
+			}
+			
+			AffineTransform tx = SvgFile.getTransform(e.get("gradientTransform"), scale);
+			tx.transform(p1, p1);
+			tx.transform(p2, p2);
+			if(p1.equals(p2)) {
+				p2.setLocation(p2.getX(), p2.getY()+0.001);
+			}
+			
+			obj = new LinearGradientPaint((float)p1.getX(), (float)p1.getY(), (float)p2.getX(), (float)p2.getY(), fractions, colors, spread);
+		}
+		else if(name.equals("radialGradient")) {
+			Point2D pc = new Point2D.Double(0, 0);
+			double radius = 0.0;
+			CycleMethod spread = CycleMethod.NO_CYCLE;
 
-					float[] fractions = null;
-					Color[] colors = null;
-					
-					Object xref = defs.get(e.getAttribute("xlink:href"));
-					if(xref!=null) {
-						if(xref instanceof LinearGradientPaint) {
-							LinearGradientPaint grad = (LinearGradientPaint) xref;
-							spread = grad.getCycleMethod();
-							fractions = grad.getFractions();
-							colors = grad.getColors();
-						}
-						else if(xref instanceof RadialGradientPaint) {
-							RadialGradientPaint grad = (RadialGradientPaint) xref;
-							pc = (Point2D) grad.getCenterPoint().clone();
-							radius = grad.getRadius();
-							spread = grad.getCycleMethod();
-							fractions = grad.getFractions();
-							colors = grad.getColors();
-						}
-					}
-					
-					pc.setLocation(
-							getAttrValue(e, "cx", scale, pc.getX()),
-							getAttrValue(e, "cy", scale, pc.getY())
-						);
-					radius = getAttrValue(e, "r", scale, radius);
-					spread = getAttrValue(e, "spreadMethod", new String[] {"pad", "reflect", "repeat"}, CycleMethod.values(), spread); 
-					
-					ArrayList<GradientStop> stops = readStops(e);
-					if(!stops.isEmpty()) {
-						int num = stops.size();
-						fractions = new float[num];
-						colors = new Color[num];
-						for(int i=0; i<num; i++) {
-							GradientStop stop = stops.get(i);
-							fractions[i] = stop.offs;
-							colors[i] = stop.color;
-						}
-					}
-					
-					AffineTransform tx = SvgFile.getTransform(e.getAttribute("gradientTransform"), scale);
-					tx.transform(pc, pc);
-					radius *= tx.getScaleX();
-					
-					obj = new RadialGradientPaint((float)pc.getX(), (float)pc.getY(), (float)radius, fractions, colors, spread);
+			float[] fractions = null;
+			Color[] colors = null;
+			
+			Object xref = defs.get(e.get("xlink:href"));
+			if(xref!=null) {
+				if(xref instanceof LinearGradientPaint) {
+					LinearGradientPaint grad = (LinearGradientPaint) xref;
+					spread = grad.getCycleMethod();
+					fractions = grad.getFractions();
+					colors = grad.getColors();
 				}
-				
-				if(obj!=null && !id.isEmpty()) {
-					defs.put("#"+id, obj);
+				else if(xref instanceof RadialGradientPaint) {
+					RadialGradientPaint grad = (RadialGradientPaint) xref;
+					pc = (Point2D) grad.getCenterPoint().clone();
+					radius = grad.getRadius();
+					spread = grad.getCycleMethod();
+					fractions = grad.getFractions();
+					colors = grad.getColors();
 				}
 			}
 			
-			n = n.getNextSibling();
+			pc.setLocation(
+					getAttrValue(e, "cx", scale, pc.getX()),
+					getAttrValue(e, "cy", scale, pc.getY())
+				);
+			radius = getAttrValue(e, "r", scale, radius);
+			spread = getAttrValue(e, "spreadMethod", new String[] {"pad", "reflect", "repeat"}, CycleMethod.values(), spread); 
+			
+			if(!stops.isEmpty()) {
+				int num = stops.size();
+				fractions = new float[num];
+				colors = new Color[num];
+				for(int i=0; i<num; i++) {
+					GradientStop stop = stops.get(i);
+					fractions[i] = stop.offs;
+					colors[i] = stop.color;
+				}
+			}
+			
+			AffineTransform tx = SvgFile.getTransform(e.get("gradientTransform"), scale);
+			tx.transform(pc, pc);
+			radius *= tx.getScaleX();
+			
+			obj = new RadialGradientPaint((float)pc.getX(), (float)pc.getY(), (float)radius, fractions, colors, spread);
+		}
+		
+		if(obj!=null && !id.isEmpty()) {
+			defs.put("#"+id, obj);
 		}
 	}
 }
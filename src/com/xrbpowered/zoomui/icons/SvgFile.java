@@ -1,38 +1,63 @@
 package com.xrbpowered.zoomui.icons;
 
 import java.awt.Graphics2D;
-import java.awt.Shape;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Arc2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Path2D;
-import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RoundRectangle2D;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+/**
+ * SVG document loaded into a DOM tree.
+ * 
+ * <p>Keeping the DOM allows rendering and querying the document in different ways, but costs memory and load time.
+ * Use {@link SvgLoader} to load geometry directly from the file when the DOM is not needed.</p>
+ */
 public class SvgFile {
 
+	private static final Pattern transformPattern = Pattern.compile("([a-z]+)\\((.*?)\\)");
+
+	private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			try {
+				return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			}
+			catch(ParserConfigurationException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
 	public final Element root;
 	
 	public SvgFile(String uri) {
 		Element root;
 		try {
-			InputStream in = ClassLoader.getSystemResourceAsStream(uri);
-			if(in==null)
-				in = new FileInputStream(new File(uri));
-			Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
-			in.close();
+			InputStream in = openStream(uri);
+			DocumentBuilder builder = documentBuilder.get();
+			Document doc;
+			try {
+				doc = builder.parse(in);
+			}
+			finally {
+				builder.reset();
+				in.close();
+			}
 			root = doc.getDocumentElement();
 		}
 		catch(Exception e) {
@@ -42,217 +67,28 @@ public SvgFile(String uri) {
 		this.root = root;
 	}
 	
-	/*
-	 * From org.apache.batik.ext.awt.geom.ExtendedGeneralPath.computeArc().
+	/**
+	 * Opens a class path resource, or a file if there is no such resource.
+	 * @param uri resource or file path
+	 * @return input stream
+	 * @throws IOException if neither a resource nor a file can be opened
 	 */
-	private void arcTo(Path2D.Double path, double rx, double ry, double theta, boolean largeArcFlag, boolean sweepFlag, double x, double y) {
-		// Ensure radii are valid
-		if(rx == 0 || ry == 0) {
-			path.lineTo(x, y);
-			return;
-		}
-		// Get the current (x, y) coordinates of the path
-		Point2D p2d = path.getCurrentPoint();
-		double x0 = p2d.getX();
-		double y0 = p2d.getY();
-		// Compute the half distance between the current and the final point
-		double dx2 = (x0 - x) / 2.0f;
-		double dy2 = (y0 - y) / 2.0f;
-		// Convert theta from degrees to radians
-		theta = Math.toRadians(theta % 360f);
-		double cosTheta = Math.cos(theta);
-        double sinTheta = Math.sin(theta);
-
-		//
-		// Step 1 : Compute (x1, y1)
-		//
-		double x1 = cosTheta * dx2 + sinTheta * dy2;
-		double y1 = -sinTheta * dx2 + cosTheta * dy2;
-		// Ensure radii are large enough
-		rx = Math.abs(rx);
-		ry = Math.abs(ry);
-		double Prx = rx * rx;
-		double Pry = ry * ry;
-		double Px1 = x1 * x1;
-		double Py1 = y1 * y1;
-		double d = Px1 / Prx + Py1 / Pry;
-		if(d > 1) {
-			rx = Math.abs(Math.sqrt(d) * rx);
-			ry = Math.abs(Math.sqrt(d) * ry);
-			Prx = rx * rx;
-			Pry = ry * ry;
-		}
-
-		//
-		// Step 2 : Compute (cx1, cy1)
-		//
-		double sign = (largeArcFlag == sweepFlag) ? -1d : 1d;
-		double coef = sign * Math.sqrt(((Prx * Pry) - (Prx * Py1) - (Pry * Px1)) / ((Prx * Py1) + (Pry * Px1)));
-		double cx1 = coef * ((rx * y1) / ry);
-		double cy1 = coef * -((ry * x1) / rx);
-
-		//
-		// Step 3 : Compute (cx, cy) from (cx1, cy1)
-		//
-		double sx2 = (x0 + x) / 2.0f;
-		double sy2 = (y0 + y) / 2.0f;
-		double cx = sx2 + (cosTheta * cx1 - sinTheta * cy1);
-		double cy = sy2 + (sinTheta * cx1 + cosTheta * cy1);
-
-		//
-		// Step 4 : Compute the angleStart (theta1) and the angleExtent (dtheta)
-		//
-		double ux = (x1 - cx1) / rx;
-		double uy = (y1 - cy1) / ry;
-		double vx = (-x1 - cx1) / rx;
-		double vy = (-y1 - cy1) / ry;
-		double p, n;
-		// Compute the angle start
-		n = Math.sqrt((ux * ux) + (uy * uy));
-		p = ux; // (1 * ux) + (0 * uy)
-		sign = (uy < 0) ? -1d : 1d;
-		double angleStart = Math.toDegrees(sign * Math.acos(p / n));
-		// Compute the angle extent
-		n = Math.sqrt((ux * ux + uy * uy) * (vx * vx + vy * vy));
-		p = ux * vx + uy * vy;
-		sign = (ux * vy - uy * vx < 0) ? -1d : 1d;
-		double angleExtent = Math.toDegrees(sign * Math.acos(p / n));
-		if(!sweepFlag && angleExtent > 0) {
-			angleExtent -= 360f;
-		} else if(sweepFlag && angleExtent < 0) {
-			angleExtent += 360f;
-		}
-		angleExtent %= 360f;
-		angleStart %= 360f;
-
-		Arc2D.Double arc = new Arc2D.Double();
-		arc.x = cx - rx;
-		arc.y = cy - ry;
-		arc.width = rx * 2.0f;
-		arc.height = ry * 2.0f;
-		arc.start = -angleStart;
-		arc.extent = -angleExtent;
-		
-		AffineTransform t = AffineTransform.getRotateInstance
-            (theta, arc.getCenterX(), arc.getCenterY());
-        Shape s = t.createTransformedShape(arc);
-	        
-		path.append(s, true);
+	static InputStream openStream(String uri) throws IOException {
+		InputStream in = ClassLoader.getSystemResourceAsStream(uri);
+		if(in==null)
+			in = new FileInputStream(new File(uri));
+		return in;
 	}
 	
-	private Path2D createPath(String d, double scale) {
-		Path2D.Double path = new Path2D.Double();
-		String[] s = d.split("[\\,\\s]\\s*");
-		char cmd = '\0';
-		double dx =0.0;
-		double dy = 0.0;
-		for(int i=0; i<s.length; i++) {
-			char c = s[i].charAt(0);
-			if(c>='A' && c<='Z' || c>='a' && c<='z') {
-				cmd= c;
-				i++;
-			}
-			Point2D.Double cur = (Point2D.Double) path.getCurrentPoint();
-			if(cur!=null) {
-				dx = cur.x;
-				dy = cur.y;
-			}
-			else {
-				dx = 0.0;
-				dy = 0.0;
-			}
-			switch(cmd) {
-				case 'M':
-					path.moveTo(Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale);
-					i+=1;
-					cmd = 'L';
-					break;
-				case 'm':
-					path.moveTo(Double.parseDouble(s[i]) * scale + dx, Double.parseDouble(s[i+1]) * scale + dy);
-					i+=1;
-					cmd = 'l';
-					break;
-				case 'L':
-					path.lineTo(Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale);
-					i+=1;
-					break;
-				case 'l':
-					path.lineTo(Double.parseDouble(s[i]) * scale + dx, Double.parseDouble(s[i+1]) * scale + dy);
-					i+=1;
-					break;
-				case 'V':
-					path.lineTo(cur.x, Double.parseDouble(s[i]) * scale);
-					break;
-				case 'v':
-					path.lineTo(cur.x, Double.parseDouble(s[i]) * scale + dy);
-					break;
-				case 'H':
-					path.lineTo(Double.parseDouble(s[i]) * scale, cur.y);
-					break;
-				case 'h':
-					path.lineTo(Double.parseDouble(s[i]) * scale + dx, cur.y);
-					break;
-				case 'C':
-					path.curveTo(
-							Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale,
-							Double.parseDouble(s[i+2]) * scale, Double.parseDouble(s[i+3]) * scale,
-							Double.parseDouble(s[i+4]) * scale, Double.parseDouble(s[i+5]) * scale
-						);
-					i+=5;
-					break;
-				case 'c':
-					path.curveTo(
-							Double.parseDouble(s[i]) * scale + dx, Double.parseDouble(s[i+1]) * scale + dy,
-							Double.parseDouble(s[i+2]) * scale + dx, Double.parseDouble(s[i+3]) * scale + dy,
-							Double.parseDouble(s[i+4]) * scale + dx, Double.parseDouble(s[i+5]) * scale + dy
-						);
-					i+=5;
-					break;
-				case 'Q':
-					path.quadTo(
-							Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale,
-							Double.parseDouble(s[i+2]) * scale, Double.parseDouble(s[i+3]) * scale
-						);
-					i+=3;
-					break;
-				case 'q':
-					path.quadTo(
-							Double.parseDouble(s[i]) * scale + dx, Double.parseDouble(s[i+1]) * scale + dy,
-							Double.parseDouble(s[i+2]) * scale + dx, Double.parseDouble(s[i+3]) * scale + dy
-						);
-					i+=3;
-					break;
-				case 'A':
-					arcTo(path,
-							Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale,
-							Double.parseDouble(s[i+2]), Integer.parseInt(s[i+3])!=0, Integer.parseInt(s[i+4])!=0,
-							Double.parseDouble(s[i+5]) * scale, Double.parseDouble(s[i+6]) * scale
-						);
-					i+=6;
-					break;
-				case 'a':
-					arcTo(path,
-							Double.parseDouble(s[i]) * scale, Double.parseDouble(s[i+1]) * scale,
-							Double.parseDouble(s[i+2]), Integer.parseInt(s[i+3])!=0, Integer.parseInt(s[i+4])!=0,
-							Double.parseDouble(s[i+5]) * scale + dx, Double.parseDouble(s[i+6]) * scale + dy
-						);
-					i+=6;
-					break;
-				case 'Z':
-				case 'z':
-					path.closePath();
-					i-=1;
-					break;
-				default:
-					if(cmd!='\0')
-						System.err.printf("Unknown path command: '%c'\n", cmd);
-					cmd = '\0';
-			}
-		}
-		return path;
+	static Path2D createPath(String d, double scale) {
+		return SvgPathParser.parse(d, scale);
+	}
+
+	private static Path2D createRect(Element e, double scale) {
+		return createRect(SvgAttributes.of(e), scale);
 	}
 
-	private Path2D createRect(Element e, double scale) {
+	static Path2D createRect(SvgAttributes e, double scale) {
 		int x = getAttrValue(e, "x", scale);
 		int y =  getAttrValue(e, "y", scale);
 		int width =  getAttrValue(e, "width", scale);
@@ -270,10 +106,14 @@ private Path2D createRect(Element e, double scale) {
 		return path;
 	}
 	
-	private Path2D createCircle(Element e, double scale) {
-		double cx = Double.parseDouble(e.getAttribute("cx")) * scale;
-		double cy = Double.parseDouble(e.getAttribute("cy")) * scale;
-		double r = Double.parseDouble(e.getAttribute("r")) * scale;
+	private static Path2D createCircle(Element e, double scale) {
+		return createCircle(SvgAttributes.of(e), scale);
+	}
+	
+	static Path2D createCircle(SvgAttributes e, double scale) {
+		double cx = Double.parseDouble(e.get("cx")) * scale;
+		double cy = Double.parseDouble(e.get("cy")) * scale;
+		double r = Double.parseDouble(e.get("r")) * scale;
 		int x = (int) (cx - r);
 		int y = (int) (cy - r);
 		int width = (int) (r * 2.0);
@@ -299,7 +139,7 @@ public static AffineTransform getTransform(String tr, double scale) {
 		if(tr==null || tr.isEmpty())
 			return tx;
 		
-		Matcher m = Pattern.compile("([a-z]+)\\((.*?)\\)").matcher(tr);
+		Matcher m = transformPattern.matcher(tr);
 		int offs = 0;
 		
 		while(m.find(offs)) {
@@ -329,8 +169,8 @@ else if(t.equals("matrix")) {
 		return tx;
 	}
 	
-	private static int getAttrValue(Element e, String name, double scale) {
-		String s = e.getAttribute(name);
+	private static int getAttrValue(SvgAttributes e, String name, double scale) {
+		String s = e.get(name);
 		return s.isEmpty() ? 0 : (int) (Double.parseDouble(s) * scale);
 	}
 	
@@ -367,6 +207,54 @@ public void render(Graphics2D g2, double scale) {
 			render(g2, root, new SvgDefs(), new SvgStyle(), scale);
 	}
 	
+	private void compile(SvgScene.Builder scene, Element g, SvgDefs defs, SvgStyle parentStyle, AffineTransform transform, double scale) {
+		Node n = g.getFirstChild();
+		
+		while(n!=null) {
+			if(n.getNodeType()==Node.ELEMENT_NODE) {
+				Element e = (Element) n;
+				SvgStyle style = SvgStyle.forElement(parentStyle, defs, e);
+				
+				AffineTransform t = new AffineTransform(transform);
+				t.concatenate(getTransform(e.getAttribute("transform"), scale));
+				
+				if(e.getNodeName().equals("g"))
+					compile(scene, e, defs, style, t, scale);
+				else if(e.getNodeName().equals("defs"))
+					defs.addDefs(e, scale);
+				else if(e.getNodeName().equals("rect"))
+					scene.add(createRect(e, scale), style, t);
+				else if(e.getNodeName().equals("circle"))
+					scene.add(createCircle(e, scale), style, t);
+				else if(e.getNodeName().equals("path"))
+					scene.add(createPath(e.getAttribute("d"), scale), style, t);
+			}
+			
+			n = n.getNextSibling();
+		}
+	}
+	
+	/**
+	 * Compiles the document into a scene that can be rendered repeatedly without walking the DOM.
+	 * Rectangle and circle coordinates are rounded at the given scale, same as {@link #render(Graphics2D, double)} does.
+	 * @param scale compile scale
+	 * @return compiled scene, empty if the file failed to load
+	 */
+	public SvgScene compile(double scale) {
+		SvgScene.Builder scene = new SvgScene.Builder(scale);
+		if(root!=null)
+			compile(scene, root, new SvgDefs(), new SvgStyle(), new AffineTransform(), scale);
+		return scene.build();
+	}
+	
+	/**
+	 * Compiles the document at scale 1, see {@link #compile(double)}.
+	 * @return compiled scene
+	 */
+	public SvgScene compile() {
+		return compile(1.0);
+	}
+	
 	private Path2D transformed(AffineTransform t, Path2D path) {
 		path.transform(t);
 		return path;
@@ -6,7 +6,6 @@
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
 
 public class SvgIcon {
 
@@ -17,9 +16,10 @@ public class SvgIcon {
 	
 	private Path2D fgPath;
 	private Path2D bgPath;
-	private Rectangle2D bounds = null;
-
-	private HashMap<Integer, BufferedImage> cache = new HashMap<>();
+	/**
+	 * Shape bounds, assigned last when loading. Not <code>null</code> means the shapes are loaded and visible to all threads.
+	 */
+	private volatile Rectangle2D bounds = null;
 	
 	public SvgIcon(String uri, int baseSize, IconPalette palette, boolean onlyFg) {
 		this.uri = uri;
@@ -32,29 +32,74 @@ public SvgIcon(String uri, int baseSize, IconPalette palette) {
 		this(uri, baseSize, palette, false);
 	}
 	
-	public SvgIcon load() {
-		SvgFile svg = new SvgFile(uri);
-		fgPath = svg.getPath("fg", 1);
-		bgPath = onlyFg ? null : svg.getPath("bg", 1);
-		bounds = fgPath.getBounds2D();
-		if(bgPath!=null)
-			bounds.add(bgPath.getBounds2D());
+	/**
+	 * Loads or reloads icon shapes from the SVG file. Safe to call from any thread.
+	 * @return this icon
+	 */
+	public synchronized SvgIcon load() {
+		Path2D fg, bg;
+		if(onlyFg) {
+			fg = SvgLoader.loadPaths(uri, 1, "fg")[0];
+			bg = null;
+		}
+		else {
+			Path2D[] paths = SvgLoader.loadPaths(uri, 1, "fg", "bg");
+			fg = paths[0];
+			bg = paths[1];
+		}
+		Rectangle2D b = fg.getBounds2D();
+		if(bg!=null)
+			b.add(bg.getBounds2D());
+		fgPath = fg;
+		bgPath = bg;
+		bounds = b;
+		IconCache.shared.remove(this);
+		return this;
+	}
+
+	/**
+	 * Loads icon shapes unless they have already been loaded.
+	 * If another thread is loading the icon, waits for it to finish.
+	 * @return this icon
+	 */
+	public SvgIcon ensureLoaded() {
+		if(bounds==null) {
+			synchronized(this) {
+				if(bounds==null)
+					load();
+			}
+		}
 		return this;
 	}
+
+	public boolean isLoaded() {
+		return bounds!=null;
+	}
 	
 	private double getScale(float size, float pixelScale) {
 		return size/(double)baseSize/pixelScale;
 	}
 	
 	public BufferedImage createImage(int style, double scale) {
-		if(bounds==null)
-			load();
-		BufferedImage img = new BufferedImage((int)Math.ceil(bounds.getWidth()*scale+2), (int)Math.ceil(bounds.getHeight()*scale+2), BufferedImage.TYPE_INT_ARGB);
+		return createImage(style, scale, 0, 0);
+	}
+	
+	/**
+	 * Renders the icon into a new image with one pixel margin.
+	 * @param style palette style
+	 * @param scale icon scale
+	 * @param offsX horizontal sub-pixel offset of the icon within the image, in pixels
+	 * @param offsY vertical sub-pixel offset
+	 * @return icon image
+	 */
+	public BufferedImage createImage(int style, double scale, double offsX, double offsY) {
+		ensureLoaded();
+		BufferedImage img = new BufferedImage((int)Math.ceil(bounds.getWidth()*scale+offsX+2), (int)Math.ceil(bounds.getHeight()*scale+offsY+2), BufferedImage.TYPE_INT_ARGB);
 		
 		Graphics2D ig2 = (Graphics2D) img.getGraphics();
 		ig2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 		ig2.scale(scale, scale);
-		ig2.translate(-bounds.getX()+1/scale, -bounds.getY()+1/scale);
+		ig2.translate(-bounds.getX()+(1+offsX)/scale, -bounds.getY()+(1+offsY)/scale);
 		if(bgPath!=null) {
 			ig2.setPaint(palette.getBgPaint(style, (float)bounds.getY(), (float)(bounds.getY()+baseSize)));
 			ig2.fill(bgPath);
@@ -69,37 +114,53 @@ public BufferedImage createImage(int style, float size, float pixelScale) {
 	}
 	
 	public void paint(Graphics2D g2, int style, float x, float y, float size, float pixelScale, boolean useCache) {
-		if(bounds==null)
-			load();
+		if(bounds==null) {
+			if(useCache && IconPrefetcher.shared.requestLoad(this))
+				return; // loading in the background, see IconPrefetcher
+			ensureLoaded();
+		}
 		if(useCache) {
-			int imgSize = (int)(size/pixelScale);
-			double scale = getScale(size, pixelScale);
+			IconCache cache = IconCache.shared;
+			float imgSize = cache.quantizeSize(size/pixelScale);
+			double scale = imgSize/(double)baseSize;
 			
-			int key = imgSize*palette.colors.length+style;
-			BufferedImage img = cache.get(key);
-			if(img==null) {
-				img = createImage(style, scale);
-				cache.put(key, img);
-			}
-			AffineTransform tx = g2.getTransform();
-			g2.setTransform(new AffineTransform());
-			g2.translate(tx.getTranslateX()+bounds.getX()*scale+x/pixelScale, tx.getTranslateY()+bounds.getY()*scale+y/pixelScale);
-			g2.drawImage(img, -1, -1, null);
-			g2.setTransform(tx);
-		}
-		else {
 			AffineTransform tx = g2.getTransform();
-			g2.translate(x, y);
-			double scale = size/(double)baseSize;
-			g2.scale(scale, scale);
-			if(bgPath!=null) {
-				g2.setPaint(palette.getBgPaint(style, -baseSize, 0));
-				g2.fill(bgPath);
+			double px = tx.getTranslateX()+bounds.getX()*scale+x/pixelScale;
+			double py = tx.getTranslateY()+bounds.getY()*scale+y/pixelScale;
+			int steps = cache.getSubpixelSteps();
+			int ix = (int)Math.floor(px);
+			int iy = (int)Math.floor(py);
+			int subX = (int)Math.round((px-ix)*steps);
+			int subY = (int)Math.round((py-iy)*steps);
+			if(subX==steps) {
+				ix++;
+				subX = 0;
 			}
-			g2.setPaint(palette.getFgPaint(style, -baseSize, 0));
-			g2.fill(fgPath);
-			g2.setTransform(tx);
+			if(subY==steps) {
+				iy++;
+				subY = 0;
+			}
+			
+			IconAtlas.Region r = IconPrefetcher.shared.get(this, style, imgSize, subX, subY);
+			if(r!=null) {
+				g2.setTransform(new AffineTransform());
+				IconAtlas.drawRegion(g2, r, ix-1, iy-1);
+				g2.setTransform(tx);
+				return;
+			}
+			// raster is not ready yet, see IconPrefetcher
+		}
+		AffineTransform tx = g2.getTransform();
+		g2.translate(x, y);
+		double scale = size/(double)baseSize;
+		g2.scale(scale, scale);
+		if(bgPath!=null) {
+			g2.setPaint(palette.getBgPaint(style, -baseSize, 0));
+			g2.fill(bgPath);
 		}
+		g2.setPaint(palette.getFgPaint(style, -baseSize, 0));
+		g2.fill(fgPath);
+		g2.setTransform(tx);
 	}
 	
 }
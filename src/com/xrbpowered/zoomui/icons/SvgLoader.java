@@ -0,0 +1,230 @@
+package com.xrbpowered.zoomui.icons;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming SVG loader that builds geometry directly from the file without creating a DOM tree.
+ *
+ * <p>Supports the same subset of SVG as {@link SvgFile}: groups, transforms, styles, gradient definitions,
+ * and <code>rect</code>, <code>circle</code> and <code>path</code> shapes. Use {@link #loadScene(String, double)}
+ * to get a renderable {@link SvgScene}, or {@link #loadPaths(String, double, String...)} to extract
+ * individual shapes by id, in which case reading stops as soon as all requested shapes have been found.</p>
+ *
+ * <p>Stream reader factories are cached per thread, so loading is safe to run from multiple threads.</p>
+ */
+public class SvgLoader {
+
+	private static final ThreadLocal<XMLInputFactory> inputFactory = new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory f = XMLInputFactory.newInstance();
+			f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+			f.setProperty(XMLInputFactory.IS_COALESCING, false);
+			return f;
+		}
+	};
+
+	/**
+	 * State of an open element.
+	 */
+	private static class Frame {
+		public final SvgStyle style;
+		public final AffineTransform transform;
+
+		public Frame(SvgStyle style, AffineTransform transform) {
+			this.style = style;
+			this.transform = transform;
+		}
+	}
+
+	private final double scale;
+	private final SvgScene.Builder scene;
+	private final String[] ids;
+	private final Path2D[] paths;
+	private int found = 0;
+
+	private final SvgDefs defs = new SvgDefs();
+	private final ArrayList<Frame> stack = new ArrayList<>();
+
+	private SvgLoader(double scale, SvgScene.Builder scene, String[] ids) {
+		this.scale = scale;
+		this.scene = scene;
+		this.ids = ids;
+		this.paths = (ids==null) ? null : new Path2D[ids.length];
+	}
+
+	/**
+	 * Loads an SVG file as a compiled scene.
+	 * The result is the same as <code>new SvgFile(uri).compile(scale)</code>.
+	 * @param uri resource or file path
+	 * @param scale compile scale, see {@link SvgFile#compile(double)}
+	 * @return compiled scene, possibly incomplete if the file failed to load
+	 */
+	public static SvgScene loadScene(String uri, double scale) {
+		SvgScene.Builder scene = new SvgScene.Builder(scale);
+		new SvgLoader(scale, scene, null).load(uri);
+		return scene.build();
+	}
+
+	/**
+	 * Loads shapes with the given ids from an SVG file. Shapes are transformed to the document space,
+	 * same as in {@link SvgFile#getPath(String, double)}. Reading stops once all shapes have been found.
+	 * @param uri resource or file path
+	 * @param scale geometry scale
+	 * @param ids element ids to look for
+	 * @return array of shapes matching <code>ids</code>, with <code>null</code> entries for ids that have not been found
+	 */
+	public static Path2D[] loadPaths(String uri, double scale, String... ids) {
+		SvgLoader loader = new SvgLoader(scale, null, ids);
+		loader.load(uri);
+		return loader.paths;
+	}
+
+	private boolean isDone() {
+		return ids!=null && found==ids.length;
+	}
+
+	private void load(String uri) {
+		try {
+			InputStream in = SvgFile.openStream(uri);
+			try {
+				XMLStreamReader reader = inputFactory.get().createXMLStreamReader(in);
+				try {
+					read(reader);
+				}
+				finally {
+					reader.close();
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void skipElement(XMLStreamReader in) throws XMLStreamException {
+		int depth = 1;
+		while(depth>0 && in.hasNext()) {
+			int event = in.next();
+			if(event==XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if(event==XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	private void read(XMLStreamReader in) throws XMLStreamException {
+		// root element's style and transform are ignored, same as in SvgFile
+		while(in.hasNext()) {
+			if(in.next()==XMLStreamConstants.START_ELEMENT) {
+				stack.add(new Frame(new SvgStyle(), new AffineTransform()));
+				break;
+			}
+		}
+		while(!stack.isEmpty() && !isDone() && in.hasNext()) {
+			int event = in.next();
+			if(event==XMLStreamConstants.END_ELEMENT)
+				stack.remove(stack.size()-1);
+			else if(event==XMLStreamConstants.START_ELEMENT)
+				startElement(in);
+		}
+	}
+
+	private void startElement(XMLStreamReader in) throws XMLStreamException {
+		Frame parent = stack.get(stack.size()-1);
+		String name = in.getLocalName();
+		SvgAttributes attrs = SvgAttributes.of(in);
+
+		if(name.equals("defs")) {
+			readDefs(in);
+			return;
+		}
+
+		AffineTransform t = parent.transform;
+		String tr = attrs.get("transform");
+		if(!tr.isEmpty()) {
+			t = new AffineTransform(t);
+			t.concatenate(SvgFile.getTransform(tr, scale));
+		}
+
+		if(name.equals("g")) {
+			SvgStyle style = (scene==null) ? null : SvgStyle.forElement(parent.style, defs, attrs);
+			stack.add(new Frame(style, t));
+			return;
+		}
+
+		Path2D path = null;
+		int index = -1;
+		if(ids!=null) {
+			String id = attrs.get("id");
+			for(int i=0; i<ids.length; i++) {
+				if(paths[i]==null && ids[i].equals(id)) {
+					index = i;
+					break;
+				}
+			}
+		}
+		if(scene!=null || index>=0) {
+			if(name.equals("rect"))
+				path = SvgFile.createRect(attrs, scale);
+			else if(name.equals("circle"))
+				path = SvgFile.createCircle(attrs, scale);
+			else if(name.equals("path"))
+				path = SvgFile.createPath(attrs.get("d"), scale);
+		}
+		if(path!=null) {
+			if(scene!=null)
+				scene.add(path, SvgStyle.forElement(parent.style, defs, attrs), t);
+			if(index>=0) {
+				path.transform(t);
+				paths[index] = path;
+				found++;
+			}
+		}
+		skipElement(in);
+	}
+
+	private void readDefs(XMLStreamReader in) throws XMLStreamException {
+		String gradient = null;
+		SvgAttributes gradientAttrs = null;
+		ArrayList<SvgDefs.GradientStop> stops = new ArrayList<>();
+		int depth = 1;
+		while(depth>0 && in.hasNext()) {
+			int event = in.next();
+			if(event==XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				String name = in.getLocalName();
+				if(depth==2 && (name.equals("linearGradient") || name.equals("radialGradient"))) {
+					gradient = name;
+					gradientAttrs = SvgAttributes.copyOf(in);
+					stops.clear();
+				}
+				else if(depth==3 && gradient!=null && name.equals("stop")) {
+					SvgDefs.GradientStop stop = SvgDefs.readStop(SvgAttributes.of(in));
+					if(stop!=null)
+						stops.add(stop);
+				}
+			}
+			else if(event==XMLStreamConstants.END_ELEMENT) {
+				depth--;
+				if(depth==1 && gradient!=null) {
+					defs.addGradient(gradient, gradientAttrs, stops, scale);
+					gradient = null;
+				}
+			}
+		}
+	}
+
+}
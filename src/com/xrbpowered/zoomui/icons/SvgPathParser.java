@@ -0,0 +1,455 @@
+package com.xrbpowered.zoomui.icons;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+
+/**
+ * Scanner for SVG path data (the <code>d</code> attribute of a <code>path</code> element).
+ *
+ * <p>Supports the complete SVG 1.1 path grammar: all absolute and relative commands including smooth curves
+ * (<code>S</code>, <code>T</code>) and elliptical arcs, implicitly repeated commands, and compact number syntax
+ * such as <code>M10-5L3.5.5</code> and <code>a1 1 0 00 1 1</code>. Numbers are read in place from the string
+ * without creating substrings.</p>
+ *
+ * <p>As required by the SVG specification, parsing stops at the first error and the path is returned
+ * as it was before the erroneous segment.</p>
+ */
+public class SvgPathParser {
+
+	private static final double[] pow10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private final String d;
+	private final int length;
+	private final double scale;
+	private int pos = 0;
+
+	private final Path2D.Double path = new Path2D.Double();
+	private double x = 0.0;
+	private double y = 0.0;
+	private double startX = 0.0;
+	private double startY = 0.0;
+	private double ctrlX = 0.0;
+	private double ctrlY = 0.0;
+	private char lastCmd = '\0';
+
+	private boolean error = false;
+
+	private SvgPathParser(String d, double scale) {
+		this.d = d;
+		this.length = d.length();
+		this.scale = scale;
+	}
+
+	/**
+	 * Parses SVG path data.
+	 * @param d path data
+	 * @param scale multiplier for all coordinates
+	 * @return path
+	 */
+	public static Path2D parse(String d, double scale) {
+		SvgPathParser p = new SvgPathParser(d, scale);
+		p.parse();
+		return p.path;
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c==' ' || c=='\t' || c=='\n' || c=='\r' || c=='\f';
+	}
+
+	private void skipWhitespace() {
+		while(pos<length && isWhitespace(d.charAt(pos)))
+			pos++;
+	}
+
+	/**
+	 * Skips whitespace and at most one comma.
+	 */
+	private void skipSeparator() {
+		skipWhitespace();
+		if(pos<length && d.charAt(pos)==',') {
+			pos++;
+			skipWhitespace();
+		}
+	}
+
+	private boolean isNumberStart() {
+		if(pos>=length)
+			return false;
+		char c = d.charAt(pos);
+		return c>='0' && c<='9' || c=='.' || c=='-' || c=='+';
+	}
+
+	private double fail() {
+		error = true;
+		return 0.0;
+	}
+
+	/**
+	 * Reads a number followed by an optional separator.
+	 * Sets {@link #error} if there is no valid number at the current position.
+	 */
+	private double number() {
+		if(error)
+			return 0.0;
+		boolean neg = false;
+		char c = pos<length ? d.charAt(pos) : '\0';
+		if(c=='-' || c=='+') {
+			neg = (c=='-');
+			c = ++pos<length ? d.charAt(pos) : '\0';
+		}
+		int start = pos; // after the sign, which is applied to the result
+
+		long mantissa = 0L;
+		int digits = 0;
+		int exp = 0;
+		boolean any = false;
+		boolean exact = true;
+		while(c>='0' && c<='9') {
+			any = true;
+			if(digits<18) {
+				mantissa = mantissa*10L + (c-'0');
+				if(mantissa!=0L)
+					digits++;
+			}
+			else {
+				exact = false;
+				exp++;
+			}
+			c = ++pos<length ? d.charAt(pos) : '\0';
+		}
+		if(c=='.') {
+			c = ++pos<length ? d.charAt(pos) : '\0';
+			while(c>='0' && c<='9') {
+				any = true;
+				if(digits<18) {
+					mantissa = mantissa*10L + (c-'0');
+					if(mantissa!=0L)
+						digits++;
+					exp--;
+				}
+				else
+					exact = false;
+				c = ++pos<length ? d.charAt(pos) : '\0';
+			}
+		}
+		if(!any)
+			return fail();
+		if(c=='e' || c=='E') {
+			// 'e' without exponent digits is not a part of the number
+			int p = pos+1;
+			char s = p<length ? d.charAt(p) : '\0';
+			if(s=='-' || s=='+')
+				s = ++p<length ? d.charAt(p) : '\0';
+			if(s>='0' && s<='9') {
+				boolean expNeg = d.charAt(pos+1)=='-';
+				int e = 0;
+				while(p<length && (s = d.charAt(p))>='0' && s<='9') {
+					if(e<10000)
+						e = e*10 + (s-'0');
+					p++;
+				}
+				exp += expNeg ? -e : e;
+				pos = p;
+			}
+		}
+
+		double v;
+		if(exact && mantissa<(1L<<53) && exp>=-22 && exp<=22)
+			v = exp<0 ? mantissa / pow10[-exp] : mantissa * pow10[exp];
+		else
+			v = Double.parseDouble(d.substring(start, pos)); // rare: too many digits for exact conversion
+		skipSeparator();
+		return neg ? -v : v;
+	}
+
+	/**
+	 * Reads an arc flag, which is a single digit <code>0</code> or <code>1</code> not requiring a separator.
+	 */
+	private boolean flag() {
+		if(error)
+			return false;
+		char c = pos<length ? d.charAt(pos) : '\0';
+		if(c!='0' && c!='1') {
+			fail();
+			return false;
+		}
+		pos++;
+		skipSeparator();
+		return c=='1';
+	}
+
+	private void parse() {
+		skipWhitespace();
+		char cmd = '\0';
+		while(pos<length) {
+			char c = d.charAt(pos);
+			if(c>='A' && c<='Z' || c>='a' && c<='z') {
+				cmd = c;
+				pos++;
+				skipWhitespace();
+			}
+			else if(cmd=='\0' || cmd=='Z' || cmd=='z' || !isNumberStart()) {
+				System.err.printf("Bad path data at %d: '%c'\n", pos, c);
+				return;
+			}
+			if(lastCmd=='\0' && cmd!='M' && cmd!='m') {
+				System.err.println("Path data must start with a moveto command");
+				return;
+			}
+
+			if(!segment(cmd)) {
+				if(error)
+					System.err.printf("Bad path data at %d\n", pos);
+				else
+					System.err.printf("Unknown path command: '%c'\n", cmd);
+				return;
+			}
+			// implicit lineto after moveto
+			if(cmd=='M')
+				cmd = 'L';
+			else if(cmd=='m')
+				cmd = 'l';
+		}
+	}
+
+	private boolean isCubic(char cmd) {
+		return cmd=='C' || cmd=='c' || cmd=='S' || cmd=='s';
+	}
+
+	private boolean isQuad(char cmd) {
+		return cmd=='Q' || cmd=='q' || cmd=='T' || cmd=='t';
+	}
+
+	/**
+	 * Reads the arguments of one segment and appends it to the path.
+	 * @return <code>false</code> on error
+	 */
+	private boolean segment(char cmd) {
+		boolean rel = cmd>='a';
+		double ox = rel ? x : 0.0;
+		double oy = rel ? y : 0.0;
+		double x1, y1, x2, y2, ex, ey;
+		switch(cmd) {
+			case 'M':
+			case 'm':
+				ex = number() * scale + ox;
+				ey = number() * scale + oy;
+				if(error)
+					return false;
+				path.moveTo(ex, ey);
+				startX = ex;
+				startY = ey;
+				break;
+			case 'L':
+			case 'l':
+				ex = number() * scale + ox;
+				ey = number() * scale + oy;
+				if(error)
+					return false;
+				path.lineTo(ex, ey);
+				break;
+			case 'H':
+			case 'h':
+				ex = number() * scale + ox;
+				ey = y;
+				if(error)
+					return false;
+				path.lineTo(ex, ey);
+				break;
+			case 'V':
+			case 'v':
+				ex = x;
+				ey = number() * scale + oy;
+				if(error)
+					return false;
+				path.lineTo(ex, ey);
+				break;
+			case 'C':
+			case 'c':
+				x1 = number() * scale + ox;
+				y1 = number() * scale + oy;
+				x2 = number() * scale + ox;
+				y2 = number() * scale + oy;
+				ex = number() * scale + ox;
+				ey = number() * scale + oy;
+				if(error)
+					return false;
+				path.curveTo(x1, y1, x2, y2, ex, ey);
+				ctrlX = x2;
+				ctrlY = y2;
+				break;
+			case 'S':
+			case 's':
+				x1 = isCubic(lastCmd) ? 2.0*x - ctrlX : x;
+				y1 = isCubic(lastCmd) ? 2.0*y - ctrlY : y;
+				x2 = number() * scale + ox;
+				y2 = number() * scale + oy;
+				ex = number() * scale + ox;
+				ey = number() * scale + oy;
+				if(error)
+					return false;
+				path.curveTo(x1, y1, x2, y2, ex, ey);
+				ctrlX = x2;
+				ctrlY = y2;
+				break;
+			case 'Q':
+			case 'q':
+				x1 = number() * scale + ox;
+				y1 = number() * scale + oy;
+				ex = number() * scale + ox;
+				ey = number() * scale + oy;
+				if(error)
+					return false;
+				path.quadTo(x1, y1, ex, ey);
+				ctrlX = x1;
+				ctrlY = y1;
+				break;
+			case 'T':
+			case 't':
+				x1 = isQuad(lastCmd) ? 2.0*x - ctrlX : x;
+				y1 = isQuad(lastCmd) ? 2.0*y - ctrlY : y;
+				ex = number() * scale + ox;
+				ey = number() * scale + oy;
+				if(error)
+					return false;
+				path.quadTo(x1, y1, ex, ey);
+				ctrlX = x1;
+				ctrlY = y1;
+				break;
+			case 'A':
+			case 'a': {
+				double rx = number() * scale;
+				double ry = number() * scale;
+				double theta = number();
+				boolean largeArc = flag();
+				boolean sweep = flag();
+				ex = number() * scale + ox;
+				ey = number() * scale + oy;
+				if(error)
+					return false;
+				if(ex!=x || ey!=y)
+					arcTo(path, rx, ry, theta, largeArc, sweep, ex, ey);
+				break;
+			}
+			case 'Z':
+			case 'z':
+				path.closePath();
+				ex = startX;
+				ey = startY;
+				skipWhitespace();
+				break;
+			default:
+				return false;
+		}
+		x = ex;
+		y = ey;
+		lastCmd = cmd;
+		return true;
+	}
+
+	/**
+	 * Appends an SVG elliptical arc to the path, starting at the path's current point.
+	 * From org.apache.batik.ext.awt.geom.ExtendedGeneralPath.computeArc().
+	 */
+	public static void arcTo(Path2D.Double path, double rx, double ry, double theta, boolean largeArcFlag, boolean sweepFlag, double x, double y) {
+		// Ensure radii are valid
+		if(rx == 0 || ry == 0) {
+			path.lineTo(x, y);
+			return;
+		}
+		// Get the current (x, y) coordinates of the path
+		Point2D p2d = path.getCurrentPoint();
+		double x0 = p2d.getX();
+		double y0 = p2d.getY();
+		// Compute the half distance between the current and the final point
+		double dx2 = (x0 - x) / 2.0f;
+		double dy2 = (y0 - y) / 2.0f;
+		// Convert theta from degrees to radians
+		theta = Math.toRadians(theta % 360f);
+		double cosTheta = Math.cos(theta);
+        double sinTheta = Math.sin(theta);
+
+		//
+		// Step 1 : Compute (x1, y1)
+		//
+		double x1 = cosTheta * dx2 + sinTheta * dy2;
+		double y1 = -sinTheta * dx2 + cosTheta * dy2;
+		// Ensure radii are large enough
+		rx = Math.abs(rx);
+		ry = Math.abs(ry);
+		double Prx = rx * rx;
+		double Pry = ry * ry;
+		double Px1 = x1 * x1;
+		double Py1 = y1 * y1;
+		double d = Px1 / Prx + Py1 / Pry;
+		if(d > 1) {
+			rx = Math.abs(Math.sqrt(d) * rx);
+			ry = Math.abs(Math.sqrt(d) * ry);
+			Prx = rx * rx;
+			Pry = ry * ry;
+		}
+
+		//
+		// Step 2 : Compute (cx1, cy1)
+		//
+		double sign = (largeArcFlag == sweepFlag) ? -1d : 1d;
+		double coef = sign * Math.sqrt(((Prx * Pry) - (Prx * Py1) - (Pry * Px1)) / ((Prx * Py1) + (Pry * Px1)));
+		double cx1 = coef * ((rx * y1) / ry);
+		double cy1 = coef * -((ry * x1) / rx);
+
+		//
+		// Step 3 : Compute (cx, cy) from (cx1, cy1)
+		//
+		double sx2 = (x0 + x) / 2.0f;
+		double sy2 = (y0 + y) / 2.0f;
+		double cx = sx2 + (cosTheta * cx1 - sinTheta * cy1);
+		double cy = sy2 + (sinTheta * cx1 + cosTheta * cy1);
+
+		//
+		// Step 4 : Compute the angleStart (theta1) and the angleExtent (dtheta)
+		//
+		double ux = (x1 - cx1) / rx;
+		double uy = (y1 - cy1) / ry;
+		double vx = (-x1 - cx1) / rx;
+		double vy = (-y1 - cy1) / ry;
+		double p, n;
+		// Compute the angle start
+		n = Math.sqrt((ux * ux) + (uy * uy));
+		p = ux; // (1 * ux) + (0 * uy)
+		sign = (uy < 0) ? -1d : 1d;
+		double angleStart = Math.toDegrees(sign * Math.acos(p / n));
+		// Compute the angle extent
+		n = Math.sqrt((ux * ux + uy * uy) * (vx * vx + vy * vy));
+		p = ux * vx + uy * vy;
+		sign = (ux * vy - uy * vx < 0) ? -1d : 1d;
+		double angleExtent = Math.toDegrees(sign * Math.acos(p / n));
+		if(!sweepFlag && angleExtent > 0) {
+			angleExtent -= 360f;
+		} else if(sweepFlag && angleExtent < 0) {
+			angleExtent += 360f;
+		}
+		angleExtent %= 360f;
+		angleStart %= 360f;
+
+		Arc2D.Double arc = new Arc2D.Double();
+		arc.x = cx - rx;
+		arc.y = cy - ry;
+		arc.width = rx * 2.0f;
+		arc.height = ry * 2.0f;
+		arc.start = -angleStart;
+		arc.extent = -angleExtent;
+		
+		AffineTransform t = AffineTransform.getRotateInstance
+            (theta, arc.getCenterX(), arc.getCenterY());
+        Shape s = t.createTransformedShape(arc);
+	        
+		path.append(s, true);
+	}
+
+}
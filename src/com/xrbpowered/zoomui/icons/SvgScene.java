@@ -0,0 +1,186 @@
+package com.xrbpowered.zoomui.icons;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.LinearGradientPaint;
+import java.awt.Paint;
+import java.awt.RadialGradientPaint;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compiled, immutable representation of an {@link SvgFile} for fast repeated rendering.
+ *
+ * <p>The scene is a flat list of shapes in document order. Element transforms are applied to the shapes
+ * during compilation, and fill paints, strokes and stroke colors are resolved, so rendering does not
+ * parse any attributes or allocate any geometry. The scene keeps no reference to the DOM,
+ * so the source {@link SvgFile} can be discarded after {@link SvgFile#compile()}.</p>
+ *
+ * <p>Shapes that do not intersect the clip of the graphics are skipped.</p>
+ */
+public class SvgScene {
+
+	private final Shape[] shapes;
+	private final Rectangle2D[] bounds;
+	private final Paint[] fills;
+	private final Stroke[] strokes;
+	private final Color[] strokeColors;
+
+	/**
+	 * Scene bounds in compiled coordinates.
+	 */
+	public final Rectangle2D sceneBounds;
+
+	/**
+	 * Scale used to compile the scene, see {@link SvgFile#compile(double)}.
+	 */
+	public final double baseScale;
+
+	private SvgScene(Builder b) {
+		int n = b.shapes.size();
+		this.shapes = b.shapes.toArray(new Shape[n]);
+		this.bounds = b.bounds.toArray(new Rectangle2D[n]);
+		this.fills = b.fills.toArray(new Paint[n]);
+		this.strokes = b.strokes.toArray(new Stroke[n]);
+		this.strokeColors = b.strokeColors.toArray(new Color[n]);
+		this.baseScale = b.scale;
+		Rectangle2D sb = null;
+		for(Rectangle2D r : bounds) {
+			if(sb==null)
+				sb = (Rectangle2D) r.clone();
+			else
+				sb.add(r);
+		}
+		this.sceneBounds = (sb==null) ? new Rectangle2D.Double() : sb;
+	}
+
+	/**
+	 * Loads an SVG file as a scene compiled at scale 1 using {@link SvgLoader}.
+	 * @param uri resource or file path, see {@link SvgFile#SvgFile(String)}
+	 * @return compiled scene
+	 */
+	public static SvgScene load(String uri) {
+		return SvgLoader.loadScene(uri, 1.0);
+	}
+
+	/**
+	 * Returns the number of shapes in the scene.
+	 * @return number of shapes
+	 */
+	public int size() {
+		return shapes.length;
+	}
+
+	/**
+	 * Renders the scene.
+	 * @param g2 graphics
+	 * @param scale rendering scale relative to the SVG coordinates, same as in {@link SvgFile#render(Graphics2D, double)}
+	 */
+	public void render(Graphics2D g2, double scale) {
+		AffineTransform tx = g2.getTransform();
+		double s = scale / baseScale;
+		if(s!=1.0)
+			g2.scale(s, s);
+		Rectangle clip = g2.getClipBounds();
+		for(int i=0; i<shapes.length; i++) {
+			if(clip!=null && !bounds[i].intersects(clip))
+				continue;
+			if(fills[i]!=null) {
+				g2.setPaint(fills[i]);
+				g2.fill(shapes[i]);
+			}
+			if(strokeColors[i]!=null) {
+				g2.setStroke(strokes[i]);
+				g2.setColor(strokeColors[i]);
+				g2.draw(shapes[i]);
+			}
+		}
+		g2.setTransform(tx);
+	}
+
+	/**
+	 * Returns the gradient paint with the transform applied, or the same paint if it is not a gradient.
+	 */
+	private static Paint transformPaint(Paint p, AffineTransform t) {
+		if(p instanceof LinearGradientPaint) {
+			LinearGradientPaint grad = (LinearGradientPaint) p;
+			AffineTransform gt = new AffineTransform(t);
+			gt.concatenate(grad.getTransform());
+			return new LinearGradientPaint(grad.getStartPoint(), grad.getEndPoint(), grad.getFractions(), grad.getColors(),
+					grad.getCycleMethod(), grad.getColorSpace(), gt);
+		}
+		else if(p instanceof RadialGradientPaint) {
+			RadialGradientPaint grad = (RadialGradientPaint) p;
+			AffineTransform gt = new AffineTransform(t);
+			gt.concatenate(grad.getTransform());
+			return new RadialGradientPaint(grad.getCenterPoint(), grad.getRadius(), grad.getFocusPoint(), grad.getFractions(), grad.getColors(),
+					grad.getCycleMethod(), grad.getColorSpace(), gt);
+		}
+		else
+			return p;
+	}
+
+	/**
+	 * Collects shapes during {@link SvgFile#compile(double)}.
+	 */
+	static class Builder {
+		private final double scale;
+
+		private final ArrayList<Shape> shapes = new ArrayList<>();
+		private final ArrayList<Rectangle2D> bounds = new ArrayList<>();
+		private final ArrayList<Paint> fills = new ArrayList<>();
+		private final ArrayList<Stroke> strokes = new ArrayList<>();
+		private final ArrayList<Color> strokeColors = new ArrayList<>();
+
+		private final HashMap<Float, Stroke> strokeCache = new HashMap<>();
+
+		public Builder(double scale) {
+			this.scale = scale;
+		}
+
+		public void add(Path2D path, SvgStyle style, AffineTransform t) {
+			if(!style.hasFill() && !style.hasStroke())
+				return;
+			boolean identity = t.isIdentity();
+			Shape shape = identity ? new Path2D.Double(path) : new Path2D.Double(path, t);
+			Rectangle2D b = shape.getBounds2D();
+
+			Paint fill = null;
+			if(style.hasFill()) {
+				fill = style.fill;
+				if(!identity)
+					fill = transformPaint(fill, t);
+			}
+
+			Stroke stroke = null;
+			if(style.hasStroke()) {
+				// strokes are not affected by the element transform, so scale the width instead
+				float w = (float)(style.strokeWidth * scale * Math.sqrt(Math.abs(t.getDeterminant())));
+				stroke = strokeCache.get(w);
+				if(stroke==null) {
+					stroke = new BasicStroke(w);
+					strokeCache.put(w, stroke);
+				}
+				b.setRect(b.getX()-w, b.getY()-w, b.getWidth()+w*2, b.getHeight()+w*2);
+			}
+
+			shapes.add(shape);
+			bounds.add(b);
+			fills.add(fill);
+			strokes.add(stroke);
+			strokeColors.add(style.strokeColor);
+		}
+
+		public SvgScene build() {
+			return new SvgScene(this);
+		}
+	}
+
+}
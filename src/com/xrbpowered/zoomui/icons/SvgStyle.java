@@ -69,7 +69,11 @@ public static Color parseColor(String v) {
 	}
 	
 	public static SvgStyle forElement(SvgStyle parent, SvgDefs defs, Element e) {
-		String attr = e.getAttribute("style");
+		return forElement(parent, defs, SvgAttributes.of(e));
+	}
+	
+	public static SvgStyle forElement(SvgStyle parent, SvgDefs defs, SvgAttributes e) {
+		String attr = e.get("style");
 		if(!attr.isEmpty()) {
 			SvgStyle style = new SvgStyle(parent);
 			String[] vals = attr.split(";");
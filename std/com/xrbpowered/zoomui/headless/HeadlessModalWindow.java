@@ -0,0 +1,131 @@
+package com.xrbpowered.zoomui.headless;
+
+import java.awt.Cursor;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import com.xrbpowered.zoomui.UIModalWindow;
+
+/**
+ * Headless modal window. Unlike Swing modal dialogs, {@link #show()} does not block.
+ */
+public class HeadlessModalWindow<A> extends UIModalWindow<A> {
+
+	public final HeadlessSurface surface;
+
+	private int x = 0;
+	private int y = 0;
+	private boolean visible = false;
+
+	protected HeadlessModalWindow(HeadlessWindowFactory factory, int w, int h) {
+		super(factory);
+		surface = new HeadlessSurface(this);
+		setClientSize(w, h);
+	}
+
+	@Override
+	public int getClientWidth() {
+		return surface.getWidth();
+	}
+
+	@Override
+	public int getClientHeight() {
+		return surface.getHeight();
+	}
+
+	@Override
+	public void setClientSize(int width, int height) {
+		surface.resize(width, height);
+	}
+
+	@Override
+	public int getX() {
+		return x;
+	}
+
+	@Override
+	public int getY() {
+		return y;
+	}
+
+	@Override
+	public void moveTo(int x, int y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	@Override
+	public void center() {
+		moveTo(0, 0);
+	}
+
+	@Override
+	public boolean isVisible() {
+		return visible;
+	}
+
+	@Override
+	public void show() {
+		visible = true;
+		repaint();
+	}
+
+	@Override
+	public void close() {
+		visible = false;
+		super.close();
+	}
+
+	@Override
+	public void closeWithResult(A result) {
+		visible = false;
+		super.closeWithResult(result);
+	}
+
+	@Override
+	public void repaint() {
+		surface.repaint();
+	}
+
+	@Override
+	public void repaint(Rectangle r) {
+		surface.repaint(r);
+	}
+
+	@Override
+	public void setCursor(Cursor cursor) {
+		surface.setCursor(cursor);
+	}
+
+	@Override
+	public int rootToScreenX(float x) {
+		return this.x+(int)x;
+	}
+
+	@Override
+	public int rootToScreenY(float y) {
+		return this.y+(int)y;
+	}
+
+	@Override
+	public float screenToRootX(int x) {
+		return x-this.x;
+	}
+
+	@Override
+	public float screenToRootY(int y) {
+		return y-this.y;
+	}
+
+	@Override
+	public FontMetrics getFontMetrics(Font font) {
+		return surface.getFontMetrics(font);
+	}
+
+	public BufferedImage renderFrame() {
+		return surface.renderFrame();
+	}
+
+}
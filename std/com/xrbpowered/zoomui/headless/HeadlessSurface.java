@@ -0,0 +1,307 @@
+package com.xrbpowered.zoomui.headless;
+
+import static com.xrbpowered.zoomui.InputInfo.*;
+
+import java.awt.Cursor;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.xrbpowered.zoomui.GraphAssist;
+import com.xrbpowered.zoomui.InputInfo;
+import com.xrbpowered.zoomui.MouseInfo;
+import com.xrbpowered.zoomui.UIWindow;
+
+/**
+ * Offscreen drawing surface and programmatic input source of a headless window.
+ * Plays the same role as {@link com.xrbpowered.zoomui.swing.BasePanel} for Swing windows.
+ * 
+ * <p>Nothing is painted until {@link #renderFrame()} is called. Repaint requests from the UI
+ * are accumulated between frames, so only the dirty region is repainted unless the whole window is invalidated.
+ * Input methods take coordinates in client pixels, same as Swing mouse events, and must be called
+ * from the same thread that calls {@link #renderFrame()}.</p>
+ */
+public class HeadlessSurface {
+
+	private static Graphics2D metricsGraphics = null;
+
+	public final UIWindow window;
+
+	private int width = 0;
+	private int height = 0;
+	private BufferedImage image = null;
+
+	private boolean repaintAll = true;
+	private Rectangle dirtyRegion = null;
+	private int frameCount = 0;
+	private CompletableFuture<Void> waitedIconBatch = null;
+
+	private static final int MAX_ICON_FRAMES = 4;
+
+	/**
+	 * Wait for background icon loading and rasterization in {@link #renderFrame()}. Enabled by default.
+	 */
+	public boolean syncIcons = true;
+
+	private Cursor cursor = Cursor.getDefaultCursor();
+
+	private int mods = NONE;
+	private int buttons = NONE;
+	private boolean mouseInside = false;
+	private float mouseX = 0f;
+	private float mouseY = 0f;
+
+	public HeadlessSurface(UIWindow window) {
+		this.window = window;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public void resize(int width, int height) {
+		float scale = window.getContainer().getBaseScale();
+		this.width = (int)(width*scale);
+		this.height = (int)(height*scale);
+		window.notifyResized();
+	}
+
+	public void repaint() {
+		repaintAll = true;
+		dirtyRegion = null;
+	}
+
+	public void repaint(Rectangle r) {
+		if(repaintAll)
+			return;
+		if(dirtyRegion==null)
+			dirtyRegion = new Rectangle(r);
+		else
+			dirtyRegion.add(r);
+	}
+
+	public boolean isRepaintRequested() {
+		return repaintAll || dirtyRegion!=null;
+	}
+
+	/**
+	 * Runs pending tasks posted via {@link HeadlessWindowFactory#invokeLater(Runnable)}
+	 * and repaints the invalidated area of the window into the offscreen image.
+	 * Repaints requested while painting are deferred to the next frame.
+	 * 
+	 * <p>If {@link #syncIcons} is set, icons requested by the frame are waited for and painted again,
+	 * so that a single call renders the complete frame, see {@link #waitForIcons()}.</p>
+	 * @return offscreen image, reused between frames unless the window is resized
+	 */
+	public BufferedImage renderFrame() {
+		paintFrame();
+		if(syncIcons) {
+			// loading and rasterization are separate batches
+			for(int i=0; i<MAX_ICON_FRAMES && waitForIcons(); i++)
+				paintFrame();
+		}
+		return image;
+	}
+
+	private void paintFrame() {
+		if(window.getFactory() instanceof HeadlessWindowFactory)
+			((HeadlessWindowFactory) window.getFactory()).runTasks();
+		int w = Math.max(width, 1);
+		int h = Math.max(height, 1);
+		if(image==null || image.getWidth()!=w || image.getHeight()!=h) {
+			image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			repaintAll = true;
+		}
+		if(isRepaintRequested()) {
+			Rectangle clip = repaintAll ? new Rectangle(0, 0, w, h) : dirtyRegion;
+			repaintAll = false;
+			dirtyRegion = null;
+			Graphics2D g2 = image.createGraphics();
+			g2.setClip(clip);
+			try {
+				window.getContainer().paint(new GraphAssist(g2));
+			}
+			finally {
+				g2.dispose();
+			}
+			frameCount++;
+		}
+	}
+
+	/**
+	 * Blocks until the icons requested by the previous frames are loaded and rasterized in the background,
+	 * see {@link com.xrbpowered.zoomui.icons.IconPrefetcher}. The repaint requested by the completed batch is rendered by the next {@link #renderFrame()}.
+	 * @return <code>true</code> if there was a batch to wait for, <code>false</code> if all icon batches have already been waited for
+	 */
+	public boolean waitForIcons() {
+		CompletableFuture<Void> batch = window.getContainer().getPaintBatch();
+		if(batch==null || batch==waitedIconBatch)
+			return false;
+		waitedIconBatch = batch;
+		try {
+			batch.join();
+		}
+		catch(CompletionException e) {
+			// only the completion matters, failed icons are requested again by the next frame
+		}
+		return true;
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	public void setCursor(Cursor cursor) {
+		this.cursor = cursor;
+	}
+
+	public Cursor getCursor() {
+		return cursor;
+	}
+
+	public FontMetrics getFontMetrics(Font font) {
+		synchronized(HeadlessSurface.class) {
+			if(metricsGraphics==null)
+				metricsGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+			return metricsGraphics.getFontMetrics(font);
+		}
+	}
+
+	/**
+	 * Sets keyboard modifiers for the following input events.
+	 * @param mods combination of {@link InputInfo#CTRL}, {@link InputInfo#ALT}, and {@link InputInfo#SHIFT}
+	 */
+	public void setModifiers(int mods) {
+		this.mods = mods;
+	}
+
+	public int getModifiers() {
+		return mods;
+	}
+
+	public float getMouseX() {
+		return mouseX;
+	}
+
+	public float getMouseY() {
+		return mouseY;
+	}
+
+	private void enter(float x, float y) {
+		mouseX = x;
+		mouseY = y;
+		if(!mouseInside) {
+			mouseInside = true;
+			window.getContainer().onMouseIn();
+		}
+	}
+
+	/**
+	 * Moves the mouse pointer. Generates a drag event if any mouse button is held down.
+	 * @param x horizontal position in client pixels
+	 * @param y vertical position in client pixels
+	 */
+	public void mouseMove(float x, float y) {
+		enter(x, y);
+		MouseInfo mouse = new MouseInfo(NONE, buttons, mods, 0);
+		if(buttons!=NONE)
+			window.getContainer().onMouseDragged(x, y, mouse);
+		else
+			window.getContainer().onMouseMoved(x, y, mouse);
+	}
+
+	/**
+	 * Moves the mouse pointer to a given position in a number of equal steps. Useful for testing drag actions.
+	 * @param x target horizontal position in client pixels
+	 * @param y target vertical position in client pixels
+	 * @param steps number of move events
+	 */
+	public void mouseMove(float x, float y, int steps) {
+		float x0 = mouseX;
+		float y0 = mouseY;
+		for(int i=1; i<=steps; i++) {
+			float s = i/(float)steps;
+			mouseMove(x0+(x-x0)*s, y0+(y-y0)*s);
+		}
+	}
+
+	public void mouseDown(float x, float y, int button, int clickCount) {
+		enter(x, y);
+		buttons |= button;
+		window.getContainer().notifyMouseDown(x, y, new MouseInfo(button, buttons, mods, clickCount));
+	}
+
+	public void mouseDown(float x, float y, int button) {
+		mouseDown(x, y, button, 1);
+	}
+
+	public void mouseUp(float x, float y, int button, int clickCount) {
+		enter(x, y);
+		buttons &= ~button;
+		window.getContainer().notifyMouseUp(x, y, new MouseInfo(button, buttons, mods, clickCount), null);
+	}
+
+	public void mouseUp(float x, float y, int button) {
+		mouseUp(x, y, button, 1);
+	}
+
+	public void click(float x, float y, int button, int clickCount) {
+		mouseDown(x, y, button, clickCount);
+		mouseUp(x, y, button, clickCount);
+	}
+
+	public void click(float x, float y, int button) {
+		click(x, y, button, 1);
+	}
+
+	public void mouseScroll(float x, float y, float delta) {
+		enter(x, y);
+		window.getContainer().notifyMouseScroll(x, y, delta, new MouseInfo(NONE, buttons, mods, 0));
+	}
+
+	public void mouseOut() {
+		if(mouseInside) {
+			mouseInside = false;
+			window.getContainer().onMouseOut();
+		}
+	}
+
+	/**
+	 * Sends a key press event to the window.
+	 * @param c typed character or {@link KeyEvent#CHAR_UNDEFINED}
+	 * @param code key code as defined in {@link KeyEvent}
+	 * @return <code>true</code> if the event has been consumed
+	 */
+	public boolean keyPressed(char c, int code) {
+		return window.getContainer().onKeyPressed(c, code, new InputInfo(mods));
+	}
+
+	public boolean keyPressed(int code) {
+		return keyPressed(KeyEvent.CHAR_UNDEFINED, code);
+	}
+
+	/**
+	 * Sends a key press event for each character of the string.
+	 * @param text typed text
+	 */
+	public void typeText(String text) {
+		for(int i=0; i<text.length(); i++) {
+			char c = text.charAt(i);
+			keyPressed(c, KeyEvent.getExtendedKeyCodeForChar(c));
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.xrbpowered.zoomui.headless;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.xrbpowered.zoomui.UIModalWindow.ResultHandler;
+import com.xrbpowered.zoomui.UIWindow;
+import com.xrbpowered.zoomui.UIWindowFactory;
+import com.xrbpowered.zoomui.icons.IconPrefetcher;
+
+/**
+ * Window factory that renders into offscreen images and does not require a display.
+ * Can be used for batch rendering and automated testing with <code>java.awt.headless=true</code>.
+ * 
+ * <p>There is no event dispatch thread: the UI thread is the thread that drives the windows
+ * via {@link HeadlessSurface} input methods and {@link HeadlessSurface#renderFrame()}.
+ * Tasks posted with {@link #invokeLater(Runnable)} are queued and executed by {@link #runTasks()},
+ * which is also called at the start of each frame.</p>
+ * 
+ * <p>Icons are rasterized in the background by {@link IconPrefetcher#shared}, same as in Swing windows.</p>
+ */
+public class HeadlessWindowFactory extends UIWindowFactory {
+
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	public HeadlessWindowFactory() {
+		setPaintHook(IconPrefetcher.shared);
+	}
+
+	public HeadlessWindowFactory(float baseScale) {
+		this();
+		setBaseScale(baseScale);
+	}
+
+	@Override
+	public void invokeLater(Runnable task) {
+		tasks.add(task);
+	}
+
+	/**
+	 * Runs all queued tasks in the current thread, including the tasks posted by the running tasks.
+	 * @return number of executed tasks
+	 */
+	public int runTasks() {
+		int count = 0;
+		Runnable task;
+		while((task = tasks.poll())!=null) {
+			task.run();
+			count++;
+		}
+		return count;
+	}
+
+	public boolean hasPendingTasks() {
+		return !tasks.isEmpty();
+	}
+
+	@Override
+	public HeadlessWindow create(String title, int w, int h, boolean canResize) {
+		return new HeadlessWindow(this, w, h);
+	}
+
+	@Override
+	public <A> HeadlessModalWindow<A> createModal(String title, int w, int h, boolean canResize, ResultHandler<A> onResult) {
+		HeadlessModalWindow<A> dlg = new HeadlessModalWindow<>(this, w, h);
+		dlg.onResult = onResult;
+		return dlg;
+	}
+
+	@Override
+	public HeadlessPopup createPopup() {
+		return new HeadlessPopup(this);
+	}
+
+	@Override
+	public HeadlessWindow createUndecorated(int w, int h) {
+		return new HeadlessWindow(this, w, h);
+	}
+
+	public static HeadlessWindowFactory use() {
+		if(!(UIWindowFactory.instance instanceof HeadlessWindowFactory))
+			UIWindowFactory.instance = new HeadlessWindowFactory();
+		return (HeadlessWindowFactory) UIWindowFactory.instance;
+	}
+
+	public static HeadlessWindowFactory use(float baseScale) {
+		HeadlessWindowFactory factory = use();
+		factory.setBaseScale(baseScale);
+		return factory;
+	}
+
+	public static HeadlessSurface getSurface(UIWindow window) {
+		if(window==null)
+			return null;
+		else if(window instanceof HeadlessWindow)
+			return ((HeadlessWindow) window).surface;
+		else if(window instanceof HeadlessModalWindow<?>)
+			return ((HeadlessModalWindow<?>) window).surface;
+		else if(window instanceof HeadlessPopup)
+			return ((HeadlessPopup) window).surface;
+		else
+			return null;
+	}
+
+}
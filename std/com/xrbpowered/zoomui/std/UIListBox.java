@@ -40,6 +40,12 @@ protected void paintBorder(GraphAssist g) {
 	protected UIListItem createItem(int index, Object object) {
 		return new UIListItem(this, index, object);
 	}
+	
+	@Override
+	protected boolean bindItem(UIListItem item, int index, Object object) {
+		item.bind(index, object);
+		return true;
+	}
 
 	@Override
 	protected void paintBackground(GraphAssist g) {
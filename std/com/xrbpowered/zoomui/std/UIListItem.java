@@ -21,8 +21,8 @@ public class UIListItem extends UIElement {
 	public static Color colorSelection = UITextBox.colorSelection;
 	public static Color colorSelectedText = UITextBox.colorSelectedText;
 
-	public final int index;
-	public final Object object;
+	public int index;
+	public Object object;
 	
 	public final UIListBox list;
 	protected boolean hover = false;
@@ -35,6 +35,12 @@ public UIListItem(UIListBox list, int index, Object object) {
 		setSize(0, defaultHeight);
 	}
 	
+	public void bind(int index, Object object) {
+		this.index = index;
+		this.object = object;
+		this.hover = false;
+	}
+	
 	@Override
 	public void paint(GraphAssist g) {
 		boolean sel = (index==list.getSelectedIndex());
@@ -51,13 +57,13 @@ protected String getLabel() {
 	@Override
 	public void onMouseIn() {
 		hover = true;
-		repaint();
+		repaintBounds();
 	}
 	
 	@Override
 	public void onMouseOut() {
 		hover = false;
-		repaint();
+		repaintBounds();
 	}
 	
 	@Override
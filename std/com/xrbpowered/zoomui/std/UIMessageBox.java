@@ -14,6 +14,7 @@
 import com.xrbpowered.zoomui.UIModalWindow.ResultHandlerWithDefault;
 import com.xrbpowered.zoomui.UIWindowFactory;
 import com.xrbpowered.zoomui.icons.IconPalette;
+import com.xrbpowered.zoomui.icons.IconRegistry;
 import com.xrbpowered.zoomui.icons.SvgIcon;
 
 public class UIMessageBox extends UIContainer implements KeyInputHandler {
@@ -38,16 +39,16 @@ public MessageResultHandler() {
 		}
 	}
 	
-	public static final SvgIcon iconError = new SvgIcon(UIToolButton.iconPath+"error.svg", 160, new IconPalette(new Color[][] {
+	public static final SvgIcon iconError = IconRegistry.shared.get(UIToolButton.iconPath+"error.svg", 160, new IconPalette(new Color[][] {
 		{new Color(0xeeeeee), new Color(0xeecccc), new Color(0xaa0000), Color.RED}
 	}));
-	public static final SvgIcon iconAlert = new SvgIcon(UIToolButton.iconPath+"alert.svg", 160, new IconPalette(new Color[][] {
+	public static final SvgIcon iconAlert = IconRegistry.shared.get(UIToolButton.iconPath+"alert.svg", 160, new IconPalette(new Color[][] {
 		{new Color(0xeeeeee), new Color(0xeeddbb), new Color(0xdd5500), new Color(0xffaa00)}
 	}));
-	public static final SvgIcon iconQuestion = new SvgIcon(UIToolButton.iconPath+"question.svg", 160, new IconPalette(new Color[][] {
+	public static final SvgIcon iconQuestion = IconRegistry.shared.get(UIToolButton.iconPath+"question.svg", 160, new IconPalette(new Color[][] {
 		{new Color(0xeeeeee), new Color(0xccddee), new Color(0x0077dd), new Color(0x00bbff)}
 	}));
-	public static final SvgIcon iconOk = new SvgIcon(UIToolButton.iconPath+"ok.svg", 160, new IconPalette(new Color[][] {
+	public static final SvgIcon iconOk = IconRegistry.shared.get(UIToolButton.iconPath+"ok.svg", 160, new IconPalette(new Color[][] {
 		{new Color(0xeeeeee), new Color(0xcceecc), new Color(0x007700), new Color(0x00ee00)}
 	}));
 	
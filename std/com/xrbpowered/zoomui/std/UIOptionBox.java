@@ -40,11 +40,13 @@ public void onAction() {
 			public void onMouseIn() {
 				((UIOptionBox<?>) getParent()).hover = true;
 				super.onMouseIn();
+				getParent().repaintBounds();
 			}
 			@Override
 			public void onMouseOut() {
 				((UIOptionBox<?>) getParent()).hover = false;
 				super.onMouseOut();
+				getParent().repaintBounds();
 			}
 		};
 	}
@@ -67,13 +69,13 @@ protected void paintChildren(GraphAssist g) {
 	@Override
 	public void onMouseIn() {
 		hover = true;
-		repaint();
+		repaintBounds();
 	}
 	
 	@Override
 	public void onMouseOut() {
 		hover = false;
-		repaint();
+		repaintBounds();
 	}
 
 }
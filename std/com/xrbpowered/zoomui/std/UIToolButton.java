@@ -6,6 +6,7 @@
 import com.xrbpowered.zoomui.UIContainer;
 import com.xrbpowered.zoomui.base.UIButtonBase;
 import com.xrbpowered.zoomui.icons.IconPalette;
+import com.xrbpowered.zoomui.icons.IconRegistry;
 import com.xrbpowered.zoomui.icons.SvgIcon;
 
 public class UIToolButton extends UIButtonBase {
@@ -40,7 +41,7 @@ public UIToolButton(UIContainer parent, SvgIcon icon, int iconSize, int padding)
 	}
 	
 	public UIToolButton(UIContainer parent, String iconUri, int iconSize, int padding) {
-		this(parent, new SvgIcon(iconUri, defaultIconSize, palette), iconSize, padding);
+		this(parent, IconRegistry.shared.get(iconUri, defaultIconSize, palette), iconSize, padding);
 	}
 	
 	public void setIconSize(int iconSize, int padding) {
@@ -7,19 +7,34 @@
 import java.awt.FontMetrics;
 import java.awt.GradientPaint;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedDirectoryStreamException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import com.xrbpowered.zoomui.GraphAssist;
 import com.xrbpowered.zoomui.MouseInfo;
 import com.xrbpowered.zoomui.UIContainer;
 import com.xrbpowered.zoomui.UIElement;
+import com.xrbpowered.zoomui.UIWindowFactory;
+import com.xrbpowered.zoomui.icons.IconRegistry;
 import com.xrbpowered.zoomui.icons.SvgIcon;
 import com.xrbpowered.zoomui.std.UIArrowButton;
 import com.xrbpowered.zoomui.std.UIButton;
@@ -42,14 +57,35 @@ public class UIFileView extends UIScrollContainer {
 	public static Color colorDisabledSelectedText = new Color(0x99ccff);
 	public static Color colorDisabledText = new Color(0x888888);
 
-	private static final SvgIcon fileIcon = new SvgIcon(UIToolButton.iconPath+"file.svg", 160, UIToolButton.palette);
-	private static final SvgIcon folderIcon = new SvgIcon(UIToolButton.iconPath+"folder.svg", 160, UIToolButton.palette);
-	private static final SvgIcon diskIcon = new SvgIcon(UIToolButton.iconPath+"disk.svg", 160, UIToolButton.palette);
+	private static final SvgIcon fileIcon = IconRegistry.shared.get(UIToolButton.iconPath+"file.svg", 160, UIToolButton.palette);
+	private static final SvgIcon folderIcon = IconRegistry.shared.get(UIToolButton.iconPath+"folder.svg", 160, UIToolButton.palette);
+	private static final SvgIcon diskIcon = IconRegistry.shared.get(UIToolButton.iconPath+"disk.svg", 160, UIToolButton.palette);
 	
 	private static final int LIST_ITEM_WIDTH = 256;
 	private static final int LIST_ITEM_HEIGHT = 48;
 
-	private static final SimpleDateFormat dateFmt = new SimpleDateFormat("d MMM yyyy, HH:mm");
+	// immutable and thread-safe: entries are read on the loader pool
+	private static final DateTimeFormatter dateFmt = DateTimeFormatter.ofPattern("d MMM yyyy, HH:mm").withZone(ZoneId.systemDefault());
+
+	private static final int LOAD_BATCH_SIZE = 256;
+	private static final long LOAD_BATCH_TIME = 16000000L; // 16 ms
+	private static final String INFO_PLACEHOLDER = "...";
+
+	private static ExecutorService loader = null;
+
+	private static ExecutorService getLoader() {
+		if(loader==null) {
+			loader = Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "UIFileView loader");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return loader;
+	}
 
 	private static String formatFileSize(long size) {
 		String[] prefs = {"bytes", "KB", "MB", "GB", "TB"};
@@ -74,11 +110,55 @@ private static boolean startsWithSymbol(String s) {
 		return !(Character.isLetter(ch) || Character.isDigit(ch)) && ch!='_';
 	}
 
+	/**
+	 * File attributes read in the background thread.
+	 */
+	private static class FileEntry {
+		public final File file;
+		public final boolean isFile;
+		public final boolean isHidden;
+		public final String info;
+		
+		public FileEntry(File file, boolean isFile, boolean isHidden, String info) {
+			this.file = file;
+			this.isFile = isFile;
+			this.isHidden = isHidden;
+			this.info = info;
+		}
+		
+		public static FileEntry read(File file) {
+			if(file.getName().isEmpty()) {
+				// file system root
+				return new FileEntry(file, false, false,
+						formatFileSize(file.getFreeSpace()) + " free, " + formatFileSize(file.getTotalSpace()) + " total");
+			}
+			Path path = file.toPath();
+			try {
+				BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+				boolean isFile = !attrs.isDirectory();
+				String info = isFile ? dateFmt.format(attrs.lastModifiedTime().toInstant()) + ", "+formatFileSize(attrs.size()) : null;
+				return new FileEntry(file, isFile, Files.isHidden(path), info);
+			}
+			catch(IOException e) {
+				return new FileEntry(file, true, false, null);
+			}
+		}
+	}
+	
+	private static final Comparator<UIElement> fileNameOrder = new Comparator<UIElement>() {
+		@Override
+		public int compare(UIElement o1, UIElement o2) {
+			return ((FileListItem) o1).name.compareToIgnoreCase(((FileListItem) o2).name);
+		}
+	};
+
 	private class FileListItem extends UIElement {
 		public final File file;
+		public final String name;
 		
-		public final String info;
-		public final boolean isSystem;
+		public boolean isFile;
+		public String info;
+		public boolean isSystem;
 		
 		private int textWidth = -1;
 		private int textHeight = -1;
@@ -86,13 +166,23 @@ private class FileListItem extends UIElement {
 		public FileListItem(UIContainer parent, File file) {
 			super(parent);
 			this.file = file;
-			if(file.isFile())
-				info = dateFmt.format(file.lastModified()) + ", "+formatFileSize(file.length());
-			else if(file.getName().isEmpty())
-				info = formatFileSize(file.getFreeSpace()) + " free, " + formatFileSize(file.getTotalSpace()) + " total";
-			else
-				info = null;
-			isSystem = startsWithSymbol(file.getName()) || file.isHidden() && !file.getName().isEmpty();
+			this.name = file.getName();
+			this.isFile = false;
+			this.info = INFO_PLACEHOLDER;
+			this.isSystem = startsWithSymbol(name);
+		}
+		
+		public FileListItem(UIContainer parent, FileEntry entry) {
+			super(parent);
+			this.file = entry.file;
+			this.name = file.getName();
+			setEntry(entry);
+		}
+		
+		public void setEntry(FileEntry entry) {
+			isFile = entry.isFile;
+			info = entry.info;
+			isSystem = startsWithSymbol(name) || entry.isHidden;
 		}
 		
 		@Override
@@ -109,7 +199,7 @@ public void paint(GraphAssist g) {
 			Color bgColor = sel ? colorSelection : isHover() ? colorHighlight : colorBackground;
 			g.fill(this, bgColor);
 
-			String fileName = file.getName();
+			String fileName = name;
 			boolean disk = false;
 			if(fileName.isEmpty()) {
 				fileName = file.getAbsolutePath();
@@ -118,7 +208,7 @@ public void paint(GraphAssist g) {
 
 			int style = sel ? 1 : 0;
 			if(isSystem) style += 2;
-			(disk ? diskIcon : file.isFile() ? fileIcon : folderIcon).paint(g.graph, style, 20, 8, 32, getPixelSize(), true);
+			(disk ? diskIcon : isFile ? fileIcon : folderIcon).paint(g.graph, style, 20, 8, 32, getPixelSize(), true);
 
 			g.setFont(font);
 			g.setColor(sel ? colorSelectedText : colorText);
@@ -160,11 +250,41 @@ public boolean onMouseDown(float x, float y, MouseInfo mouse) {
 		}
 	}
 	
+	private static class FileGroupBody extends UIContainer {
+		public FileGroupBody(UIContainer parent) {
+			super(parent);
+		}
+		
+		public void sortFiles() {
+			Collections.sort(children, fileNameOrder);
+			invalidateLayout();
+		}
+		
+		@Override
+		public void layout() {
+			float w = LIST_ITEM_WIDTH;
+			float h = LIST_ITEM_HEIGHT;
+			float maxw = getWidth();
+			float y = 0f;
+			float x = 0f; 
+			for(UIElement e : children) {
+				if(x+w>maxw) {
+					x = 0f;
+					y += h;
+				}
+				e.setPosition(x, y);
+				e.setSize(w, h);
+				x += w;
+			}
+			setSize(getWidth(), y+h);
+		}
+	}
+	
 	private class FileGroupBox extends UIContainer implements Comparable<FileGroupBox> {
 		public final int order;
 		public final String title;
 		public final UIElement header;
-		public final UIContainer body;
+		public final FileGroupBody body;
 		public int numFiles = 0;
 		
 		public FileGroupBox(final int order, final String title) {
@@ -213,31 +333,24 @@ public boolean onMouseDown(float x, float y, MouseInfo mouse) {
 				}
 			};
 			
-			this.body = new UIContainer(this) {
-				@Override
-				public void layout() {
-					float w = LIST_ITEM_WIDTH;
-					float h = LIST_ITEM_HEIGHT;
-					float maxw = getWidth();
-					float y = 0f;
-					float x = 0f; 
-					for(UIElement e : children) {
-						if(x+w>maxw) {
-							x = 0f;
-							y += h;
-						}
-						e.setPosition(x, y);
-						e.setSize(w, h);
-						x += w;
-					}
-					setSize(getWidth(), y+h);
-				}
-			};
+			this.body = new FileGroupBody(this);
+			body.setHitIndex(true);
 		}
 		
-		public void addFile(File file) {
+		public FileListItem addFile(File file) {
 			numFiles++;
-			new FileListItem(body, file);
+			FileListItem item = new FileListItem(body, file);
+			fileItems.put(file, item);
+			return item;
+		}
+		
+		public FileListItem addFile(FileEntry entry) {
+			numFiles++;
+			return new FileListItem(body, entry);
+		}
+		
+		public void sortFiles() {
+			body.sortFiles();
 		}
 		
 		public void toggleView() {
@@ -276,6 +389,23 @@ public int compareTo(FileGroupBox o) {
 	private File directory = null;
 	public File selectedFile = null;
 	private final ArrayList<FileGroupBox> groups = new ArrayList<>();
+	private final HashMap<String, FileGroupBox> groupMap = new HashMap<>();
+	private FileGroupBox dirGroup = null;
+	private FileGroupBox rootGroup = null;
+	private FileGroupBox allGroup = null;
+	
+	/**
+	 * Placeholder items waiting for their attributes.
+	 */
+	private final HashMap<File, FileListItem> fileItems = new HashMap<>();
+	
+	/**
+	 * Identifies the current directory listing; results of older background tasks are discarded.
+	 */
+	private volatile int loadId = 0;
+	
+	private Future<?> loadTask = null;
+	private DirectoryStream<Path> loadStream = null;
 
 	public UIFileView(UIContainer parent, String[] groupTypes, boolean autoTypes) {
 		super(parent);
@@ -284,97 +414,218 @@ public UIFileView(UIContainer parent, String[] groupTypes, boolean autoTypes) {
 	}
 	
 	public boolean setDirectory(File directory) {
-		File[] files;
+		cancelLoading();
+		File[] roots = null;
+		DirectoryStream<Path> stream = null;
 		if(directory==null) {
 			directory = null;
-			files = File.listRoots();
+			roots = File.listRoots();
 		}
 		else {
 			directory = Paths.get(directory.toURI()).normalize().toFile();
-			files = directory.listFiles();
+			try {
+				stream = Files.newDirectoryStream(directory.toPath());
+			}
+			catch(IOException | SecurityException e) {
+				return false;
+			}
 		}
-		if(files==null)
-			return false;
 		
 		this.directory = directory;
+		clearGroups();
 		
-		Arrays.sort(files, new Comparator<File>() {
+		if(roots!=null) {
+			// roots are always directories, only the disk space info is loaded in background
+			for(File file : roots)
+				getGroup(file, false).addFile(file);
+			Collections.sort(groups);
+		}
+		final int id = ++loadId;
+		final Iterator<File> files = (roots!=null) ? Arrays.asList(roots).iterator() : pathsToFiles(stream.iterator());
+		final UIWindowFactory factory = getRoot().getWindow().getFactory();
+		loadStream = stream;
+		loadTask = getLoader().submit(new Runnable() {
 			@Override
-			public int compare(File o1, File o2) {
-				int res = Boolean.compare(!o1.isDirectory(), !o2.isDirectory());
-				if(res==0)
-					res = o1.getName().compareToIgnoreCase(o2.getName());
-				return res;
+			public void run() {
+				loadEntries(id, files, factory);
 			}
 		});
 		
+		selectedFile = null;
+		onNothingSelected();
+		onDirectorySet();
+		return true;
+	}
+	
+	/**
+	 * Stops loading the current directory. The entries loaded so far remain in the view.
+	 * Called automatically when the directory changes.
+	 */
+	public void cancelLoading() {
+		if(loadTask==null)
+			return;
+		loadId++;
+		loadTask.cancel(true);
+		loadTask = null;
+		closeStream();
+	}
+	
+	private void closeStream() {
+		if(loadStream!=null) {
+			try {
+				loadStream.close();
+			}
+			catch(IOException e) {
+			}
+			loadStream = null;
+		}
+	}
+	
+	public boolean isLoading() {
+		return loadTask!=null;
+	}
+	
+	private static Iterator<File> pathsToFiles(final Iterator<Path> paths) {
+		return new Iterator<File>() {
+			@Override
+			public boolean hasNext() {
+				return paths.hasNext();
+			}
+			@Override
+			public File next() {
+				return paths.next().toFile();
+			}
+		};
+	}
+	
+	private void clearGroups() {
 		getView().removeAllChildren();
 		groups.clear();
-		FileGroupBox dirGroup = null;
-		FileGroupBox rootGroup = null;
-		FileGroupBox allGroup = null;
-		HashMap<String, FileGroupBox> groupMap = new HashMap<>();
-		for(File file : files) {
-			if(file.isDirectory()) {
-				if(file.getName().isEmpty()) {
-					if(rootGroup==null) {
-						rootGroup = new FileGroupBox(-1, "File systems");
-						groups.add(rootGroup);
-					}
-					rootGroup.addFile(file);
+		groupMap.clear();
+		dirGroup = null;
+		rootGroup = null;
+		allGroup = null;
+		fileItems.clear();
+	}
+	
+	/**
+	 * Lists directory entries and reads their attributes. Runs in a background thread and passes the results to the UI thread
+	 * in batches: a batch is sent when it is full or when the time of one frame has passed, so the first entries appear immediately.
+	 */
+	private void loadEntries(final int id, Iterator<File> files, UIWindowFactory factory) {
+		ArrayList<FileEntry> batch = new ArrayList<>();
+		long batchStart = System.nanoTime();
+		try {
+			while(id==loadId && files.hasNext()) {
+				batch.add(FileEntry.read(files.next()));
+				if(batch.size()>=LOAD_BATCH_SIZE || System.nanoTime()-batchStart>=LOAD_BATCH_TIME) {
+					postEntries(id, batch, false, factory);
+					batch = new ArrayList<>();
+					batchStart = System.nanoTime();
 				}
-				else {
-					if(dirGroup==null) {
-						dirGroup = new FileGroupBox(0, "Folders");
-						groups.add(dirGroup);
+			}
+		}
+		catch(DirectoryIteratorException | ClosedDirectoryStreamException e) {
+			// directory stream closed or failed, keep the entries loaded so far
+		}
+		if(id==loadId)
+			postEntries(id, batch, true, factory);
+	}
+	
+	private void postEntries(final int id, final ArrayList<FileEntry> batch, final boolean finished, UIWindowFactory factory) {
+		factory.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if(id==loadId) {
+					if(!batch.isEmpty())
+						addEntries(batch);
+					if(finished) {
+						loadTask = null;
+						closeStream();
+						onDirectoryLoaded();
 					}
-					dirGroup.addFile(file);
 				}
 			}
+		});
+	}
+	
+	/**
+	 * Adds loaded entries to the file groups, or updates the existing placeholder items. Runs in the UI thread.
+	 */
+	private void addEntries(ArrayList<FileEntry> batch) {
+		HashSet<FileGroupBox> updated = new HashSet<>();
+		for(FileEntry entry : batch) {
+			FileListItem item = fileItems.remove(entry.file);
+			if(item!=null) {
+				item.setEntry(entry);
+			}
 			else {
-				String type = null;
-				if(autoTypes || groupTypes!=null) {
-					String fileName = file.getName();
-					int dotIndex = fileName.lastIndexOf('.');
-					if(!startsWithSymbol(fileName) && dotIndex>0) {
-						String ext = fileName.substring(dotIndex+1);
-						if(autoTypes) {
-							type = ext.toLowerCase();
-						}
-						else {
-							for(String t : groupTypes) {
-								if(t.equalsIgnoreCase(ext)) {
-									type = t;
-									break;
-								}
+				FileGroupBox grp = getGroup(entry.file, entry.isFile);
+				grp.addFile(entry);
+				updated.add(grp);
+			}
+		}
+		for(FileGroupBox grp : updated)
+			grp.sortFiles();
+		Collections.sort(groups);
+		invalidateLayout();
+		repaint();
+	}
+	
+	private FileGroupBox getGroup(File file, boolean isFile) {
+		if(!isFile) {
+			if(file.getName().isEmpty()) {
+				if(rootGroup==null) {
+					rootGroup = new FileGroupBox(-1, "File systems");
+					groups.add(rootGroup);
+				}
+				return rootGroup;
+			}
+			else {
+				if(dirGroup==null) {
+					dirGroup = new FileGroupBox(0, "Folders");
+					groups.add(dirGroup);
+				}
+				return dirGroup;
+			}
+		}
+		else {
+			String type = null;
+			if(autoTypes || groupTypes!=null) {
+				String fileName = file.getName();
+				int dotIndex = fileName.lastIndexOf('.');
+				if(!startsWithSymbol(fileName) && dotIndex>0) {
+					String ext = fileName.substring(dotIndex+1);
+					if(autoTypes) {
+						type = ext.toLowerCase();
+					}
+					else {
+						for(String t : groupTypes) {
+							if(t.equalsIgnoreCase(ext)) {
+								type = t;
+								break;
 							}
 						}
 					}
 				}
-				if(type==null) {
-					if(allGroup==null) {
-						allGroup = new FileGroupBox(2, groupTypes==null && !autoTypes ? "All files" : "All other files");
-						groups.add(allGroup);
-					}
-					allGroup.addFile(file);
+			}
+			if(type==null) {
+				if(allGroup==null) {
+					allGroup = new FileGroupBox(2, groupTypes==null && !autoTypes ? "All files" : "All other files");
+					groups.add(allGroup);
 				}
-				else {
-					FileGroupBox grp = groupMap.get(type);
-					if(grp==null) {
-						grp = new FileGroupBox(1, type.toUpperCase()+" files");
-						groupMap.put(type, grp);
-						groups.add(grp);
-					}
-					grp.addFile(file);
+				return allGroup;
+			}
+			else {
+				FileGroupBox grp = groupMap.get(type);
+				if(grp==null) {
+					grp = new FileGroupBox(1, type.toUpperCase()+" files");
+					groupMap.put(type, grp);
+					groups.add(grp);
 				}
+				return grp;
 			}
 		}
-		Collections.sort(groups);
-		
-		selectedFile = null;
-		onNothingSelected();
-		onDirectorySet();
-		return true;
 	}
 	
 	public File getDirectory() {
@@ -416,6 +667,9 @@ public void onNothingSelected() {
 	public void onDirectorySet() {
 	}
 	
+	public void onDirectoryLoaded() {
+	}
+	
 	public void onBrowse() {
 	}
 	
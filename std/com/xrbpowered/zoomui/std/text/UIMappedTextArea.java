@@ -0,0 +1,26 @@
+package com.xrbpowered.zoomui.std.text;
+
+import com.xrbpowered.zoomui.UIContainer;
+import com.xrbpowered.zoomui.base.UIMappedTextView;
+import com.xrbpowered.zoomui.std.UIScrollContainer;
+
+public class UIMappedTextArea extends UIScrollContainer {
+
+	public final UIMappedTextView view;
+	
+	public UIMappedTextArea(UIContainer parent) {
+		super(parent);
+		view = createView();
+	}
+	
+	protected UIMappedTextView createView() {
+		return new UIMappedTextView(getView());
+	}
+	
+	@Override
+	protected float layoutView() {
+		view.setPosition(0, 0);
+		return view.getHeight();
+	}
+	
+}
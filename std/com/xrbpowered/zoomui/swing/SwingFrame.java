@@ -3,6 +3,7 @@
 import java.awt.Cursor;
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.Rectangle;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 
@@ -95,6 +96,11 @@ public void repaint() {
 		panel.repaint();
 	}
 
+	@Override
+	public void repaint(Rectangle r) {
+		panel.repaint(r);
+	}
+
 	@Override
 	public void setCursor(Cursor cursor) {
 		panel.setCursor(cursor);
@@ -4,6 +4,7 @@
 import java.awt.Cursor;
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.Rectangle;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 
@@ -113,6 +114,11 @@ public void repaint() {
 		panel.repaint();
 	}
 
+	@Override
+	public void repaint(Rectangle r) {
+		panel.repaint(r);
+	}
+
 	@Override
 	public void setCursor(Cursor cursor) {
 		panel.setCursor(cursor);
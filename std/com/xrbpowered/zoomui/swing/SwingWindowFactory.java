@@ -3,9 +3,14 @@
 import com.xrbpowered.zoomui.UIModalWindow.ResultHandler;
 import com.xrbpowered.zoomui.UIWindow;
 import com.xrbpowered.zoomui.UIWindowFactory;
+import com.xrbpowered.zoomui.icons.IconPrefetcher;
 
 public class SwingWindowFactory extends UIWindowFactory {
 
+	public SwingWindowFactory() {
+		setPaintHook(IconPrefetcher.shared);
+	}
+
 	@Override
 	public SwingFrame create(String title, int w, int h, boolean canResize) {
 		SwingFrame frame = new SwingFrame(this, title, w, h, canResize, false);
@@ -0,0 +1,108 @@
+package com.xrbpowered.zoomui.base;
+
+import static com.xrbpowered.zoomui.InputInfo.CTRL;
+import static com.xrbpowered.zoomui.InputInfo.SHIFT;
+
+import java.awt.event.KeyEvent;
+import java.util.Random;
+
+import com.xrbpowered.zoomui.headless.HeadlessSurface;
+import com.xrbpowered.zoomui.headless.HeadlessWindow;
+import com.xrbpowered.zoomui.headless.HeadlessWindowFactory;
+import com.xrbpowered.zoomui.std.text.UITextArea;
+
+/**
+ * Regression tests for the undo history of {@link UITextEditBase}. Run as a Java application, throws {@link AssertionError} on failure.
+ */
+public class TextEditHistoryTest {
+
+	private static UITextEditBase<?> editor;
+	private static HeadlessSurface surface;
+
+	private static void setUp(String text) {
+		HeadlessWindow window = HeadlessWindowFactory.use(1f).create("TextEditHistoryTest", 400, 300, false);
+		UITextArea area = new UITextArea(window.getContainer());
+		editor = area.editor;
+		editor.setText(text);
+		window.show();
+		window.getContainer().setFocus(editor);
+		window.renderFrame();
+		surface = window.surface;
+	}
+
+	private static void key(int code, int mods) {
+		surface.setModifiers(mods);
+		surface.keyPressed(code);
+		surface.setModifiers(0);
+	}
+
+	private static void check(boolean cond, String message) {
+		if(!cond)
+			throw new AssertionError(message);
+	}
+
+	private static void checkPosition(UITextEditBase.Position pos, String name) {
+		if(pos==null)
+			return;
+		check(pos.line>=0 && pos.line<editor.lines.size(), name+" line "+pos.line+" outside of "+editor.lines.size()+" lines");
+		check(pos.col>=0 && pos.col<=editor.lines.get(pos.line).length, name+" column "+pos.col+" outside of line "+pos.line);
+	}
+
+	private static void checkCursor() {
+		checkPosition(editor.cursor, "cursor");
+		checkPosition(editor.selStart, "selStart");
+		checkPosition(editor.selEnd, "selEnd");
+	}
+
+	/**
+	 * Undo without pending changes must not leave a stale cursor state for the next history item.
+	 */
+	public static void testUndoAfterEmptyChange() {
+		setUp("");
+		surface.typeText("abc");
+		key(KeyEvent.VK_DELETE, 0);
+		key(KeyEvent.VK_Z, CTRL);
+		check(editor.getText().isEmpty(), "undo typing");
+		surface.keyPressed('\n', KeyEvent.VK_ENTER);
+		key(KeyEvent.VK_Z, CTRL);
+		checkCursor();
+		surface.typeText("x");
+		check(editor.getText().equals("x"), "typed after undo: "+editor.getText());
+		key(KeyEvent.VK_Z, CTRL);
+		checkCursor();
+		check(editor.getText().isEmpty(), "undo after undo");
+	}
+
+	/**
+	 * Random editing with undo and redo keeps the cursor within the text and undoes to the initial text.
+	 */
+	public static void testRandomUndoRedo(long seed, int steps) {
+		String init = "hello world\n\tfoo bar\n\nlast line here";
+		setUp(init);
+		Random random = new Random(seed);
+		int[] codes = {KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_DOWN, KeyEvent.VK_HOME, KeyEvent.VK_END,
+				KeyEvent.VK_BACK_SPACE, KeyEvent.VK_DELETE, KeyEvent.VK_ENTER};
+		String chars = "ab {};\t";
+		for(int i=0; i<steps; i++) {
+			int k = random.nextInt(16);
+			if(k<codes.length)
+				key(codes[k], random.nextInt(4)==0 ? SHIFT : 0);
+			else if(k<13)
+				key(random.nextBoolean() ? KeyEvent.VK_Z : KeyEvent.VK_Y, CTRL);
+			else
+				surface.typeText(String.valueOf(chars.charAt(random.nextInt(chars.length()))));
+			checkCursor();
+		}
+		while(editor.history.undo())
+			checkCursor();
+		check(editor.getText().equals(init), "undo all, seed "+seed);
+	}
+
+	public static void main(String[] args) {
+		testUndoAfterEmptyChange();
+		for(long seed=0; seed<32; seed++)
+			testRandomUndoRedo(seed, 2000);
+		System.out.println("TextEditHistoryTest: passed");
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.xrbpowered.zoomui.base;
+
+import com.xrbpowered.zoomui.headless.HeadlessWindow;
+import com.xrbpowered.zoomui.headless.HeadlessWindowFactory;
+import com.xrbpowered.zoomui.std.text.UITextArea;
+
+/**
+ * Regression tests for word wrap in {@link UITextEditBase}. Run as a Java application, throws {@link AssertionError} on failure.
+ */
+public class TextEditWrapTest {
+
+	private static void check(boolean cond, String message) {
+		if(!cond)
+			throw new AssertionError(message);
+	}
+
+	private static void checkRows(UITextEditBase<?> editor) {
+		for(int i=0; i<editor.lines.size(); i++) {
+			UITextEditBase.Line line = editor.lines.get(i);
+			int[] starts = line.wrapStarts;
+			if(starts!=null) {
+				check(starts[0]==0, "line "+i+" first row starts at "+starts[0]);
+				for(int r=1; r<starts.length; r++)
+					check(starts[r]>starts[r-1] && starts[r]<line.length, "line "+i+" row "+r+" starts at "+starts[r]);
+			}
+		}
+	}
+
+	/**
+	 * Views narrower than a single character must still wrap every line, one column per row at least.
+	 */
+	public static void testNarrowView(int width) {
+		HeadlessWindow window = HeadlessWindowFactory.use(1f).create("TextEditWrapTest", width, 200, false);
+		UITextArea area = new UITextArea(window.getContainer());
+		UITextEditBase<?> editor = area.editor;
+		editor.setText("hello wonderful world\n\ttab\t\t\nx\nabc   ");
+		editor.setWordWrap(true);
+		window.show();
+		window.getContainer().setFocus(editor);
+		window.renderFrame();
+		checkRows(editor);
+		editor.setText("a\tb\n\t\n  ");
+		window.renderFrame();
+		checkRows(editor);
+	}
+
+	public static void main(String[] args) {
+		for(int width=1; width<=40; width++)
+			testNarrowView(width);
+		System.out.println("TextEditWrapTest: passed");
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.xrbpowered.zoomui.icons;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+
+/**
+ * Checks numbers parsed by {@link SvgPathParser}. Run as a Java application, throws {@link AssertionError} on failure.
+ */
+public class SvgPathParserTest {
+
+	private static void check(boolean cond, String message) {
+		if(!cond)
+			throw new AssertionError(message);
+	}
+
+	/**
+	 * Parses a single moveto and checks the coordinates of the starting point.
+	 */
+	private static void checkMove(String d, double x, double y) {
+		Path2D path = SvgPathParser.parse(d, 1.0);
+		PathIterator it = path.getPathIterator(null);
+		check(!it.isDone(), d+": empty path");
+		double[] coords = new double[6];
+		check(it.currentSegment(coords)==PathIterator.SEG_MOVETO, d+": not a moveto");
+		check(coords[0]==x && coords[1]==y, d+": parsed as "+coords[0]+", "+coords[1]);
+	}
+
+	public static void testNumbers() {
+		checkMove("M10 20", 10, 20);
+		checkMove("M-1.5-2.25", -1.5, -2.25);
+		checkMove("M+3 .5", 3, 0.5);
+		checkMove("M1e2 -1E-2", 100, -0.01);
+		checkMove("M-1e2 2e+1", -100, 20);
+	}
+
+	/**
+	 * Exponents out of the exact range and numbers with more than 18 significant digits are parsed by {@link Double#parseDouble(String)}.
+	 */
+	public static void testFallbackNumbers() {
+		checkMove("M-1e30 -2", -1e30, -2);
+		checkMove("M1e30-1e-30", 1e30, -1e-30);
+		checkMove("M+1e30 0", 1e30, 0);
+		checkMove("M-0.12345678901234567891 5", -0.12345678901234567891, 5);
+		checkMove("M0.12345678901234567891-12345678901234567890123", 0.12345678901234567891, -12345678901234567890123.0);
+		checkMove("M-12345678901234567890e-5,1", -12345678901234567890e-5, 1);
+	}
+
+	public static void main(String[] args) {
+		testNumbers();
+		testFallbackNumbers();
+		System.out.println("SvgPathParserTest: passed");
+	}
+
+}